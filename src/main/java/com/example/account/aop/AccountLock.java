@@ -7,10 +7,29 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import com.example.account.type.LockMode;
+
 @Target(ElementType.METHOD)//어노테이션 붙일수있게해줌
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
 @Inherited
 public @interface AccountLock {//어노테이션
-	long tryLockTIme() default 5000L;
+	/**
+	 * 락 대기시간(ms)
+	 */
+	long waitTime() default 1000L;
+
+	/**
+	 * 락 유지시간(ms), WATCHDOG이면 작업이 끝날 때까지 자동 연장
+	 */
+	long leaseTime() default 15000L;
+
+	LockMode mode() default LockMode.EXCLUSIVE;
+
+	/**
+	 * true면 락 없는 잔액 엔진(account.balance.engine=conditional-update, optimistic)일 때 락을 잡지 않는다.
+	 */
+	boolean lockFreeEngineSafe() default false;
+
+	long WATCHDOG = -1L;
 }
@@ -0,0 +1,28 @@
+package com.example.account.aop;
+
+import com.example.account.type.LockMode;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 메서드별 락 정책 (@AccountLock 값)
+ */
+@Getter
+@AllArgsConstructor
+public class AccountLockPolicy {
+	public static final AccountLockPolicy DEFAULT =
+			new AccountLockPolicy(1000L, 15000L, LockMode.EXCLUSIVE);
+
+	private final long waitTimeMillis;
+	private final long leaseTimeMillis;
+	private final LockMode mode;
+
+	public static AccountLockPolicy from(AccountLock accountLock) {
+		return new AccountLockPolicy(accountLock.waitTime(), accountLock.leaseTime(), accountLock.mode());
+	}
+
+	public boolean isWatchdog() {
+		return leaseTimeMillis == AccountLock.WATCHDOG;
+	}
+}
@@ -0,0 +1,17 @@
+package com.example.account.aop;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Idempotency-Key 헤더가 있으면 같은 키의 두 번째 요청부터는 저장된 응답을 돌려준다.
+ * 계좌 락(@AccountLock)보다 먼저 실행되므로 재시도는 락과 DB를 건드리지 않는다.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Idempotent {
+}
@@ -1,32 +1,57 @@
 package com.example.account.config;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
 
 import redis.embedded.RedisServer;
 
 
 @Configuration
+@ConditionalOnProperty(name = "account.redis.embedded", havingValue = "true", matchIfMissing = true)//Redis가 필요없는 배포에서는 끈다.
 public class LocalRedisConfig {
 	@Value("${spring.redis.port}") //yml에 있는 redis 가져와서 담겟다.
 	private int redisPort;
 	
-	private RedisServer redisServer;
+	@Value("${account.lock.shards.addresses:}") //로컬 락 샤드도 같이 띄운다.
+	private List<String> shardAddresses;
+	
+	private final List<RedisServer> redisServers = new ArrayList<>();
 	
 	@PostConstruct
 	public void startRedis() {
-		redisServer = new RedisServer(redisPort);
-		redisServer.start();
+		start(redisPort);
+		for(String address : shardAddresses) {
+			if(address.isBlank()) {
+				continue;
+			}
+			URI uri = URI.create(address.trim());
+			if(isLocal(uri.getHost()) && uri.getPort() != redisPort) {
+				start(uri.getPort());
+			}
+		}
 	}
 	
 	@PreDestroy
 	public void stopRedis() {
-		if(redisServer != null) {
-			redisServer.stop();
-		}
+		redisServers.forEach(RedisServer::stop);
+	}
+	
+	private void start(int port) {
+		RedisServer redisServer = new RedisServer(port);
+		redisServer.start();
+		redisServers.add(redisServer);
+	}
+	
+	private boolean isLocal(String host) {
+		return "127.0.0.1".equals(host) || "localhost".equals(host);
 	}
 
 }
@@ -0,0 +1,26 @@
+package com.example.account.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 비동기 락(account.lock.execution=async)을 잡은 뒤 컨트롤러 본문을 실행하는 스레드 풀
+ * Redisson 이벤트 스레드에서 DB 작업을 하지 않도록 따로 둔다.
+ */
+@Configuration
+public class LockExecutorConfig {
+
+	@Bean
+	public ThreadPoolTaskExecutor accountLockExecutor(
+			@Value("${account.lock.async.pool-size:32}") int poolSize,
+			@Value("${account.lock.async.queue-capacity:1000}") int queueCapacity) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("account-lock-");
+		return executor;
+	}
+}
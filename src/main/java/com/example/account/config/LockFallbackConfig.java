@@ -0,0 +1,38 @@
+package com.example.account.config;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.account.service.AccountLockProvider;
+import com.example.account.service.DbRowAccountLockProvider;
+import com.example.account.service.StripedAccountLockProvider;
+
+/**
+ * Redis 락 서킷 브레이커가 열렸을 때 쓸 락
+ * account.lock.circuit-breaker.fallback = fail-fast(기본) | striped | db
+ */
+@Configuration
+public class LockFallbackConfig {
+
+	@Bean
+	@Qualifier("lockFallback")
+	@ConditionalOnProperty(name = "account.lock.circuit-breaker.fallback", havingValue = "striped")
+	public AccountLockProvider stripedLockFallback(
+			@Value("${account.lock.stripes:256}") int stripeCount) {
+		return new StripedAccountLockProvider(stripeCount);
+	}
+
+	@Bean
+	@Qualifier("lockFallback")
+	@ConditionalOnProperty(name = "account.lock.circuit-breaker.fallback", havingValue = "db")
+	public AccountLockProvider dbRowLockFallback(DataSource dataSource,
+			EntityManagerFactory entityManagerFactory) {
+		return new DbRowAccountLockProvider(dataSource, entityManagerFactory);
+	}
+}
@@ -6,6 +6,7 @@ import org.redisson.config.Config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
 @Configuration
 public class RedisRepositoryConfig {
@@ -16,6 +17,7 @@ public class RedisRepositoryConfig {
 	private int redisPort;
 	
 	@Bean
+	@Lazy //Redis를 쓰는 빈이 있을 때만 연결한다.
 	public RedissonClient redissonClient() {
 		Config config = new Config();
 		config.useSingleServer().setAddress("redis://"+redisHost+":"+redisPort);
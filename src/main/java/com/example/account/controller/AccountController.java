@@ -13,12 +13,14 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.example.account.domain.Account;
+import com.example.account.dto.AccountBalanceAt;
+import com.example.account.dto.AccountDetail;
 import com.example.account.dto.AccountDto;
 import com.example.account.dto.AccountInfo;
 import com.example.account.dto.CreateAccount;
 import com.example.account.dto.DeleteAccount;
 import com.example.account.service.AccountService;
+import com.example.account.service.BalanceHistoryService;
 
 import lombok.RequiredArgsConstructor;
 
@@ -26,6 +28,7 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class AccountController {
 	private final AccountService accountService;
+	private final BalanceHistoryService balanceHistoryService;
 		
 	@PostMapping("/account")
 	public CreateAccount.Response createAccount(//@Valid는 유효성검사 dto에 검사법작성
@@ -60,8 +63,17 @@ public class AccountController {
 	}
 	
 	
+	/**
+	 * 시점 잔액 조회 예) /account/1000000000/balance?at=2024-10-01T00:00:00
+	 * 지난 시점의 잔액은 바뀌지 않으므로 계좌 락을 잡지 않는다.
+	 */
+	@GetMapping("/account/{accountNumber}/balance")
+	public AccountBalanceAt getBalanceAt(AccountBalanceAt.Request request) {
+		return balanceHistoryService.getBalanceAt(request.getAccountNumber(), request.getAt());
+	}
+	
 	@GetMapping("/account/{id}")
-	public Account getAccount(@PathVariable Long id) {
+	public AccountDetail getAccount(@PathVariable Long id) {
 		return accountService.getAccount(id);
 	}
 }
@@ -0,0 +1,28 @@
+package com.example.account.controller;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import com.example.account.dto.HeldAccountLock;
+import com.example.account.service.LockService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 지금 이 노드에서 잡혀 있는 계좌 락 목록 (GET /actuator/accountlocks)
+ * 노드마다 자기 JVM의 락만 보여준다.
+ */
+@Component
+@Endpoint(id = "accountlocks")
+@RequiredArgsConstructor
+public class AccountLockEndpoint {
+	private final LockService lockService;
+
+	@ReadOperation
+	public List<HeldAccountLock> heldLocks() {
+		return lockService.getHeldLocks();
+	}
+}
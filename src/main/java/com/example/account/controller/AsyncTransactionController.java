@@ -0,0 +1,110 @@
+package com.example.account.controller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import javax.validation.Valid;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.account.aop.AccountLock;
+import com.example.account.aop.Idempotent;
+import com.example.account.dto.CancelBalance;
+import com.example.account.dto.QueryTransactionResponse;
+import com.example.account.dto.UseBalance;
+import com.example.account.exception.AccountException;
+import com.example.account.service.TransactionService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 잔액 관련 컨트롤러 (account.lock.execution=async)
+ * TransactionController와 같은 API, 잔액 사용/취소는 CompletableFuture로 응답한다.
+ * 계좌 락을 기다리는 동안 요청 스레드는 풀로 돌아가고, 락을 잡으면 LockAopAspect가 본문을 실행한다.
+ * 메모리 원장, 그룹 커밋 엔진은 결과를 기다리지 않고 엔진 future로 응답한다.
+ * 실패 응답은 동기 모드와 같다.
+ */
+@Slf4j
+@RestController
+@ConditionalOnProperty(name = "account.lock.execution", havingValue = "async")
+@RequiredArgsConstructor
+public class AsyncTransactionController {
+	private final TransactionService transactionService;
+	
+	@Autowired
+	@Qualifier("accountLockExecutor")
+	private Executor accountLockExecutor;//실패 거래 기록용
+	
+	@PostMapping("/transaction/use")
+	@Idempotent
+	@AccountLock(lockFreeEngineSafe = true)
+	public CompletableFuture<UseBalance.Response> useBalance(
+			@Valid @RequestBody UseBalance.Request request) {
+		
+		return transactionService.useBalanceByEngineAsync(
+				request.getUserId(), request.getAccountNumber(), request.getAmount())
+			.handle((transactionDto, e) -> e == null
+					? CompletableFuture.completedFuture(UseBalance.Response.from(transactionDto))
+					: this.<UseBalance.Response>failed(e, () -> transactionService.saveFailedUseTransaction(
+							request.getAccountNumber(), request.getAmount())))
+			.thenCompose(Function.identity());
+	}
+	
+	@PostMapping("/transaction/cancel")
+	@Idempotent
+	@AccountLock(lockFreeEngineSafe = true)
+	public CompletableFuture<CancelBalance.Response> cancelBalance(
+			@Valid @RequestBody CancelBalance.Request request) {
+		
+		return transactionService.cancelBalanceByEngineAsync(
+				request.getTransactionId(), request.getAccountNumber(), request.getAmount())
+			.handle((transactionDto, e) -> e == null
+					? CompletableFuture.completedFuture(CancelBalance.Response.from(transactionDto))
+					: this.<CancelBalance.Response>failed(e, () -> transactionService.saveFailedCancelTransaction(
+							request.getAccountNumber(), request.getAmount())))
+			.thenCompose(Function.identity());
+	}
+	
+	/**
+	 * 실패 거래는 엔진 스레드(파티션, 그룹 커밋)가 아니라 accountLockExecutor에서 남기고, 원래 실패로 응답한다.
+	 */
+	private <T> CompletableFuture<T> failed(Throwable e, Runnable saveFailedTransaction) {
+		Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+		if(!(cause instanceof AccountException)) {
+			return CompletableFuture.failedFuture(cause);
+		}
+		log.error("Failed to use balance");
+		
+		CompletableFuture<T> result = new CompletableFuture<>();
+		try {
+			accountLockExecutor.execute(() -> {
+				try {
+					saveFailedTransaction.run();
+				} finally {
+					result.completeExceptionally(cause);
+				}
+			});
+		} catch (RejectedExecutionException rejected) {
+			log.error("Account lock executor is full, failed transaction not saved");
+			result.completeExceptionally(cause);
+		}
+		return result;
+	}
+	
+	@GetMapping("/transaction/{transactionId}")//거래 행은 바뀌지 않아서 락 없이 읽는다
+	public QueryTransactionResponse queryTransaction(@PathVariable String transactionId) {
+		return QueryTransactionResponse.from(transactionService.queryTransaction(transactionId));
+	}
+
+}
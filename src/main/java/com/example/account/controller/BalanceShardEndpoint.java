@@ -0,0 +1,34 @@
+package com.example.account.controller;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import com.example.account.dto.BalanceShardStatus;
+import com.example.account.service.ShardedBalanceService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 계좌 샤드 잔액 조회 (GET /actuator/balanceshards/{accountNumber})
+ * 샤드 변경 (POST /actuator/balanceshards/{accountNumber} {"shards": 8}), 1 이하면 샤드를 합친다.
+ * 인증이 없으므로 기본 웹 노출 목록에서 뺐다. JMX나 따로 막은 관리 포트에서 쓴다.
+ */
+@Component
+@Endpoint(id = "balanceshards")
+@RequiredArgsConstructor
+public class BalanceShardEndpoint {
+	private final ShardedBalanceService shardedBalanceService;
+
+	@ReadOperation
+	public BalanceShardStatus status(@Selector String accountNumber) {
+		return shardedBalanceService.getStatus(accountNumber);
+	}
+
+	@WriteOperation
+	public BalanceShardStatus reshard(@Selector String accountNumber, int shards) {
+		return shardedBalanceService.reshard(accountNumber, shards);
+	}
+}
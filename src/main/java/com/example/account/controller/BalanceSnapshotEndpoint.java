@@ -0,0 +1,44 @@
+package com.example.account.controller;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import com.example.account.dto.BalanceRebuild;
+import com.example.account.exception.AccountException;
+import com.example.account.service.BalanceSnapshotService;
+import com.example.account.type.ErrorCode;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 마지막 스냅샷/검증 결과 (GET /actuator/balancesnapshots)
+ * 실행 (POST /actuator/balancesnapshots {"operation": "snapshot" | "verify" | "rebuild"})
+ * rebuild는 잔액을 고치는데 인증이 없으므로 기본 설정에서는 웹에 열지 않는다. (JMX, 또는 막은 관리 포트에서 include)
+ */
+@Component
+@Endpoint(id = "balancesnapshots")
+@RequiredArgsConstructor
+public class BalanceSnapshotEndpoint {
+	private final BalanceSnapshotService balanceSnapshotService;
+
+	@ReadOperation
+	public BalanceRebuild.Report lastReport() {
+		return balanceSnapshotService.getLastReport();
+	}
+
+	@WriteOperation
+	public BalanceRebuild.Report run(String operation) {
+		switch (operation) {
+		case "snapshot":
+			return balanceSnapshotService.snapshot();
+		case "verify":
+			return balanceSnapshotService.verify();
+		case "rebuild":
+			return balanceSnapshotService.rebuild();
+		default:
+			throw new AccountException(ErrorCode.INVALID_REQUEST);
+		}
+	}
+}
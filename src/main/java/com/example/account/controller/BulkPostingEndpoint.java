@@ -0,0 +1,38 @@
+package com.example.account.controller;
+
+import java.nio.file.Paths;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.example.account.dto.BulkPostingReport;
+import com.example.account.service.BulkPostingService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 파일 일괄 반영 상태 (GET /actuator/bulkposting)
+ * 시작/이어서 하기 (POST /actuator/bulkposting {"file": "fee-202410.csv", "jobId": "fee-202410"})
+ * file은 account.bulk-posting.base-dir 기준 경로이고 그 밖은 거절한다. jobId를 안 주면 파일 이름을 쓴다.
+ * 잔액을 바꾸는데 인증이 없으므로 기본 설정에서는 웹에 열지 않는다.
+ */
+@Component
+@Endpoint(id = "bulkposting")
+@RequiredArgsConstructor
+public class BulkPostingEndpoint {
+	private final BulkPostingService bulkPostingService;
+
+	@ReadOperation
+	public BulkPostingReport status() {
+		return bulkPostingService.getStatus();
+	}
+
+	@WriteOperation
+	public BulkPostingReport start(String file, @Nullable String jobId) {
+		return bulkPostingService.start(file,
+				jobId != null ? jobId : Paths.get(file).getFileName().toString());
+	}
+}
@@ -0,0 +1,37 @@
+package com.example.account.controller;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.example.account.dto.HotAccount;
+import com.example.account.service.HotAccountTracker;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 요청이 몰리는 계좌 top-K (GET /actuator/hotaccounts?limit=20)
+ * 계좌 하나가 핫한지 (GET /actuator/hotaccounts/{accountNumber})
+ */
+@Component
+@Endpoint(id = "hotaccounts")
+@RequiredArgsConstructor
+public class HotAccountEndpoint {
+	private static final int DEFAULT_LIMIT = 20;
+
+	private final HotAccountTracker hotAccountTracker;
+
+	@ReadOperation
+	public List<HotAccount> topAccounts(@Nullable Integer limit) {
+		return hotAccountTracker.getTopAccounts(limit == null ? DEFAULT_LIMIT : limit);
+	}
+
+	@ReadOperation
+	public boolean isHot(@Selector String accountNumber) {
+		return hotAccountTracker.isHot(accountNumber);
+	}
+}
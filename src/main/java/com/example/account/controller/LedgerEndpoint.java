@@ -0,0 +1,34 @@
+package com.example.account.controller;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.account.dto.LedgerReconciliation;
+import com.example.account.service.RedisLedgerWriter;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 마지막 Redis/DB 잔액 비교 결과 (GET /actuator/ledger)
+ * 스트림을 모두 반영하고 다시 비교 (POST /actuator/ledger)
+ */
+@Component
+@Endpoint(id = "ledger")
+@ConditionalOnProperty(name = "account.balance.engine", havingValue = "redis-ledger")
+@RequiredArgsConstructor
+public class LedgerEndpoint {
+	private final RedisLedgerWriter redisLedgerWriter;
+
+	@ReadOperation
+	public LedgerReconciliation.Report lastReport() {
+		return redisLedgerWriter.getLastReport();
+	}
+
+	@WriteOperation
+	public LedgerReconciliation.Report reconcile() {
+		return redisLedgerWriter.reconcile();
+	}
+}
@@ -0,0 +1,46 @@
+package com.example.account.controller;
+
+import java.util.Arrays;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.account.dto.LockShardStatus;
+import com.example.account.service.LockCircuitBreakers;
+import com.example.account.service.RedisLockShards;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 계좌 락 Redis 샤드 조회 (GET /actuator/lockshards)
+ * 샤드 변경 (POST /actuator/lockshards {"addresses": "redis://a:6379,redis://b:6379"})
+ * 변경은 이 노드에만 적용되므로 모든 노드에 rebalance-grace 안에 보내야 한다.
+ * 인증이 없으므로 기본 웹 노출 목록에서 뺐다. JMX나 따로 막은 관리 포트에서 쓴다.
+ */
+@Component
+@Endpoint(id = "lockshards")
+@ConditionalOnProperty(name = "account.lock.provider", havingValue = "redis", matchIfMissing = true)
+@RequiredArgsConstructor
+public class LockShardEndpoint {
+	private final RedisLockShards redisLockShards;
+	private final LockCircuitBreakers lockCircuitBreakers;
+
+	@ReadOperation
+	public LockShardStatus shards() {
+		return LockShardStatus.builder()
+				.shards(redisLockShards.getShards())
+				.generation(redisLockShards.getGeneration())
+				.rebalancing(redisLockShards.isRebalancing())
+				.circuits(lockCircuitBreakers.getStates())
+				.build();
+	}
+
+	@WriteOperation
+	public LockShardStatus reshard(String addresses) {
+		redisLockShards.reshard(Arrays.asList(addresses.split(",")));
+		return shards();
+	}
+}
@@ -0,0 +1,133 @@
+package com.example.account.controller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.example.account.dto.TransactionBatch;
+import com.example.account.exception.AccountException;
+import com.example.account.service.TransactionBatchService;
+import com.example.account.type.ErrorCode;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 일괄 사용/취소 컨트롤러
+ * 요청 배열은 항목 단위로 읽고(본문 전체를 트리로 만들지 않는다), window-items 개가 모이면 바로 처리한다.
+ * 계좌 묶음 하나가 끝날 때마다 그 결과를 써서 내보내므로, 결과는 요청 순서가 아니라 처리 순서로 나온다. (index로 맞춘다)
+ * 본문이 중간에 깨지거나 max-items를 넘으면 거기서 읽기를 멈추고, 그 위치에 INVALID_REQUEST 결과를 하나 쓰고 끝낸다.
+ * 계좌 락은 컨트롤러(@AccountLock)가 아니라 TransactionBatchService가 계좌마다 잡는다.
+ */
+@Slf4j
+@RestController
+public class TransactionBatchController {
+	private final TransactionBatchService transactionBatchService;
+	private final ObjectMapper objectMapper;
+	private final int maxItems;
+	private final int windowItems;
+	
+	public TransactionBatchController(TransactionBatchService transactionBatchService,
+			ObjectMapper objectMapper,
+			@Value("${account.transaction.batch.max-items:10000}") int maxItems,
+			@Value("${account.transaction.batch.window-items:500}") int windowItems) {
+		this.transactionBatchService = transactionBatchService;
+		this.objectMapper = objectMapper;
+		this.maxItems = maxItems;
+		this.windowItems = windowItems;
+	}
+	
+	@PostMapping(value = "/transaction/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> batch(HttpServletRequest request) throws IOException {
+		//배열이 아니면 응답을 시작하기 전에 거절한다
+		JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream());
+		boolean isArray;
+		try {
+			isArray = parser.nextToken() == JsonToken.START_ARRAY;
+		} catch (JsonProcessingException e) {
+			log.error("Invalid batch request body", e);
+			isArray = false;
+		}
+		if(!isArray) {
+			parser.close();
+			throw new AccountException(ErrorCode.INVALID_REQUEST);
+		}
+		
+		StreamingResponseBody body = outputStream -> {
+			try(JsonParser input = parser;
+					JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+				generator.writeStartArray();
+				stream(input, generator);
+				generator.writeEndArray();
+			}
+		};
+		return ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_JSON)
+				.body(body);
+	}
+	
+	private void stream(JsonParser parser, JsonGenerator generator) throws IOException {
+		List<TransactionBatch.Item> window = new ArrayList<>(windowItems);
+		int read = 0;
+		boolean invalid = false;
+		try {
+			while(parser.nextToken() == JsonToken.START_OBJECT) {
+				if(read >= maxItems) {
+					invalid = true;
+					break;
+				}
+				window.add(objectMapper.readValue(parser, TransactionBatch.Item.class));
+				read++;
+				if(window.size() >= windowItems) {
+					execute(window, read - window.size(), generator);
+					window.clear();
+				}
+			}
+			invalid = invalid || parser.currentToken() != JsonToken.END_ARRAY;
+		} catch (JsonProcessingException e) {
+			log.error("Invalid batch request body at item {}", read, e);
+			invalid = true;
+		}
+		execute(window, read - window.size(), generator);
+		if(invalid) {
+			generator.writeObject(TransactionBatch.Result.failure(read, new TransactionBatch.Item(),
+					ErrorCode.INVALID_REQUEST));
+		}
+	}
+	
+	//계좌 묶음이 끝날 때마다 결과를 써서 내보낸다
+	private void execute(List<TransactionBatch.Item> window, int offset, JsonGenerator generator)
+			throws IOException {
+		if(window.isEmpty()) {
+			return;
+		}
+		try {
+			transactionBatchService.execute(window, offset, results -> {
+				try {
+					for(TransactionBatch.Result result : results) {
+						generator.writeObject(result);
+					}
+					generator.flush();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -2,6 +2,7 @@ package com.example.account.controller;
 
 import javax.validation.Valid;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -9,6 +10,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.account.aop.AccountLock;
+import com.example.account.aop.Idempotent;
 import com.example.account.dto.CancelBalance;
 import com.example.account.dto.QueryTransactionResponse;
 import com.example.account.dto.UseBalance;
@@ -23,25 +25,27 @@ import lombok.extern.slf4j.Slf4j;
  * 1. 잔액 사용
  * 2. 잔액 사용 취소
  * 3. 거래 확인
+ * 사용/취소는 Idempotency-Key 헤더로 재시도를 안전하게 할 수 있다.
+ * 엔진(account.balance.engine)과 락 범위에 따른 분기는 TransactionService가 한다.
+ * account.lock.execution=async 이면 AsyncTransactionController가 대신 뜬다.
  */
 
 @Slf4j
 @RestController
+@ConditionalOnProperty(name = "account.lock.execution", havingValue = "sync", matchIfMissing = true)
 @RequiredArgsConstructor
 public class TransactionController {
 	private final TransactionService transactionService;
 	
-	
 	@PostMapping("/transaction/use")
-	@AccountLock
+	@Idempotent
+	@AccountLock(lockFreeEngineSafe = true)
 	public UseBalance.Response useBalance(
-			@Valid @RequestBody UseBalance.Request request) throws InterruptedException{
+			@Valid @RequestBody UseBalance.Request request) {
 		
 		try {
-			Thread.sleep(3000L);//aop테스트를 위해 사용
-			return UseBalance.Response.from(
-					transactionService.useBalance(
-							request.getUserId(), request.getAccountNumber(), request.getAmount()));
+			return UseBalance.Response.from(transactionService.useBalanceByEngine(
+					request.getUserId(), request.getAccountNumber(), request.getAmount()));
 		} catch (AccountException e) {
 			log.error("Failed to use balance");
 			
@@ -53,14 +57,14 @@ public class TransactionController {
 	}
 	
 	@PostMapping("/transaction/cancel")
-	@AccountLock
+	@Idempotent
+	@AccountLock(lockFreeEngineSafe = true)
 	public CancelBalance.Response cancelBalance(
 			@Valid @RequestBody CancelBalance.Request request){
 		
 		try {
-			return CancelBalance.Response.from(
-					transactionService.cancelBalance(
-							request.getTransactionId(), request.getAccountNumber(), request.getAmount()));
+			return CancelBalance.Response.from(transactionService.cancelBalanceByEngine(
+					request.getTransactionId(), request.getAccountNumber(), request.getAmount()));
 		} catch (AccountException e) {
 			log.error("Failed to use balance");
 			
@@ -71,10 +75,8 @@ public class TransactionController {
 		
 	}
 	
-	@GetMapping("/transaction/{transactionId}")
-	@AccountLock
+	@GetMapping("/transaction/{transactionId}")//거래 행은 바뀌지 않아서 락 없이 읽는다
 	public QueryTransactionResponse queryTransaction(@PathVariable String transactionId) {
-		transactionService.queryTransaction(transactionId);
 		return QueryTransactionResponse.from(transactionService.queryTransaction(transactionId));
 	}
 
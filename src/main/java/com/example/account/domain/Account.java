@@ -2,14 +2,20 @@ package com.example.account.domain;
 
 import java.time.LocalDateTime;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EntityListeners;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Version;
 
+import org.hibernate.annotations.DynamicUpdate;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -31,18 +37,25 @@ import lombok.Setter;
 @Builder
 @Entity
 @EntityListeners(AuditingEntityListener.class)//날짜 자동생성하기위한 어노테이션 컨피그(Jpa config)에도 설정해야함.
+@DynamicUpdate //잔액 변경은 balance, version, update_at 만 update
 public class Account { //h2디비 테이블생성
 	@Id //pk로 쓰겟다
-	@GeneratedValue
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "account_seq")
+	//시퀀스를 50개씩(jdbc batch_size와 같게) 받아와서 insert 마다 시퀀스를 부르지 않는다
+	@SequenceGenerator(name = "account_seq", sequenceName = "account_seq", allocationSize = 50)
 	private Long id;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)//유저 id만 필요하면 프록시에서 바로 읽는다
 	private AccountUser accountUser;
+	@Column(unique = true)
 	private String accountNumber;
 	
 	@Enumerated(EnumType.STRING)//열거형은 0~3~~인데 String형으로 쓰겟다는의미
 	private AccountStatus accountStatus;
 	private Long balance;
+	
+	@Version //낙관적 락, 잔액이 바뀔 때마다 증가
+	private Long version;
 
 	private LocalDateTime registeredAt;
 	private LocalDateTime unRegisteredAt;
@@ -0,0 +1,54 @@
+package com.example.account.domain;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 계좌 잔액 스냅샷, 잔액 = balance + (coveredUntil 이후에 생긴 성공 거래 반영분)
+ * Transaction.id는 노드마다 블록으로 받아서 노드 사이에 순서가 없으므로 거래 생성 시각(createdAt)으로 자른다.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@EntityListeners(AuditingEntityListener.class)
+public class AccountBalanceSnapshot {
+	//계좌를 만들 때의 스냅샷, 그 계좌 거래는 모두 이 뒤에 생긴다
+	public static final LocalDateTime BEGINNING = LocalDateTime.of(2000, 1, 1, 0, 0);
+	
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "account_balance_snapshot_seq")
+	@SequenceGenerator(name = "account_balance_snapshot_seq", sequenceName = "account_balance_snapshot_seq",
+			allocationSize = 50)
+	private Long id;
+	
+	@Column(unique = true)
+	private String accountNumber;
+	private Long balance;
+	private LocalDateTime coveredUntil;//이 시각 전에 생긴(Transaction.createdAt) 거래까지 반영된 잔액
+	private LocalDateTime snapshotAt;
+	
+	@CreatedDate
+	private LocalDateTime createdAt;
+	@LastModifiedDate
+	private LocalDateTime updateAt;
+}
@@ -0,0 +1,27 @@
+package com.example.account.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * DB 계좌 락(account.lock.provider=db)이 SELECT ... FOR UPDATE로 잡는 행, 계좌번호마다 하나
+ * Account 행과 따로 두어서 락을 잡은 연결과 잔액을 바꾸는 서비스 트랜잭션이 서로 기다리지 않는다.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "account_lock")
+public class AccountLockRow {
+	@Id
+	private String accountNumber;
+}
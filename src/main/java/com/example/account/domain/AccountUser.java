@@ -2,11 +2,15 @@ package com.example.account.domain;
 
 import java.time.LocalDateTime;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
 
+import org.hibernate.annotations.ColumnDefault;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -26,11 +30,18 @@ import lombok.Setter;
 @EntityListeners(AuditingEntityListener.class)
 public class AccountUser {
 	@Id
-	@GeneratedValue //자동생성
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "account_user_seq")
+	@SequenceGenerator(name = "account_user_seq", sequenceName = "account_user_seq",
+			allocationSize = 50, initialValue = 100)//data.sql 유저(1~3)와 겹치지 않게
 	private Long id;
 	
 	private String name;
 	
+	@Builder.Default
+	@ColumnDefault("0")
+	@Column(nullable = false)
+	private Integer accountCount = 0;//만든 계좌 수 (해지 포함), 계좌 생성 때 조건부 update로 늘린다 (기존 계좌는 account-count-backfill.sql)
+	
 	@CreatedDate
 	private LocalDateTime createdAt;
 	@LastModifiedDate
@@ -0,0 +1,44 @@
+package com.example.account.domain;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 일괄 반영 작업의 파티션별 진행 위치, 묶음을 반영한 트랜잭션에서 같이 바뀐다.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@EntityListeners(AuditingEntityListener.class)
+public class BulkPostingCheckpoint {
+	@Id
+	@GeneratedValue
+	private Long id;
+	
+	private String jobId;
+	private Integer partitionIndex;
+	private Integer partitions;//다시 시작할 때 같은 파티션 수로 나눠야 한다
+	private Long lastLineNumber;//이 줄까지 반영됨
+	
+	@CreatedDate
+	private LocalDateTime createdAt;
+	@LastModifiedDate
+	private LocalDateTime updateAt;
+}
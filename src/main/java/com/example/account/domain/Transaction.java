@@ -6,10 +6,16 @@ import javax.persistence.Entity;
 import javax.persistence.EntityListeners;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 
+import org.hibernate.annotations.Immutable;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -30,9 +36,18 @@ import lombok.Setter;
 @Builder
 @Entity
 @EntityListeners(AuditingEntityListener.class)
+@Immutable //거래 기록은 insert 뒤로 바뀌지 않는다, flush 때 변경 검사를 건너뛴다
+@Table(indexes = {
+		@Index(name = "idx_transaction_transaction_id", columnList = "transaction_id", unique = true),//거래 조회/취소
+		@Index(name = "idx_transaction_account_created_at", columnList = "account_id, created_at"),//스냅샷 이후 거래만 읽는다
+		@Index(name = "idx_transaction_account_result_transacted_at",
+				columnList = "account_id, transaction_result_type, transacted_at")//시점 잔액 조회
+})
 public class Transaction {
 	@Id
-	@GeneratedValue
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_seq")
+	//노드마다 50개 블록을 받는다, id 순서는 노드 안에서만 생성 순서와 같다 (스냅샷 재반영은 id가 아니라 createdAt으로 자른다)
+	@SequenceGenerator(name = "transaction_seq", sequenceName = "transaction_seq", allocationSize = 50)
 	private Long id;
 	
 	@Enumerated(EnumType.STRING)
@@ -40,7 +55,7 @@ public class Transaction {
 	@Enumerated(EnumType.STRING)
 	private TransactionResultType transactionResultType;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)//조회는 projection으로 계좌번호만 같이 읽는다
 	private Account account;
 	private Long amount;
 	private Long balanceSnapshot;
@@ -0,0 +1,36 @@
+package com.example.account.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.springframework.data.domain.Persistable;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * write-behind 거래가 잔액을 바꾼 DB 트랜잭션과 같이 커밋됐다는 표시 (TransactionWriteBehind)
+ * 저널 기록은 커밋 전에 남으므로, 재시작 때 이 행이 없는 기록은 롤백된 거래로 보고 버린다.
+ * 거래 행을 넣을 때 같이 지운다.
+ */
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+public class TransactionOutbox implements Persistable<String> {
+	@Id
+	private String transactionId;
+
+	@Override
+	public String getId() {
+		return transactionId;
+	}
+
+	@Override
+	public boolean isNew() {
+		return true;//insert만 한다 (save가 merge 전에 select 하지 않게)
+	}
+}
@@ -0,0 +1,40 @@
+package com.example.account.dto;
+
+import java.time.LocalDateTime;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import com.example.account.aop.AccountLockIdInterface;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AccountBalanceAt {
+	private String accountNumber;
+	private LocalDateTime at;
+	private Long balance;
+	private String transactionId;//at 이전 마지막 성공 거래, 없으면 null
+	private LocalDateTime transactedAt;
+	
+	/**
+	 * 경로의 accountNumber, 쿼리의 at 을 바인딩한다.
+	 */
+	@Getter
+	@Setter
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Request implements AccountLockIdInterface {
+		private String accountNumber;
+		
+		@DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+		private LocalDateTime at;
+	}
+}
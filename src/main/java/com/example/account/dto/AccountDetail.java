@@ -0,0 +1,30 @@
+package com.example.account.dto;
+
+import java.time.LocalDateTime;
+
+import com.example.account.type.AccountStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * GET /account/{id} 응답, 엔티티 그래프 대신 계좌 컬럼 + 유저 id만 projection으로 읽는다.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AccountDetail {
+	private Long id;
+	private Long userId;
+	private String accountNumber;
+	private AccountStatus accountStatus;
+	private Long balance;
+	
+	private LocalDateTime registeredAt;
+	private LocalDateTime unRegisteredAt;
+}
@@ -0,0 +1,43 @@
+package com.example.account.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+public class BalanceRebuild {
+	@Getter
+	@Setter
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@Builder
+	public static class Report {
+		private String operation;//snapshot | verify | rebuild
+		private LocalDateTime startedAt;
+		private long elapsedMillis;
+		private long checkedAccounts;
+		private long skippedAccounts;//스냅샷이 없거나 샤드 계좌
+		private long replayedTransactions;//스냅샷 이후 다시 읽은 거래 수
+		private long snapshotsTaken;
+		private long repairedAccounts;
+		private long mismatchedAccounts;
+		private List<Mismatch> mismatches;//앞에서부터 최대 max-mismatches 개
+	}
+	
+	@Getter
+	@Setter
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@Builder
+	public static class Mismatch {
+		private String accountNumber;
+		private Long balance;//Account.balance
+		private Long rebuiltBalance;//스냅샷 + 거래 반영
+		private Long snapshotBalance;
+		private LocalDateTime coveredUntil;
+	}
+}
@@ -0,0 +1,20 @@
+package com.example.account.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BalanceShardStatus {
+	private String accountNumber;
+	private List<Long> shardBalances;//비어 있으면 샤드 안함
+	private Long totalBalance;
+}
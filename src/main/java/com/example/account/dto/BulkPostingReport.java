@@ -0,0 +1,33 @@
+package com.example.account.dto;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import com.example.account.type.BulkPostingStatus;
+import com.example.account.type.ErrorCode;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkPostingReport {
+	private String jobId;
+	private String file;
+	private BulkPostingStatus status;
+	private int partitions;
+	private long readRecords;
+	private long skippedRecords;//이전 실행에서 이미 반영된 줄
+	private long succeededRecords;
+	private long failedRecords;
+	private Map<ErrorCode, Long> failures;
+	private LocalDateTime startedAt;
+	private long elapsedMillis;
+	private double recordsPerSecond;//반영(성공 + 실패)한 줄 기준
+}
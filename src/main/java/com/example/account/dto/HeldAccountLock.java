@@ -0,0 +1,26 @@
+package com.example.account.dto;
+
+import java.time.LocalDateTime;
+
+import com.example.account.type.LockMode;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HeldAccountLock {
+	private String accountNumber;
+	private String endpoint;
+	private LockMode mode;
+	private String holderThread;
+	private String holderNode;
+	private LocalDateTime acquiredAt;
+	private Long heldMillis;
+}
@@ -0,0 +1,21 @@
+package com.example.account.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HotAccount {
+	private String accountNumber;
+	private double requestsPerSecond;
+	private double maxOverestimatePerSecond;//Space-Saving 과대추정 최대치
+	private double avgLockWaitMillis;
+	private double failureRate;
+	private boolean hot;
+}
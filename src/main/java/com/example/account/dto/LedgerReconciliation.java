@@ -0,0 +1,36 @@
+package com.example.account.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+public class LedgerReconciliation {
+	@Getter
+	@Setter
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@Builder
+	public static class Report {
+		private LocalDateTime checkedAt;
+		private int checkedAccounts;
+		private long pendingRecords;//비교 시점에 아직 DB에 반영되지 않은 스트림 기록 수
+		private boolean skipped;//다른 노드가 writer 락을 잡고 있어서 비교하지 않음
+		private List<Mismatch> mismatches;
+	}
+	
+	@Getter
+	@Setter
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@Builder
+	public static class Mismatch {
+		private String accountNumber;
+		private Long redisBalance;
+		private Long dbBalance;
+	}
+}
@@ -0,0 +1,24 @@
+package com.example.account.dto;
+
+import java.util.List;
+import java.util.Map;
+
+import com.example.account.type.CircuitBreakerState;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LockShardStatus {
+	private List<String> shards;
+	private int generation;
+	private boolean rebalancing;//예전 샤드 락도 같이 잡는 중
+	private Map<String, CircuitBreakerState> circuits;//샤드별 서킷 브레이커 (한 번이라도 쓴 샤드만)
+}
@@ -0,0 +1,77 @@
+package com.example.account.dto;
+
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 일괄 사용/취소 (POST /transaction/batch)
+ * 요청 본문은 Item 배열, 응답은 같은 순서의 Result 배열
+ */
+public class TransactionBatch {
+	@Getter
+	@Setter
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@Builder
+	public static class Item {
+		private TransactionType transactionType;//USE면 userId, CANCEL이면 transactionId
+		private Long userId;
+		private String transactionId;
+		private String accountNumber;
+		private Long amount;
+		
+		public UseBalance.Request toUseRequest() {
+			return new UseBalance.Request(userId, accountNumber, amount);
+		}
+		
+		public CancelBalance.Request toCancelRequest() {
+			return new CancelBalance.Request(transactionId, accountNumber, amount);
+		}
+	}
+	
+	@Getter
+	@Setter
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@Builder
+	public static class Result {
+		private int index;//요청 배열에서의 위치
+		private String accountNumber;
+		private TransactionType transactionType;
+		private TransactionResultType transactionResultType;
+		private String transactionId;
+		private Long amount;
+		private ErrorCode errorCode;
+		private String errorMessage;
+		
+		public static Result success(int index, TransactionDto transactionDto) {
+			return Result.builder()
+					.index(index)
+					.accountNumber(transactionDto.getAccountNumber())
+					.transactionType(transactionDto.getTransactionType())
+					.transactionResultType(TransactionResultType.S)
+					.transactionId(transactionDto.getTransactionId())
+					.amount(transactionDto.getAmount())
+					.build();
+		}
+		
+		public static Result failure(int index, Item item, ErrorCode errorCode) {
+			return Result.builder()
+					.index(index)
+					.accountNumber(item.getAccountNumber())
+					.transactionType(item.getTransactionType())
+					.transactionResultType(TransactionResultType.F)
+					.amount(item.getAmount())
+					.errorCode(errorCode)
+					.errorMessage(errorCode.getDescription())
+					.build();
+		}
+	}
+}
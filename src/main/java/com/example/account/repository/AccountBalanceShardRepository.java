@@ -0,0 +1,59 @@
+package com.example.account.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountBalanceShard;
+
+@Repository
+public interface AccountBalanceShardRepository extends JpaRepository<AccountBalanceShard, Long>{
+	List<AccountBalanceShard> findByAccountOrderByShardIndex(Account account);
+	
+	/**
+	 * 재분배/샤드 변경용, 샤드 행을 모두 잠근다.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select s from AccountBalanceShard s where s.account = :account order by s.shardIndex")
+	List<AccountBalanceShard> findForUpdateByAccount(@Param("account") Account account);
+	
+	/**
+	 * 샤드 잔액이 충분할 때만 차감, 반영된 행 수(0 또는 1)를 돌려준다.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update AccountBalanceShard s set s.balance = s.balance - :amount, s.updateAt = :now "
+			+ "where s.id = :id and s.balance >= :amount")
+	int useBalanceIfEnough(@Param("id") Long id, @Param("amount") Long amount,
+			@Param("now") LocalDateTime now);
+	
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update AccountBalanceShard s set s.balance = s.balance + :amount, s.updateAt = :now "
+			+ "where s.id = :id")
+	int addBalance(@Param("id") Long id, @Param("amount") Long amount, @Param("now") LocalDateTime now);
+	
+	@Query("select sum(s.balance) from AccountBalanceShard s where s.account.accountNumber = :accountNumber")
+	Optional<Long> sumBalanceByAccountNumber(@Param("accountNumber") String accountNumber);
+	
+	@Query("select s.account.accountNumber as accountNumber, sum(s.balance) as balance "
+			+ "from AccountBalanceShard s where s.account in :accounts group by s.account.accountNumber")
+	List<ShardBalance> sumBalanceByAccounts(@Param("accounts") Collection<Account> accounts);
+	
+	@Query("select distinct s.account.accountNumber from AccountBalanceShard s")
+	List<String> findShardedAccountNumbers();
+	
+	interface ShardBalance {
+		String getAccountNumber();
+		Long getBalance();
+	}
+}
@@ -0,0 +1,13 @@
+package com.example.account.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.example.account.domain.AccountBalanceSnapshot;
+
+@Repository
+public interface AccountBalanceSnapshotRepository extends JpaRepository<AccountBalanceSnapshot, Long>{
+	Optional<AccountBalanceSnapshot> findByAccountNumber(String accountNumber);
+}
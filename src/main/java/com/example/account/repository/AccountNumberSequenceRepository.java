@@ -0,0 +1,20 @@
+package com.example.account.repository;
+
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.account.domain.AccountNumberSequence;
+
+@Repository
+public interface AccountNumberSequenceRepository extends JpaRepository<AccountNumberSequence, String>{
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select s from AccountNumberSequence s where s.name = :name")
+	Optional<AccountNumberSequence> findForUpdateByName(@Param("name") String name);
+}
@@ -1,21 +1,75 @@
 package com.example.account.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.LockModeType;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.account.domain.Account;
-import com.example.account.domain.AccountUser;
+import com.example.account.dto.AccountDetail;
+import com.example.account.dto.AccountDto;
+import com.example.account.type.AccountStatus;
 
 @Repository
 public interface AccountRepository extends JpaRepository<Account,Long>{
-	Optional<Account> findFirstByOrderByIdDesc();
+	Optional<Account> findByAccountNumber(String accountNumber);
 	
-	Integer countByAccountUser(AccountUser accountUser);
+	/**
+	 * 유저의 계좌 목록, 샤드 계좌는 샤드 잔액까지 더해서 한 문장으로 읽는다.
+	 */
+	@Query("select new com.example.account.dto.AccountDto(a.accountUser.id, a.accountNumber, "
+			+ "a.balance + coalesce((select sum(s.balance) from AccountBalanceShard s where s.account = a), 0L), "
+			+ "a.registeredAt, a.unRegisteredAt) "
+			+ "from Account a where a.accountUser.id = :userId order by a.id")
+	List<AccountDto> findDtosByUserId(@Param("userId") Long userId);
 	
-	Optional<Account> findByAccountNumber(String accountNumber);
+	@Query("select new com.example.account.dto.AccountDetail(a.id, a.accountUser.id, a.accountNumber, "
+			+ "a.accountStatus, a.balance, a.registeredAt, a.unRegisteredAt) "
+			+ "from Account a where a.id = :id")
+	Optional<AccountDetail> findDetailById(@Param("id") Long id);
+	
+	/**
+	 * 잔액이 충분하고 사용중인 계좌만 차감, 반영된 행 수(0 또는 1)를 돌려준다.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update Account a set a.balance = a.balance - :amount, a.version = a.version + 1, a.updateAt = :now "
+			+ "where a.accountNumber = :accountNumber and a.accountStatus = :status "
+			+ "and a.balance >= :amount")
+	int useBalanceIfEnough(@Param("accountNumber") String accountNumber, @Param("amount") Long amount,
+			@Param("status") AccountStatus status, @Param("now") LocalDateTime now);
+	
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update Account a set a.balance = a.balance + :amount, a.version = a.version + 1, a.updateAt = :now "
+			+ "where a.accountNumber = :accountNumber")
+	int addBalance(@Param("accountNumber") String accountNumber, @Param("amount") Long amount,
+			@Param("now") LocalDateTime now);
+	
+	/**
+	 * 계좌번호 순서로 행 락을 잡는다 (여러 계좌를 한 트랜잭션에서 바꿀 때 데드락 방지)
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select a from Account a where a.accountNumber in :accountNumbers order by a.accountNumber")
+	List<Account> findForUpdateByAccountNumberIn(@Param("accountNumbers") Collection<String> accountNumbers);
+	
+	@Query("select a.accountNumber from Account a order by a.id")
+	List<String> findAccountNumbers(Pageable pageable);
+	
+	@Query("select a.balance from Account a where a.accountNumber = :accountNumber")
+	Optional<Long> findBalanceByAccountNumber(@Param("accountNumber") String accountNumber);
 	
-	List<Account> findByAccountUser(AccountUser accountUser);
+	/**
+	 * 가장 큰 계좌번호, 계좌번호는 모두 10자리라 문자열 max가 숫자 max와 같다.
+	 */
+	@Query("select max(a.accountNumber) from Account a")
+	Optional<String> findMaxAccountNumber();
 }
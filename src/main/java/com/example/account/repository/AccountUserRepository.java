@@ -1,11 +1,21 @@
 package com.example.account.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.account.domain.AccountUser;
 
 @Repository
 public interface AccountUserRepository extends JpaRepository<AccountUser, Long>{
+	/**
+	 * 계좌 수가 max 미만일 때만 1 늘린다, 반영된 행 수(0 또는 1)를 돌려준다.
+	 */
+	@Modifying
+	@Query("update AccountUser u set u.accountCount = u.accountCount + 1 "
+			+ "where u.id = :id and u.accountCount < :max")
+	int incrementAccountCountIfLess(@Param("id") Long id, @Param("max") int max);
 
 }
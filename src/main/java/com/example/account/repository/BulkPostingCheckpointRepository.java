@@ -0,0 +1,16 @@
+package com.example.account.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.example.account.domain.BulkPostingCheckpoint;
+
+@Repository
+public interface BulkPostingCheckpointRepository extends JpaRepository<BulkPostingCheckpoint, Long>{
+	List<BulkPostingCheckpoint> findByJobIdOrderByPartitionIndex(String jobId);
+	
+	Optional<BulkPostingCheckpoint> findByJobIdAndPartitionIndex(String jobId, Integer partitionIndex);
+}
@@ -0,0 +1,22 @@
+package com.example.account.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.account.domain.TransactionOutbox;
+
+@Repository
+public interface TransactionOutboxRepository extends JpaRepository<TransactionOutbox, String>{
+	@Query("select o.transactionId from TransactionOutbox o where o.transactionId in :transactionIds")
+	List<String> findTransactionIdsIn(@Param("transactionIds") Collection<String> transactionIds);
+	
+	@Modifying
+	@Query("delete from TransactionOutbox o where o.transactionId in :transactionIds")
+	int deleteByTransactionIdIn(@Param("transactionIds") Collection<String> transactionIds);
+}
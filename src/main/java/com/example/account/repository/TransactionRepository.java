@@ -1,15 +1,75 @@
 package com.example.account.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.example.account.domain.Account;
 import com.example.account.domain.Transaction;
+import com.example.account.dto.TransactionDto;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction,Long>{
 	
 	Optional<Transaction> findByTransactionId(String transactionId);
+	
+	/**
+	 * 거래 조회용, 거래 + 계좌번호를 한 문장으로 읽는다.
+	 */
+	@Query("select new com.example.account.dto.TransactionDto(a.accountNumber, t.transactionType, "
+			+ "t.transactionResultType, t.amount, t.balanceSnapshot, t.transactionId, t.transactedAt) "
+			+ "from Transaction t join t.account a where t.transactionId = :transactionId")
+	Optional<TransactionDto> findDtoByTransactionId(@Param("transactionId") String transactionId);
+	
+	List<Transaction> findByTransactionIdIn(Collection<String> transactionIds);
+	
+	@Query("select t.transactionId from Transaction t where t.transactionId in :transactionIds")
+	List<String> findTransactionIdsIn(@Param("transactionIds") Collection<String> transactionIds);
+	
+	/**
+	 * from(포함) 부터 before 전까지 생긴 거래의 수, 성공 거래의 잔액 변화(사용 -, 취소 +)
+	 * (account_id, created_at) 인덱스로 계좌의 뒷부분만 읽는다.
+	 * id는 노드마다 블록으로 받아서 노드 사이 순서가 없으므로 생성 시각 구간으로 자른다.
+	 */
+	@Query("select count(t) as count, "
+			+ "coalesce(sum(case when t.transactionResultType = :success then "
+			+ "(case when t.transactionType = :use then 0 - t.amount else t.amount end) else 0 end), 0) as balanceChange "
+			+ "from Transaction t where t.account = :account and t.createdAt >= :from and t.createdAt < :before")
+	TransactionTail findTail(@Param("account") Account account, @Param("from") LocalDateTime from,
+			@Param("before") LocalDateTime before, @Param("use") TransactionType use,
+			@Param("success") TransactionResultType success);
+	
+	/**
+	 * at 이전(포함) 마지막 성공 거래, (account_id, transaction_result_type, transacted_at) 인덱스를 거꾸로 한 번 읽는다.
+	 */
+	@Query("select t from Transaction t where t.account = :account and t.transactionResultType = :success "
+			+ "and t.transactedAt <= :at order by t.transactedAt desc, t.id desc")
+	List<Transaction> findLastSuccessAtOrBefore(@Param("account") Account account, @Param("at") LocalDateTime at,
+			@Param("success") TransactionResultType success, Pageable pageable);
+	
+	/**
+	 * at 이후 첫 성공 거래 (at 이전 거래가 없을 때 그 거래 전 잔액을 구한다)
+	 */
+	@Query("select t from Transaction t where t.account = :account and t.transactionResultType = :success "
+			+ "and t.transactedAt > :at order by t.transactedAt asc, t.id asc")
+	List<Transaction> findFirstSuccessAfter(@Param("account") Account account, @Param("at") LocalDateTime at,
+			@Param("success") TransactionResultType success, Pageable pageable);
+	
+	default TransactionTail findTail(Account account, LocalDateTime from, LocalDateTime before) {
+		return findTail(account, from, before, TransactionType.USE, TransactionResultType.S);
+	}
+	
+	interface TransactionTail {
+		Long getCount();
+		Long getBalanceChange();
+	}
 }
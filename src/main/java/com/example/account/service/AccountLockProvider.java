@@ -0,0 +1,32 @@
+package com.example.account.service;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.example.account.aop.AccountLockPolicy;
+
+/**
+ * 계좌 락 SPI
+ * account.lock.provider 설정값(redis, striped, db)에 따라 구현체가 선택된다.
+ * 락을 얻지 못하면 ACCOUNT_TRANSACTION_LOCK AccountException을 던진다.
+ * unlock에는 lock과 같은 정책을 넘겨야 한다(읽기/쓰기 락 구분).
+ */
+public interface AccountLockProvider {
+	void lock(String accountNumber, AccountLockPolicy policy);
+
+	void unlock(String accountNumber, AccountLockPolicy policy);
+
+	/**
+	 * 락을 기다리는 동안 호출 스레드를 잡지 않는 획득 (account.lock.execution=async)
+	 * 완료값은 락 해제 동작이다. 실패하면 AccountException으로 완료된다.
+	 * 기본 구현은 호출 스레드에서 lock()을 잡고 완료된 future를 돌려준다.
+	 * 이때 해제도 같은 스레드에서 불러야 한다.
+	 */
+	default CompletableFuture<Runnable> lockAsync(String accountNumber, AccountLockPolicy policy) {
+		try {
+			lock(accountNumber, policy);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return CompletableFuture.completedFuture(() -> unlock(accountNumber, policy));
+	}
+}
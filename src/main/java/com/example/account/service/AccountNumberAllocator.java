@@ -0,0 +1,89 @@
+package com.example.account.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.AccountNumberSequence;
+import com.example.account.repository.AccountNumberSequenceRepository;
+import com.example.account.repository.AccountRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 계좌번호 발급기
+ * 1. DB 시퀀스 행(AccountNumberSequence)을 FOR UPDATE로 잡고 block-size 만큼 예약한다. (별도 트랜잭션이라 바로 커밋)
+ * 2. 예약한 블록은 메모리에서 하나씩 나눠준다. 시퀀스 행은 블록마다 한 번만 잠긴다.
+ * 3. 시퀀스 행이 없으면 가장 큰 계좌번호 다음부터 시작한다. (없으면 1000000000)
+ *    마지막에 만든 계좌(id 최대)가 가장 큰 번호라는 보장은 없다. (블록 예약 때문에 노드마다 번호 순서가 다르다)
+ * 재시작하면 쓰다 남은 블록 번호는 버려진다. 번호에 빈 곳이 생길 수 있지만 중복은 없다.
+ */
+@Slf4j
+@Component
+public class AccountNumberAllocator {
+	static final String SEQUENCE_NAME = "account_number";
+	private static final long FIRST_ACCOUNT_NUMBER = 1000000000L;
+	private static final int RESERVE_RETRIES = 3;
+
+	private final AccountNumberSequenceRepository accountNumberSequenceRepository;
+	private final AccountRepository accountRepository;
+	private final TransactionTemplate reserveTransaction;
+	private final int blockSize;
+
+	private long next;
+	private long limit;//예약한 블록의 끝 (미포함)
+
+	public AccountNumberAllocator(AccountNumberSequenceRepository accountNumberSequenceRepository,
+			AccountRepository accountRepository, PlatformTransactionManager transactionManager,
+			@Value("${account.number.block-size:100}") int blockSize) {
+		this.accountNumberSequenceRepository = accountNumberSequenceRepository;
+		this.accountRepository = accountRepository;
+		this.reserveTransaction = new TransactionTemplate(transactionManager);
+		//계좌 생성 트랜잭션과 분리해서 시퀀스 행 락을 블록 예약 동안만 잡는다
+		this.reserveTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.blockSize = blockSize;
+	}
+
+	public synchronized String nextAccountNumber() {
+		if(next >= limit) {
+			next = reserveBlock();
+			limit = next + blockSize;
+		}
+		return String.valueOf(next++);
+	}
+
+	private long reserveBlock() {
+		for(int attempt = 1; ; attempt++) {
+			try {
+				Long start = reserveTransaction.execute(status -> {
+					AccountNumberSequence sequence = accountNumberSequenceRepository
+							.findForUpdateByName(SEQUENCE_NAME)
+							.orElseGet(this::newSequence);
+					long reserved = sequence.getNextValue();
+					sequence.setNextValue(reserved + blockSize);
+					accountNumberSequenceRepository.save(sequence);
+					return reserved;
+				});
+				log.debug("Reserved account numbers {} ~ {}", start, start + blockSize - 1);
+				return start;
+			} catch (DataIntegrityViolationException e) {
+				//다른 노드가 시퀀스 행을 먼저 만들었다, 다시 읽는다
+				if(attempt >= RESERVE_RETRIES) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private AccountNumberSequence newSequence() {
+		return AccountNumberSequence.builder()
+				.name(SEQUENCE_NAME)
+				.nextValue(accountRepository.findMaxAccountNumber()
+						.map(accountNumber -> Long.parseLong(accountNumber) + 1)
+						.orElse(FIRST_ACCOUNT_NUMBER))
+				.build();
+	}
+}
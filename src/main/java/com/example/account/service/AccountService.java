@@ -2,16 +2,20 @@ package com.example.account.service;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 import javax.transaction.Transactional;
 
 import org.springframework.stereotype.Service;
 
 import com.example.account.domain.Account;
+import com.example.account.domain.AccountBalanceSnapshot;
 import com.example.account.domain.AccountUser;
+import com.example.account.dto.AccountDetail;
 import com.example.account.dto.AccountDto;
 import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountBalanceShardRepository;
+import com.example.account.repository.AccountBalanceSnapshotRepository;
 import com.example.account.repository.AccountRepository;
 import com.example.account.repository.AccountUserRepository;
 import com.example.account.type.AccountStatus;
@@ -27,6 +31,13 @@ public class AccountService {
 
 	private final AccountRepository accountRepository;
 	private final AccountUserRepository accountUserRepository;
+	private final AccountBalanceShardRepository accountBalanceShardRepository;
+	private final AccountBalanceSnapshotRepository accountBalanceSnapshotRepository;
+	private final RedisLedgerService redisLedgerService;
+	private final InMemoryLedgerEngine inMemoryLedgerEngine;
+	private final AccountNumberAllocator accountNumberAllocator;
+	
+	private static final int MAX_ACCOUNT_PER_USER = 10;
 
 	/**
 	 * 슬러시별별 엔터누르면 자동생성 사용자가 있는지 조회 계좌 번호 생성 계좌 번호 저장, 그정보를 넘긴다.
@@ -40,8 +51,7 @@ public class AccountService {
 		
 		validateCreateAccount(accountUser);//계좌 10개면 더이상 생성못하게 예외처리
 
-		String newAccountNumber = accountRepository.findFirstByOrderByIdDesc()
-				.map(account -> (Integer.parseInt(account.getAccountNumber())) + 1 + "").orElse("1000000000");
+		String newAccountNumber = accountNumberAllocator.nextAccountNumber();//노드마다 예약한 블록에서 발급
 
 		Account account = accountRepository.save(Account.builder()
 				.accountUser(accountUser)
@@ -50,22 +60,31 @@ public class AccountService {
 				.balance(initialBalance)
 				.registeredAt(LocalDateTime.now())
 				.build());
+		//잔액 재구성의 시작점 (거래 없이 넣은 초기 잔액)
+		accountBalanceSnapshotRepository.save(AccountBalanceSnapshot.builder()
+				.accountNumber(newAccountNumber)
+				.balance(initialBalance)
+				.coveredUntil(AccountBalanceSnapshot.BEGINNING)
+				.snapshotAt(LocalDateTime.now())
+				.build());
 
 		return AccountDto.fromEntity(account);
 	}
 	
 	private void validateCreateAccount(AccountUser accountUser) {
-		if(accountRepository.countByAccountUser(accountUser) == 10) {
+		//계좌를 세지 않고 유저 행의 계좌 수를 조건부로 늘린다 (동시에 만들어도 10개를 넘지 않는다)
+		if(accountUserRepository.incrementAccountCountIfLess(accountUser.getId(), MAX_ACCOUNT_PER_USER) == 0) {
 			throw new AccountException(ErrorCode.MAX_ACCOUNT_PER_USER_10);
 		}
 	}
 
 	@Transactional
-	public Account getAccount(Long id) {
+	public AccountDetail getAccount(Long id) {
 		if (id < 0) {
 			throw new RuntimeException("Minus");
 		}
-		return accountRepository.findById(id).get();
+		return accountRepository.findDetailById(id)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
 	}
 	
 	@Transactional
@@ -76,6 +95,10 @@ public class AccountService {
 				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
 		
 		validateCreateAccount(accountUser,account);
+		if(!redisLedgerService.unregister(accountNumber)) {//원장에 올라온 계좌는 늦게 반영되는 DB 잔액 대신 원장 잔액으로 확인
+			validateBalanceEmpty(account);
+		}
+		inMemoryLedgerEngine.unregister(accountNumber);
 		
 		account.setAccountStatus(AccountStatus.UN_REGISTERED);
 		account.setUnRegisteredAt(LocalDateTime.now());
@@ -86,13 +109,17 @@ public class AccountService {
 	}
 	
 	private void validateCreateAccount(AccountUser accountUser, Account account) {
-		if(accountUser.getId() != account.getAccountUser().getId()) {
+		if(!Objects.equals(accountUser.getId(), account.getAccountUser().getId())) {
 			throw new AccountException(ErrorCode.USER_ACCOUNT_UN_MATCH);
 		}
 		if(account.getAccountStatus() == AccountStatus.UN_REGISTERED) {
 			throw new AccountException(ErrorCode.ACCOUNT_ALREADY_UNREGISTERED);
 		}
-		if(account.getBalance() > 0) {
+	}
+	
+	private void validateBalanceEmpty(Account account) {
+		if(account.getBalance() > 0 || accountBalanceShardRepository
+				.sumBalanceByAccountNumber(account.getAccountNumber()).orElse(0L) > 0) {//샤드 잔액 포함
 			throw new AccountException(ErrorCode.BALANCE_NOT_EMPTY);
 		}
 		
@@ -100,12 +127,11 @@ public class AccountService {
 	
 	@Transactional
 	public List<AccountDto> getAccountByUserId(Long userId) {
-		AccountUser accountUser = accountUserRepository.findById(userId)
-				.orElseThrow(() -> new AccountException(ErrorCode.USER_NOT_FOUND));
-		
-		List<Account> accounts = accountRepository.findByAccountUser(accountUser);
-		
-		return accounts.stream().map(AccountDto::fromEntity)
-				.collect(Collectors.toList());
+		//계좌 + 샤드 잔액을 한 문장으로 읽고, 비어있을 때만 유저가 있는지 본다
+		List<AccountDto> accounts = accountRepository.findDtosByUserId(userId);
+		if(accounts.isEmpty() && !accountUserRepository.existsById(userId)) {
+			throw new AccountException(ErrorCode.USER_NOT_FOUND);
+		}
+		return accounts;
 	}
 }
@@ -0,0 +1,279 @@
+package com.example.account.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountUser;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.TransactionDto;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 그룹 커밋 (account.balance.engine=group-commit)
+ * 1. 사용/취소 명령을 대기열에 넣고 future를 돌려준다.
+ * 2. 커밋 스레드가 첫 명령부터 max-latency 동안(또는 max-batch-size 개까지) 모아서 한 트랜잭션으로 처리한다.
+ *    계좌 행은 계좌번호 순서로 FOR UPDATE, 거래 기록은 saveAll로 한 번에 넣는다.
+ * 3. 검증 실패(AccountException)는 그 명령만 실패하고 상태를 바꾸지 않는다.
+ *    트랜잭션 자체가 실패하면 명령을 하나씩 다시 커밋해서 문제 명령만 실패시킨다.
+ * 배치 크기/대기 시간은 account.balance.group-commit.batch-size, wait 메트릭으로 본다.
+ */
+@Slf4j
+@Component
+public class BalanceGroupCommitter {
+	private final AccountRepository accountRepository;
+	private final AccountUserRepository accountUserRepository;
+	private final TransactionRepository transactionRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final boolean enabled;
+	private final int maxBatchSize;
+	private final long maxLatencyNanos;
+	private final BlockingQueue<Command> queue;
+	private final DistributionSummary batchSizeSummary;
+	private final Timer waitTimer;
+
+	private Thread committer;
+	private volatile boolean running;
+
+	public BalanceGroupCommitter(AccountRepository accountRepository,
+			AccountUserRepository accountUserRepository, TransactionRepository transactionRepository,
+			TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+			@Value("${account.balance.engine:entity}") BalanceEngine balanceEngine,
+			@Value("${account.balance.group-commit.max-batch-size:64}") int maxBatchSize,
+			@Value("${account.balance.group-commit.max-latency-millis:5}") long maxLatencyMillis,
+			@Value("${account.balance.group-commit.queue-capacity:10000}") int queueCapacity) {
+		this.accountRepository = accountRepository;
+		this.accountUserRepository = accountUserRepository;
+		this.transactionRepository = transactionRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.enabled = balanceEngine == BalanceEngine.GROUP_COMMIT;
+		this.maxBatchSize = maxBatchSize;
+		this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.batchSizeSummary = DistributionSummary.builder("account.balance.group-commit.batch-size")
+				.description("한 트랜잭션으로 커밋한 명령 수")
+				.register(meterRegistry);
+		this.waitTimer = Timer.builder("account.balance.group-commit.wait")
+				.description("명령이 대기열에 들어와서 커밋될 때까지 걸린 시간")
+				.register(meterRegistry);
+	}
+
+	@PostConstruct
+	public void start() {
+		if(!enabled) {
+			return;
+		}
+		running = true;
+		committer = new Thread(this::commitLoop, "balance-group-commit");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if(committer == null) {
+			return;
+		}
+		running = false;
+		committer.join(TimeUnit.SECONDS.toMillis(5));
+	}
+
+	public CompletableFuture<TransactionDto> useBalance(Long userId, String accountNumber, Long amount) {
+		return submit(new Command(TransactionType.USE, userId, null, accountNumber, amount));
+	}
+
+	public CompletableFuture<TransactionDto> cancelBalance(String transactionId, String accountNumber, Long amount) {
+		return submit(new Command(TransactionType.CANCEL, null, transactionId, accountNumber, amount));
+	}
+
+	private CompletableFuture<TransactionDto> submit(Command command) {
+		if(!running || !queue.offer(command)) {
+			command.result.completeExceptionally(new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK));
+		}
+		return command.result;
+	}
+
+	private void commitLoop() {
+		List<Command> batch = new ArrayList<>(maxBatchSize);
+		while(running || !queue.isEmpty()) {
+			try {
+				Command first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					continue;
+				}
+				batch.add(first);
+				//첫 명령 기준으로 max-latency 까지만 더 모은다
+				long deadline = first.submittedAt + maxLatencyNanos;
+				while(batch.size() < maxBatchSize) {
+					long remaining = deadline - System.nanoTime();
+					Command next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+					if(next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				commit(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				log.error("Group commit loop failed", e);
+				batch.forEach(command -> command.result.completeExceptionally(
+						new AccountException(ErrorCode.INTERNAL_SERVER_ERROR)));
+			}
+			batch.clear();
+		}
+	}
+
+	void commit(List<Command> batch) {
+		batchSizeSummary.record(batch.size());
+		Map<Command, Object> results;
+		try {
+			results = transactionTemplate.execute(status -> apply(batch));
+		} catch (RuntimeException e) {
+			if(batch.size() == 1) {
+				log.error("Group commit failed", e);
+				complete(batch.get(0), new AccountException(ErrorCode.INTERNAL_SERVER_ERROR));
+				return;
+			}
+			//명령 하나 때문에 배치 전체가 실패하지 않도록 하나씩 다시 커밋
+			log.warn("Group commit of {} commands failed, retrying one by one", batch.size(), e);
+			batch.forEach(command -> commit(Collections.singletonList(command)));
+			return;
+		}
+		batch.forEach(command -> complete(command, results.get(command)));
+	}
+
+	//명령마다 Transaction(성공) 또는 AccountException(실패)
+	private Map<Command, Object> apply(List<Command> batch) {
+		Map<String, Account> accounts = accountRepository.findForUpdateByAccountNumberIn(batch.stream()
+					.map(command -> command.accountNumber)
+					.collect(Collectors.toCollection(TreeSet::new)))
+				.stream()
+				.collect(Collectors.toMap(Account::getAccountNumber, Function.identity()));
+		Map<Long, AccountUser> users = accountUserRepository.findAllById(batch.stream()
+					.filter(command -> command.userId != null)
+					.map(command -> command.userId)
+					.collect(Collectors.toSet()))
+				.stream()
+				.collect(Collectors.toMap(AccountUser::getId, Function.identity()));
+		Map<String, Transaction> originals = transactionRepository.findByTransactionIdIn(batch.stream()
+					.filter(command -> command.transactionId != null)
+					.map(command -> command.transactionId)
+					.collect(Collectors.toSet()))
+				.stream()
+				.collect(Collectors.toMap(Transaction::getTransactionId, Function.identity()));
+
+		Map<Command, Object> results = new IdentityHashMap<>();
+		List<Transaction> transactions = new ArrayList<>();
+		for(Command command : batch) {
+			try {
+				Transaction transaction = command.type == TransactionType.USE
+						? use(command, users, accounts) : cancel(command, originals, accounts);
+				transactions.add(transaction);
+				results.put(command, transaction);
+			} catch (AccountException e) {
+				results.put(command, e);
+			}
+		}
+		transactionRepository.saveAll(transactions);
+		return results;
+	}
+
+	private Transaction use(Command command, Map<Long, AccountUser> users, Map<String, Account> accounts) {
+		AccountUser user = users.get(command.userId);
+		if(user == null) {
+			throw new AccountException(ErrorCode.USER_NOT_FOUND);
+		}
+		Account account = account(command, accounts);
+		TransactionService.validateUseBalance(user, account, command.amount);
+		account.useBalance(command.amount);
+		return newTransaction(command, account);
+	}
+
+	private Transaction cancel(Command command, Map<String, Transaction> originals, Map<String, Account> accounts) {
+		Transaction original = originals.get(command.transactionId);
+		if(original == null) {
+			throw new AccountException(ErrorCode.TRANSACTION_NOT_FOUND);
+		}
+		Account account = account(command, accounts);
+		TransactionService.validateCancelBalance(original, account, command.amount);
+		account.cancelBalance(command.amount);
+		return newTransaction(command, account);
+	}
+
+	private Account account(Command command, Map<String, Account> accounts) {
+		Account account = accounts.get(command.accountNumber);
+		if(account == null) {
+			throw new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT);
+		}
+		return account;
+	}
+
+	//같은 계좌 명령이 여러 개면 들어온 순서대로 적용된 잔액이 스냅샷이 된다
+	private Transaction newTransaction(Command command, Account account) {
+		return Transaction.builder()
+				.transactionType(command.type)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(command.amount)
+				.balanceSnapshot(account.getBalance())
+				.transactionId(UUID.randomUUID().toString().replace("-", ""))
+				.transactedAt(LocalDateTime.now())
+				.build();
+	}
+
+	private void complete(Command command, Object result) {
+		waitTimer.record(System.nanoTime() - command.submittedAt, TimeUnit.NANOSECONDS);
+		if(result instanceof Transaction) {
+			command.result.complete(TransactionDto.fromEntity((Transaction) result));
+		} else {
+			command.result.completeExceptionally((AccountException) result);
+		}
+	}
+
+	@Getter
+	@AllArgsConstructor
+	static class Command {
+		private final TransactionType type;
+		private final Long userId;
+		private final String transactionId;//취소할 거래
+		private final String accountNumber;
+		private final Long amount;
+		private final long submittedAt = System.nanoTime();
+		private final CompletableFuture<TransactionDto> result = new CompletableFuture<>();
+	}
+}
@@ -0,0 +1,119 @@
+package com.example.account.service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.AccountBalanceAt;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 시점 잔액 조회 (GET /account/{accountNumber}/balance?at=)
+ * 1. at 이전 마지막 성공 거래의 balanceSnapshot이 그 시점 잔액이다. (인덱스 한 번, 거래 수와 상관없다)
+ * 2. at 이전 거래가 없으면 at 이후 첫 성공 거래의 거래 전 잔액(사용이면 +금액, 취소면 -금액), 거래가 아예 없으면 지금 잔액
+ * 3. settle-seconds 보다 오래된 시점은 더 바뀌지 않으므로 LRU 캐시에 둔다.
+ *    거래 행이 나중에 DB에 들어오는 엔진(redis-ledger, in-memory, 거래 write-behind)에서는
+ *    지난 시점도 바뀔 수 있으므로 캐시를 쓰지 않는다.
+ */
+@Slf4j
+@Service
+public class BalanceHistoryService {
+	private static final PageRequest FIRST = PageRequest.of(0, 1);
+
+	private final AccountRepository accountRepository;
+	private final TransactionRepository transactionRepository;
+	private final long settleSeconds;
+	private final boolean cacheEnabled;
+	private final Map<String, AccountBalanceAt> cache;
+
+	public BalanceHistoryService(AccountRepository accountRepository,
+			TransactionRepository transactionRepository,
+			@Value("${account.balance.history.cache-size:10000}") int cacheSize,
+			@Value("${account.balance.history.settle-seconds:60}") long settleSeconds,
+			@Value("${account.balance.engine:entity}") BalanceEngine balanceEngine,
+			TransactionWriteBehind transactionWriteBehind) {
+		this.accountRepository = accountRepository;
+		this.transactionRepository = transactionRepository;
+		this.settleSeconds = settleSeconds;
+		this.cacheEnabled = balanceEngine != BalanceEngine.REDIS_LEDGER && balanceEngine != BalanceEngine.IN_MEMORY
+				&& !transactionWriteBehind.isEnabled();
+		if(!cacheEnabled) {
+			log.info("Balance history cache is disabled, engine : {}, write-behind : {}", balanceEngine,
+					transactionWriteBehind.isEnabled());
+		}
+		this.cache = Collections.synchronizedMap(new LinkedHashMap<String, AccountBalanceAt>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, AccountBalanceAt> eldest) {
+				return size() > cacheSize;
+			}
+		});
+	}
+
+	@Transactional
+	public AccountBalanceAt getBalanceAt(String accountNumber, LocalDateTime at) {
+		boolean settled = cacheEnabled && at.isBefore(LocalDateTime.now().minusSeconds(settleSeconds));
+		String key = accountNumber + "@" + at;
+		if(settled) {
+			AccountBalanceAt cached = cache.get(key);
+			if(cached != null) {
+				return cached;
+			}
+		}
+
+		Account account = accountRepository.findByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		if(account.getRegisteredAt() != null && at.isBefore(account.getRegisteredAt())) {
+			throw new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT);//그 시점엔 없던 계좌
+		}
+
+		AccountBalanceAt balanceAt = transactionRepository
+				.findLastSuccessAtOrBefore(account, at, TransactionResultType.S, FIRST).stream()
+				.findFirst()
+				.map(transaction -> AccountBalanceAt.builder()
+						.accountNumber(accountNumber)
+						.at(at)
+						.balance(transaction.getBalanceSnapshot())
+						.transactionId(transaction.getTransactionId())
+						.transactedAt(transaction.getTransactedAt())
+						.build())
+				.orElseGet(() -> AccountBalanceAt.builder()
+						.accountNumber(accountNumber)
+						.at(at)
+						.balance(balanceBeforeFirstTransaction(account, at))
+						.build());
+		if(settled) {
+			cache.put(key, balanceAt);
+		}
+		return balanceAt;
+	}
+
+	private Long balanceBeforeFirstTransaction(Account account, LocalDateTime at) {
+		return transactionRepository.findFirstSuccessAfter(account, at, TransactionResultType.S, FIRST).stream()
+				.findFirst()
+				.map(BalanceHistoryService::balanceBefore)
+				.orElse(account.getBalance());
+	}
+
+	private static Long balanceBefore(Transaction transaction) {
+		return transaction.getTransactionType() == TransactionType.USE
+				? transaction.getBalanceSnapshot() + transaction.getAmount()
+				: transaction.getBalanceSnapshot() - transaction.getAmount();
+	}
+}
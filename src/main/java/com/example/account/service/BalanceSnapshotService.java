@@ -0,0 +1,332 @@
+package com.example.account.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountBalanceSnapshot;
+import com.example.account.dto.BalanceRebuild;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountBalanceSnapshotRepository;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.repository.TransactionRepository.TransactionTail;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 계좌 잔액 스냅샷 + 거래 재반영
+ * 1. snapshot: 이전 스냅샷 + 그 뒤 성공 거래(사용 -, 취소 +)로 새 스냅샷을 만든다. Account.balance를 베끼지 않으므로
+ *    잘못된 잔액이 스냅샷에 들어가지 않는다. 스냅샷이 없는 계좌만 지금 잔액에서 시작하고,
+ *    이때는 계좌 락 + 계좌 행 FOR UPDATE 안에서 잔액과 기준 시각을 같이 정한다. (진행 중인 거래가 끼어들지 않게)
+ *    아직 커밋 중일 수 있는 거래를 건너뛰지 않도록 lag-seconds 전까지 생긴 거래만 넣는다.
+ *    거래는 id가 아니라 생성 시각 구간 [coveredUntil, before)로 자른다. (id는 노드마다 블록이라 노드 사이 순서가 없다)
+ * 2. verify: 스냅샷 + 뒷부분 거래로 잔액을 다시 계산해서 Account.balance와 비교한다.
+ * 3. rebuild: verify와 같고, 다르면 계좌 행을 FOR UPDATE로 잡고 다시 계산한 잔액으로 고친다.
+ * 계좌는 page-size 씩 읽어서 threads 개 스레드로 나눠 처리한다. 샤드 계좌는 잔액이 샤드 행에 있어서 건너뛴다.
+ * DB 잔액을 쓰고 거래 행을 바로 쓰는 엔진(entity, conditional-update, optimistic, group-commit)에서만 실행한다.
+ * redis-ledger, in-memory는 잔액이 DB에 없고, write-behind는 거래 행이 늦게 들어와서 다시 계산한 잔액이 틀린다.
+ */
+@Slf4j
+@Service
+public class BalanceSnapshotService {
+	private static final String SNAPSHOT = "snapshot";
+	private static final String VERIFY = "verify";
+	private static final String REBUILD = "rebuild";
+	private static final String ENDPOINT = "balanceSnapshot";
+
+	private final AccountRepository accountRepository;
+	private final TransactionRepository transactionRepository;
+	private final AccountBalanceSnapshotRepository accountBalanceSnapshotRepository;
+	private final ShardedBalanceService shardedBalanceService;
+	private final LockService lockService;
+	private final TransactionWriteBehind transactionWriteBehind;
+	private final TransactionTemplate transactionTemplate;
+	private final BalanceEngine balanceEngine;
+	private final int threads;
+	private final int pageSize;
+	private final long lagSeconds;
+	private final long intervalMinutes;
+	private final int maxMismatches;
+
+	private ScheduledExecutorService scheduler;
+	private volatile BalanceRebuild.Report lastReport;
+
+	public BalanceSnapshotService(AccountRepository accountRepository,
+			TransactionRepository transactionRepository,
+			AccountBalanceSnapshotRepository accountBalanceSnapshotRepository,
+			ShardedBalanceService shardedBalanceService, LockService lockService,
+			TransactionWriteBehind transactionWriteBehind, TransactionTemplate transactionTemplate,
+			@Value("${account.balance.engine:entity}") BalanceEngine balanceEngine,
+			@Value("${account.balance.snapshot.threads:4}") int threads,
+			@Value("${account.balance.snapshot.page-size:1000}") int pageSize,
+			@Value("${account.balance.snapshot.lag-seconds:60}") long lagSeconds,
+			@Value("${account.balance.snapshot.interval-minutes:60}") long intervalMinutes,
+			@Value("${account.balance.snapshot.max-mismatches:1000}") int maxMismatches) {
+		this.accountRepository = accountRepository;
+		this.transactionRepository = transactionRepository;
+		this.accountBalanceSnapshotRepository = accountBalanceSnapshotRepository;
+		this.shardedBalanceService = shardedBalanceService;
+		this.lockService = lockService;
+		this.transactionWriteBehind = transactionWriteBehind;
+		this.transactionTemplate = transactionTemplate;
+		this.balanceEngine = balanceEngine;
+		this.threads = threads;
+		this.pageSize = pageSize;
+		this.lagSeconds = lagSeconds;
+		this.intervalMinutes = intervalMinutes;
+		this.maxMismatches = maxMismatches;
+	}
+
+	@PostConstruct
+	public void start() {
+		if(intervalMinutes <= 0) {
+			return;
+		}
+		if(!isSupported()) {
+			log.info("Balance snapshots are not scheduled, engine : {}, write-behind : {}", balanceEngine,
+					transactionWriteBehind.isEnabled());
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "balance-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				snapshot();
+			} catch (Exception e) {
+				log.error("Balance snapshot failed", e);
+			}
+		}, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if(scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	public BalanceRebuild.Report getLastReport() {
+		return lastReport;
+	}
+
+	public synchronized BalanceRebuild.Report snapshot() {
+		return forEachAccount(SNAPSHOT);
+	}
+
+	public synchronized BalanceRebuild.Report verify() {
+		return forEachAccount(VERIFY);
+	}
+
+	public synchronized BalanceRebuild.Report rebuild() {
+		return forEachAccount(REBUILD);
+	}
+
+	private boolean isSupported() {
+		return balanceEngine != BalanceEngine.REDIS_LEDGER && balanceEngine != BalanceEngine.IN_MEMORY
+				&& !transactionWriteBehind.isEnabled();
+	}
+
+	private BalanceRebuild.Report forEachAccount(String operation) {
+		if(!isSupported()) {
+			throw new AccountException(ErrorCode.INVALID_REQUEST);
+		}
+		Progress progress = new Progress();
+		LocalDateTime startedAt = LocalDateTime.now();
+		long startedNanos = System.nanoTime();
+		//스냅샷은 lag 전까지, 검증/재구성은 지금까지 커밋된 거래 전부
+		LocalDateTime before = SNAPSHOT.equals(operation)
+				? startedAt.minusSeconds(lagSeconds) : startedAt.plusDays(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for(int page = 0; ; page++) {
+				List<String> accountNumbers = accountRepository.findAccountNumbers(PageRequest.of(page, pageSize));
+				CompletableFuture.allOf(accountNumbers.stream()
+						.map(accountNumber -> CompletableFuture.runAsync(
+								() -> process(operation, accountNumber, before, progress), executor))
+						.toArray(CompletableFuture[]::new))
+					.join();
+				if(accountNumbers.size() < pageSize) {
+					break;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		BalanceRebuild.Report report = BalanceRebuild.Report.builder()
+				.operation(operation)
+				.startedAt(startedAt)
+				.elapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos))
+				.checkedAccounts(progress.checked.sum())
+				.skippedAccounts(progress.skipped.sum())
+				.replayedTransactions(progress.replayed.sum())
+				.snapshotsTaken(progress.snapshots.sum())
+				.repairedAccounts(progress.repaired.sum())
+				.mismatchedAccounts(progress.mismatched.get())
+				.mismatches(new ArrayList<>(progress.mismatches))
+				.build();
+		if(report.getMismatchedAccounts() > 0) {
+			log.error("Balance {} found {} mismatched accounts", operation, report.getMismatchedAccounts());
+		}
+		lastReport = report;
+		return report;
+	}
+
+	private void process(String operation, String accountNumber, LocalDateTime before, Progress progress) {
+		if(balanceEngine == BalanceEngine.ENTITY && shardedBalanceService.isSharded(accountNumber)) {
+			progress.skipped.increment();
+			return;
+		}
+		try {
+			if(!SNAPSHOT.equals(operation)) {
+				transactionTemplate.executeWithoutResult(
+						status -> replay(accountNumber, before, REBUILD.equals(operation), progress));
+			} else if(!transactionTemplate.execute(status -> rollSnapshot(accountNumber, before, progress))) {
+				firstSnapshot(accountNumber, progress);
+			}
+		} catch (RuntimeException e) {
+			log.error("Balance {} failed for account {}", operation, accountNumber, e);
+			progress.skipped.increment();
+		}
+	}
+
+	/**
+	 * 이전 스냅샷에 [coveredUntil, before) 거래를 더한다. 이전 스냅샷이 없으면 false
+	 */
+	private boolean rollSnapshot(String accountNumber, LocalDateTime before, Progress progress) {
+		AccountBalanceSnapshot snapshot = accountBalanceSnapshotRepository.findByAccountNumber(accountNumber)
+				.orElse(null);
+		if(snapshot == null) {
+			return false;
+		}
+		Account account = accountRepository.findByAccountNumber(accountNumber).orElse(null);
+		if(account == null) {
+			progress.skipped.increment();
+			return true;
+		}
+		progress.checked.increment();
+		if(!snapshot.getCoveredUntil().isBefore(before)) {
+			return true;//lag 안쪽 거래만 남았다
+		}
+		TransactionTail tail = transactionRepository.findTail(account, snapshot.getCoveredUntil(), before);
+		progress.replayed.add(tail.getCount());
+		if(tail.getCount() == 0) {
+			return true;//스냅샷 이후 거래 없음
+		}
+		snapshot.setBalance(snapshot.getBalance() + tail.getBalanceChange());
+		snapshot.setCoveredUntil(before);
+		snapshot.setSnapshotAt(LocalDateTime.now());
+		accountBalanceSnapshotRepository.save(snapshot);
+		progress.snapshots.increment();
+		return true;
+	}
+
+	/**
+	 * 처음 스냅샷, 지금 잔액은 지금까지 생긴 거래를 모두 반영한다.
+	 * 계좌 락으로 진행 중인 요청을 막고 계좌 행을 잡은 뒤 잔액과 기준 시각을 같이 읽는다.
+	 */
+	private void firstSnapshot(String accountNumber, Progress progress) {
+		lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, ENDPOINT);
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				Account account = accountRepository
+						.findForUpdateByAccountNumberIn(Collections.singletonList(accountNumber))
+						.stream().findFirst().orElse(null);
+				if(account == null) {
+					progress.skipped.increment();
+					return;
+				}
+				progress.checked.increment();
+				LocalDateTime now = LocalDateTime.now();
+				accountBalanceSnapshotRepository.save(AccountBalanceSnapshot.builder()
+						.accountNumber(accountNumber)
+						.balance(account.getBalance())
+						.coveredUntil(now)
+						.snapshotAt(now)
+						.build());
+				progress.snapshots.increment();
+			});
+		} finally {
+			lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT);
+		}
+	}
+
+	private void replay(String accountNumber, LocalDateTime before, boolean repair, Progress progress) {
+		AccountBalanceSnapshot snapshot = accountBalanceSnapshotRepository.findByAccountNumber(accountNumber)
+				.orElse(null);
+		if(snapshot == null) {
+			progress.skipped.increment();
+			return;
+		}
+		//재구성은 다른 요청이 잔액을 바꾸지 못하게 계좌 행을 잡고 계산한다
+		Account account = (repair
+				? accountRepository.findForUpdateByAccountNumberIn(Collections.singletonList(accountNumber))
+						.stream().findFirst()
+				: accountRepository.findByAccountNumber(accountNumber))
+				.orElse(null);
+		if(account == null) {
+			progress.skipped.increment();
+			return;
+		}
+		progress.checked.increment();
+		TransactionTail tail = transactionRepository.findTail(account, snapshot.getCoveredUntil(), before);
+		progress.replayed.add(tail.getCount());
+		long rebuiltBalance = snapshot.getBalance() + tail.getBalanceChange();
+		if(account.getBalance() == rebuiltBalance) {
+			return;
+		}
+
+		progress.mismatch(BalanceRebuild.Mismatch.builder()
+				.accountNumber(accountNumber)
+				.balance(account.getBalance())
+				.rebuiltBalance(rebuiltBalance)
+				.snapshotBalance(snapshot.getBalance())
+				.coveredUntil(snapshot.getCoveredUntil())
+				.build(), maxMismatches);
+		if(repair) {
+			log.warn("Rebuilding balance of {} from {} to {}", accountNumber, account.getBalance(), rebuiltBalance);
+			account.setBalance(rebuiltBalance);
+			progress.repaired.increment();
+		}
+	}
+
+	private static class Progress {
+		private final LongAdder checked = new LongAdder();
+		private final LongAdder skipped = new LongAdder();
+		private final LongAdder replayed = new LongAdder();
+		private final LongAdder snapshots = new LongAdder();
+		private final LongAdder repaired = new LongAdder();
+		private final AtomicInteger mismatched = new AtomicInteger();
+		private final List<BalanceRebuild.Mismatch> mismatches = Collections.synchronizedList(new ArrayList<>());
+
+		void mismatch(BalanceRebuild.Mismatch mismatch, int maxMismatches) {
+			if(mismatched.incrementAndGet() <= maxMismatches) {
+				mismatches.add(mismatch);
+			}
+		}
+	}
+}
@@ -0,0 +1,509 @@
+package com.example.account.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.Account;
+import com.example.account.domain.BulkPostingCheckpoint;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.BulkPostingReport;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.BulkPostingCheckpointRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.BulkPostingStatus;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 파일 일괄 반영 (수수료, 정산 파일)
+ * 한 줄이 기록 하나: USE,계좌번호,금액 (차감) 또는 CANCEL,계좌번호,금액,거래id (취소 입금), # 으로 시작하면 주석
+ * 1. 파일을 한 줄씩 읽어서 계좌번호 해시로 파티션(작업 스레드)에 나눈다. 같은 계좌는 항상 같은 파티션이라 순서가 유지된다.
+ * 2. 파티션은 chunk-size 줄까지, 계좌는 lock-group-size 개까지 모아서 계좌 락(온라인 @AccountLock과 같은 키)을
+ *    계좌번호 순서로 잡고, 한 트랜잭션에서 계좌 행 FOR UPDATE + 잔액 반영 + 거래 기록 saveAll + 체크포인트 갱신을 한다.
+ *    락은 묶음이 끝나면 바로 푼다. 묶음의 계좌 수를 줄여서 온라인 요청이 오래 기다리지 않게 한다.
+ * 3. 같은 jobId로 다시 실행하면 파티션별 체크포인트 다음 줄부터 이어서 한다.
+ * 4. 실패한 기록은 단건 API처럼 F 거래를 남기고 ErrorCode별로 센다. 형식이 틀린 줄도 파티션에 넘겨서
+ *    체크포인트와 같은 트랜잭션에서 세므로, 이어서 할 때 다시 세지 않는다.
+ * 파일은 base-dir 아래만 읽는다.
+ *    계좌 락을 lock-retries 번 못 잡거나 DB 오류가 나면 작업을 멈춘다. 다시 실행하면 체크포인트부터 이어서 한다.
+ * DB 잔액을 쓰는 엔진(entity, conditional-update, optimistic, group-commit)에서만 실행할 수 있다.
+ */
+@Slf4j
+@Service
+public class BulkPostingService {
+	private static final String ENDPOINT = "bulkPosting";
+	private static final Record END = new Record(0, TransactionType.USE, "", 0L, null);
+
+	private final AccountRepository accountRepository;
+	private final TransactionRepository transactionRepository;
+	private final BulkPostingCheckpointRepository bulkPostingCheckpointRepository;
+	private final LockService lockService;
+	private final TransactionTemplate transactionTemplate;
+	private final ShardedBalanceService shardedBalanceService;
+	private final TransactionWriteBehind transactionWriteBehind;
+	private final BalanceEngine balanceEngine;
+	private final int workers;
+	private final int chunkSize;
+	private final int queueCapacity;
+	private final int lockRetries;
+	private final int lockGroupSize;
+	private final Path baseDir;
+	private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "bulk-posting");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private volatile Job current;
+	private volatile BulkPostingReport lastReport;
+
+	public BulkPostingService(AccountRepository accountRepository,
+			TransactionRepository transactionRepository,
+			BulkPostingCheckpointRepository bulkPostingCheckpointRepository, LockService lockService,
+			TransactionTemplate transactionTemplate, ShardedBalanceService shardedBalanceService,
+			TransactionWriteBehind transactionWriteBehind,
+			@Value("${account.balance.engine:entity}") BalanceEngine balanceEngine,
+			@Value("${account.bulk-posting.workers:4}") int workers,
+			@Value("${account.bulk-posting.chunk-size:500}") int chunkSize,
+			@Value("${account.bulk-posting.queue-capacity:10000}") int queueCapacity,
+			@Value("${account.bulk-posting.lock-retries:5}") int lockRetries,
+			@Value("${account.bulk-posting.lock-group-size:16}") int lockGroupSize,
+			@Value("${account.bulk-posting.base-dir:bulk-posting}") String baseDir) {
+		this.accountRepository = accountRepository;
+		this.transactionRepository = transactionRepository;
+		this.bulkPostingCheckpointRepository = bulkPostingCheckpointRepository;
+		this.lockService = lockService;
+		this.transactionTemplate = transactionTemplate;
+		this.shardedBalanceService = shardedBalanceService;
+		this.transactionWriteBehind = transactionWriteBehind;
+		this.balanceEngine = balanceEngine;
+		this.workers = workers;
+		this.chunkSize = chunkSize;
+		this.queueCapacity = queueCapacity;
+		this.lockRetries = lockRetries;
+		this.lockGroupSize = lockGroupSize;
+		this.baseDir = Paths.get(baseDir).toAbsolutePath().normalize();
+	}
+
+	@PreDestroy
+	public void stop() {
+		jobExecutor.shutdownNow();
+	}
+
+	/**
+	 * base-dir 기준 file을 백그라운드로 시작한다. 이미 실행 중인 작업이 있으면 그 상태를 돌려준다.
+	 */
+	public synchronized BulkPostingReport start(String file, String jobId) {
+		if(current != null) {
+			return current.report(BulkPostingStatus.RUNNING);
+		}
+		checkEngine();
+		current = new Job(jobId, resolve(file));
+		Job job = current;
+		jobExecutor.execute(() -> {
+			try {
+				run(job);
+			} catch (Exception e) {
+				log.error("Bulk posting {} failed", jobId, e);
+				finish(job, BulkPostingStatus.FAILED);
+			}
+		});
+		return job.report(BulkPostingStatus.RUNNING);
+	}
+
+	//base-dir 밖(../, 절대 경로, 심볼릭 링크)은 읽지 않는다
+	private Path resolve(String file) {
+		Path input = baseDir.resolve(file).normalize();
+		try {
+			if(input.startsWith(baseDir) && Files.isRegularFile(input)
+					&& input.toRealPath().startsWith(baseDir.toRealPath())) {
+				return input;
+			}
+		} catch (IOException e) {
+			log.debug("Cannot resolve bulk posting file {}", file, e);
+		}
+		throw new AccountException(ErrorCode.INVALID_REQUEST);
+	}
+
+	public BulkPostingReport getStatus() {
+		Job job = current;
+		return job != null ? job.report(BulkPostingStatus.RUNNING) : lastReport;
+	}
+
+	/**
+	 * 지금 스레드에서 끝까지 실행한다.
+	 */
+	public BulkPostingReport run(Path input, String jobId) throws IOException, InterruptedException {
+		checkEngine();
+		Job job = new Job(jobId, input);
+		run(job);
+		return job.report(BulkPostingStatus.COMPLETED);
+	}
+
+	private void run(Job job) throws IOException, InterruptedException {
+		List<BulkPostingCheckpoint> checkpoints = checkpoints(job.jobId);
+		job.partitions = checkpoints.size();
+		List<BlockingQueue<Record>> queues = new ArrayList<>();
+		ExecutorService partitionExecutor = Executors.newFixedThreadPool(job.partitions);
+		List<Future<?>> partitions = new ArrayList<>();
+		for(BulkPostingCheckpoint checkpoint : checkpoints) {
+			BlockingQueue<Record> queue = new ArrayBlockingQueue<>(queueCapacity);
+			queues.add(queue);
+			partitions.add(partitionExecutor.submit(() -> {
+				try {
+					drain(job, checkpoint.getPartitionIndex(), queue);
+				} catch (Exception e) {
+					job.aborted = true;//읽기 스레드가 더 넣지 않도록
+					throw e;
+				}
+				return null;
+			}));
+		}
+
+		try {
+			read(job, checkpoints, queues);
+			for(Future<?> partition : partitions) {
+				partition.get();
+			}
+			finish(job, BulkPostingStatus.COMPLETED);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Bulk posting partition failed", e.getCause());
+		} finally {
+			partitionExecutor.shutdownNow();
+		}
+	}
+
+	private void read(Job job, List<BulkPostingCheckpoint> checkpoints, List<BlockingQueue<Record>> queues)
+			throws IOException, InterruptedException {
+		try(BufferedReader reader = Files.newBufferedReader(job.input, StandardCharsets.UTF_8)) {
+			String line;
+			long lineNumber = 0;
+			while((line = reader.readLine()) != null && !job.aborted) {
+				lineNumber++;
+				if(line.isBlank() || line.startsWith("#")) {
+					continue;
+				}
+				job.read.increment();
+				Record record = Record.parse(lineNumber, line);
+				//틀린 줄도 파티션에서 체크포인트와 같이 센다
+				int partition = Math.floorMod(record != null ? record.accountNumber.hashCode()
+						: Long.hashCode(lineNumber), queues.size());
+				if(lineNumber <= checkpoints.get(partition).getLastLineNumber()) {
+					job.skipped.increment();
+					continue;
+				}
+				put(job, queues.get(partition), record != null ? record : Record.invalid(lineNumber));
+			}
+		}
+		for(BlockingQueue<Record> queue : queues) {
+			put(job, queue, END);
+		}
+	}
+
+	//파티션이 멈췄으면 더 기다리지 않는다
+	private void put(Job job, BlockingQueue<Record> queue, Record record) throws InterruptedException {
+		while(!queue.offer(record, 100, TimeUnit.MILLISECONDS)) {
+			if(job.aborted) {
+				return;
+			}
+		}
+	}
+
+	private void drain(Job job, int partition, BlockingQueue<Record> queue) throws InterruptedException {
+		List<Record> chunk = new ArrayList<>(chunkSize);
+		Set<String> accountNumbers = new HashSet<>();
+		while(true) {
+			Record record = queue.take();
+			if(record == END) {
+				break;
+			}
+			if(record.accountNumber != null && accountNumbers.size() >= lockGroupSize
+					&& !accountNumbers.contains(record.accountNumber)) {
+				commit(job, partition, chunk);
+				chunk.clear();
+				accountNumbers.clear();
+			}
+			chunk.add(record);
+			if(record.accountNumber != null) {
+				accountNumbers.add(record.accountNumber);
+			}
+			if(chunk.size() >= chunkSize) {
+				commit(job, partition, chunk);
+				chunk.clear();
+				accountNumbers.clear();
+			}
+		}
+		if(!chunk.isEmpty()) {
+			commit(job, partition, chunk);
+		}
+	}
+
+	private void commit(Job job, int partition, List<Record> chunk) throws InterruptedException {
+		Set<String> accountNumbers = chunk.stream()
+				.map(record -> record.accountNumber)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toCollection(TreeSet::new));
+		for(int attempt = 1; ; attempt++) {
+			List<String> locked = new ArrayList<>();
+			try {
+				for(String accountNumber : accountNumbers) {
+					lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, ENDPOINT);
+					locked.add(accountNumber);
+				}
+				ChunkResult result = transactionTemplate.execute(
+						status -> apply(job.jobId, partition, chunk, accountNumbers));
+				job.succeeded.add(result.succeeded);
+				result.failures.forEach(job::fail);
+				return;
+			} catch (AccountException e) {
+				if(e.getErrorCode() != ErrorCode.ACCOUNT_TRANSACTION_LOCK || attempt >= lockRetries) {
+					throw e;
+				}
+				log.debug("Bulk posting chunk is waiting for online traffic, attempt {}", attempt);
+			} finally {
+				Collections.reverse(locked);
+				locked.forEach(accountNumber -> lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT));
+			}
+			Thread.sleep(100L * attempt);//온라인 요청에 락을 양보한다
+		}
+	}
+
+	private ChunkResult apply(String jobId, int partition, List<Record> chunk, Set<String> accountNumbers) {
+		Map<String, Account> accounts = accountNumbers.isEmpty() ? Collections.emptyMap()
+				: accountRepository.findForUpdateByAccountNumberIn(accountNumbers).stream()
+					.collect(Collectors.toMap(Account::getAccountNumber, Function.identity()));
+		Set<String> transactionIds = chunk.stream()
+				.filter(record -> record.transactionId != null)
+				.map(record -> record.transactionId)
+				.collect(Collectors.toSet());
+		//DB에 아직 안 들어간 write-behind 거래를 먼저 본다
+		Map<String, Transaction> originals = new HashMap<>(transactionWriteBehind.findAll(transactionIds));
+		transactionRepository.findByTransactionIdIn(transactionIds)
+				.forEach(transaction -> originals.putIfAbsent(transaction.getTransactionId(), transaction));
+
+		ChunkResult result = new ChunkResult();
+		List<Transaction> transactions = new ArrayList<>(chunk.size());
+		for(Record record : chunk) {
+			if(record.type == null) {
+				result.fail(ErrorCode.INVALID_REQUEST);
+				continue;
+			}
+			Account account = accounts.get(record.accountNumber);
+			if(account == null) {
+				result.fail(ErrorCode.ACCOUNT_NOT_FOUNT);
+				continue;
+			}
+			try {
+				if(record.type == TransactionType.USE) {
+					use(account, record.amount);
+				} else {
+					Transaction original = originals.get(record.transactionId);
+					if(original == null) {
+						throw new AccountException(ErrorCode.TRANSACTION_NOT_FOUND);
+					}
+					TransactionService.validateCancelBalance(original, account, record.amount);
+					account.cancelBalance(record.amount);
+				}
+				transactions.add(newTransaction(record, TransactionResultType.S, account));
+				result.succeeded++;
+			} catch (AccountException e) {
+				transactions.add(newTransaction(record, TransactionResultType.F, account));
+				result.fail(e.getErrorCode());
+			}
+		}
+		transactionRepository.saveAll(transactions);
+
+		BulkPostingCheckpoint checkpoint = bulkPostingCheckpointRepository
+				.findByJobIdAndPartitionIndex(jobId, partition)
+				.orElseThrow(() -> new IllegalStateException("Missing checkpoint " + jobId + "#" + partition));
+		checkpoint.setLastLineNumber(chunk.get(chunk.size() - 1).lineNumber);
+		return result;
+	}
+
+	private void use(Account account, Long amount) {
+		if(account.getAccountStatus() != AccountStatus.IN_USE) {
+			throw new AccountException(ErrorCode.ACCOUNT_ALREADY_UNREGISTERED);
+		}
+		if(balanceEngine == BalanceEngine.ENTITY && shardedBalanceService.isSharded(account.getAccountNumber())) {
+			//샤드 계좌의 잔액은 샤드 행에 나뉘어 있다
+			throw new AccountException(ErrorCode.INVALID_REQUEST);
+		}
+		account.useBalance(amount);
+	}
+
+	private List<BulkPostingCheckpoint> checkpoints(String jobId) {
+		List<BulkPostingCheckpoint> checkpoints = bulkPostingCheckpointRepository.findByJobIdOrderByPartitionIndex(jobId);
+		if(!checkpoints.isEmpty()) {
+			log.info("Resuming bulk posting {} with {} partitions", jobId, checkpoints.size());
+			return checkpoints;
+		}
+		return bulkPostingCheckpointRepository.saveAll(IntStream.range(0, workers)
+				.mapToObj(partition -> BulkPostingCheckpoint.builder()
+						.jobId(jobId)
+						.partitionIndex(partition)
+						.partitions(workers)
+						.lastLineNumber(0L)
+						.build())
+				.collect(Collectors.toList()));
+	}
+
+	private void checkEngine() {
+		if(balanceEngine == BalanceEngine.REDIS_LEDGER || balanceEngine == BalanceEngine.IN_MEMORY) {
+			throw new AccountException(ErrorCode.INVALID_REQUEST);
+		}
+	}
+
+	private synchronized void finish(Job job, BulkPostingStatus status) {
+		BulkPostingReport report = job.report(status);
+		log.info("Bulk posting {} {}: {} succeeded, {} failed, {} skipped, {} records/s", job.jobId, status,
+				report.getSucceededRecords(), report.getFailedRecords(), report.getSkippedRecords(),
+				String.format("%.1f", report.getRecordsPerSecond()));
+		lastReport = report;
+		if(current == job) {
+			current = null;
+		}
+	}
+
+	private static Transaction newTransaction(Record record, TransactionResultType transactionResultType,
+			Account account) {
+		return Transaction.builder()
+				.transactionType(record.type)
+				.transactionResultType(transactionResultType)
+				.account(account)
+				.amount(record.amount)
+				.balanceSnapshot(account.getBalance())
+				.transactionId(UUID.randomUUID().toString().replace("-", ""))
+				.transactedAt(LocalDateTime.now())
+				.build();
+	}
+
+	@AllArgsConstructor
+	private static class Record {
+		private final long lineNumber;
+		private final TransactionType type;
+		private final String accountNumber;
+		private final Long amount;
+		private final String transactionId;//CANCEL만
+
+		//형식이 틀린 줄, type과 계좌번호가 없다
+		static Record invalid(long lineNumber) {
+			return new Record(lineNumber, null, null, 0L, null);
+		}
+
+		static Record parse(long lineNumber, String line) {
+			String[] fields = line.trim().split("\\s*,\\s*");
+			try {
+				TransactionType type = TransactionType.valueOf(fields[0]);
+				long amount = Long.parseLong(fields[2]);
+				if(fields[1].length() != 10 || amount <= 0) {
+					return null;
+				}
+				if(type == TransactionType.USE && fields.length == 3) {
+					return new Record(lineNumber, type, fields[1], amount, null);
+				}
+				if(type == TransactionType.CANCEL && fields.length == 4) {
+					return new Record(lineNumber, type, fields[1], amount, fields[3]);
+				}
+			} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+				log.debug("Invalid bulk posting line {}", lineNumber);
+			}
+			return null;
+		}
+	}
+
+	private static class ChunkResult {
+		private long succeeded;
+		private final Map<ErrorCode, Long> failures = new EnumMap<>(ErrorCode.class);
+
+		void fail(ErrorCode errorCode) {
+			failures.merge(errorCode, 1L, Long::sum);
+		}
+	}
+
+	private static class Job {
+		private final String jobId;
+		private final Path input;
+		private final LocalDateTime startedAt = LocalDateTime.now();
+		private final long startedNanos = System.nanoTime();
+		private final LongAdder read = new LongAdder();
+		private final LongAdder skipped = new LongAdder();
+		private final LongAdder succeeded = new LongAdder();
+		private final ConcurrentHashMap<ErrorCode, AtomicLong> failures = new ConcurrentHashMap<>();
+		private volatile int partitions;
+		private volatile boolean aborted;
+
+		Job(String jobId, Path input) {
+			this.jobId = jobId;
+			this.input = input;
+		}
+
+		void fail(ErrorCode errorCode, long count) {
+			failures.computeIfAbsent(errorCode, code -> new AtomicLong()).addAndGet(count);
+		}
+
+		BulkPostingReport report(BulkPostingStatus status) {
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+			Map<ErrorCode, Long> failureCounts = new EnumMap<>(ErrorCode.class);
+			failures.forEach((errorCode, count) -> failureCounts.put(errorCode, count.get()));
+			long failed = failureCounts.values().stream().mapToLong(Long::longValue).sum();
+			long processed = succeeded.sum() + failed;
+			return BulkPostingReport.builder()
+					.jobId(jobId)
+					.file(input.toString())
+					.status(status)
+					.partitions(partitions)
+					.readRecords(read.sum())
+					.skippedRecords(skipped.sum())
+					.succeededRecords(succeeded.sum())
+					.failedRecords(failed)
+					.failures(failureCounts)
+					.startedAt(startedAt)
+					.elapsedMillis(elapsedMillis)
+					.recordsPerSecond(elapsedMillis == 0 ? processed : processed * 1000.0 / elapsedMillis)
+					.build();
+		}
+	}
+}
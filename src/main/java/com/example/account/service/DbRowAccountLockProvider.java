@@ -0,0 +1,188 @@
+package com.example.account.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.LockOptions;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.exception.AccountException;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.LockMode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 계좌 락 행(AccountLockRow)에 SELECT ... FOR UPDATE(읽기 모드면 공유 락)를 거는 계좌 락
+ * 1. 락마다 커넥션 풀에서 연결을 하나 따로 꺼내서 그 연결의 트랜잭션으로 행을 잡는다.
+ *    스레드에 묶지 않으므로 서비스 트랜잭션은 락 트랜잭션에 참여하지 않고, 서비스가 롤백돼도 락과 상관없다.
+ * 2. unlock은 그 스레드가 잡은 연결을 롤백하고 풀에 돌려준다. lockAsync의 해제 동작은 다른 스레드에서 불러도 된다.
+ * 3. 처음 잠그는 계좌는 락 행을 먼저 넣는다.
+ * 4. 공유 행 락이 없는 DB(H2 등, 읽기 락 문장이 FOR UPDATE)에서는 읽기(SHARED) 락도 배타적으로 잡힌다. (시작할 때 경고)
+ * 행 락은 연결의 트랜잭션이 끝날 때까지 유지되므로 leaseTime은 쓰지 않는다.
+ * 잡고 있는 락마다 연결을 하나씩 쓰므로 풀 크기(spring.datasource.hikari.maximum-pool-size)는
+ * 동시에 잡는 락 수 + 서비스 트랜잭션 수보다 커야 한다.
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(name = "account.lock.provider", havingValue = "db")
+public class DbRowAccountLockProvider implements AccountLockProvider {
+	private static final String INSERT_SQL = "insert into account_lock (account_number) values (?)";
+
+	private final DataSource dataSource;
+	private final String exclusiveSql;
+	private final String sharedSql;
+	private final boolean sharedRowLock;
+	//현재 스레드가 잡은 락 (계좌번호 -> 연결, 같은 계좌를 여러 번 잡으면 나중에 잡은 것부터 푼다)
+	private final ThreadLocal<Map<String, Deque<Connection>>> heldByThread = ThreadLocal.withInitial(HashMap::new);
+
+	@Autowired
+	public DbRowAccountLockProvider(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+		this(dataSource, entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+				.getJdbcServices().getDialect());
+	}
+
+	public DbRowAccountLockProvider(DataSource dataSource, Dialect dialect) {
+		this.dataSource = dataSource;
+		String select = "select account_number from account_lock where account_number = ?";
+		String writeLock = dialect.getWriteLockString(LockOptions.WAIT_FOREVER);
+		String readLock = dialect.getReadLockString(LockOptions.WAIT_FOREVER);
+		this.exclusiveSql = select + writeLock;
+		this.sharedSql = select + readLock;
+		this.sharedRowLock = !readLock.trim().equalsIgnoreCase(writeLock.trim());
+		if(!sharedRowLock) {
+			log.warn("{} has no shared row lock, SHARED account locks are taken exclusively",
+					dialect.getClass().getSimpleName());
+		}
+	}
+
+	/**
+	 * false면 읽기 락끼리도 서로 기다린다.
+	 */
+	public boolean supportsSharedLock() {
+		return sharedRowLock;
+	}
+
+	@Override
+	public void lock(String accountNumber, AccountLockPolicy policy) {
+		Connection connection = acquire(accountNumber, policy);
+		heldByThread.get().computeIfAbsent(accountNumber, key -> new ArrayDeque<>()).push(connection);
+	}
+
+	@Override
+	public void unlock(String accountNumber, AccountLockPolicy policy) {
+		log.debug("Unlock for accountNumber : {}", accountNumber);
+		Map<String, Deque<Connection>> held = heldByThread.get();
+		Deque<Connection> connections = held.get(accountNumber);
+		Connection released = connections == null ? null : connections.poll();
+		if(connections != null && connections.isEmpty()) {
+			held.remove(accountNumber);
+		}
+		if(held.isEmpty()) {
+			heldByThread.remove();
+		}
+		if(released != null) {
+			release(accountNumber, released);
+		}
+	}
+
+	/**
+	 * 호출 스레드에서 잡고, 잡은 연결을 바로 푸는 해제 동작을 돌려준다.
+	 */
+	@Override
+	public CompletableFuture<Runnable> lockAsync(String accountNumber, AccountLockPolicy policy) {
+		Connection connection;
+		try {
+			connection = acquire(accountNumber, policy);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return CompletableFuture.completedFuture(() -> release(accountNumber, connection));
+	}
+
+	private Connection acquire(String accountNumber, AccountLockPolicy policy) {
+		log.debug("Trying lock for accountNumber : {}", accountNumber);
+		String sql = policy.getMode() == LockMode.SHARED ? sharedSql : exclusiveSql;
+		int timeoutSeconds = (int) Math.max(1L, (policy.getWaitTimeMillis() + 999L) / 1000L);
+		Connection connection = null;
+		try {
+			connection = dataSource.getConnection();
+			connection.setAutoCommit(false);
+			if(!selectForUpdate(connection, sql, accountNumber, timeoutSeconds)) {
+				insertLockRow(connection, accountNumber);
+				selectForUpdate(connection, sql, accountNumber, timeoutSeconds);
+			}
+			return connection;
+		} catch (SQLTransientException e) {//락 대기 시간 초과, 교착
+			close(connection);
+			log.error("=====Lock acquisition failed=====");
+			throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+		} catch (SQLException e) {
+			close(connection);
+			log.error("DB lock failed for accountNumber : {}", accountNumber, e);
+			throw new AccountException(ErrorCode.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	private boolean selectForUpdate(Connection connection, String sql, String accountNumber,
+			int timeoutSeconds) throws SQLException {
+		try(PreparedStatement statement = connection.prepareStatement(sql)) {
+			statement.setString(1, accountNumber);
+			statement.setQueryTimeout(timeoutSeconds);
+			try(ResultSet resultSet = statement.executeQuery()) {
+				return resultSet.next();
+			}
+		}
+	}
+
+	//다른 요청이 먼저 넣었으면 그 행을 쓴다
+	private void insertLockRow(Connection connection, String accountNumber) throws SQLException {
+		try(PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+			statement.setString(1, accountNumber);
+			statement.executeUpdate();
+			connection.commit();
+		} catch (SQLIntegrityConstraintViolationException e) {
+			connection.rollback();
+		}
+	}
+
+	private void release(String accountNumber, Connection connection) {
+		try {
+			connection.rollback();//바꾼 것이 없으므로 롤백으로 행 락만 푼다
+		} catch (SQLException e) {
+			log.warn("Failed to release DB lock for accountNumber : {}", accountNumber, e);
+		} finally {
+			close(connection);
+		}
+	}
+
+	private void close(Connection connection) {
+		if(connection == null) {
+			return;
+		}
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			log.warn("Failed to close DB lock connection", e);
+		}
+	}
+}
@@ -0,0 +1,309 @@
+package com.example.account.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.account.dto.HotAccount;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 핫 계좌 탐지기 (Space-Saving top-K)
+ * 계좌 수와 상관없이 capacity 개의 카운터만 유지한다.
+ * 추적 중이 아닌 계좌가 들어오면 가장 작은 카운터를 밀어내고 그 값을 물려받는다(error).
+ * 모든 값은 halfLife 마다 절반으로 줄어들어서 최근 부하만 남는다.
+ * 요청수는 aspect, 락 대기/실패는 LockService, 거래 실패는 TransactionService 에서 들어온다.
+ * 1. 추적 중인 계좌는 락 없이 계좌별 DoubleAdder에 더한다.
+ *    카운터는 계좌번호 해시로 stripe(최대 MAX_STRIPES 개, stripe당 최소 MIN_STRIPE_SLOTS 개)에 나뉜다.
+ *    밀어내기(admit)는 그 stripe만 잠그고 stripe 안에서 가장 작은 카운터를 찾는다. (전역 락, 전체 스캔 없음)
+ * 2. 감쇠는 값마다 곱하지 않고, 들어올 때 기준 시각(epoch) 이후 2^(경과/H) 가중치로 더하고 읽을 때 한 번 나눈다.
+ *    같은 epoch 값끼리는 그대로 비교되므로 밀어낼 때 다시 감쇠하지 않는다.
+ *    가중치가 너무 커지기 전에 EPOCH_HALF_LIVES 반감기마다 epoch를 넘기고, 계좌 값은 다음에 쓸 때 옮긴다.
+ */
+@Component
+public class HotAccountTracker {
+	private static final double LN2 = Math.log(2);
+	private static final int EPOCH_HALF_LIVES = 32;
+	private static final int MAX_STRIPES = 16;
+	private static final int MIN_STRIPE_SLOTS = 8;
+
+	private final int stripeCapacity;
+	private final long halfLifeNanos;
+	private final long epochNanos;
+	private final long startedAt;
+	private final double hotRequestsPerSecond;
+	private final LongSupplier nanoClock;
+	private final Stripe[] stripes;
+
+	@Autowired
+	public HotAccountTracker(MeterRegistry meterRegistry,
+			@Value("${account.hot.capacity:128}") int capacity,
+			@Value("${account.hot.half-life-seconds:10}") long halfLifeSeconds,
+			@Value("${account.hot.threshold-per-second:20}") double hotRequestsPerSecond) {
+		this(meterRegistry, capacity, halfLifeSeconds, hotRequestsPerSecond, System::nanoTime);
+	}
+
+	HotAccountTracker(MeterRegistry meterRegistry, int capacity, long halfLifeSeconds,
+			double hotRequestsPerSecond, LongSupplier nanoClock) {
+		int stripeCount = Math.max(1, Math.min(MAX_STRIPES, capacity / MIN_STRIPE_SLOTS));
+		this.stripeCapacity = (capacity + stripeCount - 1) / stripeCount;
+		this.halfLifeNanos = TimeUnit.SECONDS.toNanos(halfLifeSeconds);
+		this.epochNanos = halfLifeNanos * EPOCH_HALF_LIVES;
+		this.hotRequestsPerSecond = hotRequestsPerSecond;
+		this.nanoClock = nanoClock;
+		this.startedAt = nanoClock.getAsLong();
+		this.stripes = new Stripe[stripeCount];
+		for(int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe(stripeCapacity * 2);
+		}
+
+		Gauge.builder("account.hot.tracked", this, HotAccountTracker::trackedCount)
+			.register(meterRegistry);
+		Gauge.builder("account.hot.count", this, HotAccountTracker::hotCount)
+			.description("threshold 이상 요청이 들어오는 계좌 수")
+			.register(meterRegistry);
+	}
+
+	public void recordRequest(String accountNumber) {
+		long now = nanoClock.getAsLong();
+		Stripe stripe = stripe(accountNumber);
+		Slot slot = stripe.slots.get(accountNumber);
+		if(slot == null) {
+			slot = admit(stripe, accountNumber, now);
+		}
+		slot.counters(epoch(now)).requests.add(weight(now));
+	}
+
+	public void recordLockWait(String accountNumber, long waitNanos) {
+		Slot slot = slot(accountNumber);
+		if(slot != null) {
+			long now = nanoClock.getAsLong();
+			double weight = weight(now);
+			Counters counters = slot.counters(epoch(now));
+			counters.lockWaits.add(weight);
+			counters.lockWaitNanos.add(weight * waitNanos);
+		}
+	}
+
+	public void recordFailure(String accountNumber) {
+		Slot slot = slot(accountNumber);
+		if(slot != null) {
+			long now = nanoClock.getAsLong();
+			slot.counters(epoch(now)).failures.add(weight(now));
+		}
+	}
+
+	/**
+	 * 초당 요청수(하한 추정치)가 threshold 이상이면 핫 계좌
+	 * 추적하지 않는 계좌는 항상 false (top-K 밖이므로 핫하지 않다)
+	 */
+	public boolean isHot(String accountNumber) {
+		Slot slot = slot(accountNumber);
+		return slot != null && isHot(slot.counters.get(), nanoClock.getAsLong());
+	}
+
+	/**
+	 * 요청수가 많은 순서로 limit 개
+	 */
+	public List<HotAccount> getTopAccounts(int limit) {
+		long now = nanoClock.getAsLong();
+		List<Snapshot> sorted = new ArrayList<>();
+		for(Stripe stripe : stripes) {
+			stripe.slots.values().forEach(slot -> sorted.add(new Snapshot(slot.accountNumber, slot.counters.get(), now)));
+		}
+		sorted.sort((a, b) -> Double.compare(b.requests, a.requests));
+
+		List<HotAccount> topAccounts = new ArrayList<>();
+		for(Snapshot slot : sorted.subList(0, Math.min(limit, sorted.size()))) {
+			topAccounts.add(HotAccount.builder()
+					.accountNumber(slot.accountNumber)
+					.requestsPerSecond(perSecond(slot.requests))
+					.maxOverestimatePerSecond(perSecond(slot.error))
+					.avgLockWaitMillis(slot.lockWaits == 0 ? 0
+							: slot.lockWaitNanos / slot.lockWaits / TimeUnit.MILLISECONDS.toNanos(1))
+					.failureRate(slot.requests == 0 ? 0 : Math.min(1.0, slot.failures / slot.requests))
+					.hot(perSecond(slot.requests - slot.error) >= hotRequestsPerSecond)
+					.build());
+		}
+		return topAccounts;
+	}
+
+	//Space-Saving: stripe가 꽉 차면 stripe에서 가장 작은 카운터를 새 계좌에 넘긴다
+	private Slot admit(Stripe stripe, String accountNumber, long now) {
+		ConcurrentHashMap<String, Slot> slots = stripe.slots;
+		synchronized(stripe) {
+			Slot slot = slots.get(accountNumber);
+			if(slot != null) {
+				return slot;
+			}
+			long epoch = epoch(now);
+			double inherited = 0;
+			if(slots.size() >= stripeCapacity) {
+				Slot min = null;
+				double minRequests = Double.MAX_VALUE;
+				for(Slot candidate : slots.values()) {
+					double requests = candidate.counters.get().requestsAt(epoch);
+					if(requests < minRequests) {
+						min = candidate;
+						minRequests = requests;
+					}
+				}
+				slots.remove(min.accountNumber, min);
+				inherited = minRequests;
+			}
+			slot = new Slot(accountNumber, epoch, inherited);
+			slots.put(accountNumber, slot);
+			return slot;
+		}
+	}
+
+	private Stripe stripe(String accountNumber) {
+		return stripes[Math.floorMod(accountNumber.hashCode(), stripes.length)];
+	}
+
+	private Slot slot(String accountNumber) {
+		return stripe(accountNumber).slots.get(accountNumber);
+	}
+
+	private boolean isHot(Counters counters, long now) {
+		double decay = decay(counters.epoch, now);
+		return perSecond((counters.requests.sum() - counters.error) * decay) >= hotRequestsPerSecond;
+	}
+
+	private long epoch(long now) {
+		return Math.max(0L, now - startedAt) / epochNanos;
+	}
+
+	//epoch 시작부터 지금까지 2^(경과/H), 1 이상 2^EPOCH_HALF_LIVES 미만
+	private double weight(long now) {
+		long sinceEpoch = Math.max(0L, now - startedAt) % epochNanos;
+		return Math.exp(LN2 * sinceEpoch / halfLifeNanos);
+	}
+
+	//epoch 에서 더한 값을 now 기준으로 감쇠시키는 배수
+	private double decay(long epoch, long now) {
+		long sinceEpoch = Math.max(0L, now - startedAt) - epoch * epochNanos;
+		return Math.exp(-LN2 * sinceEpoch / halfLifeNanos);
+	}
+
+	//반감기 H로 감쇠하는 합계는 초당 r건이 계속 들어오면 r * H / ln2 에 수렴한다
+	private double perSecond(double decayedCount) {
+		return decayedCount * LN2 * TimeUnit.SECONDS.toNanos(1) / halfLifeNanos;
+	}
+
+	private int trackedCount() {
+		int tracked = 0;
+		for(Stripe stripe : stripes) {
+			tracked += stripe.slots.size();
+		}
+		return tracked;
+	}
+
+	private long hotCount() {
+		long now = nanoClock.getAsLong();
+		long hot = 0;
+		for(Stripe stripe : stripes) {
+			hot += stripe.slots.values().stream()
+					.filter(slot -> isHot(slot.counters.get(), now))
+					.count();
+		}
+		return hot;
+	}
+
+	//stripe 객체가 그 stripe의 admit 락이다
+	private static class Stripe {
+		private final ConcurrentHashMap<String, Slot> slots;
+
+		private Stripe(int initialCapacity) {
+			this.slots = new ConcurrentHashMap<>(initialCapacity);
+		}
+	}
+
+	private static class Slot {
+		private final String accountNumber;
+		private final AtomicReference<Counters> counters;
+
+		private Slot(String accountNumber, long epoch, double inherited) {
+			this.accountNumber = accountNumber;
+			Counters initial = new Counters(epoch, inherited);
+			initial.requests.add(inherited);
+			this.counters = new AtomicReference<>(initial);
+		}
+
+		//epoch가 지났으면 값을 새 epoch로 옮긴다 (옮기는 사이에 더해진 몇 건은 버려도 된다)
+		private Counters counters(long epoch) {
+			Counters current = counters.get();
+			while(current.epoch < epoch) {
+				Counters next = current.moveTo(epoch);
+				if(counters.compareAndSet(current, next)) {
+					return next;
+				}
+				current = counters.get();
+			}
+			return current;
+		}
+	}
+
+	private static class Counters {
+		private final long epoch;
+		private final double error;
+		private final DoubleAdder requests = new DoubleAdder();
+		private final DoubleAdder lockWaits = new DoubleAdder();
+		private final DoubleAdder lockWaitNanos = new DoubleAdder();
+		private final DoubleAdder failures = new DoubleAdder();
+
+		private Counters(long epoch, double error) {
+			this.epoch = epoch;
+			this.error = error;
+		}
+
+		//epoch 하나 = 반감기 EPOCH_HALF_LIVES 번
+		private static double scale(long epochs) {
+			return Math.scalb(1.0, (int) -Math.min(epochs * EPOCH_HALF_LIVES, 2000L));
+		}
+
+		private double requestsAt(long epoch) {
+			return requests.sum() * scale(epoch - this.epoch);
+		}
+
+		private Counters moveTo(long epoch) {
+			double scale = scale(epoch - this.epoch);
+			Counters next = new Counters(epoch, error * scale);
+			next.requests.add(requests.sum() * scale);
+			next.lockWaits.add(lockWaits.sum() * scale);
+			next.lockWaitNanos.add(lockWaitNanos.sum() * scale);
+			next.failures.add(failures.sum() * scale);
+			return next;
+		}
+	}
+
+	//읽을 때 지금 기준으로 감쇠한 값
+	private class Snapshot {
+		private final String accountNumber;
+		private final double requests;
+		private final double error;
+		private final double lockWaits;
+		private final double lockWaitNanos;
+		private final double failures;
+
+		private Snapshot(String accountNumber, Counters counters, long now) {
+			double decay = decay(counters.epoch, now);
+			this.accountNumber = accountNumber;
+			this.requests = counters.requests.sum() * decay;
+			this.error = counters.error * decay;
+			this.lockWaits = counters.lockWaits.sum() * decay;
+			this.lockWaitNanos = counters.lockWaitNanos.sum() * decay;
+			this.failures = counters.failures.sum() * decay;
+		}
+	}
+}
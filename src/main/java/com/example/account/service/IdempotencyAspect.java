@@ -0,0 +1,146 @@
+package com.example.account.service;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.example.account.aop.Idempotent;
+import com.example.account.exception.AccountException;
+import com.example.account.type.ErrorCode;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @Idempotent 메서드의 Idempotency-Key 처리
+ * 계좌 락 aspect보다 바깥에서 실행된다. (저장된 응답을 돌려줄 때는 락을 잡지 않는다)
+ * 키는 메서드 이름별로 나뉘고, 요청 본문 지문이 같아야 같은 요청으로 본다.
+ * CompletableFuture를 돌려주는 메서드는 future가 끝날 때 응답을 저장한다.
+ * 잔액을 바꾸기 전의 검증 실패(RELEASABLE)만 키를 풀고, 나머지 실패는 키를 닫아 다시 실행하지 않는다.
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class IdempotencyAspect {
+	static final String HEADER = "Idempotency-Key";
+	private static final int MAX_KEY_LENGTH = 100;
+	//락 대기 실패와 검증 실패는 잔액을 바꾸기 전에 던진다
+	private static final Set<ErrorCode> RELEASABLE = EnumSet.of(
+			ErrorCode.USER_NOT_FOUND,
+			ErrorCode.ACCOUNT_NOT_FOUNT,
+			ErrorCode.INVALID_REQUEST,
+			ErrorCode.ACCOUNT_TRANSACTION_LOCK,
+			ErrorCode.TRANSACTION_NOT_FOUND,
+			ErrorCode.TRANSACTION_ACCOUNT_UN_MATCH,
+			ErrorCode.CANCEL_MUST_FULLY,
+			ErrorCode.TOO_OLD_ORDER_TO_CANCEL,
+			ErrorCode.AMOUNT_EXCEED_BALANCE,
+			ErrorCode.USER_ACCOUNT_UN_MATCH,
+			ErrorCode.ACCOUNT_ALREADY_UNREGISTERED);
+
+	private final IdempotencyStore idempotencyStore;
+	private final ObjectMapper objectMapper;
+
+	@Around("@annotation(idempotent) && args(request)")
+	public Object aroundMethod(ProceedingJoinPoint pjp, Idempotent idempotent, Object request) throws Throwable {
+		String idempotencyKey = idempotencyKey();
+		if(idempotencyKey == null) {
+			return pjp.proceed();
+		}
+		if(idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+			throw new AccountException(ErrorCode.INVALID_REQUEST);
+		}
+
+		MethodSignature signature = (MethodSignature) pjp.getSignature();
+		String key = signature.getName() + ":" + idempotencyKey;
+		String fingerprint = DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(request));
+		String stored = idempotencyStore.begin(key, fingerprint);
+		if(stored != null) {
+			log.info("Replaying stored response for idempotency key {}", key);
+			return replay(signature, stored);
+		}
+
+		Object result;
+		try {
+			result = pjp.proceed();
+		} catch (Throwable e) {
+			finish(key, fingerprint, null, e);
+			throw e;
+		}
+		if(result instanceof CompletionStage) {
+			return ((CompletionStage<?>) result).toCompletableFuture()
+					.whenComplete((value, e) -> finish(key, fingerprint, value, e));
+		}
+		finish(key, fingerprint, result, null);
+		return result;
+	}
+
+	private Object replay(MethodSignature signature, String stored) throws Exception {
+		JavaType type = objectMapper.getTypeFactory().constructType(signature.getMethod().getGenericReturnType());
+		if(!CompletionStage.class.isAssignableFrom(type.getRawClass())) {
+			return objectMapper.readValue(stored, type);
+		}
+		JavaType responseType = objectMapper.getTypeFactory().findTypeParameters(type, CompletionStage.class)[0];
+		return CompletableFuture.completedFuture(objectMapper.readValue(stored, responseType));
+	}
+
+	/**
+	 * 저장 실패는 응답을 바꾸지 않는다. 이미 반영된 결과는 그대로 돌려주고, 처리 중 표시는 pending-ttl 뒤에 풀린다.
+	 */
+	private void finish(String key, String fingerprint, Object result, Throwable e) {
+		try {
+			if(e == null) {
+				idempotencyStore.complete(key, fingerprint, objectMapper.writeValueAsString(result));
+				return;
+			}
+			Throwable cause = unwrap(e);
+			if(cause instanceof AccountException
+					&& RELEASABLE.contains(((AccountException) cause).getErrorCode())) {
+				idempotencyStore.release(key, fingerprint);
+				return;
+			}
+			log.error("Closing idempotency key {} after a failure with unknown outcome", key);
+			idempotencyStore.fail(key, fingerprint, cause instanceof AccountException
+					? ((AccountException) cause).getErrorCode() : ErrorCode.INTERNAL_SERVER_ERROR);
+		} catch (Exception storeFailure) {
+			log.error("Failed to store response for idempotency key {}", key, storeFailure);
+		}
+	}
+
+	private static Throwable unwrap(Throwable e) {
+		while((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+			e = e.getCause();
+		}
+		return e;
+	}
+
+	private static String idempotencyKey() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if(!(attributes instanceof ServletRequestAttributes)) {
+			return null;
+		}
+		HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+		return request.getHeader(HEADER);
+	}
+}
@@ -0,0 +1,198 @@
+package com.example.account.service;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.account.exception.AccountException;
+import com.example.account.type.ErrorCode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Idempotency-Key 응답 저장소 (Redis, ACIDEM:키)
+ * 값은 "P|요청지문"(처리 중), "C|요청지문|응답JSON"(완료) 또는 "F|요청지문|에러코드"(결과를 모르는 실패)
+ * 1. begin: 키를 처음 쓰는 요청이 P를 넣고 실행한다. (pending-ttl이 지나면 풀려서 노드가 죽어도 막히지 않는다)
+ *    실행 중에는 pending-ttl/3 마다 P의 만료를 늘려서, 오래 걸리는 실행 도중에 키가 풀리지 않는다.
+ * 2. 완료된 키면 저장된 응답을, 처리 중이면 끝날 때까지 기다렸다가 그 응답을 돌려준다.
+ *    같은 노드의 요청은 로컬 future로, 다른 노드의 요청은 poll-millis 간격으로 확인한다.
+ * 3. F인 키는 같은 에러로 응답한다. (잔액이 바뀌었을 수도 있어서 다시 실행하지 않는다)
+ * 4. 같은 키에 다른 요청 본문이 오면 IDEMPOTENCY_KEY_REUSED
+ */
+@Slf4j
+@Service
+public class IdempotencyStore {
+	private static final String KEY_PREFIX = "ACIDEM:";
+	private static final String PENDING = "P";
+	private static final String COMPLETED = "C";
+	private static final String FAILED = "F";
+	//아직 그 요청의 P일 때만 만료를 늘린다 (완료 응답의 ttl은 건드리지 않는다)
+	private static final String EXTEND_SCRIPT =
+			"if redis.call('get', KEYS[1]) == ARGV[1] then "
+			+ "return redis.call('pexpire', KEYS[1], ARGV[2]) end "
+			+ "return 0";
+
+	private final ObjectProvider<RedissonClient> redissonClient;
+	private final long ttlMillis;
+	private final long pendingTtlMillis;
+	private final long waitMillis;
+	private final long pollMillis;
+	//이 노드에서 처리 중인 키
+	private final ConcurrentHashMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+	private ScheduledExecutorService scheduler;
+
+	public IdempotencyStore(ObjectProvider<RedissonClient> redissonClient,
+			@Value("${account.idempotency.ttl-hours:24}") long ttlHours,
+			@Value("${account.idempotency.pending-ttl-seconds:30}") long pendingTtlSeconds,
+			@Value("${account.idempotency.wait-millis:5000}") long waitMillis,
+			@Value("${account.idempotency.poll-millis:50}") long pollMillis) {
+		this.redissonClient = redissonClient;
+		this.ttlMillis = TimeUnit.HOURS.toMillis(ttlHours);
+		this.pendingTtlMillis = TimeUnit.SECONDS.toMillis(pendingTtlSeconds);
+		this.waitMillis = waitMillis;
+		this.pollMillis = pollMillis;
+	}
+
+	@PostConstruct
+	public void start() {
+		long extendMillis = Math.max(1L, pendingTtlMillis / 3);
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "idempotency-extend");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::extendInFlight, extendMillis, extendMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if(scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * 실행 권한을 얻으면 null (complete 또는 release를 꼭 불러야 한다), 이미 끝난 키면 저장된 응답 JSON
+	 */
+	public String begin(String key, String fingerprint) throws InterruptedException {
+		RBucket<String> bucket = bucket(key);
+		long deadline = System.currentTimeMillis() + waitMillis;
+		while(true) {
+			if(bucket.trySet(PENDING + "|" + fingerprint, pendingTtlMillis, TimeUnit.MILLISECONDS)) {
+				inFlight.put(key, new InFlight(fingerprint));
+				return null;
+			}
+			String value = bucket.get();
+			if(value == null) {
+				continue;//그 사이 풀렸다
+			}
+			String[] fields = value.split("\\|", 3);
+			if(!fingerprint.equals(fields[1])) {
+				throw new AccountException(ErrorCode.IDEMPOTENCY_KEY_REUSED);
+			}
+			if(COMPLETED.equals(fields[0])) {
+				return fields[2];
+			}
+			if(FAILED.equals(fields[0])) {
+				throw new AccountException(ErrorCode.valueOf(fields[2]));
+			}
+
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0) {
+				throw new AccountException(ErrorCode.IDEMPOTENT_REQUEST_IN_PROGRESS);
+			}
+			awaitInFlight(key, Math.min(remaining, pollMillis));
+		}
+	}
+
+	public void complete(String key, String fingerprint, String response) {
+		try {
+			bucket(key).set(COMPLETED + "|" + fingerprint + "|" + response, ttlMillis, TimeUnit.MILLISECONDS);
+		} finally {
+			finishInFlight(key);
+		}
+	}
+
+	/**
+	 * 잔액을 바꾸기 전에 거절된 실행만 키를 풀어서 재시도가 다시 실행되게 한다.
+	 */
+	public void release(String key, String fingerprint) {
+		try {
+			bucket(key).compareAndSet(PENDING + "|" + fingerprint, null);
+		} finally {
+			finishInFlight(key);
+		}
+	}
+
+	/**
+	 * 잔액이 바뀌었는지 모르는 실패는 키를 닫고 같은 에러로 응답한다.
+	 */
+	public void fail(String key, String fingerprint, ErrorCode errorCode) {
+		try {
+			bucket(key).set(FAILED + "|" + fingerprint + "|" + errorCode.name(), ttlMillis, TimeUnit.MILLISECONDS);
+		} finally {
+			finishInFlight(key);
+		}
+	}
+
+	void extendInFlight() {
+		inFlight.forEach((key, local) -> {
+			try {
+				redissonClient.getObject().getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE,
+						EXTEND_SCRIPT, RScript.ReturnType.BOOLEAN, Collections.singletonList(KEY_PREFIX + key),
+						PENDING + "|" + local.fingerprint, String.valueOf(pendingTtlMillis));
+			} catch (RuntimeException e) {
+				log.warn("Failed to extend idempotency key {}", key, e);
+			}
+		});
+	}
+
+	private void awaitInFlight(String key, long timeoutMillis) throws InterruptedException {
+		InFlight local = inFlight.get(key);
+		if(local == null) {
+			Thread.sleep(timeoutMillis);
+			return;
+		}
+		try {
+			local.done.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException | TimeoutException e) {
+			log.debug("Still waiting for idempotency key {}", key);
+		}
+	}
+
+	private void finishInFlight(String key) {
+		InFlight local = inFlight.remove(key);
+		if(local != null) {
+			local.done.complete(null);
+		}
+	}
+
+	private RBucket<String> bucket(String key) {
+		return redissonClient.getObject().getBucket(KEY_PREFIX + key, StringCodec.INSTANCE);
+	}
+
+	private static final class InFlight {
+		private final String fingerprint;
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		private InFlight(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+	}
+}
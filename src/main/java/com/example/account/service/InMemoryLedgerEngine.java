@@ -0,0 +1,504 @@
+package com.example.account.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.TransactionDto;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.service.LedgerJournal.Record;
+import com.example.account.service.LedgerJournal.RecordType;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 단일 writer 메모리 원장 (account.balance.engine=in-memory)
+ * 1. 계좌 잔액/상태/소유자를 계좌번호로 나눈 파티션 메모리에 둔다. 처음 쓰는 계좌는 DB에서 올린다.
+ * 2. 파티션마다 스레드 하나가 사용/취소 명령을 들어온 순서대로 적용하므로 락이 필요 없다.
+ * 3. 적용한 명령은 저널(LedgerJournal)에 남기고, group fsync가 끝나야 호출한 쪽 future가 완료된다.
+ * 4. DB(Transaction, Account.balance)는 fsync가 끝난 기록을 projector 스레드가 나중에 반영한다.
+ * 5. 주기적으로 스냅샷을 쓰고, 재시작하면 스냅샷 + 남은 저널을 다시 적용해서 상태와 DB 반영을 복구한다.
+ */
+@Slf4j
+@Component
+public class InMemoryLedgerEngine {
+	private static final String SNAPSHOT_FILE = "snapshot.dat";
+
+	private final AccountRepository accountRepository;
+	private final AccountUserRepository accountUserRepository;
+	private final TransactionRepository transactionRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final boolean enabled;
+	private final Path directory;
+	private final int partitionCount;
+	private final int queueCapacity;
+	private final int groupSize;
+	private final long snapshotIntervalSeconds;
+
+	private final List<Map<String, LedgerAccount>> partitions = new ArrayList<>();
+	private final List<ExecutorService> partitionExecutors = new ArrayList<>();
+	//아직 DB에 반영되지 않은 사용 거래 (취소할 때 찾는다)
+	private final Map<String, Record> pendingUses = new ConcurrentHashMap<>();
+	//DB에 반영이 끝난 마지막 seq (반영이 실패하면 더 이상 늘지 않아서 저널이 지워지지 않는다)
+	private final AtomicLong projectedSeq = new AtomicLong();
+	private volatile boolean projectionFailed;
+
+	private LedgerJournal journal;
+	private ExecutorService projector;
+	private ScheduledExecutorService checkpointScheduler;
+
+	public InMemoryLedgerEngine(AccountRepository accountRepository,
+			AccountUserRepository accountUserRepository, TransactionRepository transactionRepository,
+			TransactionTemplate transactionTemplate,
+			@Value("${account.balance.engine:entity}") BalanceEngine balanceEngine,
+			@Value("${account.ledger.memory.directory:./ledger}") String directory,
+			@Value("${account.ledger.memory.partitions:4}") int partitionCount,
+			@Value("${account.ledger.memory.queue-capacity:4096}") int queueCapacity,
+			@Value("${account.ledger.memory.group-size:256}") int groupSize,
+			@Value("${account.ledger.memory.snapshot-interval-seconds:60}") long snapshotIntervalSeconds) {
+		this.accountRepository = accountRepository;
+		this.accountUserRepository = accountUserRepository;
+		this.transactionRepository = transactionRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.enabled = balanceEngine == BalanceEngine.IN_MEMORY;
+		this.directory = Paths.get(directory);
+		this.partitionCount = partitionCount;
+		this.queueCapacity = queueCapacity;
+		this.groupSize = groupSize;
+		this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+	}
+
+	@PostConstruct
+	public void start() throws IOException {
+		if(!enabled) {
+			return;
+		}
+		for(int i = 0; i < partitionCount; i++) {
+			partitions.add(new HashMap<>());
+		}
+		projector = Executors.newSingleThreadExecutor(daemon("ledger-projector"));
+		journal = new LedgerJournal(directory, groupSize,
+				records -> projector.execute(() -> project(records)));
+		recover();
+
+		for(int i = 0; i < partitionCount; i++) {
+			//파티션 하나당 writer 스레드 하나, 대기열이 차면 계좌 사용 중으로 거절한다
+			partitionExecutors.add(new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(queueCapacity), daemon("ledger-partition-" + i)));
+		}
+		checkpointScheduler = Executors.newSingleThreadScheduledExecutor(daemon("ledger-checkpoint"));
+		checkpointScheduler.scheduleWithFixedDelay(this::checkpointQuietly,
+				snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException, IOException {
+		if(journal == null) {
+			return;
+		}
+		checkpointScheduler.shutdown();
+		for(ExecutorService executor : partitionExecutors) {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		journal.close();
+		projector.shutdown();
+		projector.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public CompletableFuture<TransactionDto> useBalance(Long userId, String accountNumber, Long amount) {
+		return submit(accountNumber, () -> {
+			LedgerAccount account = account(accountNumber);
+			if(!Objects.equals(account.userId, userId)) {
+				throw new AccountException(accountUserRepository.existsById(userId)
+						? ErrorCode.USER_ACCOUNT_UN_MATCH : ErrorCode.USER_NOT_FOUND);
+			}
+			if(account.status != AccountStatus.IN_USE) {
+				throw new AccountException(ErrorCode.ACCOUNT_ALREADY_UNREGISTERED);
+			}
+			if(account.balance < amount) {
+				throw new AccountException(ErrorCode.AMOUNT_EXCEED_BALANCE);
+			}
+			return applyAndJournal(RecordType.USE, accountNumber, amount, account.balance - amount, account);
+		}).thenApply(this::toDto);
+	}
+
+	public CompletableFuture<TransactionDto> cancelBalance(String transactionId, String accountNumber, Long amount) {
+		return submit(accountNumber, () -> {
+			validateCancelBalance(transactionId, accountNumber, amount);
+			LedgerAccount account = account(accountNumber);
+			return applyAndJournal(RecordType.CANCEL, accountNumber, amount, account.balance + amount, account);
+		}).thenApply(this::toDto);
+	}
+
+	/**
+	 * 계좌 해지 전에 원장 잔액을 확인하고 해지 상태로 바꾼다. (메모리에 없는 계좌는 DB 검증만 한다)
+	 */
+	public void unregister(String accountNumber) {
+		if(!enabled) {
+			return;
+		}
+		TransactionService.await(submit(accountNumber, () -> {
+			LedgerAccount account = partition(accountNumber).get(accountNumber);
+			if(account == null) {
+				return CompletableFuture.<Record>completedFuture(null);
+			}
+			if(account.balance > 0) {
+				throw new AccountException(ErrorCode.BALANCE_NOT_EMPTY);
+			}
+			return applyAndJournal(RecordType.UNREGISTER, accountNumber, 0, account.balance, account);
+		}));
+	}
+
+	/**
+	 * 메모리에 올라와 있는 계좌의 현재 잔액
+	 */
+	public Optional<Long> getBalance(String accountNumber) {
+		return TransactionService.await(submit(accountNumber, () -> CompletableFuture.completedFuture(
+				Optional.ofNullable(partition(accountNumber).get(accountNumber))
+					.map(account -> account.balance))));
+	}
+
+	/**
+	 * 저널을 새 세그먼트로 넘기고 모든 파티션 상태를 스냅샷으로 쓴다.
+	 * 복사한 상태에는 fsync 전 기록이 들어 있을 수 있어서, 그 기록까지 fsync 된 뒤에 스냅샷을 쓴다.
+	 * 스냅샷과 DB 반영이 모두 끝난 세그먼트는 지운다.
+	 */
+	public void checkpoint() throws IOException {
+		long closedSeq = journal.rollover();
+
+		List<CompletableFuture<List<String>>> copies = new ArrayList<>();
+		for(int i = 0; i < partitionCount; i++) {
+			Map<String, LedgerAccount> partition = partitions.get(i);
+			copies.add(CompletableFuture.supplyAsync(() -> partition.entrySet().stream()
+					.map(entry -> entry.getValue().toLine(entry.getKey()))
+					.collect(Collectors.toList()), partitionExecutors.get(i)));
+		}
+
+		List<String> lines = new ArrayList<>();
+		copies.forEach(copy -> lines.addAll(copy.join()));
+		journal.sync();//실패하면 스냅샷을 쓰지 않는다
+
+		Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+		try(BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			for(String line : lines) {
+				writer.write(line);
+				writer.newLine();
+			}
+		}
+		Files.move(tmp, directory.resolve(SNAPSHOT_FILE),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		journal.deleteSegmentsUpTo(Math.min(closedSeq, projectedSeq.get()));
+	}
+
+	private <T> CompletableFuture<T> submit(String accountNumber,
+			Supplier<CompletableFuture<T>> command) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		try {
+			partitionExecutors.get(partitionOf(accountNumber)).execute(() -> {
+				try {
+					command.get().whenComplete((value, e) -> {
+						if(e != null) {
+							result.completeExceptionally(e);
+						} else {
+							result.complete(value);
+						}
+					});
+				} catch (Exception e) {
+					result.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK));
+		}
+		return result;
+	}
+
+	/**
+	 * 저널에 먼저 넣고 나서 메모리 상태를 바꾼다. (파티션 스레드에서만 호출)
+	 * 이후 명령은 fsync 전 상태를 바로 보지만, 응답은 fsync가 끝난 뒤에 나간다.
+	 */
+	private CompletableFuture<Record> applyAndJournal(RecordType type, String accountNumber, long amount,
+			long balance, LedgerAccount account) {
+		String transactionId = type == RecordType.UNREGISTER ? "-" : newTransactionId();
+		long transactedAt = System.currentTimeMillis();
+		if(type == RecordType.USE) {
+			//DB에 반영되기 전에 취소가 들어와도 찾을 수 있게 저널에 넣기 전에 등록한다
+			pendingUses.put(transactionId, new Record(0L, type, accountNumber, amount, balance,
+					transactionId, transactedAt));
+		}
+
+		LedgerJournal.Appended appended;
+		try {
+			appended = journal.append(type, accountNumber, amount, balance, transactionId, transactedAt);
+		} catch (IllegalStateException e) {
+			pendingUses.remove(transactionId);
+			log.error("Rejecting ledger command, journal is not writable");
+			throw new AccountException(ErrorCode.INTERNAL_SERVER_ERROR);
+		}
+		account.balance = balance;
+		if(type == RecordType.UNREGISTER) {
+			account.status = AccountStatus.UN_REGISTERED;
+		}
+		account.lastSeq = appended.getRecord().getSeq();
+
+		return appended.getDurable().exceptionally(e -> {
+			throw new AccountException(ErrorCode.INTERNAL_SERVER_ERROR);
+		});
+	}
+
+	private void validateCancelBalance(String transactionId, String accountNumber, Long amount) {
+		Record pending = pendingUses.get(transactionId);
+		String originalAccountNumber;
+		Long originalAmount;
+		LocalDateTime transactedAt;
+		if(pending != null) {
+			originalAccountNumber = pending.getAccountNumber();
+			originalAmount = pending.getAmount();
+			transactedAt = toLocalDateTime(pending.getTransactedAt());
+		} else {
+			//파티션 스레드는 트랜잭션 밖이라 계좌번호까지 projection으로 읽는다
+			TransactionDto transaction = transactionRepository.findDtoByTransactionId(transactionId)
+					.orElseThrow(() -> new AccountException(ErrorCode.TRANSACTION_NOT_FOUND));
+			originalAccountNumber = transaction.getAccountNumber();
+			originalAmount = transaction.getAmount();
+			transactedAt = transaction.getTransactedAt();
+		}
+		if(!Objects.equals(originalAccountNumber, accountNumber)) {
+			throw new AccountException(ErrorCode.TRANSACTION_ACCOUNT_UN_MATCH);
+		}
+		if(!Objects.equals(originalAmount, amount)) {
+			throw new AccountException(ErrorCode.CANCEL_MUST_FULLY);
+		}
+		if(transactedAt.isBefore(LocalDateTime.now().minusYears(1))) {
+			throw new AccountException(ErrorCode.TOO_OLD_ORDER_TO_CANCEL);
+		}
+	}
+
+	//파티션 스레드(또는 시작 전 복구)에서만 호출
+	private LedgerAccount account(String accountNumber) {
+		return partition(accountNumber).computeIfAbsent(accountNumber, this::load);
+	}
+
+	private LedgerAccount load(String accountNumber) {
+		Account account = accountRepository.findByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		return new LedgerAccount(account.getAccountUser().getId(), account.getAccountStatus(),
+				account.getBalance(), 0L);
+	}
+
+	private Map<String, LedgerAccount> partition(String accountNumber) {
+		return partitions.get(partitionOf(accountNumber));
+	}
+
+	private int partitionOf(String accountNumber) {
+		return Math.floorMod(accountNumber.hashCode(), partitionCount);
+	}
+
+	/**
+	 * 스냅샷을 올리고 스냅샷 이후 저널 기록을 다시 적용한다. 남은 저널은 DB에도 다시 반영한다.
+	 */
+	private void recover() throws IOException {
+		Path snapshot = directory.resolve(SNAPSHOT_FILE);
+		long snapshotSeq = 0;
+		if(Files.exists(snapshot)) {
+			try(BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+				String line;
+				while((line = reader.readLine()) != null) {
+					String[] fields = line.split("\\|");
+					LedgerAccount account = LedgerAccount.parse(fields);
+					partition(fields[0]).put(fields[0], account);
+					snapshotSeq = Math.max(snapshotSeq, account.lastSeq);
+				}
+			}
+		}
+		//스냅샷 뒤에 세그먼트가 지워졌으면 저널 seq가 스냅샷보다 작아진다, 새 기록이 재시작 때 건너뛰어지지 않게 올린다
+		journal.advanceSeq(snapshotSeq);
+
+		List<Record> records = journal.readAll();
+		for(Record record : records) {
+			LedgerAccount account = account(record.getAccountNumber());
+			if(record.getSeq() <= account.lastSeq) {
+				continue;//스냅샷에 이미 들어 있다
+			}
+			account.balance = record.getBalance();
+			if(record.getType() == RecordType.UNREGISTER) {
+				account.status = AccountStatus.UN_REGISTERED;
+			}
+			account.lastSeq = record.getSeq();
+			if(record.getType() == RecordType.USE) {
+				pendingUses.put(record.getTransactionId(), record);
+			}
+		}
+		if(!records.isEmpty()) {
+			log.info("Recovered in-memory ledger, replayed {} journal records", records.size());
+			project(records);
+		}
+	}
+
+	/**
+	 * fsync가 끝난 기록을 한 트랜잭션으로 DB에 반영한다. 이미 저장된 거래id는 건너뛴다.
+	 */
+	private void project(List<Record> records) {
+		if(projectionFailed) {
+			return;
+		}
+		try {
+			List<Record> transactions = records.stream()
+					.filter(record -> record.getType() != RecordType.CHECKPOINT)
+					.collect(Collectors.toList());
+			if(!transactions.isEmpty()) {
+				transactionTemplate.executeWithoutResult(status -> persist(transactions));
+			}
+			records.forEach(record -> pendingUses.remove(record.getTransactionId()));
+			projectedSeq.accumulateAndGet(records.get(records.size() - 1).getSeq(), Math::max);
+		} catch (Exception e) {
+			//순서가 섞이지 않도록 이후 반영을 멈춘다. 재시작하면 남은 저널로 다시 반영한다.
+			projectionFailed = true;
+			log.error("Ledger projection failed, journal is kept until restart", e);
+		}
+	}
+
+	private void persist(List<Record> records) {
+		Set<String> saved = transactionRepository.findByTransactionIdIn(records.stream()
+					.map(Record::getTransactionId)
+					.collect(Collectors.toList()))
+				.stream()
+				.map(Transaction::getTransactionId)
+				.collect(Collectors.toSet());
+
+		Map<String, Account> accounts = new HashMap<>();
+		List<Transaction> transactions = new ArrayList<>();
+		for(Record record : records) {
+			Account account = accounts.computeIfAbsent(record.getAccountNumber(),
+					accountNumber -> accountRepository.findByAccountNumber(accountNumber)
+						.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT)));
+			account.setBalance(record.getBalance());
+			if(record.getType() == RecordType.UNREGISTER || saved.contains(record.getTransactionId())) {
+				continue;
+			}
+			transactions.add(Transaction.builder()
+					.transactionType(TransactionType.valueOf(record.getType().name()))
+					.transactionResultType(TransactionResultType.S)
+					.account(account)
+					.amount(record.getAmount())
+					.balanceSnapshot(record.getBalance())
+					.transactionId(record.getTransactionId())
+					.transactedAt(toLocalDateTime(record.getTransactedAt()))
+					.build());
+		}
+		transactionRepository.saveAll(transactions);
+	}
+
+	private void checkpointQuietly() {
+		try {
+			checkpoint();
+		} catch (Exception e) {
+			log.error("Ledger checkpoint failed", e);
+		}
+	}
+
+	private TransactionDto toDto(Record record) {
+		return TransactionDto.builder()
+				.accountNumber(record.getAccountNumber())
+				.transactionType(TransactionType.valueOf(record.getType().name()))
+				.transactionResultType(TransactionResultType.S)
+				.amount(record.getAmount())
+				.balanceSnapshot(record.getBalance())
+				.transactionId(record.getTransactionId())
+				.transactedAt(toLocalDateTime(record.getTransactedAt()))
+				.build();
+	}
+
+	private static LocalDateTime toLocalDateTime(long epochMillis) {
+		return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+	}
+
+	private static String newTransactionId() {
+		return UUID.randomUUID().toString().replace("-", "");
+	}
+
+	private static ThreadFactory daemon(String name) {
+		return runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * 파티션 스레드만 읽고 쓰는 계좌 상태
+	 */
+	private static class LedgerAccount {
+		private final Long userId;
+		private AccountStatus status;
+		private long balance;
+		private long lastSeq;//마지막으로 적용한 저널 seq
+
+		private LedgerAccount(Long userId, AccountStatus status, long balance, long lastSeq) {
+			this.userId = userId;
+			this.status = status;
+			this.balance = balance;
+			this.lastSeq = lastSeq;
+		}
+
+		private String toLine(String accountNumber) {
+			return accountNumber + "|" + userId + "|" + status + "|" + balance + "|" + lastSeq;
+		}
+
+		private static LedgerAccount parse(String[] fields) {
+			return new LedgerAccount(Long.valueOf(fields[1]), AccountStatus.valueOf(fields[2]),
+					Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package com.example.account.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 메모리 원장(InMemoryLedgerEngine)의 순차 추가 전용 저널
+ * 1. 파티션 스레드가 넣은 기록을 저널 스레드 하나가 모아서 쓰고 한 번에 fsync 한다 (group fsync).
+ * 2. fsync가 끝난 기록만 future를 완료하고 onDurable 로 넘긴다(CHECKPOINT 포함). 앞 기록이 먼저 디스크에 남는다.
+ * 3. 세그먼트 파일(journal-번호.log) 단위로 rollover 하고, 스냅샷 + DB 반영이 끝난 세그먼트는 지운다.
+ * 한 줄이 기록 하나: seq|type|accountNumber|amount|balance|transactionId|transactedAt
+ */
+@Slf4j
+class LedgerJournal {
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private final Path directory;
+	private final int groupSize;
+	private final Consumer<List<Record>> onDurable;
+	private final BlockingQueue<Appended> queue = new LinkedBlockingQueue<>();
+	//닫힌 세그먼트 번호 -> 그 세그먼트의 마지막 seq
+	private final TreeMap<Long, Long> closedSegments = new TreeMap<>();
+	private final Thread writer;
+
+	private long seq;
+	private long segment;
+	private FileChannel channel;
+	private volatile boolean running = true;
+	private volatile IOException failure;
+
+	LedgerJournal(Path directory, int groupSize, Consumer<List<Record>> onDurable) throws IOException {
+		this.directory = directory;
+		this.groupSize = groupSize;
+		this.onDurable = onDurable;
+		Files.createDirectories(directory);
+
+		for(Path path : segments()) {
+			long number = segmentNumber(path);
+			long lastSeq = 0;
+			for(Record record : read(path)) {
+				lastSeq = record.getSeq();
+			}
+			closedSegments.put(number, lastSeq);
+			seq = Math.max(seq, lastSeq);
+			segment = Math.max(segment, number);
+		}
+		openSegment(segment + 1);
+
+		this.writer = new Thread(this::writeLoop, "ledger-journal");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * seq를 붙여서 쓰기 대기열에 넣는다. 같은 파티션에서 넣은 기록은 넣은 순서대로 seq가 커진다.
+	 * 저널이 닫혔거나 쓰기에 실패한 뒤에는 IllegalStateException
+	 */
+	synchronized Appended append(RecordType type, String accountNumber, long amount,
+			long balance, String transactionId, long transactedAt) {
+		if(failure != null || !running) {
+			throw new IllegalStateException("Ledger journal is not writable", failure);
+		}
+		Appended appended = new Appended(new Record(++seq, type, accountNumber, amount, balance,
+				transactionId, transactedAt), new CompletableFuture<>());
+		queue.add(appended);
+		return appended;
+	}
+
+	/**
+	 * 지금까지 넣은 기록을 모두 쓰고 새 세그먼트로 넘어간다. 닫힌 세그먼트의 마지막 seq를 돌려준다.
+	 */
+	synchronized long rollover() throws IOException {
+		sync();
+		synchronized (this.writer) {
+			channel.close();
+			closedSegments.put(segment, seq);
+			openSegment(segment + 1);
+		}
+		return seq;
+	}
+
+	/**
+	 * 지금까지 넣은 기록이 모두 fsync 될 때까지 기다린다. 쓰기에 실패했으면 CompletionException
+	 */
+	void sync() {
+		append(RecordType.CHECKPOINT, "-", 0, 0, "-", 0).getDurable().join();
+	}
+
+	/**
+	 * seq를 atLeast 이상으로 올린다. 스냅샷에 들어간 뒤 지워진 세그먼트의 seq를 다시 쓰지 않게 한다.
+	 */
+	synchronized void advanceSeq(long atLeast) {
+		seq = Math.max(seq, atLeast);
+	}
+
+	/**
+	 * 마지막 seq가 upToSeq 이하인 닫힌 세그먼트를 지운다.
+	 */
+	synchronized void deleteSegmentsUpTo(long upToSeq) throws IOException {
+		while(!closedSegments.isEmpty() && closedSegments.firstEntry().getValue() <= upToSeq) {
+			Files.deleteIfExists(segmentPath(closedSegments.pollFirstEntry().getKey()));
+		}
+	}
+
+	/**
+	 * 남아 있는 모든 세그먼트의 기록 (seq 순서)
+	 */
+	List<Record> readAll() throws IOException {
+		List<Record> records = new ArrayList<>();
+		for(Path path : segments()) {
+			for(Record record : read(path)) {
+				if(record.getType() != RecordType.CHECKPOINT) {
+					records.add(record);
+				}
+			}
+		}
+		return records;
+	}
+
+	void close() throws InterruptedException, IOException {
+		running = false;
+		writer.join(TimeUnit.SECONDS.toMillis(5));
+		synchronized (writer) {
+			channel.close();
+		}
+	}
+
+	private void writeLoop() {
+		List<Appended> group = new ArrayList<>(groupSize);
+		while(running || !queue.isEmpty()) {
+			try {
+				Appended first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					continue;
+				}
+				group.add(first);
+				queue.drainTo(group, groupSize - 1);//fsync 하는 동안 쌓인 기록을 한 번에
+				write(group);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (IOException e) {
+				log.error("Ledger journal write failed, rejecting further commands", e);
+				failure = e;
+				group.forEach(pending -> pending.durable.completeExceptionally(e));
+				queue.forEach(pending -> pending.durable.completeExceptionally(e));
+				return;
+			}
+			group.clear();
+		}
+	}
+
+	private void write(List<Appended> group) throws IOException {
+		StringBuilder lines = new StringBuilder();
+		List<Record> records = new ArrayList<>(group.size());
+		for(Appended pending : group) {
+			lines.append(pending.record.toLine()).append('\n');
+			records.add(pending.record);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+		synchronized (writer) {
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+		group.forEach(pending -> pending.durable.complete(pending.record));
+		onDurable.accept(records);
+	}
+
+	private void openSegment(long number) throws IOException {
+		segment = number;
+		channel = FileChannel.open(segmentPath(number),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private List<Path> segments() throws IOException {
+		TreeMap<Long, Path> sorted = new TreeMap<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+				SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			stream.forEach(path -> sorted.put(segmentNumber(path), path));
+		}
+		return new ArrayList<>(sorted.values());
+	}
+
+	//fsync 전에 죽어서 잘린 마지막 줄은 버린다
+	private static List<Record> read(Path path) throws IOException {
+		List<Record> records = new ArrayList<>();
+		try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				Record record = Record.parse(line);
+				if(record == null) {
+					log.warn("Skipping torn journal record in {}", path.getFileName());
+					break;
+				}
+				records.add(record);
+			}
+		}
+		return records;
+	}
+
+	private Path segmentPath(long number) {
+		return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+	}
+
+	private static long segmentNumber(Path path) {
+		String fileName = path.getFileName().toString();
+		return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(),
+				fileName.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	enum RecordType {
+		USE,
+		CANCEL,
+		UNREGISTER,
+		CHECKPOINT //rollover 표시, 상태에 반영하지 않는다
+	}
+
+	@Getter
+	@AllArgsConstructor
+	static class Record {
+		private final long seq;
+		private final RecordType type;
+		private final String accountNumber;
+		private final long amount;
+		private final long balance;//반영 후 잔액 (절대값이라 다시 반영해도 같다)
+		private final String transactionId;
+		private final long transactedAt;//epoch millis
+
+		String toLine() {
+			return seq + "|" + type + "|" + accountNumber + "|" + amount + "|" + balance
+					+ "|" + transactionId + "|" + transactedAt;
+		}
+
+		static Record parse(String line) {
+			String[] fields = line.split("\\|");
+			if(fields.length != 7) {
+				return null;
+			}
+			try {
+				return new Record(Long.parseLong(fields[0]), RecordType.valueOf(fields[1]), fields[2],
+						Long.parseLong(fields[3]), Long.parseLong(fields[4]), fields[5],
+						Long.parseLong(fields[6]));
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+	}
+
+	@Getter
+	@AllArgsConstructor
+	static class Appended {
+		private final Record record;
+		private final CompletableFuture<Record> durable;//fsync가 끝나면 완료
+	}
+}
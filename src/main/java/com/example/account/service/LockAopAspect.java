@@ -1,11 +1,27 @@
 package com.example.account.service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.example.account.aop.AccountLock;
 import com.example.account.aop.AccountLockIdInterface;
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.exception.AccountException;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.LockMode;
+import com.example.account.type.LockScope;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -16,17 +32,102 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class LockAopAspect {
 	private final LockService lockservice;
+	private final HotAccountTracker hotAccountTracker;
+	private final ShardedBalanceService shardedBalanceService;
+	
+	@Value("${account.lock.scope:controller}")
+	private LockScope lockScope;//SERVICE면 서비스에서 직접 락을 잡는다
+	
+	@Value("${account.balance.engine:entity}")
+	private BalanceEngine balanceEngine;//락 없는 엔진이면 lockFreeEngineSafe 메서드는 락이 필요없다
 	
-	@Around("@annotation(com.example.account.aop.AccountLock) && args(request)")
-	public Object aroundMethod(ProceedingJoinPoint pjp,AccountLockIdInterface request) throws Throwable {
+	@Autowired
+	@Qualifier("accountLockExecutor")
+	private Executor accountLockExecutor;//비동기 락을 잡은 뒤 본문을 실행할 스레드
+	
+	@Around("@annotation(accountLock) && args(request)")
+	public Object aroundMethod(ProceedingJoinPoint pjp, AccountLock accountLock,
+			AccountLockIdInterface request) throws Throwable {
+		hotAccountTracker.recordRequest(request.getAccountNumber());
+		AccountLockPolicy policy = AccountLockPolicy.from(accountLock);//메서드마다 락 정책이 다르다
+		//서비스 락 모드에서도 읽기 락은 여기서 잡는다 (서비스는 쓰기 구간만 잠근다)
+		if(policy.getMode() == LockMode.NONE
+				|| (lockScope == LockScope.SERVICE && policy.getMode() == LockMode.EXCLUSIVE)
+				|| (accountLock.lockFreeEngineSafe() && isLockFree(request.getAccountNumber()))) {
+			return pjp.proceed();
+		}
+		
+		if(isAsync(pjp)) {
+			return aroundAsync(pjp, request.getAccountNumber(), policy);
+		}
+		
 		//lock 취득시도
-		lockservice.Lock(request.getAccountNumber());//request가 use cancel 2개라서 인터페이스로 가져옴
+		lockservice.Lock(request.getAccountNumber(), policy,
+				pjp.getSignature().getName());//request가 use cancel 2개라서 인터페이스로 가져옴
 		try {
 			return pjp.proceed();
 		}finally {
 			//무조건 lock 해제
-			lockservice.unLock(request.getAccountNumber());
+			lockservice.unLock(request.getAccountNumber(), policy);
 		}
 	}
+	
+	/**
+	 * CompletableFuture를 돌려주는 메서드는 락을 기다리는 동안 요청 스레드를 돌려보낸다.
+	 * 락을 잡으면 accountLockExecutor에서 본문을 실행하고, 본문 future가 끝나면 락을 푼다.
+	 * 락이 바로 잡혔으면(동기 provider) 지금 스레드에서 그대로 실행한다.
+	 */
+	private Object aroundAsync(ProceedingJoinPoint pjp, String accountNumber, AccountLockPolicy policy) {
+		CompletableFuture<Runnable> locking =
+				lockservice.lockAsync(accountNumber, policy, pjp.getSignature().getName());
+		boolean lockedNow = locking.isDone();
+		return locking.thenCompose(release -> lockedNow
+				? proceedLocked(pjp, release) : proceedLockedOnExecutor(pjp, release));
+	}
+	
+	private CompletableFuture<Object> proceedLockedOnExecutor(ProceedingJoinPoint pjp, Runnable release) {
+		CompletableFuture<Object> result = new CompletableFuture<>();
+		try {
+			accountLockExecutor.execute(() -> proceedLocked(pjp, release)
+					.whenComplete((value, e) -> {
+						if(e != null) {
+							result.completeExceptionally(e);
+						} else {
+							result.complete(value);
+						}
+					}));
+		} catch (RejectedExecutionException e) {
+			log.error("Account lock executor is full");
+			release.run();
+			result.completeExceptionally(new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK));
+		}
+		return result;
+	}
+	
+	private CompletableFuture<Object> proceedLocked(ProceedingJoinPoint pjp, Runnable release) {
+		CompletionStage<?> result;
+		try {
+			result = (CompletionStage<?>) pjp.proceed();
+		} catch (Throwable e) {
+			release.run();
+			return CompletableFuture.failedFuture(e);
+		}
+		//무조건 lock 해제
+		return result.toCompletableFuture()
+				.whenComplete((value, e) -> release.run())
+				.thenApply(value -> value);
+	}
+	
+	//락 없는 엔진이거나, entity 엔진의 샤드 계좌면 서비스가 샤드 락만 잡는다
+	private boolean isLockFree(String accountNumber) {
+		return balanceEngine.isLockFree()
+				|| (balanceEngine == BalanceEngine.ENTITY && shardedBalanceService.isSharded(accountNumber));
+	}
+	
+	private boolean isAsync(ProceedingJoinPoint pjp) {
+		return pjp.getSignature() instanceof MethodSignature
+				&& CompletionStage.class.isAssignableFrom(
+						((MethodSignature) pjp.getSignature()).getReturnType());
+	}
 
 }
@@ -0,0 +1,193 @@
+package com.example.account.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.example.account.type.CircuitBreakerState;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Redis 락 획득 서킷 브레이커
+ * 최근 windowSize 번의 획득 결과 중 에러 비율이나 느린 호출 비율이 기준을 넘으면 열린다(OPEN).
+ * 열려 있는 동안은 Redis를 부르지 않고 바로 거절하고, openDuration 뒤에 시험 호출을 허용한다(HALF_OPEN).
+ * 지연시간은 RedisAccountLockProvider가 잰 Redis 왕복 시간이다. 락 경합으로 기다린 시간은 들어가지 않는다. (기본 200ms)
+ * 경합으로 대기시간이 지난 호출은 Redis가 응답했으므로 성공으로 남는다.
+ * Redis 샤드마다 하나씩 LockCircuitBreakers가 만든다. 메트릭은 shard 태그로 나뉜다.
+ */
+@Slf4j
+public class LockCircuitBreaker {
+	private final int windowSize;
+	private final int minimumCalls;
+	private final int failureRateThreshold;
+	private final int slowCallRateThreshold;
+	private final long slowCallDurationNanos;
+	private final long openDurationNanos;
+	private final int halfOpenCalls;
+	private final String shard;
+
+	//최근 호출 결과 (링버퍼)
+	private final boolean[] failedCalls;
+	private final boolean[] slowCalls;
+	private int next;
+	private int recorded;
+	private int failures;
+	private int slows;
+
+	private volatile CircuitBreakerState state = CircuitBreakerState.CLOSED;
+	private long openedAt;
+	private int halfOpenPermits;
+	private int halfOpenSuccesses;
+
+	private final Map<CircuitBreakerState, Counter> transitionCounters =
+			new EnumMap<>(CircuitBreakerState.class);
+	private final Counter rejectedCounter;
+	private final Timer successTimer;
+	private final Timer errorTimer;
+
+	public LockCircuitBreaker(MeterRegistry meterRegistry, int windowSize, int minimumCalls,
+			int failureRateThreshold, int slowCallRateThreshold, long slowCallDurationMillis,
+			long openDurationMillis, int halfOpenCalls) {
+		this(meterRegistry, RedisLockShards.DEFAULT_SHARD, windowSize, minimumCalls, failureRateThreshold,
+				slowCallRateThreshold, slowCallDurationMillis, openDurationMillis, halfOpenCalls);
+	}
+
+	public LockCircuitBreaker(MeterRegistry meterRegistry, String shard, int windowSize, int minimumCalls,
+			int failureRateThreshold, int slowCallRateThreshold, long slowCallDurationMillis,
+			long openDurationMillis, int halfOpenCalls) {
+		this.shard = shard;
+		this.windowSize = windowSize;
+		this.minimumCalls = Math.min(minimumCalls, windowSize);
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMillis);
+		this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+		this.halfOpenCalls = halfOpenCalls;
+		this.failedCalls = new boolean[windowSize];
+		this.slowCalls = new boolean[windowSize];
+
+		Gauge.builder("account.lock.circuit.state", this, breaker -> breaker.state.ordinal())
+			.description("0=CLOSED, 1=OPEN, 2=HALF_OPEN")
+			.tag("shard", shard)
+			.register(meterRegistry);
+		for(CircuitBreakerState target : CircuitBreakerState.values()) {
+			transitionCounters.put(target, Counter.builder("account.lock.circuit.transitions")
+					.tag("to", target.name())
+					.tag("shard", shard)
+					.register(meterRegistry));
+		}
+		this.rejectedCounter = Counter.builder("account.lock.circuit.rejected")
+				.tag("shard", shard)
+				.register(meterRegistry);
+		this.successTimer = Timer.builder("account.lock.redis.acquire")
+				.tag("outcome", "success")
+				.tag("shard", shard)
+				.register(meterRegistry);
+		this.errorTimer = Timer.builder("account.lock.redis.acquire")
+				.tag("outcome", "error")
+				.tag("shard", shard)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Redis를 불러도 되는지 확인, false면 바로 fallback 한다.
+	 */
+	public synchronized boolean tryAcquirePermission() {
+		if(state == CircuitBreakerState.OPEN) {
+			if(System.nanoTime() - openedAt < openDurationNanos) {
+				rejectedCounter.increment();
+				return false;
+			}
+			transitionTo(CircuitBreakerState.HALF_OPEN);
+		}
+		if(state == CircuitBreakerState.HALF_OPEN) {
+			if(halfOpenPermits >= halfOpenCalls) {
+				rejectedCounter.increment();
+				return false;
+			}
+			halfOpenPermits++;
+		}
+		return true;
+	}
+
+	public synchronized void onSuccess(long elapsedNanos) {
+		successTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+		record(false, elapsedNanos >= slowCallDurationNanos);
+	}
+
+	public synchronized void onError(long elapsedNanos) {
+		errorTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+		record(true, elapsedNanos >= slowCallDurationNanos);
+	}
+
+	/**
+	 * Redis 상태와 상관없는 결과(락 경합, 인터럽트), 시험 호출 자리만 돌려준다.
+	 */
+	public synchronized void onIgnored() {
+		if(state == CircuitBreakerState.HALF_OPEN && halfOpenPermits > 0) {
+			halfOpenPermits--;
+		}
+	}
+
+	public CircuitBreakerState getState() {
+		return state;
+	}
+
+	public double getTransitionCount(CircuitBreakerState target) {
+		return transitionCounters.get(target).count();
+	}
+
+	private void record(boolean failed, boolean slow) {
+		if(state == CircuitBreakerState.OPEN) {//열리기 전에 나간 호출의 늦은 결과
+			return;
+		}
+		if(state == CircuitBreakerState.HALF_OPEN) {
+			if(failed || slow) {
+				transitionTo(CircuitBreakerState.OPEN);
+			} else if(++halfOpenSuccesses >= halfOpenCalls) {
+				transitionTo(CircuitBreakerState.CLOSED);
+			}
+			return;
+		}
+
+		if(recorded == windowSize) {
+			if(failedCalls[next]) failures--;
+			if(slowCalls[next]) slows--;
+		} else {
+			recorded++;
+		}
+		failedCalls[next] = failed;
+		slowCalls[next] = slow;
+		if(failed) failures++;
+		if(slow) slows++;
+		next = (next + 1) % windowSize;
+
+		if(recorded >= minimumCalls
+				&& (failures * 100 >= failureRateThreshold * recorded
+					|| slows * 100 >= slowCallRateThreshold * recorded)) {
+			transitionTo(CircuitBreakerState.OPEN);
+		}
+	}
+
+	private void transitionTo(CircuitBreakerState target) {
+		log.warn("Lock circuit breaker({}) {} -> {}", shard, state, target);
+		state = target;
+		transitionCounters.get(target).increment();
+		halfOpenPermits = 0;
+		halfOpenSuccesses = 0;
+		if(target == CircuitBreakerState.OPEN) {
+			openedAt = System.nanoTime();
+		}
+		if(target == CircuitBreakerState.CLOSED) {
+			next = 0;
+			recorded = 0;
+			failures = 0;
+			slows = 0;
+		}
+	}
+}
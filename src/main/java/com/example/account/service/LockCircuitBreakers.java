@@ -0,0 +1,63 @@
+package com.example.account.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.account.type.CircuitBreakerState;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Redis 샤드별 락 서킷 브레이커
+ * 샤드 하나가 느리거나 죽으면 그 샤드의 계좌만 fallback 하고, 나머지 샤드는 계속 Redis 락을 쓴다.
+ * 설정(account.lock.circuit-breaker.*)은 모든 샤드가 같이 쓰고, 브레이커는 샤드를 처음 쓸 때 만든다.
+ */
+@Component
+public class LockCircuitBreakers {
+	private final Function<String, LockCircuitBreaker> factory;
+	private final Map<String, LockCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+	@Autowired
+	public LockCircuitBreakers(MeterRegistry meterRegistry,
+			@Value("${account.lock.circuit-breaker.window-size:50}") int windowSize,
+			@Value("${account.lock.circuit-breaker.minimum-calls:10}") int minimumCalls,
+			@Value("${account.lock.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+			@Value("${account.lock.circuit-breaker.slow-call-rate-threshold:80}") int slowCallRateThreshold,
+			@Value("${account.lock.circuit-breaker.slow-call-duration-millis:200}") long slowCallDurationMillis,
+			@Value("${account.lock.circuit-breaker.open-duration-millis:5000}") long openDurationMillis,
+			@Value("${account.lock.circuit-breaker.half-open-calls:5}") int halfOpenCalls) {
+		this(shard -> new LockCircuitBreaker(meterRegistry, shard, windowSize, minimumCalls,
+				failureRateThreshold, slowCallRateThreshold, slowCallDurationMillis, openDurationMillis,
+				halfOpenCalls));
+	}
+
+	public LockCircuitBreakers(Function<String, LockCircuitBreaker> factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * 모든 샤드가 브레이커 하나를 같이 쓴다 (샤딩 안할 때, 테스트)
+	 */
+	public static LockCircuitBreakers single(LockCircuitBreaker circuitBreaker) {
+		return new LockCircuitBreakers(shard -> circuitBreaker);
+	}
+
+	public LockCircuitBreaker forShard(String shard) {
+		return breakers.computeIfAbsent(shard, factory);
+	}
+
+	/**
+	 * 지금까지 쓴 샤드의 브레이커 상태
+	 */
+	public Map<String, CircuitBreakerState> getStates() {
+		Map<String, CircuitBreakerState> states = new TreeMap<>();
+		breakers.forEach((shard, breaker) -> states.put(shard, breaker.getState()));
+		return states;
+	}
+}
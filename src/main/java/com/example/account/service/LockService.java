@@ -1,49 +1,218 @@
 package com.example.account.service;
 
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
-
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.dto.HeldAccountLock;
 import com.example.account.exception.AccountException;
-import com.example.account.type.ErrorCode;
+import com.example.account.type.LockScope;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * 계좌 락 서비스
+ * 실제 락은 설정으로 선택된 AccountLockProvider가 건다.
+ * 1. 락 대기시간(account.lock.wait), 유지시간(account.lock.hold) 히스토그램
+ * 2. 락 획득 실패(account.lock.failures), lease 초과(account.lock.lease.expired) 카운터
+ * 3. 지금 이 노드에서 잡고 있는 락 목록 (/actuator/accountlocks)
+ * 4. 계좌별 대기시간/실패는 HotAccountTracker로 보낸다
+ * lockAsync는 락을 기다리는 동안 스레드를 잡지 않고, 해제 동작을 future로 돌려준다.
+ * 메트릭은 모두 endpoint 태그(컨트롤러/서비스 메서드 이름)를 붙인다.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class LockService {
-	private final RedissonClient redissonClient;
-	
+	private static final String UNKNOWN_ENDPOINT = "unknown";
+	private static final String NODE = ManagementFactory.getRuntimeMXBean().getName();//pid@hostname
+	private static final AtomicLong HOLD_SEQUENCE = new AtomicLong();
+
+	private final AccountLockProvider accountLockProvider;
+	private final MeterRegistry meterRegistry;
+	private final HotAccountTracker hotAccountTracker;
+	private final String scope;
+	private final ConcurrentHashMap<Long, HeldLock> heldLocks = new ConcurrentHashMap<>();
+	//현재 스레드가 잡은 락 (계좌번호 -> heldLocks 키)
+	private final ThreadLocal<Map<String, Long>> heldByThread = ThreadLocal.withInitial(HashMap::new);
+
+	public LockService(AccountLockProvider accountLockProvider, MeterRegistry meterRegistry,
+			HotAccountTracker hotAccountTracker, @Value("${account.lock.scope:controller}") LockScope lockScope) {
+		this.accountLockProvider = accountLockProvider;
+		this.meterRegistry = meterRegistry;
+		this.hotAccountTracker = hotAccountTracker;
+		this.scope = lockScope.name().toLowerCase();
+	}
+
 	public void Lock(String accountNumber) {
-		RLock lock = redissonClient.getLock(getLockKey(accountNumber));//락 키 생성
-		log.debug("Trying lock for accountNumber : {}", accountNumber);
-		
+		Lock(accountNumber, AccountLockPolicy.DEFAULT, UNKNOWN_ENDPOINT);
+	}
+
+	public void Lock(String accountNumber, AccountLockPolicy policy, String endpoint) {
+		long startedAt = System.nanoTime();
 		try {
-			boolean isLock = lock.tryLock(1,15,TimeUnit.SECONDS);//lock걸리고 15초뒤 해체!
-			if(!isLock) {
-				log.error("=====Lock acquisition failed=====");
-				throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
-			}
-		} catch (AccountException e) {
+			accountLockProvider.lock(accountNumber, policy);
+		} catch (RuntimeException e) {
+			recordFailure(accountNumber, endpoint, e, startedAt);
 			throw e;
-		} catch (Exception e) {
-			log.error("Redis lock failed");
 		}
 
+		heldByThread.get().put(accountNumber, recordAcquired(accountNumber, policy, endpoint, startedAt));
+	}
+
+	/**
+	 * 비동기 락, 완료값(해제 동작)은 어느 스레드에서 불러도 된다.
+	 * 단 provider가 동기로 잡은 경우(future가 바로 완료) 같은 스레드에서 풀어야 한다.
+	 */
+	public CompletableFuture<Runnable> lockAsync(String accountNumber, AccountLockPolicy policy,
+			String endpoint) {
+		long startedAt = System.nanoTime();
+		CompletableFuture<Runnable> locking;
+		try {
+			locking = accountLockProvider.lockAsync(accountNumber, policy);
+		} catch (RuntimeException e) {
+			locking = CompletableFuture.failedFuture(e);
+		}
+
+		return locking.handle((release, e) -> {
+			if(e != null) {
+				Throwable cause = e instanceof CompletionException && e.getCause() != null
+						? e.getCause() : e;
+				recordFailure(accountNumber, endpoint, cause, startedAt);
+				throw cause instanceof RuntimeException
+						? (RuntimeException) cause : new CompletionException(cause);
+			}
+
+			long id = recordAcquired(accountNumber, policy, endpoint, startedAt);
+			return () -> {
+				try {
+					release.run();
+				} finally {
+					HeldLock heldLock = heldLocks.remove(id);
+					if(heldLock != null) {
+						recordHold(heldLock, System.nanoTime() - heldLock.acquiredNanos);
+					}
+				}
+			};
+		});
 	}
-	
+
 	public void unLock(String accountNumber) {
-		log.debug("Unlock for accountNumber : {}", accountNumber);
-		redissonClient.getLock(getLockKey(accountNumber)).unlock();
+		unLock(accountNumber, AccountLockPolicy.DEFAULT);
 	}
-	
-	private String getLockKey(String accountNumber) {
-		return "ACLK:"+accountNumber;
+
+	public void unLock(String accountNumber, AccountLockPolicy policy) {
+		try {
+			accountLockProvider.unlock(accountNumber, policy);
+		} finally {
+			Map<String, Long> held = heldByThread.get();
+			Long id = held.remove(accountNumber);
+			if(held.isEmpty()) {
+				heldByThread.remove();
+			}
+			HeldLock heldLock = id == null ? null : heldLocks.remove(id);
+			if(heldLock != null) {
+				recordHold(heldLock, System.nanoTime() - heldLock.acquiredNanos);
+			}
+		}
+	}
+
+	/**
+	 * 이 노드에서 잡고 있는 락, 오래 잡고 있는 순서
+	 */
+	public List<HeldAccountLock> getHeldLocks() {
+		long now = System.nanoTime();
+		return heldLocks.values().stream()
+				.sorted(Comparator.comparingLong(heldLock -> heldLock.acquiredNanos))
+				.map(heldLock -> HeldAccountLock.builder()
+						.accountNumber(heldLock.accountNumber)
+						.endpoint(heldLock.endpoint)
+						.mode(heldLock.policy.getMode())
+						.holderThread(heldLock.holderThread)
+						.holderNode(NODE)
+						.acquiredAt(heldLock.acquiredAt)
+						.heldMillis(TimeUnit.NANOSECONDS.toMillis(now - heldLock.acquiredNanos))
+						.build())
+				.collect(Collectors.toList());
+	}
+
+	private void recordFailure(String accountNumber, String endpoint, Throwable e, long startedAt) {
+		long waitNanos = System.nanoTime() - startedAt;
+		waitTimer(endpoint, "failed").record(waitNanos, TimeUnit.NANOSECONDS);
+		hotAccountTracker.recordLockWait(accountNumber, waitNanos);
+		hotAccountTracker.recordFailure(accountNumber);
+		Counter.builder("account.lock.failures")
+			.tag("endpoint", endpoint)
+			.tag("reason", e instanceof AccountException
+					? String.valueOf(((AccountException) e).getErrorCode()) : e.getClass().getSimpleName())
+			.register(meterRegistry)
+			.increment();
+	}
+
+	//락 목록에 올리고 heldLocks 키를 돌려준다
+	private long recordAcquired(String accountNumber, AccountLockPolicy policy, String endpoint,
+			long startedAt) {
+		long acquiredAt = System.nanoTime();
+		waitTimer(endpoint, "acquired").record(acquiredAt - startedAt, TimeUnit.NANOSECONDS);
+		hotAccountTracker.recordLockWait(accountNumber, acquiredAt - startedAt);
+		long id = HOLD_SEQUENCE.incrementAndGet();
+		heldLocks.put(id, new HeldLock(accountNumber, endpoint, policy,
+				Thread.currentThread().getName(), LocalDateTime.now(), acquiredAt));
+		return id;
+	}
+
+	private void recordHold(HeldLock heldLock, long heldNanos) {
+		Timer.builder("account.lock.hold")
+			.tag("endpoint", heldLock.endpoint)
+			.tag("scope", scope)
+			.publishPercentileHistogram()
+			.register(meterRegistry)
+			.record(heldNanos, TimeUnit.NANOSECONDS);
+
+		long leaseMillis = heldLock.policy.getLeaseTimeMillis();
+		if(leaseMillis > 0 && heldNanos > TimeUnit.MILLISECONDS.toNanos(leaseMillis)) {
+			//lease가 먼저 끝나서 다른 요청이 같은 계좌 락을 잡았을 수 있다
+			log.warn("Lock lease expired before unlock, accountNumber : {}, endpoint : {}",
+					heldLock.accountNumber, heldLock.endpoint);
+			Counter.builder("account.lock.lease.expired")
+				.tag("endpoint", heldLock.endpoint)
+				.register(meterRegistry)
+				.increment();
+		}
+	}
+
+	private Timer waitTimer(String endpoint, String outcome) {
+		return Timer.builder("account.lock.wait")
+				.tag("endpoint", endpoint)
+				.tag("outcome", outcome)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+
+	@AllArgsConstructor
+	private static class HeldLock {
+		private final String accountNumber;
+		private final String endpoint;
+		private final AccountLockPolicy policy;
+		private final String holderThread;
+		private final LocalDateTime acquiredAt;
+		private final long acquiredNanos;
 	}
 
 }
@@ -0,0 +1,76 @@
+package com.example.account.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import com.example.account.exception.AccountException;
+import com.example.account.type.ErrorCode;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 낙관적 락(@Version) 충돌 재시도 (account.balance.engine=optimistic)
+ * 충돌하면 지수 백오프 + full jitter 만큼 쉬고 작업 전체(새 트랜잭션)를 다시 실행한다.
+ * maxAttempts 번 모두 충돌하면 ACCOUNT_TRANSACTION_LOCK(계좌 사용 중)으로 실패한다.
+ */
+@Slf4j
+@Component
+public class OptimisticRetryExecutor {
+	private final int maxAttempts;
+	private final long backoffBaseMillis;
+	private final long backoffMaxMillis;
+	private final Counter retryCounter;
+	private final Counter exhaustedCounter;
+
+	public OptimisticRetryExecutor(MeterRegistry meterRegistry,
+			@Value("${account.balance.optimistic.max-attempts:5}") int maxAttempts,
+			@Value("${account.balance.optimistic.backoff-base-millis:5}") long backoffBaseMillis,
+			@Value("${account.balance.optimistic.backoff-max-millis:100}") long backoffMaxMillis) {
+		this.maxAttempts = maxAttempts;
+		this.backoffBaseMillis = backoffBaseMillis;
+		this.backoffMaxMillis = backoffMaxMillis;
+		this.retryCounter = Counter.builder("account.balance.optimistic.retries")
+				.register(meterRegistry);
+		this.exhaustedCounter = Counter.builder("account.balance.optimistic.exhausted")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * operation은 매번 새 트랜잭션으로 실행되어야 한다 (커밋 시점 충돌도 잡는다)
+	 */
+	public <T> T execute(Supplier<T> operation) {
+		for(int attempt = 1; ; attempt++) {
+			try {
+				return operation.get();
+			} catch (OptimisticLockingFailureException e) {
+				if(attempt >= maxAttempts) {
+					exhaustedCounter.increment();
+					log.warn("Optimistic lock retries exhausted after {} attempts", attempt);
+					throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+				}
+				retryCounter.increment();
+				backoff(attempt);
+			}
+		}
+	}
+
+	private void backoff(int attempt) {
+		long ceiling = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempt - 1, 20));
+		long sleepMillis = ThreadLocalRandom.current().nextLong(ceiling + 1);
+		if(sleepMillis == 0) {
+			return;
+		}
+		try {
+			Thread.sleep(sleepMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+		}
+	}
+}
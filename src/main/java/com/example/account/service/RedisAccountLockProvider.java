@@ -0,0 +1,736 @@
+package com.example.account.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.redisson.api.RLock;
+import org.redisson.api.RReadWriteLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.exception.AccountException;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.LockMode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Redisson RReadWriteLock 기반 계좌 락 (쓰기는 2단계 락)
+ * 1. 같은 JVM 안의 쓰기 요청은 계좌별 로컬 락에 줄을 선다.
+ * 2. 로컬 락의 맨 앞 요청만 Redis 쓰기 락(ACLK:계좌번호)을 잡는다.
+ * 3. 로컬 대기자가 있으면 Redis 락을 풀지 않고 다음 요청에게 넘긴다(hand-off).
+ * 4. 읽기(SHARED) 요청은 로컬 줄을 서지 않고 바로 Redis 읽기 락을 잡는다.
+ * 5. Redis가 느리거나 에러가 나면 그 샤드의 서킷 브레이커가 열리고, fallback 락을 쓰거나 바로 실패한다.
+ *    Redis 락은 먼저 기다리지 않고 한 번 잡아보고(그 왕복 시간만 브레이커에 남긴다), 못 잡으면 남은 대기시간만큼 기다린다.
+ *    경합으로 기다린 시간은 느린 호출로 세지 않고, 대기 초과도 Redis가 응답한 호출로 남긴다.
+ * 6. 락 키는 RedisLockShards가 고른 샤드에 잡는다. rebalance 중에는 새 샤드, 예전 샤드 순서로 둘 다 잡는다.
+ *    브레이커는 샤드마다 따로 있고, 잡아야 하는 샤드의 브레이커가 모두 닫혀 있어야 Redis를 부른다.
+ * 7. lockAsync 쓰기 요청은 계좌별 비동기 줄에 서서 같은 방식으로 Redis 락을 넘겨받는다. 줄에서 기다리는 동안 스레드를 잡지 않는다.
+ *    읽기 요청은 요청마다 소유자 id를 새로 만들어 tryLockAsync로 잡는다.
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(name = "account.lock.provider", havingValue = "redis", matchIfMissing = true)
+public class RedisAccountLockProvider implements AccountLockProvider {
+	//watchdog 모드에서 Redisson이 쓰는 기본 lease
+	private static final long WATCHDOG_LEASE_TIME_MILLIS = 30000L;
+	//lease의 절반이 지나거나 너무 여러 번 넘겼으면 다른 노드를 위해 Redis 락을 반납한다.
+	private static final int MAX_HAND_OFFS = 32;
+	//Redis 락 소유자 id, 실제 스레드 id와 겹치지 않도록 음수 영역을 사용
+	private static final AtomicLong OWNER_SEQUENCE = new AtomicLong(Long.MIN_VALUE);
+
+	private final RedisLockShards shards;
+	private final LockCircuitBreakers circuitBreakers;
+	private final AccountLockProvider fallback;//없으면 fail-fast
+	private final ConcurrentHashMap<String, LocalLock> localLocks = new ConcurrentHashMap<>();
+	//lockAsync 쓰기 요청의 줄, 동기 줄과 따로 둔다 (둘 사이는 Redis 락으로 막힌다)
+	private final ConcurrentHashMap<String, LocalLock> asyncLocalLocks = new ConcurrentHashMap<>();
+	//fallback으로 잡은 읽기 락 (계좌번호)
+	private final ThreadLocal<Set<String>> sharedFallbacks = ThreadLocal.withInitial(HashSet::new);
+	//Redis에 잡은 읽기 락 (계좌번호 -> 샤드별 락), 락을 잡은 뒤 링이 바뀌어도 같은 샤드에서 푼다
+	private final ThreadLocal<Map<String, List<RLock>>> sharedRedisLocks = ThreadLocal.withInitial(HashMap::new);
+
+	@Autowired
+	public RedisAccountLockProvider(RedisLockShards shards, LockCircuitBreakers circuitBreakers,
+			@Qualifier("lockFallback") ObjectProvider<AccountLockProvider> fallbackProvider) {
+		this(shards, circuitBreakers, fallbackProvider.getIfAvailable());
+	}
+
+	public RedisAccountLockProvider(RedissonClient redissonClient, LockCircuitBreaker circuitBreaker,
+			AccountLockProvider fallback) {
+		this(RedisLockShards.single(redissonClient), circuitBreaker, fallback);
+	}
+
+	public RedisAccountLockProvider(RedisLockShards shards, LockCircuitBreaker circuitBreaker,
+			AccountLockProvider fallback) {
+		this(shards, LockCircuitBreakers.single(circuitBreaker), fallback);
+	}
+
+	public RedisAccountLockProvider(RedisLockShards shards, LockCircuitBreakers circuitBreakers,
+			AccountLockProvider fallback) {
+		this.shards = shards;
+		this.circuitBreakers = circuitBreakers;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public void lock(String accountNumber, AccountLockPolicy policy) {
+		log.debug("Trying lock for accountNumber : {}", accountNumber);
+		if(policy.getMode() == LockMode.SHARED) {
+			lockShared(accountNumber, policy);
+			return;
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getWaitTimeMillis());
+		LocalLock localLock = join(accountNumber);
+		if(!tryLocalLock(localLock, deadline)) {
+			leave(accountNumber, localLock);
+			log.error("=====Lock acquisition failed=====");
+			throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+		}
+
+		if(localLock.redisHeld) {//앞 요청에게서 Redis 락을 넘겨받음
+			localLock.handOffs++;
+			log.debug("Lock handed off for accountNumber : {}", accountNumber);
+			return;
+		}
+
+		int generation = shards.getGeneration();
+		List<String> shardNames = shards.shardsFor(accountNumber);
+		ShardCalls calls = permit(shardNames);
+		if(calls == null) {
+			log.warn("Redis lock circuit is open, accountNumber : {}", accountNumber);
+			lockFallback(accountNumber, policy, localLock);
+			return;
+		}
+
+		List<RLock> locks = writeLocks(shardNames, accountNumber);//락 키 생성
+		List<RLock> acquired = new ArrayList<>(locks.size());
+		boolean isLock = true;
+		try {
+			for(RLock lock : locks) {
+				long waitMillis = Math.max(0L,
+						TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+				//leaseTime 뒤 자동 해제, -1이면 watchdog 연장
+				isLock = tryLock(lock, calls, waitMillis, policy.getLeaseTimeMillis(), localLock.ownerId);
+				if(!isLock) {
+					break;
+				}
+				calls.success();
+				acquired.add(lock);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			calls.ignoreRest();
+			unlockAll(acquired, localLock.ownerId);
+			failLock(accountNumber, localLock);
+			return;
+		} catch (Exception e) {
+			calls.error();
+			log.error("Redis lock failed", e);
+			unlockAll(acquired, localLock.ownerId);
+			lockFallback(accountNumber, policy, localLock);
+			return;
+		}
+
+		if(!isLock) {//Redis는 정상, 다른 노드가 잡고 있음
+			calls.contended();
+			unlockAll(acquired, localLock.ownerId);
+			failLock(accountNumber, localLock);
+			return;
+		}
+		long leaseMillis = policy.isWatchdog() ? WATCHDOG_LEASE_TIME_MILLIS : policy.getLeaseTimeMillis();
+		localLock.redisLocks = acquired;
+		localLock.shardGeneration = generation;
+		localLock.redisHeld = true;
+		localLock.redisAcquiredAt = System.nanoTime();
+		localLock.handOffWindowNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis / 2);
+		localLock.handOffs = 0;
+	}
+
+	@Override
+	public void unlock(String accountNumber, AccountLockPolicy policy) {
+		log.debug("Unlock for accountNumber : {}", accountNumber);
+		if(policy.getMode() == LockMode.SHARED) {
+			unlockShared(accountNumber, policy);
+			return;
+		}
+
+		LocalLock localLock = localLocks.get(accountNumber);
+		if(localLock == null || !localLock.lock.isHeldByCurrentThread()) {
+			return;
+		}
+
+		try {
+			if(localLock.fallbackHeld) {
+				localLock.fallbackHeld = false;
+				fallback.unlock(accountNumber, policy);
+			}
+			if(localLock.redisHeld && !canHandOff(localLock)) {
+				releaseRedisLock(accountNumber, localLock);
+			}
+		} finally {
+			leave(accountNumber, localLock);
+			localLock.lock.unlock();
+		}
+	}
+
+	/**
+	 * Redis 락을 기다리는 동안 스레드를 잡지 않는다. 완료는 Redisson 이벤트 스레드에서 된다.
+	 * 쓰기는 계좌별 비동기 로컬 줄에 서서 동기 lock과 같이 Redis 락을 넘겨받는다. 읽기는 요청마다 바로 잡는다.
+	 * 서킷이 열려 있으면 fallback을 호출 스레드에서 잡고, Redis 에러는 fallback 없이 실패한다.
+	 */
+	@Override
+	public CompletableFuture<Runnable> lockAsync(String accountNumber, AccountLockPolicy policy) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getWaitTimeMillis());
+		if(policy.getMode() != LockMode.SHARED) {
+			return lockExclusiveAsync(accountNumber, policy, deadline);
+		}
+
+		List<String> shardNames = shards.shardsFor(accountNumber);
+		ShardCalls calls = permit(shardNames);
+		if(calls == null) {
+			log.warn("Redis lock circuit is open, accountNumber : {}", accountNumber);
+			return fallbackAsync(accountNumber, policy);
+		}
+		long ownerId = OWNER_SEQUENCE.getAndIncrement();
+		return tryLockAllAsync(readLocks(shardNames, accountNumber), calls, ownerId,
+				policy.getLeaseTimeMillis(), deadline)
+				.thenApply(acquired -> () -> unlockAllAsync(acquired, ownerId));
+	}
+
+	//줄에서 차례가 오면 넘겨받은 Redis 락을 쓰거나 새로 잡는다
+	private CompletableFuture<Runnable> lockExclusiveAsync(String accountNumber, AccountLockPolicy policy,
+			long deadline) {
+		AsyncLocalLock localLock = (AsyncLocalLock) join(asyncLocalLocks, accountNumber, AsyncLocalLock::new);
+		CompletableFuture<Void> turn = localLock.enqueue();
+		if(!turn.isDone()) {
+			turn.orTimeout(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		return turn.handle((granted, e) -> e).thenCompose(e -> {
+			if(e != null) {//줄에서 기다리다 시간 초과
+				if(localLock.cancel(turn)) {
+					leaveAsync(accountNumber, localLock);
+				}
+				log.error("=====Lock acquisition failed=====");
+				return CompletableFuture.failedFuture(new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK));
+			}
+			if(localLock.redisHeld) {//앞 요청에게서 Redis 락을 넘겨받음
+				localLock.handOffs++;
+				log.debug("Lock handed off for accountNumber : {}", accountNumber);
+				return CompletableFuture.completedFuture(releaseAsync(accountNumber, localLock, null));
+			}
+			return acquireAsync(accountNumber, policy, localLock, deadline);
+		});
+	}
+
+	private CompletableFuture<Runnable> acquireAsync(String accountNumber, AccountLockPolicy policy,
+			AsyncLocalLock localLock, long deadline) {
+		int generation = shards.getGeneration();
+		List<String> shardNames = shards.shardsFor(accountNumber);
+		ShardCalls calls = permit(shardNames);
+		if(calls == null) {
+			log.warn("Redis lock circuit is open, accountNumber : {}", accountNumber);
+			return fallbackAsync(accountNumber, policy).handle((fallbackRelease, e) -> {
+				if(e != null) {
+					giveUpTurn(accountNumber, localLock);
+					throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+				}
+				return releaseAsync(accountNumber, localLock, fallbackRelease);
+			});
+		}
+
+		return tryLockAllAsync(writeLocks(shardNames, accountNumber), calls, localLock.ownerId,
+				policy.getLeaseTimeMillis(), deadline)
+				.handle((acquired, e) -> {
+					if(e != null) {
+						giveUpTurn(accountNumber, localLock);
+						throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+					}
+					long leaseMillis = policy.isWatchdog() ? WATCHDOG_LEASE_TIME_MILLIS : policy.getLeaseTimeMillis();
+					localLock.redisLocks = acquired;
+					localLock.shardGeneration = generation;
+					localLock.redisHeld = true;
+					localLock.redisAcquiredAt = System.nanoTime();
+					localLock.handOffWindowNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis / 2);
+					localLock.handOffs = 0;
+					return releaseAsync(accountNumber, localLock, null);
+				});
+	}
+
+	/**
+	 * 비동기 쓰기 락 해제 동작, 동기 unlock과 같이 넘길 수 있으면 Redis 락을 그대로 두고 다음 차례에게 넘긴다.
+	 */
+	private Runnable releaseAsync(String accountNumber, AsyncLocalLock localLock, Runnable fallbackRelease) {
+		AtomicBoolean released = new AtomicBoolean();
+		return () -> {
+			if(!released.compareAndSet(false, true)) {
+				return;
+			}
+			if(fallbackRelease != null) {
+				fallbackRelease.run();
+			}
+			if(localLock.redisHeld && !canHandOff(localLock)) {
+				releaseRedisLockAsync(localLock);
+			}
+			giveUpTurn(accountNumber, localLock);
+		};
+	}
+
+	//줄에서 빠지고 다음 요청에게 차례를 넘긴다. 기다리다 시간이 지난 요청은 대신 줄에서 빼고 건너뛴다
+	private void giveUpTurn(String accountNumber, AsyncLocalLock localLock) {
+		leaveAsync(accountNumber, localLock);
+		CompletableFuture<Void> next;
+		while((next = localLock.next()) != null && !next.complete(null)) {
+			leaveAsync(accountNumber, localLock);
+		}
+	}
+
+	private void leaveAsync(String accountNumber, AsyncLocalLock localLock) {
+		if(leave(asyncLocalLocks, accountNumber, localLock) && localLock.redisHeld) {
+			releaseRedisLockAsync(localLock);
+		}
+	}
+
+	private void releaseRedisLockAsync(LocalLock localLock) {
+		localLock.redisHeld = false;
+		List<RLock> locks = localLock.redisLocks;
+		localLock.redisLocks = Collections.emptyList();
+		unlockAllAsync(locks, localLock.ownerId);
+	}
+
+	private CompletableFuture<Runnable> fallbackAsync(String accountNumber, AccountLockPolicy policy) {
+		if(fallback == null) {
+			return CompletableFuture.failedFuture(new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK));
+		}
+		return fallback.lockAsync(accountNumber, policy);
+	}
+
+	/**
+	 * 샤드 순서대로 하나씩 잡는다. 전부 잡으면 잡은 락 목록, 못 잡거나 에러면 잡은 것을 풀고 AccountException으로 실패
+	 */
+	private CompletableFuture<List<RLock>> tryLockAllAsync(List<RLock> locks, ShardCalls calls, long ownerId,
+			long leaseTimeMillis, long deadline) {
+		List<RLock> acquired = new ArrayList<>(locks.size());//순서대로 하나씩 잡으므로 동기화 필요없음
+		CompletableFuture<Boolean> locking = CompletableFuture.completedFuture(true);
+		for(RLock lock : locks) {
+			locking = locking.thenCompose(isLock -> {
+				if(!isLock) {
+					return CompletableFuture.completedFuture(false);
+				}
+				long waitMillis = Math.max(0L,
+						TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+				return tryLockAsync(lock, calls, waitMillis, leaseTimeMillis, ownerId)
+						.thenApply(result -> {
+							if(result) {
+								calls.success();
+								acquired.add(lock);
+							}
+							return result;
+						});
+			});
+		}
+
+		return locking.handle((isLock, e) -> {
+			if(e != null) {
+				calls.error();
+				log.error("Redis lock failed", e);
+				unlockAllAsync(acquired, ownerId);
+				throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+			}
+			if(!isLock) {
+				calls.contended();
+				unlockAllAsync(acquired, ownerId);
+				log.error("=====Lock acquisition failed=====");
+				throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+			}
+			return acquired;
+		});
+	}
+
+	private void lockShared(String accountNumber, AccountLockPolicy policy) {
+		List<String> shardNames = shards.shardsFor(accountNumber);
+		ShardCalls calls = permit(shardNames);
+		if(calls == null) {
+			log.warn("Redis lock circuit is open, accountNumber : {}", accountNumber);
+			lockSharedFallback(accountNumber, policy);
+			return;
+		}
+
+		List<RLock> acquired = new ArrayList<>(2);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getWaitTimeMillis());
+		boolean isLock = true;
+		try {
+			for(RLock lock : readLocks(shardNames, accountNumber)) {
+				long waitMillis = acquired.isEmpty() ? policy.getWaitTimeMillis()
+						: Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+				calls.start();
+				isLock = lock.tryLock(0L, policy.getLeaseTimeMillis(), TimeUnit.MILLISECONDS);
+				calls.answered();
+				if(!isLock && waitMillis > 0) {
+					isLock = lock.tryLock(waitMillis, policy.getLeaseTimeMillis(), TimeUnit.MILLISECONDS);
+				}
+				if(!isLock) {
+					break;
+				}
+				calls.success();
+				acquired.add(lock);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			calls.ignoreRest();
+			unlockAll(acquired);
+			throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+		} catch (Exception e) {
+			calls.error();
+			log.error("Redis lock failed", e);
+			unlockAll(acquired);
+			lockSharedFallback(accountNumber, policy);
+			return;
+		}
+
+		if(!isLock) {
+			calls.contended();
+			unlockAll(acquired);
+			log.error("=====Lock acquisition failed=====");
+			throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+		}
+		sharedRedisLocks.get().put(accountNumber, acquired);
+	}
+
+	private void unlockShared(String accountNumber, AccountLockPolicy policy) {
+		Set<String> fallbacks = sharedFallbacks.get();
+		if(fallbacks.remove(accountNumber)) {
+			if(fallbacks.isEmpty()) {
+				sharedFallbacks.remove();
+			}
+			fallback.unlock(accountNumber, policy);
+			return;
+		}
+		Map<String, List<RLock>> redisLocks = sharedRedisLocks.get();
+		List<RLock> locks = redisLocks.remove(accountNumber);
+		if(redisLocks.isEmpty()) {
+			sharedRedisLocks.remove();
+		}
+		if(locks != null) {
+			unlockAll(locks);
+		}
+	}
+
+	private void lockSharedFallback(String accountNumber, AccountLockPolicy policy) {
+		if(fallback == null) {
+			log.error("=====Lock acquisition failed=====");
+			throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+		}
+		fallback.lock(accountNumber, policy);
+		sharedFallbacks.get().add(accountNumber);
+	}
+
+	private void lockFallback(String accountNumber, AccountLockPolicy policy, LocalLock localLock) {
+		if(fallback == null) {
+			failLock(accountNumber, localLock);
+			return;
+		}
+		try {
+			fallback.lock(accountNumber, policy);
+		} catch (RuntimeException e) {
+			leave(accountNumber, localLock);
+			localLock.lock.unlock();
+			throw e;
+		}
+		localLock.fallbackHeld = true;
+	}
+
+	private void failLock(String accountNumber, LocalLock localLock) {
+		leave(accountNumber, localLock);
+		localLock.lock.unlock();
+		log.error("=====Lock acquisition failed=====");
+		throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+	}
+
+	private LocalLock join(String accountNumber) {
+		return join(localLocks, accountNumber, LocalLock::new);
+	}
+
+	private static LocalLock join(ConcurrentHashMap<String, LocalLock> locks, String accountNumber,
+			Supplier<LocalLock> factory) {
+		return locks.compute(accountNumber, (key, current) -> {
+			LocalLock localLock = current == null ? factory.get() : current;
+			localLock.waiters++;
+			return localLock;
+		});
+	}
+
+	/**
+	 * 대기열에서 빠진다. 마지막 요청이 빠질 때만 Redis 락을 반납한다.
+	 * (대기자가 남아 있으면 Redis 락은 그대로 다음 요청에게 넘어간다)
+	 */
+	private void leave(String accountNumber, LocalLock localLock) {
+		if(leave(localLocks, accountNumber, localLock) && localLock.redisHeld) {
+			releaseRedisLock(accountNumber, localLock);
+		}
+	}
+
+	//마지막 요청이 빠졌으면 true
+	private static boolean leave(ConcurrentHashMap<String, LocalLock> locks, String accountNumber,
+			LocalLock localLock) {
+		boolean[] last = {false};
+		locks.computeIfPresent(accountNumber, (key, current) -> {
+			if(current != localLock || --current.waiters > 0) {
+				return current;
+			}
+			last[0] = true;
+			return null;
+		});
+		return last[0];
+	}
+
+	private boolean tryLocalLock(LocalLock localLock, long deadline) {
+		try {
+			return localLock.lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private boolean canHandOff(LocalLock localLock) {
+		return localLock.shardGeneration == shards.getGeneration()//링이 바뀌었으면 새 샤드에서 다시 잡는다
+				&& localLock.handOffs < MAX_HAND_OFFS
+				&& System.nanoTime() - localLock.redisAcquiredAt < localLock.handOffWindowNanos;
+	}
+
+	private void releaseRedisLock(String accountNumber, LocalLock localLock) {
+		localLock.redisHeld = false;
+		List<RLock> locks = localLock.redisLocks;
+		localLock.redisLocks = Collections.emptyList();
+		unlockAll(locks, localLock.ownerId);
+	}
+
+	private void unlockAll(List<RLock> locks, long ownerId) {
+		for(RLock lock : locks) {
+			try {
+				lock.unlockAsync(ownerId).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				log.error("Redis unlock failed");
+			} catch (Exception e) {
+				log.error("Redis unlock failed");
+			}
+		}
+	}
+
+	private void unlockAllAsync(List<RLock> locks, long ownerId) {
+		for(RLock lock : locks) {
+			lock.unlockAsync(ownerId).whenComplete((result, e) -> {
+				if(e != null) {
+					log.error("Redis unlock failed");
+				}
+			});
+		}
+	}
+
+	private void unlockAll(List<RLock> locks) {
+		for(RLock lock : locks) {
+			try {
+				lock.unlock();
+			} catch (Exception e) {
+				log.error("Redis unlock failed");
+			}
+		}
+	}
+
+	/**
+	 * 기다리지 않고 한 번 잡아본 왕복 시간을 브레이커에 남기고, 못 잡았으면 남은 시간만큼 기다려서 잡는다.
+	 */
+	private static boolean tryLock(RLock lock, ShardCalls calls, long waitMillis, long leaseTimeMillis,
+			long ownerId) throws Exception {
+		calls.start();
+		boolean isLock = lock.tryLockAsync(0L, leaseTimeMillis, TimeUnit.MILLISECONDS, ownerId).get();
+		calls.answered();
+		if(!isLock && waitMillis > 0) {
+			isLock = lock.tryLockAsync(waitMillis, leaseTimeMillis, TimeUnit.MILLISECONDS, ownerId).get();
+		}
+		return isLock;
+	}
+
+	private static CompletableFuture<Boolean> tryLockAsync(RLock lock, ShardCalls calls, long waitMillis,
+			long leaseTimeMillis, long ownerId) {
+		calls.start();
+		return lock.tryLockAsync(0L, leaseTimeMillis, TimeUnit.MILLISECONDS, ownerId)
+				.toCompletableFuture()
+				.thenCompose(isLock -> {
+					calls.answered();
+					if(isLock || waitMillis <= 0) {
+						return CompletableFuture.completedFuture(isLock);
+					}
+					return lock.tryLockAsync(waitMillis, leaseTimeMillis, TimeUnit.MILLISECONDS, ownerId)
+							.toCompletableFuture();
+				});
+	}
+
+	/**
+	 * 잡아야 하는 샤드의 브레이커가 모두 허가해야 Redis를 부른다. 하나라도 열려 있으면 null
+	 */
+	private ShardCalls permit(List<String> shardNames) {
+		List<LockCircuitBreaker> breakers = new ArrayList<>(shardNames.size());
+		for(String shard : shardNames) {
+			LockCircuitBreaker breaker = circuitBreakers.forShard(shard);
+			if(!breaker.tryAcquirePermission()) {
+				breakers.forEach(LockCircuitBreaker::onIgnored);
+				return null;
+			}
+			breakers.add(breaker);
+		}
+		return new ShardCalls(breakers);
+	}
+
+	private List<RLock> readLocks(List<String> shardNames, String accountNumber) {
+		List<RLock> locks = new ArrayList<>(2);
+		for(String shard : shardNames) {
+			locks.add(shards.client(shard).getReadWriteLock(getLockKey(accountNumber)).readLock());
+		}
+		return locks;
+	}
+
+	private List<RLock> writeLocks(List<String> shardNames, String accountNumber) {
+		List<RLock> locks = new ArrayList<>(2);
+		for(String shard : shardNames) {
+			RReadWriteLock readWriteLock = shards.client(shard).getReadWriteLock(getLockKey(accountNumber));
+			locks.add(readWriteLock.writeLock());
+		}
+		return locks;
+	}
+
+	private String getLockKey(String accountNumber) {
+		return "ACLK:"+accountNumber;
+	}
+
+	/**
+	 * 샤드 순서대로 락을 잡으면서 샤드별 브레이커에 결과를 남긴다.
+	 * 지연시간은 첫 응답(기다리지 않는 시도)까지의 왕복 시간이다. 경합으로 기다린 시간은 넣지 않는다.
+	 * 에러면 그 샤드만 실패로 남고, 부르지 못한 뒤 샤드는 시험 호출 자리만 돌려준다.
+	 */
+	private static class ShardCalls {
+		private final List<LockCircuitBreaker> breakers;
+		private final AtomicInteger next = new AtomicInteger();
+		private volatile long startedAt;
+		private volatile long roundTripNanos;
+
+		private ShardCalls(List<LockCircuitBreaker> breakers) {
+			this.breakers = breakers;
+		}
+
+		private void start() {
+			startedAt = System.nanoTime();
+			roundTripNanos = -1L;
+		}
+
+		private void answered() {
+			roundTripNanos = System.nanoTime() - startedAt;
+		}
+
+		private void success() {
+			breakers.get(next.getAndIncrement()).onSuccess(elapsed());
+		}
+
+		//Redis는 응답했고 다른 소유자가 잡고 있어서 대기시간이 지났다
+		private void contended() {
+			if(next.get() < breakers.size()) {
+				success();
+			}
+			ignoreRest();
+		}
+
+		private void error() {
+			int failed = next.getAndIncrement();
+			if(failed < breakers.size()) {
+				breakers.get(failed).onError(elapsed());
+			}
+			ignoreRest();
+		}
+
+		//응답 전 에러면 에러까지 걸린 시간
+		private long elapsed() {
+			return roundTripNanos >= 0 ? roundTripNanos : System.nanoTime() - startedAt;
+		}
+
+		private void ignoreRest() {
+			for(int i = next.getAndSet(breakers.size()); i < breakers.size(); i++) {
+				breakers.get(i).onIgnored();
+			}
+		}
+	}
+
+	/**
+	 * 계좌별 로컬 락, waiters는 락을 잡고 있거나 기다리는 요청 수
+	 */
+	private static class LocalLock {
+		final ReentrantLock lock = new ReentrantLock(true);
+		final long ownerId = OWNER_SEQUENCE.getAndIncrement();
+		int waiters;
+		volatile boolean redisHeld;
+		volatile List<RLock> redisLocks = Collections.emptyList();
+		volatile int shardGeneration;
+		volatile boolean fallbackHeld;
+		volatile long redisAcquiredAt;
+		volatile long handOffWindowNanos;
+		volatile int handOffs;
+	}
+
+	/**
+	 * lockAsync용 로컬 락, 스레드 대신 차례 future로 줄을 선다 (Redis 락 상태는 LocalLock 필드를 같이 쓴다)
+	 */
+	private static class AsyncLocalLock extends LocalLock {
+		private final Deque<CompletableFuture<Void>> turns = new ArrayDeque<>();
+		private boolean busy;
+
+		//비어 있으면 바로 차례, 아니면 앞 요청이 풀 때 완료된다
+		private synchronized CompletableFuture<Void> enqueue() {
+			if(!busy) {
+				busy = true;
+				return CompletableFuture.completedFuture(null);
+			}
+			CompletableFuture<Void> turn = new CompletableFuture<>();
+			turns.addLast(turn);
+			return turn;
+		}
+
+		//기다리다 포기한 차례를 뺀다. 이미 차례를 받은 뒤면 false (푸는 쪽이 대신 줄에서 뺀다)
+		private synchronized boolean cancel(CompletableFuture<Void> turn) {
+			return turns.remove(turn);
+		}
+
+		private synchronized CompletableFuture<Void> next() {
+			CompletableFuture<Void> next = turns.pollFirst();
+			if(next == null) {
+				busy = false;
+			}
+			return next;
+		}
+	}
+
+}
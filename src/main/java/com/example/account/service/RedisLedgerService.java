@@ -0,0 +1,285 @@
+package com.example.account.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.account.domain.Account;
+import com.example.account.dto.TransactionDto;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Redis 잔액 원장 (account.balance.engine=redis-ledger)
+ * 1. 계좌 잔액/상태/소유자는 Redis 해시(ACBAL:계좌번호)에 있다. 처음 쓰는 계좌는 DB에서 올린다.
+ * 2. 잔액 사용/취소는 Lua 스크립트 한 번으로 검증 + 변경 + 거래 기록(ACLEDGER 스트림) 추가를 한다.
+ * 3. DB(Transaction, Account.balance)는 RedisLedgerWriter가 스트림을 모아서 나중에 반영한다.
+ * 아직 반영되지 않은 사용 거래는 ACTX:거래id 해시에 남겨서 취소할 수 있게 한다.
+ * 스트림과 해시를 같은 스크립트에서 쓰므로 샤딩 없이 기본 RedissonClient 하나를 쓴다.
+ */
+@Slf4j
+@Service
+public class RedisLedgerService {
+	static final String STREAM_KEY = "ACLEDGER";
+	private static final String BALANCE_KEY_PREFIX = "ACBAL:";
+	private static final String PENDING_TRANSACTION_KEY_PREFIX = "ACTX:";
+	private static final String MISS = "MISS";
+	private static final String OK = "OK";
+
+	//KEYS: 잔액 해시, 스트림, 대기 거래 / ARGV: userId, amount, transactionId, transactedAt, accountNumber
+	private static final String USE_SCRIPT =
+			"local account = redis.call('HMGET', KEYS[1], 'status', 'userId', 'balance') "
+			+ "if not account[1] then return {'MISS', '0'} end "
+			+ "if account[2] ~= ARGV[1] then return {'USER_ACCOUNT_UN_MATCH', account[3]} end "
+			+ "if account[1] ~= 'IN_USE' then return {'ACCOUNT_ALREADY_UNREGISTERED', account[3]} end "
+			+ "local balance = tonumber(account[3]) "
+			+ "local amount = tonumber(ARGV[2]) "
+			+ "if balance < amount then return {'AMOUNT_EXCEED_BALANCE', account[3]} end "
+			+ "balance = string.format('%d', balance - amount) "
+			+ "redis.call('HSET', KEYS[1], 'balance', balance) "
+			+ "redis.call('XADD', KEYS[2], '*', 'type', 'USE', 'accountNumber', ARGV[5], 'amount', ARGV[2], "
+			+ "'balance', balance, 'transactionId', ARGV[3], 'transactedAt', ARGV[4]) "
+			+ "redis.call('HSET', KEYS[3], 'accountNumber', ARGV[5], 'amount', ARGV[2], 'transactedAt', ARGV[4]) "
+			+ "return {'OK', balance}";
+
+	//KEYS: 잔액 해시, 스트림 / ARGV: amount, transactionId, transactedAt, accountNumber
+	private static final String CANCEL_SCRIPT =
+			"local account = redis.call('HMGET', KEYS[1], 'status', 'balance') "
+			+ "if not account[1] then return {'MISS', '0'} end "
+			+ "if account[1] ~= 'IN_USE' then return {'ACCOUNT_ALREADY_UNREGISTERED', account[2]} end "
+			+ "local balance = string.format('%d', tonumber(account[2]) + tonumber(ARGV[1])) "
+			+ "redis.call('HSET', KEYS[1], 'balance', balance) "
+			+ "redis.call('XADD', KEYS[2], '*', 'type', 'CANCEL', 'accountNumber', ARGV[4], 'amount', ARGV[1], "
+			+ "'balance', balance, 'transactionId', ARGV[2], 'transactedAt', ARGV[3]) "
+			+ "return {'OK', balance}";
+
+	//KEYS: 잔액 해시 / ARGV: status, userId, balance (이미 올라와 있으면 그대로 둔다)
+	private static final String LOAD_SCRIPT =
+			"if redis.call('EXISTS', KEYS[1]) == 0 then "
+			+ "redis.call('HSET', KEYS[1], 'status', ARGV[1], 'userId', ARGV[2], 'balance', ARGV[3]) end "
+			+ "return {'OK', redis.call('HGET', KEYS[1], 'balance')}";
+
+	//KEYS: 잔액 해시
+	private static final String UNREGISTER_SCRIPT =
+			"local balance = redis.call('HGET', KEYS[1], 'balance') "
+			+ "if not balance then return {'MISS', '0'} end "
+			+ "if tonumber(balance) > 0 then return {'BALANCE_NOT_EMPTY', balance} end "
+			+ "redis.call('HSET', KEYS[1], 'status', 'UN_REGISTERED') "
+			+ "return {'OK', balance}";
+
+	private final ObjectProvider<RedissonClient> redissonClient;
+	private final AccountRepository accountRepository;
+	private final AccountUserRepository accountUserRepository;
+	private final TransactionRepository transactionRepository;
+	private final boolean enabled;
+
+	public RedisLedgerService(ObjectProvider<RedissonClient> redissonClient,
+			AccountRepository accountRepository, AccountUserRepository accountUserRepository,
+			TransactionRepository transactionRepository,
+			@Value("${account.balance.engine:entity}") BalanceEngine balanceEngine) {
+		this.redissonClient = redissonClient;
+		this.accountRepository = accountRepository;
+		this.accountUserRepository = accountUserRepository;
+		this.transactionRepository = transactionRepository;
+		this.enabled = balanceEngine == BalanceEngine.REDIS_LEDGER;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public TransactionDto useBalance(Long userId, String accountNumber, Long amount) {
+		String transactionId = newTransactionId();
+		LocalDateTime transactedAt = LocalDateTime.now();
+		List<String> keys = Arrays.asList(balanceKey(accountNumber), STREAM_KEY,
+				pendingTransactionKey(transactionId));
+		Object[] args = {String.valueOf(userId), String.valueOf(amount), transactionId,
+				String.valueOf(toEpochMillis(transactedAt)), accountNumber};
+
+		List<Object> result = eval(USE_SCRIPT, keys, args);
+		if(MISS.equals(result.get(0))) {
+			load(accountNumber);
+			result = eval(USE_SCRIPT, keys, args);
+		}
+		String code = String.valueOf(result.get(0));
+		if(ErrorCode.USER_ACCOUNT_UN_MATCH.name().equals(code) && !accountUserRepository.existsById(userId)) {
+			throw new AccountException(ErrorCode.USER_NOT_FOUND);
+		}
+		throwIfFailed(code);
+
+		return toDto(TransactionType.USE, accountNumber, amount, result, transactionId, transactedAt);
+	}
+
+	public TransactionDto cancelBalance(String transactionId, String accountNumber, Long amount) {
+		LedgerTransaction original = findTransaction(transactionId);
+		if(!exists(accountNumber)) {
+			load(accountNumber);
+		}
+		validateCancelBalance(original, accountNumber, amount);
+
+		String cancelTransactionId = newTransactionId();
+		LocalDateTime transactedAt = LocalDateTime.now();
+		List<String> keys = Arrays.asList(balanceKey(accountNumber), STREAM_KEY);
+		Object[] args = {String.valueOf(amount), cancelTransactionId,
+				String.valueOf(toEpochMillis(transactedAt)), accountNumber};
+
+		List<Object> result = eval(CANCEL_SCRIPT, keys, args);
+		if(MISS.equals(result.get(0))) {
+			load(accountNumber);
+			result = eval(CANCEL_SCRIPT, keys, args);
+		}
+		throwIfFailed(String.valueOf(result.get(0)));
+
+		return toDto(TransactionType.CANCEL, accountNumber, amount, result, cancelTransactionId, transactedAt);
+	}
+
+	/**
+	 * 계좌 해지 전에 원장 잔액을 확인하고 해지 상태로 바꾼다.
+	 * 원장에 올라온 계좌면 true, DB 잔액은 늦게 반영되므로 잔액은 원장 값으로만 본다.
+	 * 원장에 없는 계좌(또는 다른 엔진)는 false, 호출하는 쪽이 DB 잔액으로 확인한다.
+	 */
+	public boolean unregister(String accountNumber) {
+		if(!enabled) {
+			return false;
+		}
+		String code = String.valueOf(eval(UNREGISTER_SCRIPT,
+				Collections.singletonList(balanceKey(accountNumber))).get(0));
+		if(MISS.equals(code)) {
+			return false;
+		}
+		throwIfFailed(code);
+		return true;
+	}
+
+	static String balanceKey(String accountNumber) {
+		return BALANCE_KEY_PREFIX + accountNumber;
+	}
+
+	static String accountNumberOf(String balanceKey) {
+		return balanceKey.substring(BALANCE_KEY_PREFIX.length());
+	}
+
+	static String balanceKeyPattern() {
+		return BALANCE_KEY_PREFIX + "*";
+	}
+
+	static String pendingTransactionKey(String transactionId) {
+		return PENDING_TRANSACTION_KEY_PREFIX + transactionId;
+	}
+
+	static LocalDateTime fromEpochMillis(String epochMillis) {
+		return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(epochMillis)), ZoneId.systemDefault());
+	}
+
+	private void load(String accountNumber) {
+		Account account = accountRepository.findByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		eval(LOAD_SCRIPT, Collections.singletonList(balanceKey(accountNumber)),
+				account.getAccountStatus().name(), String.valueOf(account.getAccountUser().getId()),
+				String.valueOf(account.getBalance()));
+		log.debug("Loaded account into ledger, accountNumber : {}", accountNumber);
+	}
+
+	private boolean exists(String accountNumber) {
+		return client().getKeys().countExists(balanceKey(accountNumber)) > 0;
+	}
+
+	//DB에 반영된 거래를 먼저 보고, 없으면 아직 스트림에 있는 거래를 본다
+	private LedgerTransaction findTransaction(String transactionId) {
+		TransactionDto transaction = transactionRepository.findDtoByTransactionId(transactionId).orElse(null);
+		if(transaction != null) {
+			return new LedgerTransaction(transaction.getAccountNumber(),
+					transaction.getAmount(), transaction.getTransactedAt());
+		}
+		Map<String, String> pending = client()
+				.<String, String>getMap(pendingTransactionKey(transactionId), StringCodec.INSTANCE)
+				.readAllMap();
+		if(pending.isEmpty()) {
+			throw new AccountException(ErrorCode.TRANSACTION_NOT_FOUND);
+		}
+		return new LedgerTransaction(pending.get("accountNumber"), Long.valueOf(pending.get("amount")),
+				fromEpochMillis(pending.get("transactedAt")));
+	}
+
+	private void validateCancelBalance(LedgerTransaction original, String accountNumber, Long amount) {
+		if(!Objects.equals(original.accountNumber, accountNumber)) {
+			throw new AccountException(ErrorCode.TRANSACTION_ACCOUNT_UN_MATCH);
+		}
+		if(!Objects.equals(original.amount, amount)) {
+			throw new AccountException(ErrorCode.CANCEL_MUST_FULLY);
+		}
+		if(original.transactedAt.isBefore(LocalDateTime.now().minusYears(1))) {
+			throw new AccountException(ErrorCode.TOO_OLD_ORDER_TO_CANCEL);
+		}
+		if(amount < 0) {
+			throw new AccountException(ErrorCode.INVALID_REQUEST);
+		}
+	}
+
+	private void throwIfFailed(String code) {
+		if(!OK.equals(code)) {
+			throw new AccountException(ErrorCode.valueOf(code));
+		}
+	}
+
+	private List<Object> eval(String script, List<String> keys, Object... args) {
+		return client().getScript(StringCodec.INSTANCE)
+				.eval(RScript.Mode.READ_WRITE, script, RScript.ReturnType.MULTI,
+						new ArrayList<Object>(keys), args);
+	}
+
+	private RedissonClient client() {
+		return redissonClient.getObject();
+	}
+
+	private TransactionDto toDto(TransactionType transactionType, String accountNumber, Long amount,
+			List<Object> result, String transactionId, LocalDateTime transactedAt) {
+		return TransactionDto.builder()
+				.accountNumber(accountNumber)
+				.transactionType(transactionType)
+				.transactionResultType(TransactionResultType.S)
+				.amount(amount)
+				.balanceSnapshot(Long.valueOf(String.valueOf(result.get(1))))
+				.transactionId(transactionId)
+				.transactedAt(transactedAt)
+				.build();
+	}
+
+	private static long toEpochMillis(LocalDateTime dateTime) {
+		return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	private static String newTransactionId() {
+		return UUID.randomUUID().toString().replace("-", "");
+	}
+
+	@AllArgsConstructor
+	private static class LedgerTransaction {
+		private final String accountNumber;
+		private final Long amount;
+		private final LocalDateTime transactedAt;
+	}
+}
@@ -0,0 +1,283 @@
+package com.example.account.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.redisson.api.RLock;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamReadGroupArgs;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.LedgerReconciliation;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Redis 원장 스트림(ACLEDGER)을 모아서 DB에 반영한다 (account.balance.engine=redis-ledger)
+ * 1. batchSize 만큼 읽어서 한 트랜잭션으로 Transaction 저장 + Account.balance 를 스냅샷 값으로 맞춘다.
+ * 2. 커밋 뒤 ack, 스트림에서 지운다. ack 전에 죽으면 다음 기동 때 대기(pending) 기록부터 다시 반영한다.
+ *    이미 저장된 거래id는 건너뛰고, 잔액은 절대값이라 다시 반영해도 같다.
+ * 3. 여러 노드가 떠 있어도 순서가 섞이지 않도록 writer 락을 잡은 노드 하나만 반영한다.
+ * 4. 기동할 때 스트림을 모두 반영한 뒤 Redis와 DB 잔액을 비교한 결과를 남긴다.
+ *    비교하는 동안 writer 락을 잡는다. 다른 노드가 반영 중이면 잠깐 기다리고, 못 잡으면 비교하지 않는다.
+ *    (락 없이 비교하면 다른 노드가 반영 중인 계좌가 모두 불일치로 보인다)
+ */
+@Slf4j
+@Component
+public class RedisLedgerWriter {
+	private static final String GROUP = "ledger-writer";
+	private static final String CONSUMER = "writer";
+	private static final String WRITER_LOCK_KEY = "ACLEDGER:writer";
+
+	private final ObjectProvider<RedissonClient> redissonClient;
+	private final AccountRepository accountRepository;
+	private final TransactionRepository transactionRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final boolean enabled;
+	private final int batchSize;
+	private final long flushIntervalMillis;
+	private final long reconcileWaitMillis;
+
+	private ScheduledExecutorService scheduler;
+	private volatile LedgerReconciliation.Report lastReport;
+
+	public RedisLedgerWriter(ObjectProvider<RedissonClient> redissonClient,
+			AccountRepository accountRepository, TransactionRepository transactionRepository,
+			TransactionTemplate transactionTemplate,
+			@Value("${account.balance.engine:entity}") BalanceEngine balanceEngine,
+			@Value("${account.ledger.batch-size:500}") int batchSize,
+			@Value("${account.ledger.flush-interval-millis:200}") long flushIntervalMillis,
+			@Value("${account.ledger.reconcile-wait-millis:5000}") long reconcileWaitMillis) {
+		this.redissonClient = redissonClient;
+		this.accountRepository = accountRepository;
+		this.transactionRepository = transactionRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.enabled = balanceEngine == BalanceEngine.REDIS_LEDGER;
+		this.batchSize = batchSize;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.reconcileWaitMillis = reconcileWaitMillis;
+	}
+
+	@PostConstruct
+	public void start() {
+		if(!enabled) {
+			return;
+		}
+		createGroup();
+		reconcile();
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ledger-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::flushQuietly,
+				flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if(scheduler == null) {
+			return;
+		}
+		scheduler.shutdown();
+		scheduler.awaitTermination(5, TimeUnit.SECONDS);
+		flushQuietly();
+	}
+
+	/**
+	 * writer 락을 잡고 스트림을 끝까지 반영한 뒤 Redis/DB 잔액을 비교한다.
+	 * 다른 노드가 락을 놓지 않으면 비교하지 않은(skipped) 결과를 돌려주고 마지막 결과는 그대로 둔다.
+	 */
+	public LedgerReconciliation.Report reconcile() {
+		RLock writerLock = redissonClient.getObject().getLock(WRITER_LOCK_KEY);
+		boolean locked;
+		try {
+			locked = writerLock.tryLock(reconcileWaitMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			locked = false;
+		}
+		if(!locked) {
+			log.warn("Ledger writer lock is held by another node, reconciliation skipped");
+			return LedgerReconciliation.Report.builder()
+					.checkedAt(LocalDateTime.now())
+					.skipped(true)
+					.mismatches(Collections.emptyList())
+					.build();
+		}
+		try {
+			return reconcileLocked();
+		} finally {
+			writerLock.unlock();
+		}
+	}
+
+	//writer 락은 재진입이라 flush가 같은 락을 다시 잡는다
+	private LedgerReconciliation.Report reconcileLocked() {
+		while(flush() > 0) {
+			//남은 기록이 없을 때까지
+		}
+
+		RedissonClient client = redissonClient.getObject();
+		List<LedgerReconciliation.Mismatch> mismatches = new ArrayList<>();
+		int checkedAccounts = 0;
+		for(String balanceKey : client.getKeys().getKeysByPattern(RedisLedgerService.balanceKeyPattern())) {
+			String accountNumber = RedisLedgerService.accountNumberOf(balanceKey);
+			Long redisBalance = Long.valueOf(client.<String, String>getMap(balanceKey, StringCodec.INSTANCE)
+					.get("balance"));
+			Long dbBalance = accountRepository.findBalanceByAccountNumber(accountNumber).orElse(null);
+			checkedAccounts++;
+			if(!redisBalance.equals(dbBalance)) {
+				mismatches.add(LedgerReconciliation.Mismatch.builder()
+						.accountNumber(accountNumber)
+						.redisBalance(redisBalance)
+						.dbBalance(dbBalance)
+						.build());
+			}
+		}
+
+		LedgerReconciliation.Report report = LedgerReconciliation.Report.builder()
+				.checkedAt(LocalDateTime.now())
+				.checkedAccounts(checkedAccounts)
+				.pendingRecords(stream().size())
+				.mismatches(mismatches)
+				.build();
+		if(!mismatches.isEmpty()) {
+			log.error("Ledger reconciliation found {} mismatched accounts", mismatches.size());
+		}
+		lastReport = report;
+		return report;
+	}
+
+	public LedgerReconciliation.Report getLastReport() {
+		return lastReport;
+	}
+
+	/**
+	 * 한 묶음 반영, 반영한 기록 수를 돌려준다. (다른 노드가 반영 중이면 0)
+	 */
+	public int flush() {
+		RLock writerLock = redissonClient.getObject().getLock(WRITER_LOCK_KEY);
+		if(!writerLock.tryLock()) {
+			return 0;
+		}
+		try {
+			RStream<String, String> stream = stream();
+			//ack 못하고 죽었던 기록부터
+			Map<StreamMessageId, Map<String, String>> records = stream.readGroup(GROUP, CONSUMER,
+					StreamReadGroupArgs.greaterThan(new StreamMessageId(0, 0)).count(batchSize));
+			if(records.isEmpty()) {
+				records = stream.readGroup(GROUP, CONSUMER,
+						StreamReadGroupArgs.neverDelivered().count(batchSize));
+			}
+			if(records.isEmpty()) {
+				return 0;
+			}
+
+			Map<StreamMessageId, Map<String, String>> ordered = records.entrySet().stream()
+					.sorted(Map.Entry.comparingByKey(Comparator
+							.comparingLong(StreamMessageId::getId0)
+							.thenComparingLong(StreamMessageId::getId1)))
+					.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
+							(a, b) -> a, LinkedHashMap::new));
+			transactionTemplate.executeWithoutResult(status -> persist(ordered.values()));
+
+			StreamMessageId[] ids = ordered.keySet().toArray(new StreamMessageId[0]);
+			stream.ack(GROUP, ids);
+			stream.remove(ids);
+			String[] pendingKeys = ordered.values().stream()
+					.filter(record -> TransactionType.USE.name().equals(record.get("type")))
+					.map(record -> RedisLedgerService.pendingTransactionKey(record.get("transactionId")))
+					.toArray(String[]::new);
+			if(pendingKeys.length > 0) {
+				redissonClient.getObject().getKeys().delete(pendingKeys);
+			}
+			return ids.length;
+		} finally {
+			writerLock.unlock();
+		}
+	}
+
+	private void persist(Iterable<Map<String, String>> records) {
+		List<String> transactionIds = new ArrayList<>();
+		records.forEach(record -> transactionIds.add(record.get("transactionId")));
+		Set<String> saved = transactionRepository.findByTransactionIdIn(transactionIds).stream()
+				.map(Transaction::getTransactionId)
+				.collect(Collectors.toSet());
+
+		Map<String, Account> accounts = new HashMap<>();
+		List<Transaction> transactions = new ArrayList<>();
+		for(Map<String, String> record : records) {
+			Account account = accounts.computeIfAbsent(record.get("accountNumber"),
+					accountNumber -> accountRepository.findByAccountNumber(accountNumber)
+						.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT)));
+			Long balance = Long.valueOf(record.get("balance"));
+			account.setBalance(balance);//스트림 순서대로 덮어쓰므로 마지막 스냅샷이 남는다
+			if(saved.contains(record.get("transactionId"))) {
+				continue;
+			}
+			transactions.add(Transaction.builder()
+					.transactionType(TransactionType.valueOf(record.get("type")))
+					.transactionResultType(TransactionResultType.S)
+					.account(account)
+					.amount(Long.valueOf(record.get("amount")))
+					.balanceSnapshot(balance)
+					.transactionId(record.get("transactionId"))
+					.transactedAt(RedisLedgerService.fromEpochMillis(record.get("transactedAt")))
+					.build());
+		}
+		transactionRepository.saveAll(transactions);
+	}
+
+	private void flushQuietly() {
+		try {
+			while(flush() >= batchSize) {
+				//꽉 찬 묶음이면 바로 다음 묶음
+			}
+		} catch (Exception e) {
+			log.error("Ledger flush failed", e);
+		}
+	}
+
+	private void createGroup() {
+		try {
+			stream().createGroup(GROUP, StreamMessageId.ALL);
+		} catch (Exception e) {
+			log.debug("Ledger consumer group already exists");
+		}
+	}
+
+	private RStream<String, String> stream() {
+		return redissonClient.getObject().getStream(RedisLedgerService.STREAM_KEY, StringCodec.INSTANCE);
+	}
+}
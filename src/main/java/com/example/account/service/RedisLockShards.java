@@ -0,0 +1,289 @@
+package com.example.account.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 계좌 락 Redis 샤드 (계좌번호 consistent hash)
+ * account.lock.shards.addresses 가 비어 있으면 기본 RedissonClient 하나만 쓴다.
+ * 샤드 목록이 바뀌면(reshard) rebalance-grace 동안은 새 샤드와 예전 샤드 락을 둘 다 잡는다.
+ * 예전 링으로 잡힌 락이 lease로 풀리거나, 다른 노드가 아직 예전 링을 쓰고 있어도 같은 계좌를 두 곳에서 잡지 않는다.
+ * 모든 노드의 reshard는 grace 안에 끝나야 한다.
+ * grace 안에 다시 reshard하면 grace가 남은 예전 링을 모두 유지하고, 그 링들의 샤드 락도 같이 잡는다.
+ * grace가 끝난 링은 버리고, 어느 링에도 남지 않은 샤드의 클라이언트는 닫는다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "account.lock.provider", havingValue = "redis", matchIfMissing = true)
+public class RedisLockShards {
+	public static final String DEFAULT_SHARD = "default";
+	//샤드 하나당 링 위의 가상 노드 수
+	private static final int VIRTUAL_NODES = 160;
+
+	private final Function<String, RedissonClient> clientFactory;
+	private final long rebalanceGraceNanos;
+	private final LongSupplier nanoClock;
+	private final Map<String, RedissonClient> clients = new ConcurrentHashMap<>();
+
+	private volatile HashRing ring;
+	//reshard 직후 grace 동안만 사용, 최근 링부터
+	private volatile List<PreviousRing> previousRings = Collections.emptyList();
+	private volatile int generation;
+	private ScheduledExecutorService retirer;
+
+	@Autowired
+	public RedisLockShards(ObjectProvider<RedissonClient> defaultClient,
+			@Value("${account.lock.shards.addresses:}") List<String> addresses,
+			@Value("${account.lock.shards.rebalance-grace-millis:60000}") long rebalanceGraceMillis) {
+		this(address -> DEFAULT_SHARD.equals(address) ? defaultClient.getObject() : createClient(address),
+				addresses, rebalanceGraceMillis, System::nanoTime);
+	}
+
+	RedisLockShards(Function<String, RedissonClient> clientFactory, List<String> addresses,
+			long rebalanceGraceMillis, LongSupplier nanoClock) {
+		this.clientFactory = clientFactory;
+		this.rebalanceGraceNanos = TimeUnit.MILLISECONDS.toNanos(rebalanceGraceMillis);
+		this.nanoClock = nanoClock;
+		this.ring = new HashRing(shardsOf(addresses));
+	}
+
+	/**
+	 * RedissonClient 하나만 쓰는 샤드 (샤딩 안함)
+	 */
+	public static RedisLockShards single(RedissonClient redissonClient) {
+		return new RedisLockShards(address -> redissonClient, Collections.emptyList(), 0L, System::nanoTime);
+	}
+
+	/**
+	 * 계좌 락을 잡아야 하는 샤드, 현재 샤드가 먼저 오고 rebalance 중이면 예전 샤드가 최근 링부터 뒤에 붙는다.
+	 */
+	public List<String> shardsFor(String accountNumber) {
+		String shard = ring.shardOf(accountNumber);
+		List<PreviousRing> previous = previousRings;
+		if(previous.isEmpty()) {
+			return Collections.singletonList(shard);
+		}
+
+		List<String> shards = null;
+		long now = nanoClock.getAsLong();
+		for(PreviousRing previousRing : previous) {
+			if(!previousRing.isLive(now)) {
+				continue;
+			}
+			String previousShard = previousRing.ring.shardOf(accountNumber);
+			if(shard.equals(previousShard) || (shards != null && shards.contains(previousShard))) {
+				continue;
+			}
+			if(shards == null) {
+				shards = new ArrayList<>(previous.size() + 1);
+				shards.add(shard);
+			}
+			shards.add(previousShard);
+		}
+		return shards == null ? Collections.singletonList(shard) : shards;
+	}
+
+	public List<RedissonClient> clientsFor(String accountNumber) {
+		return shardsFor(accountNumber).stream()
+				.map(this::client)
+				.collect(Collectors.toList());
+	}
+
+	public String shardOf(String accountNumber) {
+		return ring.shardOf(accountNumber);
+	}
+
+	public List<String> getShards() {
+		return ring.shards;
+	}
+
+	/**
+	 * 링이 바뀔 때마다 증가, 바뀌기 전에 잡은 락은 다른 요청에게 넘기지 않는다(hand-off).
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	public boolean isRebalancing() {
+		long now = nanoClock.getAsLong();
+		return previousRings.stream().anyMatch(previousRing -> previousRing.isLive(now));
+	}
+
+	public synchronized void reshard(List<String> addresses) {
+		HashRing next = new HashRing(shardsOf(addresses));
+		if(next.shards.equals(ring.shards)) {
+			return;
+		}
+		log.info("Resharding account locks {} -> {}", ring.shards, next.shards);
+		long now = nanoClock.getAsLong();
+		List<PreviousRing> rings = new ArrayList<>(previousRings.size() + 1);
+		rings.add(new PreviousRing(ring, now + rebalanceGraceNanos));
+		for(PreviousRing previousRing : previousRings) {
+			if(previousRing.isLive(now)) {//연속 reshard면 grace가 남은 링도 계속 잡는다
+				log.warn("Resharding during rebalance, keeping previous ring {}", previousRing.ring.shards);
+				rings.add(previousRing);
+			}
+		}
+		previousRings = Collections.unmodifiableList(rings);
+		ring = next;
+		generation++;
+		scheduleRetire();
+	}
+
+	/**
+	 * grace가 끝난 링을 버리고, 현재 링과 남은 링 어디에도 없는 샤드의 클라이언트를 닫는다.
+	 */
+	synchronized void retireExpiredRings() {
+		long now = nanoClock.getAsLong();
+		List<PreviousRing> live = previousRings.stream()
+				.filter(previousRing -> previousRing.isLive(now))
+				.collect(Collectors.toList());
+		previousRings = Collections.unmodifiableList(live);
+
+		Set<String> inUse = new HashSet<>(ring.shards);
+		live.forEach(previousRing -> inUse.addAll(previousRing.ring.shards));
+		for(String shard : new ArrayList<>(clients.keySet())) {
+			if(inUse.contains(shard) || DEFAULT_SHARD.equals(shard)) {
+				continue;
+			}
+			RedissonClient client = clients.remove(shard);
+			if(client != null) {
+				log.info("Shutting down removed lock shard {}", shard);
+				client.shutdown();
+			}
+		}
+	}
+
+	@PreDestroy
+	public synchronized void shutdown() {
+		if(retirer != null) {
+			retirer.shutdownNow();
+		}
+		clients.forEach((address, client) -> {
+			if(!DEFAULT_SHARD.equals(address)) {
+				client.shutdown();
+			}
+		});
+	}
+
+	public RedissonClient client(String shard) {
+		return clients.computeIfAbsent(shard, clientFactory);
+	}
+
+	private void scheduleRetire() {
+		if(retirer == null) {
+			retirer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "lock-shard-retire");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		retirer.schedule(() -> {
+			try {
+				retireExpiredRings();
+			} catch (Exception e) {
+				log.error("Retiring lock shards failed", e);
+			}
+		}, rebalanceGraceNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private static List<String> shardsOf(List<String> addresses) {
+		List<String> shards = addresses == null ? Collections.emptyList() : addresses.stream()
+				.filter(Objects::nonNull)
+				.map(String::trim)
+				.filter(address -> !address.isEmpty())
+				.distinct()
+				.sorted()
+				.collect(Collectors.toList());
+		return shards.isEmpty() ? Collections.singletonList(DEFAULT_SHARD) : shards;
+	}
+
+	private static RedissonClient createClient(String address) {
+		Config config = new Config();
+		config.useSingleServer().setAddress(address);
+		return Redisson.create(config);
+	}
+
+	private static class PreviousRing {
+		private final HashRing ring;
+		private final long until;
+
+		private PreviousRing(HashRing ring, long until) {
+			this.ring = ring;
+			this.until = until;
+		}
+
+		private boolean isLive(long now) {
+			return now - until < 0;
+		}
+	}
+
+	/**
+	 * consistent hash 링, 샤드가 추가/삭제되면 그 샤드 몫의 계좌만 옮겨간다.
+	 */
+	static class HashRing {
+		private final List<String> shards;
+		private final TreeMap<Long, String> nodes = new TreeMap<>();
+
+		HashRing(List<String> shards) {
+			this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+			for(String shard : shards) {
+				for(int i = 0; i < VIRTUAL_NODES; i++) {
+					nodes.put(hash(shard + "#" + i), shard);
+				}
+			}
+		}
+
+		String shardOf(String accountNumber) {
+			if(shards.size() == 1) {
+				return shards.get(0);
+			}
+			SortedMap<Long, String> tail = nodes.tailMap(hash(accountNumber));
+			return tail.isEmpty() ? nodes.firstEntry().getValue() : tail.get(tail.firstKey());
+		}
+
+		private static long hash(String key) {
+			try {
+				byte[] digest = MessageDigest.getInstance("MD5")
+						.digest(key.getBytes(StandardCharsets.UTF_8));
+				long hash = 0;
+				for(int i = 0; i < 8; i++) {
+					hash = (hash << 8) | (digest[i] & 0xff);
+				}
+				return hash;
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
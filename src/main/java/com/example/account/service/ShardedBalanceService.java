@@ -0,0 +1,319 @@
+package com.example.account.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountBalanceShard;
+import com.example.account.domain.AccountUser;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.BalanceShardStatus;
+import com.example.account.dto.TransactionDto;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountBalanceShardRepository;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.LockMode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 샤드 계좌 (요청이 몰리는 계좌의 잔액을 N개 AccountBalanceShard 행으로 나눈다, entity 엔진 전용)
+ * 1. 사용: 임의의 샤드부터 돌면서 잔액이 충분하고 비어 있는(tryLock) 샤드 하나만 잠그고 조건부 UPDATE로 차감한다.
+ *    샤드마다 락 키(계좌번호#샤드번호)가 달라서 같은 계좌의 요청이 샤드 수만큼 동시에 처리된다.
+ * 2. 샤드 하나로 부족하면 모든 샤드를 잠그고 합친 잔액에서 차감한 뒤 고르게 다시 나눈다.
+ * 3. 취소: 임의의 샤드에 UPDATE로 더한다. 재분배는 샤드 행을 FOR UPDATE로 읽으므로 락 키 없이도 섞이지 않는다.
+ * 샤드 계좌 목록은 refresh 주기마다 요청 스레드 하나만 다시 읽고, 나머지 요청은 그 동안 예전 목록을 본다.
+ * 샤드를 켠 직후 다른 노드는 그 동안 기존 방식으로 처리한다.
+ * (Account.balance가 0이라 사용은 잔액 부족으로 실패하고, 취소 금액은 Account.balance에 더해져서 합계에 포함된다)
+ * 다른 엔진은 샤드 잔액을 모르므로 샤드 계좌가 있으면 시작하지 않고, 샤드를 켜지도 않는다.
+ */
+@Slf4j
+@Service
+public class ShardedBalanceService {
+	//비어 있는 샤드를 찾을 때는 기다리지 않는다
+	private static final AccountLockPolicy TRY_LOCK =
+			new AccountLockPolicy(0L, AccountLockPolicy.DEFAULT.getLeaseTimeMillis(), LockMode.EXCLUSIVE);
+
+	private final AccountRepository accountRepository;
+	private final AccountUserRepository accountUserRepository;
+	private final TransactionRepository transactionRepository;
+	private final AccountBalanceShardRepository accountBalanceShardRepository;
+	private final LockService lockService;
+	private final TransactionTemplate transactionTemplate;
+	private final long refreshNanos;
+	private final BalanceEngine balanceEngine;
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+
+	private volatile Set<String> shardedAccounts = Collections.emptySet();
+	private volatile long refreshedAt;
+
+	public ShardedBalanceService(AccountRepository accountRepository,
+			AccountUserRepository accountUserRepository, TransactionRepository transactionRepository,
+			AccountBalanceShardRepository accountBalanceShardRepository, LockService lockService,
+			TransactionTemplate transactionTemplate,
+			@Value("${account.balance.shards.refresh-seconds:10}") long refreshSeconds,
+			@Value("${account.balance.engine:entity}") BalanceEngine balanceEngine) {
+		this.accountRepository = accountRepository;
+		this.accountUserRepository = accountUserRepository;
+		this.transactionRepository = transactionRepository;
+		this.accountBalanceShardRepository = accountBalanceShardRepository;
+		this.lockService = lockService;
+		this.transactionTemplate = transactionTemplate;
+		this.refreshNanos = TimeUnit.SECONDS.toNanos(refreshSeconds);
+		this.balanceEngine = balanceEngine;
+	}
+
+	/**
+	 * 처음 목록은 시작할 때 읽는다
+	 * 샤드 계좌가 있는데 entity 엔진이 아니면 Account.balance(0)만 보고 모든 사용이 실패하므로 시작하지 않는다.
+	 */
+	@PostConstruct
+	public void start() {
+		refresh();
+		if(balanceEngine != BalanceEngine.ENTITY && !shardedAccounts.isEmpty()) {
+			throw new IllegalStateException("Sharded accounts " + shardedAccounts
+					+ " need account.balance.engine=entity, engine : " + balanceEngine
+					+ ". Merge them first with the balanceshards endpoint (shards=1) on engine=entity");
+		}
+	}
+
+	public boolean isSharded(String accountNumber) {
+		if(System.nanoTime() - refreshedAt > refreshNanos && refreshing.compareAndSet(false, true)) {
+			//한 스레드만 다시 읽는다. 실패하면 refreshedAt이 그대로라 다음 요청이 다시 읽는다
+			try {
+				refresh();
+			} finally {
+				refreshing.set(false);
+			}
+		}
+		return shardedAccounts.contains(accountNumber);
+	}
+
+	public TransactionDto useBalance(Long userId, String accountNumber, Long amount) {
+		AccountUser user = accountUserRepository.findById(userId)
+				.orElseThrow(() -> new AccountException(ErrorCode.USER_NOT_FOUND));
+		Account account = accountRepository.findByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		if(!Objects.equals(user.getId(), account.getAccountUser().getId())) {
+			throw new AccountException(ErrorCode.USER_ACCOUNT_UN_MATCH);
+		}
+		if(account.getAccountStatus() != AccountStatus.IN_USE) {
+			throw new AccountException(ErrorCode.ACCOUNT_ALREADY_UNREGISTERED);
+		}
+		List<AccountBalanceShard> shards = shardsOf(account);
+
+		int start = ThreadLocalRandom.current().nextInt(shards.size());
+		for(int i = 0; i < shards.size(); i++) {
+			AccountBalanceShard shard = shards.get((start + i) % shards.size());
+			if(shard.getBalance() < amount) {
+				continue;//읽은 값이 틀려도 UPDATE 조건에서 다시 확인한다
+			}
+			String lockId = lockId(accountNumber, shard.getShardIndex());
+			try {
+				lockService.Lock(lockId, TRY_LOCK, "useBalanceSharded");
+			} catch (AccountException e) {
+				continue;//다른 요청이 쓰고 있는 샤드는 건너뛴다
+			}
+			try {
+				TransactionDto transactionDto = transactionTemplate.execute(status ->
+						useShardBalance(account, shard, amount));
+				if(transactionDto != null) {
+					return transactionDto;
+				}
+			} finally {
+				lockService.unLock(lockId, TRY_LOCK);
+			}
+		}
+		return rebalanceAndUse(account, shards, amount);
+	}
+
+	public TransactionDto cancelBalance(String transactionId, String accountNumber, Long amount) {
+		Transaction transaction = transactionRepository.findByTransactionId(transactionId)
+				.orElseThrow(() -> new AccountException(ErrorCode.TRANSACTION_NOT_FOUND));
+		Account account = accountRepository.findByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		if(!Objects.equals(transaction.getAccount().getId(), account.getId())) {
+			throw new AccountException(ErrorCode.TRANSACTION_ACCOUNT_UN_MATCH);
+		}
+		if(!Objects.equals(transaction.getAmount(), amount)) {
+			throw new AccountException(ErrorCode.CANCEL_MUST_FULLY);
+		}
+		if(transaction.getTransactedAt().isBefore(LocalDateTime.now().minusYears(1))) {
+			throw new AccountException(ErrorCode.TOO_OLD_ORDER_TO_CANCEL);
+		}
+		if(amount < 0) {
+			throw new AccountException(ErrorCode.INVALID_REQUEST);
+		}
+		List<AccountBalanceShard> shards = shardsOf(account);
+		AccountBalanceShard shard = shards.get(ThreadLocalRandom.current().nextInt(shards.size()));
+
+		return transactionTemplate.execute(status -> {
+			if(accountBalanceShardRepository.addBalance(shard.getId(), amount, LocalDateTime.now()) == 0) {
+				throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);//샤드 변경 중
+			}
+			return saveTransaction(TransactionType.CANCEL, account, amount);
+		});
+	}
+
+	/**
+	 * 계좌 잔액을 shardCount 개로 나눈다. 1 이하면 샤드를 합쳐서 Account.balance로 되돌린다.
+	 * 계좌 락(기존 방식 요청 차단) + 샤드 행 FOR UPDATE 안에서 바꾼다.
+	 */
+	public BalanceShardStatus reshard(String accountNumber, int shardCount) {
+		if(shardCount > 1 && balanceEngine != BalanceEngine.ENTITY) {
+			throw new AccountException(ErrorCode.INVALID_REQUEST);//다른 엔진은 샤드 잔액을 모른다
+		}
+		lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, "reshardBalance");
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				Account account = accountRepository.findByAccountNumber(accountNumber)
+						.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+				List<AccountBalanceShard> shards = accountBalanceShardRepository.findForUpdateByAccount(account);
+				long total = account.getBalance() + sum(shards);
+
+				accountBalanceShardRepository.deleteAll(shards);
+				if(shardCount <= 1) {
+					account.setBalance(total);
+					return;
+				}
+				account.setBalance(0L);
+				List<AccountBalanceShard> newShards = new ArrayList<>();
+				for(int i = 0; i < shardCount; i++) {
+					newShards.add(AccountBalanceShard.builder()
+							.account(account)
+							.shardIndex(i)
+							.balance(0L)
+							.build());
+				}
+				distribute(newShards, total);
+				accountBalanceShardRepository.saveAll(newShards);
+			});
+		} finally {
+			lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT);
+		}
+		log.info("Resharded balance, accountNumber : {}, shards : {}", accountNumber, shardCount);
+		refresh();
+		return getStatus(accountNumber);
+	}
+
+	public BalanceShardStatus getStatus(String accountNumber) {
+		Account account = accountRepository.findByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		List<AccountBalanceShard> shards = accountBalanceShardRepository.findByAccountOrderByShardIndex(account);
+		return BalanceShardStatus.builder()
+				.accountNumber(accountNumber)
+				.shardBalances(shards.stream()
+						.map(AccountBalanceShard::getBalance)
+						.collect(Collectors.toList()))
+				.totalBalance(account.getBalance() + sum(shards))
+				.build();
+	}
+
+	static String lockId(String accountNumber, int shardIndex) {
+		return accountNumber + "#" + shardIndex;
+	}
+
+	//샤드 하나에서 차감, 그 사이 잔액이 줄었으면 null
+	private TransactionDto useShardBalance(Account account, AccountBalanceShard shard, Long amount) {
+		if(accountBalanceShardRepository.useBalanceIfEnough(shard.getId(), amount, LocalDateTime.now()) == 0) {
+			return null;
+		}
+		return saveTransaction(TransactionType.USE, account, amount);
+	}
+
+	//모든 샤드를 샤드번호 순서로 잠그고 합친 잔액에서 차감한 뒤 다시 나눈다
+	private TransactionDto rebalanceAndUse(Account account, List<AccountBalanceShard> shards, Long amount) {
+		List<String> lockIds = shards.stream()
+				.map(shard -> lockId(account.getAccountNumber(), shard.getShardIndex()))
+				.collect(Collectors.toList());
+		List<String> locked = new ArrayList<>();
+		try {
+			for(String lockId : lockIds) {
+				lockService.Lock(lockId, AccountLockPolicy.DEFAULT, "rebalanceSharded");
+				locked.add(lockId);
+			}
+			return transactionTemplate.execute(status -> {
+				List<AccountBalanceShard> current = accountBalanceShardRepository.findForUpdateByAccount(account);
+				if(current.size() != shards.size()) {
+					throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);//샤드 변경 중
+				}
+				long total = sum(current);
+				if(total < amount) {
+					throw new AccountException(ErrorCode.AMOUNT_EXCEED_BALANCE);
+				}
+				distribute(current, total - amount);
+				log.debug("Rebalanced shards, accountNumber : {}", account.getAccountNumber());
+				return saveTransaction(TransactionType.USE, account, amount);
+			});
+		} finally {
+			for(int i = locked.size() - 1; i >= 0; i--) {
+				lockService.unLock(locked.get(i), AccountLockPolicy.DEFAULT);
+			}
+		}
+	}
+
+	//스냅샷은 같은 트랜잭션에서 읽은 합계, 다른 샤드가 동시에 바뀌면 정확하지 않다
+	private TransactionDto saveTransaction(TransactionType transactionType, Account account, Long amount) {
+		Long balanceSnapshot = accountRepository.findBalanceByAccountNumber(account.getAccountNumber()).orElse(0L)
+				+ accountBalanceShardRepository.sumBalanceByAccountNumber(account.getAccountNumber()).orElse(0L);
+		return TransactionDto.fromEntity(transactionRepository.save(Transaction.builder()
+				.transactionType(transactionType)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(amount)
+				.balanceSnapshot(balanceSnapshot)
+				.transactionId(UUID.randomUUID().toString().replace("-", ""))
+				.transactedAt(LocalDateTime.now())
+				.build()));
+	}
+
+	private List<AccountBalanceShard> shardsOf(Account account) {
+		List<AccountBalanceShard> shards = accountBalanceShardRepository.findByAccountOrderByShardIndex(account);
+		if(shards.isEmpty()) {
+			throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);//샤드 해제 중
+		}
+		return shards;
+	}
+
+	private void refresh() {
+		shardedAccounts = new HashSet<>(accountBalanceShardRepository.findShardedAccountNumbers());
+		refreshedAt = System.nanoTime();
+	}
+
+	private static long sum(List<AccountBalanceShard> shards) {
+		return shards.stream().mapToLong(AccountBalanceShard::getBalance).sum();
+	}
+
+	//나머지는 앞 샤드부터 1씩 더 준다
+	private static void distribute(List<AccountBalanceShard> shards, long total) {
+		long base = total / shards.size();
+		long remainder = total % shards.size();
+		for(int i = 0; i < shards.size(); i++) {
+			shards.get(i).setBalance(base + (i < remainder ? 1 : 0));
+		}
+	}
+}
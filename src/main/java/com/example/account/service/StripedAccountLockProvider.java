@@ -0,0 +1,77 @@
+package com.example.account.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.exception.AccountException;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.LockMode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * JVM 안에서만 동작하는 계좌 락 (단일 노드, 테스트용)
+ * 계좌번호 해시로 고정 크기 ReentrantReadWriteLock 배열 중 하나를 고른다.
+ * JVM 락이라 leaseTime은 쓰지 않는다.
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(name = "account.lock.provider", havingValue = "striped")
+public class StripedAccountLockProvider implements AccountLockProvider {
+	private final ReentrantReadWriteLock[] stripes;
+
+	public StripedAccountLockProvider(@Value("${account.lock.stripes:256}") int stripeCount) {
+		//마스크 연산을 위해 2의 제곱수로 맞춘다
+		int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+		this.stripes = new ReentrantReadWriteLock[size];
+		for(int i = 0; i < size; i++) {
+			stripes[i] = new ReentrantReadWriteLock();
+		}
+	}
+
+	@Override
+	public void lock(String accountNumber, AccountLockPolicy policy) {
+		log.debug("Trying lock for accountNumber : {}", accountNumber);
+		try {
+			if(!lockOf(accountNumber, policy).tryLock(policy.getWaitTimeMillis(), TimeUnit.MILLISECONDS)) {
+				log.error("=====Lock acquisition failed=====");
+				throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+		}
+	}
+
+	@Override
+	public void unlock(String accountNumber, AccountLockPolicy policy) {
+		log.debug("Unlock for accountNumber : {}", accountNumber);
+		ReentrantReadWriteLock stripe = stripeOf(accountNumber);
+		if(policy.getMode() == LockMode.SHARED) {
+			if(stripe.getReadHoldCount() > 0) {
+				stripe.readLock().unlock();
+			}
+		} else if(stripe.isWriteLockedByCurrentThread()) {
+			stripe.writeLock().unlock();
+		}
+	}
+
+	private Lock lockOf(String accountNumber, AccountLockPolicy policy) {
+		ReentrantReadWriteLock stripe = stripeOf(accountNumber);
+		return policy.getMode() == LockMode.SHARED ? stripe.readLock() : stripe.writeLock();
+	}
+
+	private ReentrantReadWriteLock stripeOf(String accountNumber) {
+		int hash = accountNumber.hashCode();
+		hash ^= (hash >>> 16);
+		return stripes[hash & (stripes.length - 1)];
+	}
+}
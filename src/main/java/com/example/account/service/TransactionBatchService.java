@@ -0,0 +1,269 @@
+package com.example.account.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.validation.Validator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountUser;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.TransactionBatch;
+import com.example.account.dto.TransactionDto;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 일괄 사용/취소 (POST /transaction/batch)
+ * 1. 항목을 계좌별로 묶고, 계좌마다 락을 한 번만 잡는다.
+ * 2. 한 계좌의 항목은 요청 순서대로 한 트랜잭션에서 반영한다. 계좌 행은 FOR UPDATE로 읽는다.
+ *    검증에 실패한 항목은 그 항목만 실패(F 거래 기록)하고 나머지는 계속 반영한다.
+ * 3. DB가 잔액 기준이 아닌 엔진(redis-ledger, in-memory)과 샤드 계좌는 항목마다 그 엔진으로 처리한다.
+ * 컨트롤러는 요청을 window 단위로 읽어서 넘기고, 계좌 묶음이 끝날 때마다 그 결과를 바로 내보낸다.
+ * 그래서 결과는 계좌 묶음 순서로 나오고, 요청 위치는 Result.index로 맞춘다.
+ */
+@Slf4j
+@Service
+public class TransactionBatchService {
+	private static final String ENDPOINT = "transactionBatch";
+
+	private final TransactionService transactionService;
+	private final AccountRepository accountRepository;
+	private final AccountUserRepository accountUserRepository;
+	private final TransactionRepository transactionRepository;
+	private final LockService lockService;
+	private final TransactionTemplate transactionTemplate;
+	private final HotAccountTracker hotAccountTracker;
+	private final TransactionWriteBehind transactionWriteBehind;
+	private final Validator validator;
+	private final BalanceEngine balanceEngine;
+
+	public TransactionBatchService(TransactionService transactionService,
+			AccountRepository accountRepository, AccountUserRepository accountUserRepository,
+			TransactionRepository transactionRepository, LockService lockService,
+			TransactionTemplate transactionTemplate, HotAccountTracker hotAccountTracker,
+			TransactionWriteBehind transactionWriteBehind, Validator validator,
+			@Value("${account.balance.engine:entity}") BalanceEngine balanceEngine) {
+		this.transactionService = transactionService;
+		this.accountRepository = accountRepository;
+		this.accountUserRepository = accountUserRepository;
+		this.transactionRepository = transactionRepository;
+		this.lockService = lockService;
+		this.transactionTemplate = transactionTemplate;
+		this.hotAccountTracker = hotAccountTracker;
+		this.transactionWriteBehind = transactionWriteBehind;
+		this.validator = validator;
+		this.balanceEngine = balanceEngine;
+	}
+
+	/**
+	 * 요청 순서대로 모은 결과
+	 */
+	public List<TransactionBatch.Result> execute(List<TransactionBatch.Item> items) {
+		List<TransactionBatch.Result> results = new ArrayList<>(items.size());
+		execute(items, 0, results::addAll);
+		results.sort(Comparator.comparingInt(TransactionBatch.Result::getIndex));
+		return results;
+	}
+
+	/**
+	 * items[0]이 요청의 offset 번째 항목, 계좌 묶음 하나가 끝날 때마다 그 결과를 completed로 넘긴다.
+	 */
+	public void execute(List<TransactionBatch.Item> items, int offset,
+			Consumer<List<TransactionBatch.Result>> completed) {
+		TransactionBatch.Result[] results = new TransactionBatch.Result[items.size()];
+		//계좌번호 -> 항목 위치 (처음 나온 계좌 순서)
+		Map<String, List<Integer>> groups = new LinkedHashMap<>();
+		List<Integer> invalid = new ArrayList<>();
+		for(int i = 0; i < items.size(); i++) {
+			TransactionBatch.Item item = items.get(i);
+			if(!isValid(item)) {
+				results[i] = TransactionBatch.Result.failure(i, item, ErrorCode.INVALID_REQUEST);
+				invalid.add(i);
+				continue;
+			}
+			groups.computeIfAbsent(item.getAccountNumber(), accountNumber -> new ArrayList<>()).add(i);
+		}
+		if(!invalid.isEmpty()) {
+			completed.accept(collect(invalid, results, offset));
+		}
+
+		groups.forEach((accountNumber, indexes) -> {
+			if(balanceEngine == BalanceEngine.REDIS_LEDGER || balanceEngine == BalanceEngine.IN_MEMORY
+					|| (balanceEngine == BalanceEngine.ENTITY && transactionService.isShardedAccount(accountNumber))) {
+				indexes.forEach(i -> results[i] = executeOne(i, items.get(i)));
+			} else {
+				executeAccount(accountNumber, indexes, items, results);
+			}
+			completed.accept(collect(indexes, results, offset));
+		});
+	}
+
+	//window 안 위치를 요청 위치로 바꿔서 모은다
+	private static List<TransactionBatch.Result> collect(List<Integer> indexes, TransactionBatch.Result[] results,
+			int offset) {
+		List<TransactionBatch.Result> collected = new ArrayList<>(indexes.size());
+		for(int i : indexes) {
+			results[i].setIndex(offset + i);
+			collected.add(results[i]);
+		}
+		return collected;
+	}
+
+	private boolean isValid(TransactionBatch.Item item) {
+		if(item.getTransactionType() == TransactionType.USE) {
+			return validator.validate(item.toUseRequest()).isEmpty();
+		}
+		if(item.getTransactionType() == TransactionType.CANCEL) {
+			return validator.validate(item.toCancelRequest()).isEmpty();
+		}
+		return false;
+	}
+
+	private void executeAccount(String accountNumber, List<Integer> indexes,
+			List<TransactionBatch.Item> items, TransactionBatch.Result[] results) {
+		try {
+			lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, ENDPOINT);
+		} catch (AccountException e) {
+			indexes.forEach(i -> results[i] = TransactionBatch.Result.failure(i, items.get(i), e.getErrorCode()));
+			return;
+		}
+		try {
+			transactionTemplate.executeWithoutResult(status -> apply(accountNumber, indexes, items, results));
+		} catch (AccountException e) {
+			indexes.forEach(i -> results[i] = TransactionBatch.Result.failure(i, items.get(i), e.getErrorCode()));
+		} catch (RuntimeException e) {
+			log.error("Batch transaction failed for account {}", accountNumber, e);
+			indexes.forEach(i -> results[i] = TransactionBatch.Result.failure(i, items.get(i),
+					ErrorCode.INTERNAL_SERVER_ERROR));
+		} finally {
+			lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT);
+		}
+	}
+
+	private void apply(String accountNumber, List<Integer> indexes,
+			List<TransactionBatch.Item> items, TransactionBatch.Result[] results) {
+		Account account = accountRepository.findForUpdateByAccountNumberIn(Collections.singletonList(accountNumber))
+				.stream()
+				.findFirst()
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		Map<Long, AccountUser> users = accountUserRepository.findAllById(indexes.stream()
+					.map(i -> items.get(i).getUserId())
+					.filter(userId -> userId != null)
+					.collect(Collectors.toSet()))
+				.stream()
+				.collect(Collectors.toMap(AccountUser::getId, Function.identity()));
+		Set<String> transactionIds = indexes.stream()
+				.map(i -> items.get(i).getTransactionId())
+				.filter(transactionId -> transactionId != null)
+				.collect(Collectors.toSet());
+		//DB에 아직 안 들어간 write-behind 거래를 먼저 본다
+		Map<String, Transaction> originals = new HashMap<>(transactionWriteBehind.findAll(transactionIds));
+		transactionRepository.findByTransactionIdIn(transactionIds)
+				.forEach(transaction -> originals.putIfAbsent(transaction.getTransactionId(), transaction));
+
+		List<Transaction> transactions = new ArrayList<>(indexes.size());
+		for(int i : indexes) {
+			TransactionBatch.Item item = items.get(i);
+			try {
+				if(item.getTransactionType() == TransactionType.USE) {
+					AccountUser user = users.get(item.getUserId());
+					if(user == null) {
+						throw new AccountException(ErrorCode.USER_NOT_FOUND);
+					}
+					TransactionService.validateUseBalance(user, account, item.getAmount());
+					account.useBalance(item.getAmount());
+				} else {
+					Transaction original = originals.get(item.getTransactionId());
+					if(original == null) {
+						throw new AccountException(ErrorCode.TRANSACTION_NOT_FOUND);
+					}
+					TransactionService.validateCancelBalance(original, account, item.getAmount());
+					account.cancelBalance(item.getAmount());
+				}
+				Transaction transaction = newTransaction(item, TransactionResultType.S, account);
+				transactions.add(transaction);
+				results[i] = TransactionBatch.Result.success(i, TransactionDto.fromEntity(transaction));
+			} catch (AccountException e) {
+				//단건 API와 같이 실패 거래도 남긴다
+				transactions.add(newTransaction(item, TransactionResultType.F, account));
+				hotAccountTracker.recordFailure(accountNumber);
+				results[i] = TransactionBatch.Result.failure(i, item, e.getErrorCode());
+			}
+		}
+		transactionRepository.saveAll(transactions);
+	}
+
+	private TransactionBatch.Result executeOne(int index, TransactionBatch.Item item) {
+		String accountNumber = item.getAccountNumber();
+		try {
+			TransactionDto transactionDto;
+			if(item.getTransactionType() == TransactionType.USE) {
+				transactionDto = balanceEngine == BalanceEngine.REDIS_LEDGER
+						? transactionService.useBalanceLedger(item.getUserId(), accountNumber, item.getAmount())
+						: balanceEngine == BalanceEngine.IN_MEMORY
+						? transactionService.useBalanceInMemory(item.getUserId(), accountNumber, item.getAmount())
+						: transactionService.useBalanceSharded(item.getUserId(), accountNumber, item.getAmount());
+			} else {
+				transactionDto = balanceEngine == BalanceEngine.REDIS_LEDGER
+						? transactionService.cancelBalanceLedger(item.getTransactionId(), accountNumber, item.getAmount())
+						: balanceEngine == BalanceEngine.IN_MEMORY
+						? transactionService.cancelBalanceInMemory(item.getTransactionId(), accountNumber, item.getAmount())
+						: transactionService.cancelBalanceSharded(item.getTransactionId(), accountNumber, item.getAmount());
+			}
+			return TransactionBatch.Result.success(index, transactionDto);
+		} catch (AccountException e) {
+			saveFailedTransaction(item);
+			return TransactionBatch.Result.failure(index, item, e.getErrorCode());
+		}
+	}
+
+	private void saveFailedTransaction(TransactionBatch.Item item) {
+		try {
+			if(item.getTransactionType() == TransactionType.USE) {
+				transactionService.saveFailedUseTransaction(item.getAccountNumber(), item.getAmount());
+			} else {
+				transactionService.saveFailedCancelTransaction(item.getAccountNumber(), item.getAmount());
+			}
+		} catch (AccountException e) {
+			log.debug("Failed transaction not recorded: {}", e.getErrorCode());
+		}
+	}
+
+	private static Transaction newTransaction(TransactionBatch.Item item,
+			TransactionResultType transactionResultType, Account account) {
+		return Transaction.builder()
+				.transactionType(item.getTransactionType())
+				.transactionResultType(transactionResultType)
+				.account(account)
+				.amount(item.getAmount())
+				.balanceSnapshot(account.getBalance())
+				.transactionId(UUID.randomUUID().toString().replace("-", ""))
+				.transactedAt(LocalDateTime.now())
+				.build();
+	}
+}
@@ -0,0 +1,313 @@
+package com.example.account.service;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 거래 기록 write-behind(TransactionWriteBehind) 저널
+ * 1. 고정 크기 세그먼트 파일(transactions-번호.seg)을 mmap 해서 기록을 붙여 쓴다. 다 차면 다음 세그먼트로 넘어간다.
+ * 2. 기록 하나 = 본문 길이(int) + CRC32(int) + 본문. 길이가 0이거나 CRC가 안 맞는 곳에서 읽기를 멈춘다. (잘린 기록)
+ * 3. 세그먼트마다 아직 DB에 안 들어간 기록 수를 세고, 앞에서부터 0이 된 닫힌 세그먼트를 지운다.
+ * 4. 닫은 세그먼트는 매핑을 바로 푼다. (GC를 기다리면 세그먼트마다 segment-bytes 매핑이 남는다)
+ * 기록은 DB 커밋 전에 쓴다. 커밋됐는지는 TransactionWriteBehind가 outbox 행으로 확인한다.
+ * 본문: seq|transactionType|transactionResultType|accountId|accountNumber|amount|balanceSnapshot|transactionId|transactedAt
+ */
+@Slf4j
+class TransactionJournal {
+	private static final String SEGMENT_PREFIX = "transactions-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final int HEADER_BYTES = 8;
+	private static final Unmapper UNMAPPER = Unmapper.find();
+
+	private final Path directory;
+	private final int segmentBytes;
+	private final boolean force;
+	//세그먼트 번호 -> DB에 아직 안 들어간 기록 수
+	private final TreeMap<Long, Integer> outstanding = new TreeMap<>();
+	private final List<Record> recovered;
+
+	private long seq;
+	private long segment;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+
+	TransactionJournal(Path directory, int segmentBytes, boolean force) throws IOException {
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.force = force;
+		Files.createDirectories(directory);
+
+		List<Record> records = new ArrayList<>();
+		for(Path path : segments()) {
+			long number = segmentNumber(path);
+			List<Record> segmentRecords = read(path, number);
+			outstanding.put(number, segmentRecords.size());
+			for(Record record : segmentRecords) {
+				seq = Math.max(seq, record.getSeq());
+				records.add(record);
+			}
+			segment = Math.max(segment, number);
+		}
+		this.recovered = records;
+		openSegment(segment + 1);
+		deleteDrainedSegments();
+	}
+
+	/**
+	 * 재시작 전에 DB에 못 넣은 기록 (seq 순서)
+	 */
+	List<Record> getRecovered() {
+		return recovered;
+	}
+
+	/**
+	 * 기록을 붙여 쓰고, force 면 디스크까지 내린 뒤에 돌려준다.
+	 */
+	synchronized Record append(Transaction transaction) throws IOException {
+		Record record = Record.of(++seq, segment, transaction);
+		byte[] body = record.toLine().getBytes(StandardCharsets.UTF_8);
+		if(HEADER_BYTES + body.length > segmentBytes) {
+			throw new IOException("Transaction journal record is larger than a segment");
+		}
+		if(buffer.remaining() < HEADER_BYTES + body.length) {
+			rollover();
+			record = record.movedTo(segment);
+		}
+		buffer.putInt(body.length);
+		buffer.putInt(checksum(body));
+		buffer.put(body);
+		if(force) {
+			buffer.force();
+		}
+		outstanding.merge(segment, 1, Integer::sum);
+		return record;
+	}
+
+	/**
+	 * DB에 들어간 기록을 빼고, 다 빠진 닫힌 세그먼트를 지운다.
+	 */
+	synchronized void acknowledge(Collection<Record> records) throws IOException {
+		records.forEach(record -> outstanding.merge(record.getSegment(), -1, Integer::sum));
+		deleteDrainedSegments();
+	}
+
+	synchronized void close() throws IOException {
+		closeSegment();
+	}
+
+	/**
+	 * 남아 있는 세그먼트 수 (현재 세그먼트 포함)
+	 */
+	synchronized int segmentCount() {
+		return outstanding.size();
+	}
+
+	private void rollover() throws IOException {
+		closeSegment();
+		openSegment(segment + 1);
+	}
+
+	private void closeSegment() throws IOException {
+		buffer.force();
+		UNMAPPER.unmap(buffer);
+		buffer = null;
+		channel.close();
+	}
+
+	private void deleteDrainedSegments() throws IOException {
+		while(outstanding.firstKey() != segment && outstanding.firstEntry().getValue() <= 0) {
+			Files.deleteIfExists(segmentPath(outstanding.pollFirstEntry().getKey()));
+		}
+	}
+
+	private void openSegment(long number) throws IOException {
+		segment = number;
+		outstanding.putIfAbsent(number, 0);
+		channel = FileChannel.open(segmentPath(number),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);//파일을 세그먼트 크기로 늘린다
+	}
+
+	private List<Path> segments() throws IOException {
+		TreeMap<Long, Path> sorted = new TreeMap<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+				SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			stream.forEach(path -> sorted.put(segmentNumber(path), path));
+		}
+		return new ArrayList<>(sorted.values());
+	}
+
+	//마지막 기록 뒤(0으로 채워진 곳)나 잘린 기록에서 멈춘다
+	private static List<Record> read(Path path, long number) throws IOException {
+		List<Record> records = new ArrayList<>();
+		MappedByteBuffer data;
+		try(FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+			data = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+		}
+		try {
+			while(data.remaining() >= HEADER_BYTES) {
+				int length = data.getInt();
+				int checksum = data.getInt();
+				if(length <= 0) {
+					break;
+				}
+				if(length > data.remaining()) {
+					log.warn("Skipping torn transaction journal record in {}", path.getFileName());
+					break;
+				}
+				byte[] body = new byte[length];
+				data.get(body);
+				Record record = checksum(body) == checksum
+						? Record.parse(new String(body, StandardCharsets.UTF_8), number) : null;
+				if(record == null) {
+					log.warn("Skipping corrupt transaction journal record in {}", path.getFileName());
+					break;
+				}
+				records.add(record);
+			}
+		} finally {
+			UNMAPPER.unmap(data);
+		}
+		return records;
+	}
+
+	private static int checksum(byte[] body) {
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		return (int) crc.getValue();
+	}
+
+	private Path segmentPath(long number) {
+		return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+	}
+
+	private static long segmentNumber(Path path) {
+		String fileName = path.getFileName().toString();
+		return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(),
+				fileName.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	/**
+	 * MappedByteBuffer 매핑 해제, Java 11에는 공개 API가 없어서 Unsafe.invokeCleaner를 쓴다.
+	 * 찾지 못하면 GC가 풀 때까지 둔다.
+	 */
+	private static class Unmapper {
+		private final Object unsafe;
+		private final Method invokeCleaner;
+
+		private Unmapper(Object unsafe, Method invokeCleaner) {
+			this.unsafe = unsafe;
+			this.invokeCleaner = invokeCleaner;
+		}
+
+		static Unmapper find() {
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Field field = unsafeClass.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				return new Unmapper(field.get(null), unsafeClass.getMethod("invokeCleaner", ByteBuffer.class));
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				log.warn("Mapped buffer unmapping is not available, segments are released by GC", e);
+				return new Unmapper(null, null);
+			}
+		}
+
+		void unmap(MappedByteBuffer buffer) {
+			if(invokeCleaner == null || buffer == null) {
+				return;
+			}
+			try {
+				invokeCleaner.invoke(unsafe, buffer);
+			} catch (ReflectiveOperationException e) {
+				log.warn("Failed to unmap transaction journal segment", e);
+			}
+		}
+	}
+
+	@Getter
+	@AllArgsConstructor
+	static class Record {
+		private final long seq;
+		private final long segment;//본문에는 쓰지 않는다
+		private final TransactionType transactionType;
+		private final TransactionResultType transactionResultType;
+		private final long accountId;
+		private final String accountNumber;
+		private final long amount;
+		private final long balanceSnapshot;
+		private final String transactionId;
+		private final long transactedAt;//epoch millis
+
+		static Record of(long seq, long segment, Transaction transaction) {
+			return new Record(seq, segment, transaction.getTransactionType(),
+					transaction.getTransactionResultType(), transaction.getAccount().getId(),
+					transaction.getAccount().getAccountNumber(), transaction.getAmount(),
+					transaction.getBalanceSnapshot(), transaction.getTransactionId(),
+					transaction.getTransactedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+		}
+
+		Record movedTo(long segment) {
+			return new Record(seq, segment, transactionType, transactionResultType, accountId,
+					accountNumber, amount, balanceSnapshot, transactionId, transactedAt);
+		}
+
+		Transaction toTransaction(Account account) {
+			return Transaction.builder()
+					.transactionType(transactionType)
+					.transactionResultType(transactionResultType)
+					.account(account)
+					.amount(amount)
+					.balanceSnapshot(balanceSnapshot)
+					.transactionId(transactionId)
+					.transactedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(transactedAt), ZoneId.systemDefault()))
+					.build();
+		}
+
+		String toLine() {
+			return seq + "|" + transactionType + "|" + transactionResultType + "|" + accountId
+					+ "|" + accountNumber + "|" + amount + "|" + balanceSnapshot + "|" + transactionId
+					+ "|" + transactedAt;
+		}
+
+		static Record parse(String line, long segment) {
+			String[] fields = line.split("\\|");
+			if(fields.length != 9) {
+				return null;
+			}
+			try {
+				return new Record(Long.parseLong(fields[0]), segment,
+						TransactionType.valueOf(fields[1]), TransactionResultType.valueOf(fields[2]),
+						Long.parseLong(fields[3]), fields[4], Long.parseLong(fields[5]),
+						Long.parseLong(fields[6]), fields[7], Long.parseLong(fields[8]));
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+	}
+}
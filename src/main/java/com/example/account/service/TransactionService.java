@@ -2,13 +2,19 @@ package com.example.account.service;
 
 import java.time.LocalDateTime;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.transaction.Transactional;
 import javax.validation.constraints.NotNull;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.example.account.aop.AccountLockPolicy;
 import com.example.account.domain.Account;
 import com.example.account.domain.AccountUser;
 import com.example.account.domain.Transaction;
@@ -18,7 +24,9 @@ import com.example.account.repository.AccountRepository;
 import com.example.account.repository.AccountUserRepository;
 import com.example.account.repository.TransactionRepository;
 import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
 import com.example.account.type.ErrorCode;
+import com.example.account.type.LockScope;
 import com.example.account.type.TransactionResultType;
 import com.example.account.type.TransactionType;
 
@@ -32,6 +40,115 @@ public class TransactionService {
 	private final TransactionRepository transactionRepository;
 	private final AccountUserRepository accountUserRepository;
 	private final AccountRepository accountRepository;
+	private final LockService lockService;
+	private final TransactionTemplate transactionTemplate;
+	private final HotAccountTracker hotAccountTracker;
+	private final OptimisticRetryExecutor optimisticRetryExecutor;
+	private final RedisLedgerService redisLedgerService;
+	private final InMemoryLedgerEngine inMemoryLedgerEngine;
+	private final ShardedBalanceService shardedBalanceService;
+	private final BalanceGroupCommitter balanceGroupCommitter;
+	private final TransactionWriteBehind transactionWriteBehind;
+	
+	@Value("${account.balance.engine:entity}")
+	private BalanceEngine balanceEngine = BalanceEngine.ENTITY;
+	
+	@Value("${account.lock.scope:controller}")
+	private LockScope lockScope = LockScope.CONTROLLER;//SERVICE면 커밋 구간만 잠그는 메서드로 보낸다
+	
+	/**
+	 * 설정한 엔진(account.balance.engine)으로 잔액 사용, 동기/비동기 컨트롤러가 같이 쓴다.
+	 * entity 엔진은 샤드 계좌면 샤드로, 아니면 락 범위(account.lock.scope)에 맞는 메서드로 보낸다.
+	 * 자기 호출이라 @Transactional 메서드는 transactionTemplate으로 감싼다.
+	 */
+	public TransactionDto useBalanceByEngine(Long userId, String accountNumber, Long amount) {
+		if(balanceEngine == BalanceEngine.CONDITIONAL_UPDATE) {
+			return transactionTemplate.execute(status -> useBalanceConditional(userId, accountNumber, amount));
+		}
+		if(balanceEngine == BalanceEngine.OPTIMISTIC) {
+			return useBalanceOptimistic(userId, accountNumber, amount);
+		}
+		if(balanceEngine == BalanceEngine.REDIS_LEDGER) {
+			return useBalanceLedger(userId, accountNumber, amount);
+		}
+		if(balanceEngine == BalanceEngine.IN_MEMORY) {
+			return useBalanceInMemory(userId, accountNumber, amount);
+		}
+		if(balanceEngine == BalanceEngine.GROUP_COMMIT) {
+			return useBalanceGroupCommit(userId, accountNumber, amount);
+		}
+		if(isShardedAccount(accountNumber)) {
+			return useBalanceSharded(userId, accountNumber, amount);
+		}
+		return lockScope == LockScope.SERVICE
+				? useBalanceWithLock(userId, accountNumber, amount)
+				: transactionTemplate.execute(status -> useBalance(userId, accountNumber, amount));
+	}
+	
+	/**
+	 * useBalanceByEngine의 비동기 버전 (account.lock.execution=async)
+	 * 메모리 원장, 그룹 커밋은 기다리지 않고 엔진 future를 그대로 돌려준다. 나머지 엔진은 지금 스레드에서 끝낸다.
+	 * 실패는 AccountException으로 끝난 future로 돌려준다.
+	 */
+	public CompletableFuture<TransactionDto> useBalanceByEngineAsync(Long userId, String accountNumber, Long amount) {
+		if(balanceEngine == BalanceEngine.IN_MEMORY) {
+			return unwrap(inMemoryLedgerEngine.useBalance(userId, accountNumber, amount));
+		}
+		if(balanceEngine == BalanceEngine.GROUP_COMMIT) {
+			return unwrap(balanceGroupCommitter.useBalance(userId, accountNumber, amount));
+		}
+		try {
+			return CompletableFuture.completedFuture(useBalanceByEngine(userId, accountNumber, amount));
+		} catch (AccountException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+	
+	/**
+	 * 설정한 엔진으로 잔액 사용 취소
+	 */
+	public TransactionDto cancelBalanceByEngine(String transactionId, String accountNumber, Long amount) {
+		if(balanceEngine == BalanceEngine.CONDITIONAL_UPDATE) {
+			return transactionTemplate.execute(status ->
+					cancelBalanceConditional(transactionId, accountNumber, amount));
+		}
+		if(balanceEngine == BalanceEngine.OPTIMISTIC) {
+			return cancelBalanceOptimistic(transactionId, accountNumber, amount);
+		}
+		if(balanceEngine == BalanceEngine.REDIS_LEDGER) {
+			return cancelBalanceLedger(transactionId, accountNumber, amount);
+		}
+		if(balanceEngine == BalanceEngine.IN_MEMORY) {
+			return cancelBalanceInMemory(transactionId, accountNumber, amount);
+		}
+		if(balanceEngine == BalanceEngine.GROUP_COMMIT) {
+			return cancelBalanceGroupCommit(transactionId, accountNumber, amount);
+		}
+		if(isShardedAccount(accountNumber)) {
+			return cancelBalanceSharded(transactionId, accountNumber, amount);
+		}
+		return lockScope == LockScope.SERVICE
+				? cancelBalanceWithLock(transactionId, accountNumber, amount)
+				: transactionTemplate.execute(status -> cancelBalance(transactionId, accountNumber, amount));
+	}
+	
+	/**
+	 * cancelBalanceByEngine의 비동기 버전
+	 */
+	public CompletableFuture<TransactionDto> cancelBalanceByEngineAsync(String transactionId,
+			String accountNumber, Long amount) {
+		if(balanceEngine == BalanceEngine.IN_MEMORY) {
+			return unwrap(inMemoryLedgerEngine.cancelBalance(transactionId, accountNumber, amount));
+		}
+		if(balanceEngine == BalanceEngine.GROUP_COMMIT) {
+			return unwrap(balanceGroupCommitter.cancelBalance(transactionId, accountNumber, amount));
+		}
+		try {
+			return CompletableFuture.completedFuture(cancelBalanceByEngine(transactionId, accountNumber, amount));
+		} catch (AccountException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
 	
 	/**
 	 * 사용자 없는 경우, 계좌가 없는경우, 사용자 아이디와 계좌 소유주가 다른 경우,
@@ -54,8 +171,107 @@ public class TransactionService {
 		return TransactionDto.fromEntity(transaction);
 	}
 
-	private void validateUseBalance(AccountUser user, Account account, Long amount) {
-		if(user.getId() != account.getAccountUser().getId()) {
+	/**
+	 * 서비스 단계 락 모드(account.lock.scope=service) 잔액 사용
+	 * 락 없이 사전검증하고, 재검증 + 잔액 변경 + 커밋 구간만 락을 잡는다.
+	 * 커밋이 끝나면 바로 락을 푼다. (실패 기록은 호출하는 쪽에서 락 밖에서 한다)
+	 */
+	public TransactionDto useBalanceWithLock(Long userId, String accountNumber, Long amount) {
+		AccountUser user = accountUserRepository.findById(userId)
+				.orElseThrow(() -> new AccountException(ErrorCode.USER_NOT_FOUND));
+		Account account = accountRepository.findByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		
+		validateUseBalance(user,account,amount);//사전검증
+		
+		lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, "useBalance");
+		try {
+			return transactionTemplate.execute(status -> useBalance(userId, accountNumber, amount));
+		} finally {
+			lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT);
+		}
+	}
+
+	/**
+	 * 조건부 UPDATE 잔액 사용 (account.balance.engine=conditional-update)
+	 * UPDATE ... WHERE 사용중 AND 잔액 >= 금액 한 번으로 검증과 차감을 같이 하므로 계좌 락이 필요없다.
+	 * 반영된 행이 없으면 계좌를 다시 읽어서 실패 원인(해지/잔액부족)을 정한다.
+	 * UPDATE한 행은 커밋까지 잠겨 있으므로 이어서 읽은 잔액이 이 거래의 스냅샷이다.
+	 */
+	@Transactional
+	public TransactionDto useBalanceConditional(Long userId, String accountNumber, Long amount) {
+		AccountUser user = accountUserRepository.findById(userId)
+				.orElseThrow(() -> new AccountException(ErrorCode.USER_NOT_FOUND));
+		Account account = accountRepository.findByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		if(!Objects.equals(user.getId(), account.getAccountUser().getId())) {
+			throw new AccountException(ErrorCode.USER_ACCOUNT_UN_MATCH);
+		}
+		
+		if(accountRepository.useBalanceIfEnough(accountNumber, amount,
+				AccountStatus.IN_USE, LocalDateTime.now()) == 0) {
+			Account current = accountRepository.findByAccountNumber(accountNumber)
+					.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+			if(current.getAccountStatus() != AccountStatus.IN_USE) {
+				throw new AccountException(ErrorCode.ACCOUNT_ALREADY_UNREGISTERED);
+			}
+			throw new AccountException(ErrorCode.AMOUNT_EXCEED_BALANCE);
+		}
+		
+		return TransactionDto.fromEntity(saveAndGetTransaction(TransactionType.USE, TransactionResultType.S,
+				account, amount, currentBalance(accountNumber)));
+	}
+
+	/**
+	 * 낙관적 락 잔액 사용 (account.balance.engine=optimistic)
+	 * 락 없이 useBalance를 새 트랜잭션으로 실행하고, 커밋 때 @Version이 바뀌어 있으면 처음부터 다시 한다.
+	 */
+	public TransactionDto useBalanceOptimistic(Long userId, String accountNumber, Long amount) {
+		return optimisticRetryExecutor.execute(() ->
+				transactionTemplate.execute(status -> useBalance(userId, accountNumber, amount)));
+	}
+
+	/**
+	 * Redis 원장 잔액 사용 (account.balance.engine=redis-ledger)
+	 * 검증 + 잔액 변경은 Redis 스크립트 한 번으로 끝나고, DB 반영은 RedisLedgerWriter가 나중에 한다.
+	 */
+	public TransactionDto useBalanceLedger(Long userId, String accountNumber, Long amount) {
+		return redisLedgerService.useBalance(userId, accountNumber, amount);
+	}
+
+	/**
+	 * 메모리 원장 잔액 사용 (account.balance.engine=in-memory)
+	 * 계좌 파티션 스레드에 명령을 넣고 저널 fsync가 끝날 때까지 기다린다.
+	 */
+	public TransactionDto useBalanceInMemory(Long userId, String accountNumber, Long amount) {
+		return await(inMemoryLedgerEngine.useBalance(userId, accountNumber, amount));
+	}
+
+	/**
+	 * 그룹 커밋 잔액 사용 (account.balance.engine=group-commit)
+	 * 같은 시간대에 들어온 명령과 함께 한 트랜잭션으로 커밋될 때까지 기다린다.
+	 */
+	public TransactionDto useBalanceGroupCommit(Long userId, String accountNumber, Long amount) {
+		return await(balanceGroupCommitter.useBalance(userId, accountNumber, amount));
+	}
+
+	/**
+	 * 잔액을 여러 샤드로 나눈 계좌인지 (entity 엔진에서만 쓴다)
+	 */
+	public boolean isShardedAccount(String accountNumber) {
+		return shardedBalanceService.isSharded(accountNumber);
+	}
+
+	/**
+	 * 샤드 계좌 잔액 사용, 계좌 락 대신 샤드 하나의 락만 잡는다.
+	 */
+	public TransactionDto useBalanceSharded(Long userId, String accountNumber, Long amount) {
+		return shardedBalanceService.useBalance(userId, accountNumber, amount);
+	}
+
+	static void validateUseBalance(AccountUser user, Account account, Long amount) {
+		//유저는 지연 로딩 프록시일 수 있다, id 비교는 프록시를 초기화하지 않는다
+		if(!Objects.equals(user.getId(), account.getAccountUser().getId())) {
 			throw new AccountException(ErrorCode.USER_ACCOUNT_UN_MATCH);
 		}
 		if(account.getAccountStatus() != AccountStatus.IN_USE) {
@@ -73,28 +289,44 @@ public class TransactionService {
 				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
 		
 		saveAndGetTransaction(TransactionType.USE,TransactionResultType.F, account, amount);
+		hotAccountTracker.recordFailure(accountNumber);
 	}
 	
 	
 	private Transaction saveAndGetTransaction(TransactionType transactionType,TransactionResultType transactionResultType,
 											Account account, Long amount) {
-		return transactionRepository.save(
-				Transaction.builder()
+		return saveAndGetTransaction(transactionType, transactionResultType, account, amount, account.getBalance());
+	}
+	
+	private Transaction saveAndGetTransaction(TransactionType transactionType,TransactionResultType transactionResultType,
+											Account account, Long amount, Long balanceSnapshot) {
+		Transaction transaction = Transaction.builder()
 				.transactionType(transactionType)
 				.transactionResultType(transactionResultType)
 				.account(account)
 				.amount(amount)
-				.balanceSnapshot(account.getBalance())
+				.balanceSnapshot(balanceSnapshot)
 				.transactionId(UUID.randomUUID().toString().replace("-", ""))
 				.transactedAt(LocalDateTime.now())
-				.build());
+				.build();
+		if(transactionWriteBehind.isEnabled()) {
+			transactionWriteBehind.append(transaction);//insert는 drainer가 나중에 모아서
+			return transaction;
+		}
+		return transactionRepository.save(transaction);
+	}
+	
+	//DB에 아직 안 들어간 write-behind 거래부터 본다 (DB를 먼저 보면 그 사이 반영된 거래를 놓친다)
+	private Optional<Transaction> findTransaction(String transactionId) {
+		Optional<Transaction> pending = transactionWriteBehind.find(transactionId);
+		return pending.isPresent() ? pending : transactionRepository.findByTransactionId(transactionId);
 	}
 	
 	@Transactional
 	public TransactionDto cancelBalance(String transactionId,
 			String accountNumber, Long amount) {
 		
-		Transaction transaction = transactionRepository.findByTransactionId(transactionId)
+		Transaction transaction = findTransaction(transactionId)
 				.orElseThrow(() -> new AccountException(ErrorCode.TRANSACTION_NOT_FOUND));
 		Account account = accountRepository.findByAccountNumber(accountNumber)
 				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
@@ -108,8 +340,131 @@ public class TransactionService {
 			TransactionType.CANCEL, TransactionResultType.S,account,amount));
 	}
 
-	private void validateCancelBalance(Transaction transaction, Account account, Long amount) {
-		if(transaction.getAccount().getId() != account.getId()) {
+	/**
+	 * 서비스 단계 락 모드(account.lock.scope=service) 잔액 사용 취소
+	 */
+	public TransactionDto cancelBalanceWithLock(String transactionId,
+			String accountNumber, Long amount) {
+		Transaction transaction = findTransaction(transactionId)
+				.orElseThrow(() -> new AccountException(ErrorCode.TRANSACTION_NOT_FOUND));
+		Account account = accountRepository.findByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		
+		validateCancelBalance(transaction,account,amount);//사전검증
+		
+		lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, "cancelBalance");
+		try {
+			return transactionTemplate.execute(status -> cancelBalance(transactionId, accountNumber, amount));
+		} finally {
+			lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT);
+		}
+	}
+
+	/**
+	 * 조건부 UPDATE 잔액 사용 취소 (account.balance.engine=conditional-update)
+	 * 취소 검증은 잔액과 상관없으므로 먼저 하고, 잔액은 UPDATE 한 번으로 더한다.
+	 */
+	@Transactional
+	public TransactionDto cancelBalanceConditional(String transactionId,
+			String accountNumber, Long amount) {
+		Transaction transaction = findTransaction(transactionId)
+				.orElseThrow(() -> new AccountException(ErrorCode.TRANSACTION_NOT_FOUND));
+		Account account = accountRepository.findByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+		
+		validateCancelBalance(transaction,account,amount);
+		if(amount < 0) {
+			throw new AccountException(ErrorCode.INVALID_REQUEST);
+		}
+		
+		if(accountRepository.addBalance(accountNumber, amount, LocalDateTime.now()) == 0) {
+			throw new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT);
+		}
+		
+		return TransactionDto.fromEntity(saveAndGetTransaction(TransactionType.CANCEL, TransactionResultType.S,
+				account, amount, currentBalance(accountNumber)));
+	}
+
+	/**
+	 * 낙관적 락 잔액 사용 취소 (account.balance.engine=optimistic)
+	 */
+	public TransactionDto cancelBalanceOptimistic(String transactionId,
+			String accountNumber, Long amount) {
+		return optimisticRetryExecutor.execute(() ->
+				transactionTemplate.execute(status -> cancelBalance(transactionId, accountNumber, amount)));
+	}
+
+	/**
+	 * Redis 원장 잔액 사용 취소 (account.balance.engine=redis-ledger)
+	 */
+	public TransactionDto cancelBalanceLedger(String transactionId,
+			String accountNumber, Long amount) {
+		return redisLedgerService.cancelBalance(transactionId, accountNumber, amount);
+	}
+
+	/**
+	 * 메모리 원장 잔액 사용 취소 (account.balance.engine=in-memory)
+	 */
+	public TransactionDto cancelBalanceInMemory(String transactionId,
+			String accountNumber, Long amount) {
+		return await(inMemoryLedgerEngine.cancelBalance(transactionId, accountNumber, amount));
+	}
+
+	/**
+	 * 그룹 커밋 잔액 사용 취소 (account.balance.engine=group-commit)
+	 */
+	public TransactionDto cancelBalanceGroupCommit(String transactionId,
+			String accountNumber, Long amount) {
+		return await(balanceGroupCommitter.cancelBalance(transactionId, accountNumber, amount));
+	}
+
+	/**
+	 * 샤드 계좌 잔액 사용 취소
+	 */
+	public TransactionDto cancelBalanceSharded(String transactionId,
+			String accountNumber, Long amount) {
+		return shardedBalanceService.cancelBalance(transactionId, accountNumber, amount);
+	}
+
+	/**
+	 * 비동기 엔진(메모리 원장, 그룹 커밋) 결과를 기다린다. 엔진에서 던진 AccountException은 그대로 다시 던진다.
+	 */
+	static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof AccountException) {
+				throw (AccountException) e.getCause();
+			}
+			log.error("Balance command failed", e.getCause());
+			throw new AccountException(ErrorCode.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * await와 같은 규칙으로 엔진 future의 실패를 AccountException으로 맞춘다 (기다리지 않는다)
+	 */
+	static <T> CompletableFuture<T> unwrap(CompletableFuture<T> future) {
+		return future.handle((value, e) -> {
+			if(e == null) {
+				return value;
+			}
+			Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+			if(cause instanceof AccountException) {
+				throw (AccountException) cause;
+			}
+			log.error("Balance command failed", cause);
+			throw new AccountException(ErrorCode.INTERNAL_SERVER_ERROR);
+		});
+	}
+
+	private Long currentBalance(String accountNumber) {
+		return accountRepository.findBalanceByAccountNumber(accountNumber)
+				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
+	}
+
+	static void validateCancelBalance(Transaction transaction, Account account, Long amount) {
+		if(!Objects.equals(transaction.getAccount().getId(), account.getId())) {
 			throw new AccountException(ErrorCode.TRANSACTION_ACCOUNT_UN_MATCH);
 		}
 		if(!Objects.equals(transaction.getAmount(),amount)) {//Long끼리는 equals사용해야함. 128부터 ==사용불가능 
@@ -127,12 +482,20 @@ public class TransactionService {
 				.orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
 		
 		saveAndGetTransaction(TransactionType.CANCEL,TransactionResultType.F, account, amount);
+		hotAccountTracker.recordFailure(accountNumber);
 		
 	}
 
+	/**
+	 * 거래 조회
+	 * 거래 행은 쓰고 나면 바뀌지 않으므로 계좌 락 없이 한 문장으로 읽는다.
+	 */
 	public TransactionDto queryTransaction(String transactionId) {
-		Transaction transaction = transactionRepository.findByTransactionId(transactionId)
+		Optional<Transaction> pending = transactionWriteBehind.find(transactionId);
+		if(pending.isPresent()) {
+			return TransactionDto.fromEntity(pending.get());
+		}
+		return transactionRepository.findDtoByTransactionId(transactionId)
 				.orElseThrow(() -> new AccountException(ErrorCode.TRANSACTION_NOT_FOUND));
-		return TransactionDto.fromEntity(transaction);
 	}
 }
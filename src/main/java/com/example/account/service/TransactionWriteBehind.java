@@ -0,0 +1,263 @@
+package com.example.account.service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.domain.TransactionOutbox;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.TransactionOutboxRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.service.TransactionJournal.Record;
+import com.example.account.type.ErrorCode;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 거래 기록 write-behind (account.transaction.write-behind.enabled=true)
+ * 1. saveAndGetTransaction은 insert 대신 mmap 저널(TransactionJournal)에 기록을 남기고 응답한다.
+ * 2. 저널 기록과 outbox 행(TransactionOutbox, transactionId만)은 잔액을 바꾸는 DB 트랜잭션 안에서 커밋 전에 남긴다.
+ *    저널 쓰기가 실패하면 예외로 트랜잭션이 롤백되므로, 잔액이 바뀐 뒤에 오류를 돌려주는 일이 없다.
+ *    커밋되면 반영 대기열에 넣고, 롤백되면 저널 기록을 버린다.
+ * 3. drainer 스레드가 대기열을 batch-size 씩 모아서 한 트랜잭션으로 insert 하고 outbox 행을 지운다.
+ *    이미 들어간 transactionId는 건너뛰므로 재시작 후 다시 넣어도 중복되지 않는다.
+ *    outbox 행이 없는 기록은 커밋되지 않은 거래(저널만 쓰고 롤백/장애)이므로 넣지 않는다.
+ * 4. 시작할 때 저널에 남은 기록(DB에 못 넣은 것)을 다시 넣는다. 커밋 여부는 3의 outbox 확인으로 가린다.
+ * 5. DB에 들어가기 전 기록도 find로 찾을 수 있다. (거래 조회, 취소)
+ */
+@Slf4j
+@Component
+public class TransactionWriteBehind {
+	private final TransactionRepository transactionRepository;
+	private final AccountRepository accountRepository;
+	private final TransactionOutboxRepository transactionOutboxRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final boolean enabled;
+	private final String directory;
+	private final int segmentBytes;
+	private final boolean force;
+	private final int batchSize;
+	private final long intervalMillis;
+	//DB에 아직 안 들어간 기록
+	private final Map<String, Record> pending = new ConcurrentHashMap<>();
+	private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+
+	private TransactionJournal journal;
+	private Thread drainer;
+	private volatile boolean running;
+
+	public TransactionWriteBehind(TransactionRepository transactionRepository,
+			AccountRepository accountRepository, TransactionOutboxRepository transactionOutboxRepository,
+			TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+			@Value("${account.transaction.write-behind.enabled:false}") boolean enabled,
+			@Value("${account.transaction.write-behind.directory:./transaction-journal}") String directory,
+			@Value("${account.transaction.write-behind.segment-bytes:16777216}") int segmentBytes,
+			@Value("${account.transaction.write-behind.force:true}") boolean force,
+			@Value("${account.transaction.write-behind.batch-size:500}") int batchSize,
+			@Value("${account.transaction.write-behind.interval-millis:100}") long intervalMillis) {
+		this.transactionRepository = transactionRepository;
+		this.accountRepository = accountRepository;
+		this.transactionOutboxRepository = transactionOutboxRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.enabled = enabled;
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.force = force;
+		this.batchSize = batchSize;
+		this.intervalMillis = intervalMillis;
+		Gauge.builder("account.transaction.write-behind.pending", pending, Map::size)
+				.description("저널에만 있고 DB에 아직 안 들어간 거래 기록 수")
+				.register(meterRegistry);
+	}
+
+	@PostConstruct
+	public void start() throws IOException {
+		if(!enabled) {
+			return;
+		}
+		journal = new TransactionJournal(Paths.get(directory), segmentBytes, force);
+		List<Record> recovered = journal.getRecovered();
+		if(!recovered.isEmpty()) {
+			log.info("Replaying {} journaled transactions", recovered.size());
+		}
+		recovered.forEach(this::enqueue);
+		running = true;
+		drainer = new Thread(this::drainLoop, "transaction-write-behind");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException, IOException {
+		if(drainer == null) {
+			return;
+		}
+		running = false;
+		drainer.join(TimeUnit.SECONDS.toMillis(10));
+		journal.close();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 거래 기록을 저널과 outbox에 남긴다. DB 트랜잭션 안이면 커밋 전에 남기고, 커밋된 뒤에 반영 대기열에 넣는다.
+	 * 저널 쓰기가 실패하면 예외를 던져서 잔액 변경도 같이 롤백되게 한다.
+	 */
+	public void append(Transaction transaction) {
+		Record record = write(transaction);
+		transactionOutboxRepository.save(new TransactionOutbox(transaction.getTransactionId()));
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			enqueue(record);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				if(status == STATUS_COMMITTED) {
+					enqueue(record);
+				} else {
+					discard(record);
+				}
+			}
+		});
+	}
+
+	/**
+	 * DB에 아직 안 들어간 거래, 계좌는 id와 계좌번호만 채운 객체다.
+	 */
+	public Optional<Transaction> find(String transactionId) {
+		return Optional.ofNullable(pending.get(transactionId))
+				.map(record -> record.toTransaction(Account.builder()
+						.id(record.getAccountId())
+						.accountNumber(record.getAccountNumber())
+						.build()));
+	}
+
+	/**
+	 * 여러 건 find, 취소할 원 거래를 모아서 찾는 배치/대량 처리용
+	 */
+	public Map<String, Transaction> findAll(Collection<String> transactionIds) {
+		Map<String, Transaction> found = new HashMap<>();
+		if(!pending.isEmpty()) {
+			transactionIds.forEach(transactionId -> find(transactionId)
+					.ifPresent(transaction -> found.put(transactionId, transaction)));
+		}
+		return found;
+	}
+
+	int pendingCount() {
+		return pending.size();
+	}
+
+	private Record write(Transaction transaction) {
+		try {
+			return journal.append(transaction);
+		} catch (IOException e) {
+			log.error("Transaction journal write failed, transaction {} is rolled back",
+					transaction.getTransactionId(), e);
+			throw new AccountException(ErrorCode.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	//롤백된 거래, outbox 행도 같이 롤백됐으므로 저널에서만 뺀다
+	private void discard(Record record) {
+		try {
+			journal.acknowledge(Collections.singletonList(record));
+		} catch (IOException e) {
+			//재시작 때 outbox 확인으로 버려진다
+			log.warn("Failed to discard rolled back transaction {} from the journal", record.getTransactionId(), e);
+		}
+	}
+
+	private void enqueue(Record record) {
+		pending.put(record.getTransactionId(), record);
+		queue.add(record);
+	}
+
+	private void drainLoop() {
+		List<Record> batch = new ArrayList<>(batchSize);
+		while(running || !queue.isEmpty()) {
+			try {
+				Record first = queue.poll(intervalMillis, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				drain(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (IOException | RuntimeException e) {
+				log.error("Transaction write-behind drain of {} records failed", batch.size(), e);
+				if(!running) {
+					return;//남은 기록은 저널에 있으므로 재시작 때 다시 넣는다
+				}
+				queue.addAll(batch);
+				try {
+					Thread.sleep(intervalMillis);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			batch.clear();
+		}
+	}
+
+	void drain(List<Record> batch) throws IOException {
+		transactionTemplate.executeWithoutResult(status -> {
+			List<String> transactionIds = batch.stream()
+					.map(Record::getTransactionId)
+					.collect(Collectors.toList());
+			Set<String> inserted = new HashSet<>(transactionRepository.findTransactionIdsIn(transactionIds));
+			Set<String> committed = new HashSet<>(transactionOutboxRepository.findTransactionIdsIn(transactionIds));
+			batch.stream()
+					.filter(record -> !inserted.contains(record.getTransactionId())
+							&& !committed.contains(record.getTransactionId()))
+					.forEach(record -> log.warn("Dropping journaled transaction {}, it was never committed",
+							record.getTransactionId()));
+			transactionRepository.saveAll(batch.stream()
+					.filter(record -> !inserted.contains(record.getTransactionId())
+							&& committed.contains(record.getTransactionId()))
+					.map(record -> record.toTransaction(accountRepository.getReferenceById(record.getAccountId())))
+					.collect(Collectors.toList()));
+			if(!committed.isEmpty()) {
+				transactionOutboxRepository.deleteByTransactionIdIn(committed);
+			}
+		});
+		//다시 넣은 기록은 한 번만 acknowledge 한다
+		journal.acknowledge(batch.stream()
+				.filter(record -> pending.remove(record.getTransactionId(), record))
+				.collect(Collectors.toList()));
+	}
+}
@@ -0,0 +1,14 @@
+package com.example.account.type;
+
+public enum BalanceEngine {
+	ENTITY, //계좌를 읽어서 검증하고 dirty checking으로 변경 (계좌 락 필요)
+	CONDITIONAL_UPDATE, //조건부 UPDATE 한 번으로 검증 + 변경 (계좌 락 불필요)
+	OPTIMISTIC, //@Version 충돌이면 재시도 (계좌 락 불필요)
+	REDIS_LEDGER, //Redis Lua 스크립트로 검증 + 변경, DB는 나중에 반영 (계좌 락 불필요)
+	IN_MEMORY, //계좌 파티션별 단일 writer 스레드 + 저널, DB는 나중에 반영 (계좌 락 불필요)
+	GROUP_COMMIT; //짧은 시간 동안 모은 명령을 한 트랜잭션으로 커밋, 계좌 행은 FOR UPDATE (계좌 락 불필요)
+	
+	public boolean isLockFree() {
+		return this != ENTITY;
+	}
+}
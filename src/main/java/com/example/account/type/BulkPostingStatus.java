@@ -0,0 +1,7 @@
+package com.example.account.type;
+
+public enum BulkPostingStatus {
+	RUNNING,
+	COMPLETED,
+	FAILED //중간에 멈춤, 같은 jobId로 다시 시작하면 체크포인트부터 이어서 한다
+}
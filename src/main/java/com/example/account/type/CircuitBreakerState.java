@@ -0,0 +1,7 @@
+package com.example.account.type;
+
+public enum CircuitBreakerState {
+	CLOSED,
+	OPEN,
+	HALF_OPEN //열린 뒤 일정시간이 지나 시험 호출만 허용
+}
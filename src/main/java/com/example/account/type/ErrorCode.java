@@ -19,6 +19,8 @@ public enum ErrorCode {
 	USER_ACCOUNT_UN_MATCH("사용자와 계좌의 소유자가 다릅니다"),
 	ACCOUNT_ALREADY_UNREGISTERED("계좌가 이미 해지되었습니다."),
 	BALANCE_NOT_EMPTY("잔액이 있는 계좌는 해지할 수 없습니다."),
-	MAX_ACCOUNT_PER_USER_10("사용자 최대 계좌는 10개 입니다.");
+	MAX_ACCOUNT_PER_USER_10("사용자 최대 계좌는 10개 입니다."),
+	IDEMPOTENCY_KEY_REUSED("다른 요청에 이미 사용된 Idempotency-Key 입니다."),
+	IDEMPOTENT_REQUEST_IN_PROGRESS("같은 Idempotency-Key 요청이 아직 처리 중입니다.");
 	private final String description; //상수와 특정값 연결.
 }
@@ -0,0 +1,6 @@
+package com.example.account.type;
+
+public enum LockExecution {
+	SYNC, //요청 스레드가 락을 기다린다
+	ASYNC //락을 기다리는 동안 요청 스레드를 돌려보낸다 (CompletableFuture 응답)
+}
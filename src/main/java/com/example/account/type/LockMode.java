@@ -0,0 +1,7 @@
+package com.example.account.type;
+
+public enum LockMode {
+	EXCLUSIVE, //쓰기 락
+	SHARED, //읽기 락, 읽기끼리는 같이 잡을 수 있다
+	NONE //락을 잡지 않음
+}
@@ -0,0 +1,6 @@
+package com.example.account.type;
+
+public enum LockScope {
+	CONTROLLER, //컨트롤러 AOP에서 요청 전체를 잠금
+	SERVICE //서비스에서 잔액 변경 + 커밋 구간만 잠금
+}
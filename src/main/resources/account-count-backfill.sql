@@ -0,0 +1,3 @@
+-- account_user.account_count 를 추가할 때 이미 있는 계좌 행으로 채운다 (해지 포함)
+update account_user u
+set account_count = (select count(*) from account a where a.account_user_id = u.id);
\ No newline at end of file
@@ -0,0 +1,85 @@
+package com.example.account.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountUser;
+import com.example.account.repository.AccountNumberSequenceRepository;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.service.AccountNumberAllocator;
+import com.example.account.type.AccountStatus;
+
+/**
+ * user-021: 계좌 동시 생성 처리량과 중복
+ * 이전 방식: 마지막 계좌번호 + 1 을 읽고 저장 (동시에 읽으면 같은 번호 -> unique 위반이 실패로 잡힌다)
+ * 발급기: 노드 2개(AccountNumberAllocator 2개)가 블록 크기 1, 100으로 발급해서 저장
+ * 블록 크기 1은 매번 시퀀스 행을 잠그므로 노드끼리 경합한다. 발급기는 실패(중복)가 없어야 한다.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AccountNumberBenchmark {
+	private static final int[] BLOCK_SIZES = {1, 100};
+	private static final int THREADS = 16;
+	private static final int WARMUP = 500;
+	private static final int OPERATIONS = 5000;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private AccountNumberSequenceRepository accountNumberSequenceRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void concurrentCreateAccount() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		AccountUser accountUser = accountUserRepository.findById(1L).get();
+
+		Benchmark.run("last account + 1", THREADS, WARMUP, OPERATIONS,
+				i -> transactionTemplate.executeWithoutResult(status -> save(accountUser,
+						accountRepository.findMaxAccountNumber()
+								.map(accountNumber -> String.valueOf(Long.parseLong(accountNumber) + 1))
+								.orElse("1000000000"))));
+
+		for(int blockSize : BLOCK_SIZES) {
+			AccountNumberAllocator[] nodes = {
+					new AccountNumberAllocator(accountNumberSequenceRepository, accountRepository,
+							transactionManager, blockSize),
+					new AccountNumberAllocator(accountNumberSequenceRepository, accountRepository,
+							transactionManager, blockSize)
+			};
+			Benchmark.Result result = Benchmark.run("allocator, block " + blockSize, THREADS, WARMUP, OPERATIONS,
+					i -> transactionTemplate.executeWithoutResult(status -> save(accountUser,
+							nodes[i % nodes.length].nextAccountNumber())));
+			assertEquals(0, result.getFailures());
+		}
+	}
+
+	private void save(AccountUser accountUser, String accountNumber) {
+		accountRepository.save(Account.builder()
+				.accountUser(accountUser)
+				.accountStatus(AccountStatus.IN_USE)
+				.accountNumber(accountNumber)
+				.balance(0L)
+				.registeredAt(LocalDateTime.now())
+				.build());
+	}
+}
@@ -0,0 +1,62 @@
+package com.example.account.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.type.AccountStatus;
+
+/**
+ * user-023: 잔액 사용 한 번(계좌 읽기 + useBalance + 커밋)의 CPU/할당량
+ * 읽기만 하고 커밋하는 경우와 비교해서 변경 추적 + 바뀐 컬럼 update 비용을 본다.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AccountUpdateBenchmark {
+	private static final int WARMUP = 2000;
+	private static final int OPERATIONS = 20000;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void useBalance() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		Long accountId = accountRepository.save(Account.builder()
+				.accountUser(accountUserRepository.findById(1L).get())
+				.accountStatus(AccountStatus.IN_USE)
+				.accountNumber("4000000000")
+				.balance(1_000_000_000L)
+				.registeredAt(LocalDateTime.now())
+				.build()).getId();
+
+		Benchmark.run("read account + commit (baseline)", 1, WARMUP, OPERATIONS,
+				i -> transactionTemplate.executeWithoutResult(
+						status -> accountRepository.findById(accountId).get()));
+		Benchmark.Result result = Benchmark.run("read account + useBalance + commit", 1, WARMUP, OPERATIONS,
+				i -> transactionTemplate.executeWithoutResult(
+						status -> accountRepository.findById(accountId).get().useBalance(1L)));
+
+		assertEquals(0, result.getFailures());
+		assertEquals(1_000_000_000L - WARMUP - OPERATIONS, accountRepository.findById(accountId).get().getBalance());
+	}
+}
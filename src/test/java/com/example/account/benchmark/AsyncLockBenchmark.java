@@ -0,0 +1,134 @@
+package com.example.account.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.service.LockCircuitBreaker;
+import com.example.account.service.RedisAccountLockProvider;
+import com.example.account.type.LockMode;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import redis.embedded.RedisServer;
+
+/**
+ * user-009: 계좌 하나가 포화일 때 다른 계좌 요청의 처리량 (동기 lock vs lockAsync)
+ * 요청 스레드 풀(Tomcat 대신 16개)에서 락을 잡고 1ms 일하고 푼다.
+ * 동기: 요청 스레드가 락을 기다린다. 비동기: 요청 스레드는 lockAsync만 부르고 돌아가고, 본문은 락 실행 풀에서 돈다.
+ * 한 계좌에 48 클라이언트가 계속 요청하는 동안 1000개 계좌에 고르게 요청하는 16 클라이언트의 처리량/p99를 본다.
+ * 포화 없이 돌린 결과와 비교해서 비동기는 비슷하게 유지되고 동기는 떨어져야 한다.
+ */
+@Tag("benchmark")
+class AsyncLockBenchmark {
+	private static final int REDIS_PORT = 6398;
+	private static final int REQUEST_THREADS = 16;
+	private static final int LOCK_EXECUTOR_THREADS = 32;
+	private static final int HOT_CLIENTS = 48;
+	private static final int CLIENTS = 16;
+	private static final int WARMUP = 500;
+	private static final int OPERATIONS = 5000;
+	private static final int ACCOUNTS = 1000;
+	private static final long CRITICAL_SECTION_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final AccountLockPolicy POLICY = new AccountLockPolicy(1000L, 15000L, LockMode.EXCLUSIVE);
+
+	private static RedisServer redisServer;
+	private static RedissonClient redissonClient;
+
+	@BeforeAll
+	static void startRedis() {
+		redisServer = new RedisServer(REDIS_PORT);
+		redisServer.start();
+		Config config = new Config();
+		config.useSingleServer().setAddress("redis://127.0.0.1:" + REDIS_PORT);
+		redissonClient = Redisson.create(config);
+	}
+
+	@AfterAll
+	static void stopRedis() {
+		redissonClient.shutdown();
+		redisServer.stop();
+	}
+
+	@Test
+	void nonHotThroughputWhileHotAccountSaturated() throws Exception {
+		//느린 호출로 열리지 않게 기준을 크게 잡는다
+		RedisAccountLockProvider provider = new RedisAccountLockProvider(redissonClient,
+				new LockCircuitBreaker(new SimpleMeterRegistry(), 50, 10, 50, 80, 60000L, 5000L, 5), null);
+		ExecutorService requestPool = Executors.newFixedThreadPool(REQUEST_THREADS);
+		ExecutorService lockExecutor = Executors.newFixedThreadPool(LOCK_EXECUTOR_THREADS);
+		try {
+			Function<String, CompletableFuture<Void>> sync = accountNumber -> CompletableFuture.runAsync(() -> {
+				provider.lock(accountNumber, POLICY);
+				try {
+					LockSupport.parkNanos(CRITICAL_SECTION_NANOS);
+				} finally {
+					provider.unlock(accountNumber, POLICY);
+				}
+			}, requestPool);
+			Function<String, CompletableFuture<Void>> async = accountNumber -> CompletableFuture
+					.supplyAsync(() -> provider.lockAsync(accountNumber, POLICY), requestPool)
+					.thenCompose(Function.identity())
+					.thenAcceptAsync(release -> {
+						try {
+							LockSupport.parkNanos(CRITICAL_SECTION_NANOS);
+						} finally {
+							release.run();
+						}
+					}, lockExecutor);
+
+			run("sync", sync, false);
+			run("sync", sync, true);
+			run("async", async, false);
+			run("async", async, true);
+		} finally {
+			requestPool.shutdownNow();
+			lockExecutor.shutdownNow();
+		}
+	}
+
+	private void run(String mode, Function<String, CompletableFuture<Void>> request, boolean saturated)
+			throws Exception {
+		AtomicBoolean running = new AtomicBoolean(saturated);
+		List<Thread> hotClients = new ArrayList<>();
+		for(int i = 0; i < (saturated ? HOT_CLIENTS : 0); i++) {
+			Thread hotClient = new Thread(() -> {
+				while(running.get()) {
+					//락 대기 초과는 포화 상태에서 당연하다
+					request.apply(accountNumber(0)).exceptionally(e -> null).join();
+				}
+			});
+			hotClient.start();
+			hotClients.add(hotClient);
+		}
+		try {
+			Benchmark.run(mode + (saturated ? ", one account saturated" : ", no hot account"),
+					CLIENTS, WARMUP, OPERATIONS,
+					i -> request.apply(accountNumber(1 + ThreadLocalRandom.current().nextInt(ACCOUNTS))).join());
+		} finally {
+			running.set(false);
+			for(Thread hotClient : hotClients) {
+				hotClient.join();
+			}
+		}
+	}
+
+	private static String accountNumber(int index) {
+		return String.valueOf(1000000000L + index);
+	}
+}
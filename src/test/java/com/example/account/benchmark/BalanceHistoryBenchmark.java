@@ -0,0 +1,125 @@
+package com.example.account.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.service.BalanceHistoryService;
+import com.example.account.service.TransactionWriteBehind;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.TransactionResultType;
+
+/**
+ * user-020: 시점 잔액 조회 지연시간, 계좌 거래 수 1만 / 10만 / 100만
+ * index: 지금 방식 (at 이전 마지막 성공 거래 하나를 인덱스로 찾는다), 캐시는 끄고 잰다
+ * scan: 예전 방식 (at 이전 거래를 전부 읽어서 마지막 잔액을 고른다), 100만은 너무 오래 걸려 뺀다
+ * 거래 행은 H2 system_range로 한 번에 넣는다. 1초에 한 건, balanceSnapshot = 순번
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BalanceHistoryBenchmark {
+	private static final int[] HISTORIES = {10_000, 100_000, 1_000_000};
+	private static final int SCAN_LIMIT = 100_000;
+	private static final int WARMUP = 200;
+	private static final int OPERATIONS = 2000;
+	private static final int SCAN_OPERATIONS = 50;
+	private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+	private static final String INSERT_SQL = "insert into transaction (id, transaction_type, transaction_result_type, "
+			+ "account_id, amount, balance_snapshot, transaction_id, transacted_at, created_at) "
+			+ "select :base + x, 'USE', 'S', :accountId, 1, x, concat(:prefix, x), dateadd(second, x, :start), "
+			+ "current_timestamp from system_range(1, :rows)";
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void latencyByHistorySize() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		BalanceHistoryService balanceHistoryService = new BalanceHistoryService(accountRepository,
+				transactionRepository, 0, 60, BalanceEngine.ENTITY, mock(TransactionWriteBehind.class));
+
+		for(int h = 0; h < HISTORIES.length; h++) {
+			int rows = HISTORIES[h];
+			Account account = insertHistory(transactionTemplate, h, rows);
+			String accountNumber = account.getAccountNumber();
+
+			Benchmark.Result result = Benchmark.run("index, " + rows + " rows", 1, WARMUP, OPERATIONS, i -> {
+				int x = 1 + ThreadLocalRandom.current().nextInt(rows);
+				assertEquals(x, balanceHistoryService.getBalanceAt(accountNumber, START.plusSeconds(x))
+						.getBalance());
+			});
+			assertEquals(0, result.getFailures());
+
+			if(rows <= SCAN_LIMIT) {
+				result = Benchmark.run("scan, " + rows + " rows", 1, 5, SCAN_OPERATIONS, i -> {
+					int x = 1 + ThreadLocalRandom.current().nextInt(rows);
+					assertEquals(x, scan(transactionTemplate, account, START.plusSeconds(x)));
+				});
+				assertEquals(0, result.getFailures());
+			}
+		}
+	}
+
+	private Account insertHistory(TransactionTemplate transactionTemplate, int h, int rows) {
+		Account account = accountRepository.save(Account.builder()
+				.accountUser(accountUserRepository.findById(1L).get())
+				.accountStatus(AccountStatus.IN_USE)
+				.accountNumber(String.valueOf(6000000000L + h))
+				.balance((long) rows)
+				.registeredAt(START)
+				.build());
+		transactionTemplate.executeWithoutResult(status -> entityManager.createNativeQuery(INSERT_SQL)
+				.setParameter("base", 1_000_000_000L * (h + 1))
+				.setParameter("accountId", account.getId())
+				.setParameter("prefix", "history" + h + "-")
+				.setParameter("start", START)
+				.setParameter("rows", rows)
+				.executeUpdate());
+		return account;
+	}
+
+	private Long scan(TransactionTemplate transactionTemplate, Account account, LocalDateTime at) {
+		return transactionTemplate.execute(status -> {
+			List<Long> balances = entityManager.createQuery("select t.balanceSnapshot from Transaction t "
+					+ "where t.account = :account and t.transactionResultType = :success "
+					+ "and t.transactedAt <= :at order by t.transactedAt asc, t.id asc", Long.class)
+					.setParameter("account", account)
+					.setParameter("success", TransactionResultType.S)
+					.setParameter("at", at)
+					.getResultList();
+			return balances.get(balances.size() - 1);
+		});
+	}
+}
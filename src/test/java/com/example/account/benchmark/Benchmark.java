@@ -0,0 +1,147 @@
+package com.example.account.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 벤치마크 측정 도구 (./gradlew benchmark 로 실행, 일반 test 에서는 @Tag("benchmark")가 빠진다)
+ * 1. warmup 번 먼저 돌리고 버린다.
+ * 2. threads 개 스레드가 operations 번을 나눠서 실행하고, 한 번마다 걸린 시간을 잰다.
+ * 3. 처리량(ops/s), p50/p99, 한 번당 CPU 시간과 할당량(JVM이 지원할 때), 실패 수를 한 줄로 남긴다.
+ * 실패(AccountException 등)는 세기만 하고 계속한다. 락 경합 비교에서는 실패 수도 결과다.
+ */
+@Slf4j
+public final class Benchmark {
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private Benchmark() {
+	}
+
+	@FunctionalInterface
+	public interface Operation {
+		void run(int index) throws Exception;
+	}
+
+	public static Result run(String name, int threads, int warmup, int operations, Operation operation)
+			throws InterruptedException {
+		execute(threads, warmup, operation);
+		Result result = execute(threads, operations, operation).named(name);
+		log.info("{}", result);
+		return result;
+	}
+
+	private static Result execute(int threads, int operations, Operation operation) throws InterruptedException {
+		long[] latencies = new long[operations];
+		AtomicInteger next = new AtomicInteger();
+		AtomicLong failures = new AtomicLong();
+		AtomicLong cpuNanos = new AtomicLong();
+		AtomicLong allocatedBytes = new AtomicLong();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>(threads);
+		for(int t = 0; t < threads; t++) {
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				long startedCpu = cpuTime();
+				long startedBytes = allocatedBytes();
+				for(int i = next.getAndIncrement(); i < operations; i = next.getAndIncrement()) {
+					long begin = System.nanoTime();
+					try {
+						operation.run(i);
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					}
+					latencies[i] = System.nanoTime() - begin;
+				}
+				cpuNanos.addAndGet(cpuTime() - startedCpu);
+				allocatedBytes.addAndGet(allocatedBytes() - startedBytes);
+			}, "benchmark-" + t);
+			workers.add(worker);
+			worker.start();
+		}
+		long started = System.nanoTime();
+		start.countDown();
+		for(Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - started;
+		Arrays.sort(latencies);
+		return new Result(null, threads, operations, elapsed, latencies, failures.get(),
+				cpuNanos.get(), allocatedBytes.get());
+	}
+
+	private static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0L;
+	}
+
+	//HotSpot 전용 API, 없으면 0
+	private static long allocatedBytes() {
+		if(THREADS instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) THREADS)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0L;
+	}
+
+	@Getter
+	public static class Result {
+		private final String name;
+		private final int threads;
+		private final int operations;
+		private final long elapsedNanos;
+		private final long[] sortedLatencies;
+		private final long failures;
+		private final long cpuNanos;
+		private final long allocatedBytes;
+
+		private Result(String name, int threads, int operations, long elapsedNanos, long[] sortedLatencies,
+				long failures, long cpuNanos, long allocatedBytes) {
+			this.name = name;
+			this.threads = threads;
+			this.operations = operations;
+			this.elapsedNanos = elapsedNanos;
+			this.sortedLatencies = sortedLatencies;
+			this.failures = failures;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		private Result named(String name) {
+			return new Result(name, threads, operations, elapsedNanos, sortedLatencies, failures,
+					cpuNanos, allocatedBytes);
+		}
+
+		public double getOpsPerSecond() {
+			return operations * 1_000_000_000d / elapsedNanos;
+		}
+
+		public long percentileMicros(double percentile) {
+			if(sortedLatencies.length == 0) {
+				return 0L;
+			}
+			int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+			return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))] / 1000;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-48s threads=%-3d ops=%-7d %10.0f ops/s  p50=%6dus  p99=%7dus"
+					+ "  cpu=%7dns/op  alloc=%8dB/op  failures=%d",
+					name, threads, operations, getOpsPerSecond(), percentileMicros(50), percentileMicros(99),
+					cpuNanos / Math.max(1, operations), allocatedBytes / Math.max(1, operations), failures);
+		}
+	}
+}
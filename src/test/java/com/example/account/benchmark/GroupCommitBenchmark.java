@@ -0,0 +1,140 @@
+package com.example.account.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.service.BalanceGroupCommitter;
+import com.example.account.service.HotAccountTracker;
+import com.example.account.service.LockService;
+import com.example.account.service.StripedAccountLockProvider;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.LockScope;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * user-015: 그룹 커밋 창 크기별 처리량 vs 지연시간
+ * 256개 계좌에 고르게 1원씩 쓴다. 동시 요청(스레드) 16 / 64 마다
+ * 요청마다 트랜잭션(entity 엔진)과 그룹 커밋 (최대 묶음, 최대 대기 ms) = (1, 1), (16, 1), (64, 5), (256, 20)을 잰다.
+ * 창이 클수록 커밋 수가 줄어 처리량은 늘고, 묶음이 덜 찰 때는 대기 시간만큼 p50/p99가 늘어난다.
+ * 끝나고 잔액 + 성공 거래 수가 처음 잔액과 같은지 본다.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class GroupCommitBenchmark {
+	private static final int[] CONCURRENCY = {16, 64};
+	private static final int[][] WINDOWS = {{1, 1}, {16, 1}, {64, 5}, {256, 20}};
+	private static final int WARMUP = 1000;
+	private static final int OPERATIONS = 10000;
+	private static final int ACCOUNTS = 256;
+	private static final long BALANCE = 1_000_000_000L;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void throughputVsLatency() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		LockService lockService = new LockService(new StripedAccountLockProvider(256), meterRegistry,
+				new HotAccountTracker(meterRegistry, 128, 10, 20), LockScope.SERVICE);
+		List<String> accountNumbers = newAccounts(8300000000L, ACCOUNTS);
+		long transactionsBefore = transactionRepository.count();
+
+		for(int threads : CONCURRENCY) {
+			Benchmark.run(threads + " threads, transaction per request", threads, WARMUP, OPERATIONS, i -> {
+				String accountNumber = pick(accountNumbers);
+				lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, "useBalance");
+				try {
+					transactionTemplate.executeWithoutResult(status -> use(accountNumber));
+				} finally {
+					lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT);
+				}
+			});
+
+			for(int[] window : WINDOWS) {
+				BalanceGroupCommitter committer = new BalanceGroupCommitter(accountRepository,
+						accountUserRepository, transactionRepository, transactionTemplate, new SimpleMeterRegistry(),
+						BalanceEngine.GROUP_COMMIT, window[0], window[1], 10000);
+				committer.start();
+				try {
+					Benchmark.run(threads + " threads, group commit " + window[0] + "/" + window[1] + "ms",
+							threads, WARMUP, OPERATIONS,
+							i -> committer.useBalance(1L, pick(accountNumbers), 1L).join());
+				} finally {
+					committer.stop();
+				}
+			}
+		}
+
+		long total = accountNumbers.stream()
+				.mapToLong(accountNumber -> accountRepository.findBalanceByAccountNumber(accountNumber).get())
+				.sum();
+		assertEquals(BALANCE * ACCOUNTS - (transactionRepository.count() - transactionsBefore), total);
+	}
+
+	private List<String> newAccounts(long firstAccountNumber, int count) {
+		List<String> accountNumbers = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			accountNumbers.add(accountRepository.save(Account.builder()
+					.accountUser(accountUserRepository.findById(1L).get())
+					.accountStatus(AccountStatus.IN_USE)
+					.accountNumber(String.valueOf(firstAccountNumber + i))
+					.balance(BALANCE)
+					.registeredAt(LocalDateTime.now())
+					.build()).getAccountNumber());
+		}
+		return accountNumbers;
+	}
+
+	private static String pick(List<String> accountNumbers) {
+		return accountNumbers.get(ThreadLocalRandom.current().nextInt(accountNumbers.size()));
+	}
+
+	private void use(String accountNumber) {
+		Account account = accountRepository.findByAccountNumber(accountNumber).get();
+		account.useBalance(1L);
+		transactionRepository.save(Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(1L)
+				.balanceSnapshot(account.getBalance())
+				.transactionId(UUID.randomUUID().toString().replace("-", ""))
+				.transactedAt(LocalDateTime.now())
+				.build());
+	}
+}
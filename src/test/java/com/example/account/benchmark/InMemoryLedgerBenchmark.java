@@ -0,0 +1,166 @@
+package com.example.account.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.service.HotAccountTracker;
+import com.example.account.service.InMemoryLedgerEngine;
+import com.example.account.service.LockService;
+import com.example.account.service.StripedAccountLockProvider;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.LockScope;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * user-013: 메모리 원장 vs entity 엔진 사용 처리량/p99
+ * entity: 계좌 락 + 계좌 읽기 + useBalance + 거래 저장, 메모리 원장: 파티션 writer 적용 + 저널 group fsync 까지 기다림
+ * 16 스레드, hot: 한 계좌, uniform: 64개 계좌에 고르게 (파티션 4개)
+ * 끝나면 엔진을 멈추고 DB 반영(projector)이 끝날 때까지 기다린 뒤 DB 잔액이 맞는지 본다.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InMemoryLedgerBenchmark {
+	private static final int THREADS = 16;
+	private static final int WARMUP = 2000;
+	private static final int OPERATIONS = 20000;
+	private static final int ACCOUNTS = 64;
+	private static final long BALANCE = 1_000_000_000L;
+	private static final long PROJECTION_TIMEOUT_MILLIS = 60000L;
+
+	@TempDir
+	Path journalDirectory;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void throughputAgainstEntityEngine() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		LockService lockService = new LockService(new StripedAccountLockProvider(256), meterRegistry,
+				new HotAccountTracker(meterRegistry, 128, 10, 20), LockScope.SERVICE);
+		InMemoryLedgerEngine engine = new InMemoryLedgerEngine(accountRepository, accountUserRepository,
+				transactionRepository, transactionTemplate, BalanceEngine.IN_MEMORY,
+				journalDirectory.toString(), 4, 4096, 256, 60L);
+
+		List<String> entityAccounts = newAccounts(8100000000L, ACCOUNTS);
+		List<String> ledgerAccounts = newAccounts(8200000000L, ACCOUNTS);
+
+		Benchmark.run("entity hot", THREADS, WARMUP, OPERATIONS,
+				i -> useWithLock(lockService, transactionTemplate, entityAccounts.get(0)));
+		Benchmark.run("entity uniform", THREADS, WARMUP, OPERATIONS,
+				i -> useWithLock(lockService, transactionTemplate, pick(entityAccounts)));
+
+		engine.start();
+		int[] uses = new int[ACCOUNTS];
+		try {
+			Benchmark.Result hot = Benchmark.run("in-memory hot", THREADS, WARMUP, OPERATIONS,
+					i -> engine.useBalance(1L, ledgerAccounts.get(0), 1L).join());
+			Benchmark.Result uniform = Benchmark.run("in-memory uniform", THREADS, WARMUP, OPERATIONS, i -> {
+				int index = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+				engine.useBalance(1L, ledgerAccounts.get(index), 1L).join();
+				synchronized(uses) {
+					uses[index]++;
+				}
+			});
+			assertEquals(0, hot.getFailures());
+			assertEquals(0, uniform.getFailures());
+		} finally {
+			engine.stop();
+		}
+
+		uses[0] += WARMUP + OPERATIONS;
+		for(int i = 0; i < ACCOUNTS; i++) {
+			awaitProjected(ledgerAccounts.get(i), BALANCE - uses[i]);
+		}
+	}
+
+	private void useWithLock(LockService lockService, TransactionTemplate transactionTemplate,
+			String accountNumber) {
+		lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, "useBalance");
+		try {
+			transactionTemplate.executeWithoutResult(status -> use(accountNumber));
+		} finally {
+			lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT);
+		}
+	}
+
+	//projector는 stop 뒤에도 남은 기록을 반영한다
+	private void awaitProjected(String accountNumber, long expectedBalance) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + PROJECTION_TIMEOUT_MILLIS;
+		while(System.currentTimeMillis() < deadline
+				&& accountRepository.findBalanceByAccountNumber(accountNumber).get() != expectedBalance) {
+			TimeUnit.MILLISECONDS.sleep(100);
+		}
+		assertEquals(expectedBalance, accountRepository.findBalanceByAccountNumber(accountNumber).get());
+	}
+
+	private List<String> newAccounts(long firstAccountNumber, int count) {
+		List<String> accountNumbers = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			accountNumbers.add(accountRepository.save(Account.builder()
+					.accountUser(accountUserRepository.findById(1L).get())
+					.accountStatus(AccountStatus.IN_USE)
+					.accountNumber(String.valueOf(firstAccountNumber + i))
+					.balance(BALANCE)
+					.registeredAt(LocalDateTime.now())
+					.build()).getAccountNumber());
+		}
+		return accountNumbers;
+	}
+
+	private static String pick(List<String> accountNumbers) {
+		return accountNumbers.get(ThreadLocalRandom.current().nextInt(accountNumbers.size()));
+	}
+
+	private void use(String accountNumber) {
+		Account account = accountRepository.findByAccountNumber(accountNumber).get();
+		account.useBalance(1L);
+		transactionRepository.save(Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(1L)
+				.balanceSnapshot(account.getBalance())
+				.transactionId(UUID.randomUUID().toString().replace("-", ""))
+				.transactedAt(LocalDateTime.now())
+				.build());
+	}
+}
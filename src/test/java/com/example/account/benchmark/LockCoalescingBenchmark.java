@@ -0,0 +1,131 @@
+package com.example.account.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.redisnode.RedisNode;
+import org.redisson.api.redisnode.RedisNodes;
+import org.redisson.config.Config;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.exception.AccountException;
+import com.example.account.service.LockCircuitBreaker;
+import com.example.account.service.RedisAccountLockProvider;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.LockMode;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import redis.embedded.RedisServer;
+
+/**
+ * user-001: 로컬 줄 + hand-off vs 요청마다 RLock (이전 LockService 방식)
+ * 락을 잡고 200us 일하고 푸는 것을 16 스레드로 반복한다. hot: 모두 한 계좌, uniform: 1000개 계좌에 고르게
+ * 처리량/p99와 함께 한 번당 Redis 스크립트 호출 수(INFO commandstats의 eval/evalsha)를 남긴다.
+ */
+@Slf4j
+@Tag("benchmark")
+class LockCoalescingBenchmark {
+	private static final int REDIS_PORT = 6397;
+	private static final int THREADS = 16;
+	private static final int WARMUP = 2000;
+	private static final int OPERATIONS = 20000;
+	private static final int ACCOUNTS = 1000;
+	private static final long CRITICAL_SECTION_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+	private static final AccountLockPolicy POLICY = new AccountLockPolicy(5000L, 15000L, LockMode.EXCLUSIVE);
+
+	private static RedisServer redisServer;
+	private static RedissonClient redissonClient;
+
+	@BeforeAll
+	static void startRedis() {
+		redisServer = new RedisServer(REDIS_PORT);
+		redisServer.start();
+		Config config = new Config();
+		config.useSingleServer().setAddress("redis://127.0.0.1:" + REDIS_PORT);
+		redissonClient = Redisson.create(config);
+	}
+
+	@AfterAll
+	static void stopRedis() {
+		redissonClient.shutdown();
+		redisServer.stop();
+	}
+
+	@Test
+	void coalescingVsPerRequestLock() throws Exception {
+		//느린 호출로 열리지 않게 기준을 크게 잡는다
+		RedisAccountLockProvider provider = new RedisAccountLockProvider(redissonClient,
+				new LockCircuitBreaker(new SimpleMeterRegistry(), 50, 10, 50, 80, 60000L, 5000L, 5), null);
+		Supplier<String> hot = () -> accountNumber(0);
+		Supplier<String> uniform = () -> accountNumber(ThreadLocalRandom.current().nextInt(ACCOUNTS));
+
+		run("per-request RLock hot", hot, LockCoalescingBenchmark::perRequestLock,
+				accountNumber -> redissonClient.getLock("ACLK:" + accountNumber).unlock());
+		run("coalescing hot", hot, accountNumber -> provider.lock(accountNumber, POLICY),
+				accountNumber -> provider.unlock(accountNumber, POLICY));
+		run("per-request RLock uniform", uniform, LockCoalescingBenchmark::perRequestLock,
+				accountNumber -> redissonClient.getLock("ACLK:" + accountNumber).unlock());
+		run("coalescing uniform", uniform, accountNumber -> provider.lock(accountNumber, POLICY),
+				accountNumber -> provider.unlock(accountNumber, POLICY));
+	}
+
+	private void run(String name, Supplier<String> accounts, LockAction lock, LockAction unlock)
+			throws Exception {
+		long scriptsBefore = scriptCalls();
+		Benchmark.run(name, THREADS, WARMUP, OPERATIONS, i -> {
+			String accountNumber = accounts.get();
+			lock.run(accountNumber);
+			try {
+				LockSupport.parkNanos(CRITICAL_SECTION_NANOS);
+			} finally {
+				unlock.run(accountNumber);
+			}
+		});
+		long scripts = scriptCalls() - scriptsBefore;
+		log.info("{}: {} redis scripts per operation", name,
+				String.format("%.2f", (double) scripts / (WARMUP + OPERATIONS)));
+	}
+
+	private static void perRequestLock(String accountNumber) throws InterruptedException {
+		RLock lock = redissonClient.getLock("ACLK:" + accountNumber);
+		if(!lock.tryLock(POLICY.getWaitTimeMillis(), POLICY.getLeaseTimeMillis(), TimeUnit.MILLISECONDS)) {
+			throw new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+		}
+	}
+
+	//Redisson 락은 잡기/풀기 모두 Lua 스크립트 한 번
+	private static long scriptCalls() {
+		Map<String, String> commandStats = redissonClient.getRedisNodes(RedisNodes.SINGLE).getInstance()
+				.info(RedisNode.InfoSection.COMMANDSTATS);
+		return calls(commandStats.get("cmdstat_eval")) + calls(commandStats.get("cmdstat_evalsha"));
+	}
+
+	//calls=123,usec=456,usec_per_call=3.71
+	private static long calls(String stat) {
+		if(stat == null) {
+			return 0L;
+		}
+		String calls = stat.substring(stat.indexOf("calls=") + 6);
+		return Long.parseLong(calls.substring(0, calls.indexOf(',')));
+	}
+
+	private static String accountNumber(int index) {
+		return String.valueOf(1000000000L + index);
+	}
+
+	@FunctionalInterface
+	private interface LockAction {
+		void run(String accountNumber) throws Exception;
+	}
+}
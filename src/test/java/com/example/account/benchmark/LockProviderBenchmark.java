@@ -0,0 +1,110 @@
+package com.example.account.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.service.AccountLockProvider;
+import com.example.account.service.DbRowAccountLockProvider;
+import com.example.account.service.LockCircuitBreaker;
+import com.example.account.service.RedisAccountLockProvider;
+import com.example.account.service.StripedAccountLockProvider;
+import com.example.account.type.LockMode;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import redis.embedded.RedisServer;
+
+/**
+ * user-002: 락 구현체별 처리량과 p99
+ * 락을 잡고 200us 일하고 푸는 것을 16 스레드로 반복한다.
+ * uniform: 1000개 계좌에 고르게, hot: 90%가 한 계좌
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LockProviderBenchmark {
+	private static final int REDIS_PORT = 6391;
+	private static final int THREADS = 16;
+	private static final int WARMUP = 2000;
+	private static final int OPERATIONS = 20000;
+	private static final int ACCOUNTS = 1000;
+	private static final long CRITICAL_SECTION_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+	private static final AccountLockPolicy POLICY = new AccountLockPolicy(5000L, 15000L, LockMode.EXCLUSIVE);
+
+	private static RedisServer redisServer;
+	private static RedissonClient redissonClient;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@BeforeAll
+	static void startRedis() {
+		redisServer = new RedisServer(REDIS_PORT);
+		redisServer.start();
+		Config config = new Config();
+		config.useSingleServer().setAddress("redis://127.0.0.1:" + REDIS_PORT);
+		redissonClient = Redisson.create(config);
+	}
+
+	@AfterAll
+	static void stopRedis() {
+		redissonClient.shutdown();
+		redisServer.stop();
+	}
+
+	@Test
+	void compareProviders() throws Exception {
+		Map<String, AccountLockProvider> providers = new LinkedHashMap<>();
+		providers.put("striped", new StripedAccountLockProvider(256));
+		//느린 호출로 열리지 않게 기준을 크게 잡는다
+		providers.put("redis", new RedisAccountLockProvider(redissonClient,
+				new LockCircuitBreaker(new SimpleMeterRegistry(), 50, 10, 50, 80, 60000L, 5000L, 5), null));
+		providers.put("db", new DbRowAccountLockProvider(dataSource, entityManagerFactory));
+
+		for(Map.Entry<String, AccountLockProvider> provider : providers.entrySet()) {
+			run(provider.getKey() + " uniform", provider.getValue(),
+					() -> accountNumber(ThreadLocalRandom.current().nextInt(ACCOUNTS)));
+			run(provider.getKey() + " hot(90% one account)", provider.getValue(),
+					() -> ThreadLocalRandom.current().nextInt(10) == 0
+							? accountNumber(ThreadLocalRandom.current().nextInt(ACCOUNTS)) : accountNumber(0));
+		}
+	}
+
+	private void run(String name, AccountLockProvider provider, Supplier<String> accounts) throws Exception {
+		Benchmark.run(name, THREADS, WARMUP, OPERATIONS, i -> {
+			String accountNumber = accounts.get();
+			provider.lock(accountNumber, POLICY);
+			try {
+				LockSupport.parkNanos(CRITICAL_SECTION_NANOS);
+			} finally {
+				provider.unlock(accountNumber, POLICY);
+			}
+		});
+	}
+
+	private static String accountNumber(int index) {
+		return String.valueOf(1000000000L + index);
+	}
+}
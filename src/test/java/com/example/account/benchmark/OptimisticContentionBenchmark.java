@@ -0,0 +1,141 @@
+package com.example.account.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.service.HotAccountTracker;
+import com.example.account.service.LockService;
+import com.example.account.service.OptimisticRetryExecutor;
+import com.example.account.service.StripedAccountLockProvider;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.LockScope;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * user-011: 경합 정도별 낙관적 락(재시도) vs 비관적 락 사용 처리량
+ * 16 스레드가 계좌 256 / 16 / 4 / 1개 중 하나를 골라 1원씩 쓴다. 계좌가 적을수록 경합이 심하다.
+ * 낙관적: OptimisticRetryExecutor + 새 트랜잭션 (기본값: 5번, 5~100ms 백오프), 비관적: 계좌 락 + 트랜잭션
+ * 경합이 적으면 락 왕복이 없는 낙관적 쪽이, 심해지면 재시도/백오프 때문에 비관적 쪽이 이긴다.
+ * 재시도를 다 쓴 요청은 실패로 잡힌다. 끝나고 잔액 + 성공 거래 수가 처음 잔액과 같은지 본다.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OptimisticContentionBenchmark {
+	private static final int[] ACCOUNT_COUNTS = {256, 16, 4, 1};
+	private static final int THREADS = 16;
+	private static final int WARMUP = 1000;
+	private static final int OPERATIONS = 10000;
+	private static final long BALANCE = 1_000_000_000L;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void contentionCrossover() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		LockService lockService = new LockService(new StripedAccountLockProvider(256), meterRegistry,
+				new HotAccountTracker(meterRegistry, 128, 10, 20), LockScope.SERVICE);
+		OptimisticRetryExecutor optimisticRetryExecutor = new OptimisticRetryExecutor(meterRegistry, 5, 5L, 100L);
+
+		long nextAccountNumber = 9000000000L;
+		for(int accountCount : ACCOUNT_COUNTS) {
+			List<String> optimisticAccounts = newAccounts(nextAccountNumber, accountCount);
+			nextAccountNumber += accountCount;
+			List<String> pessimisticAccounts = newAccounts(nextAccountNumber, accountCount);
+			nextAccountNumber += accountCount;
+
+			long transactionsBefore = transactionRepository.count();
+			Benchmark.run("optimistic, " + accountCount + " accounts", THREADS, WARMUP, OPERATIONS, i -> {
+				String accountNumber = pick(optimisticAccounts);
+				optimisticRetryExecutor.execute(() ->
+						transactionTemplate.execute(status -> use(accountNumber)));
+			});
+			assertBalances(optimisticAccounts, transactionRepository.count() - transactionsBefore);
+
+			transactionsBefore = transactionRepository.count();
+			Benchmark.run("pessimistic, " + accountCount + " accounts", THREADS, WARMUP, OPERATIONS, i -> {
+				String accountNumber = pick(pessimisticAccounts);
+				lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, "useBalance");
+				try {
+					transactionTemplate.execute(status -> use(accountNumber));
+				} finally {
+					lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT);
+				}
+			});
+			assertBalances(pessimisticAccounts, transactionRepository.count() - transactionsBefore);
+		}
+	}
+
+	private List<String> newAccounts(long firstAccountNumber, int count) {
+		List<String> accountNumbers = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			accountNumbers.add(accountRepository.save(Account.builder()
+					.accountUser(accountUserRepository.findById(1L).get())
+					.accountStatus(AccountStatus.IN_USE)
+					.accountNumber(String.valueOf(firstAccountNumber + i))
+					.balance(BALANCE)
+					.registeredAt(LocalDateTime.now())
+					.build()).getAccountNumber());
+		}
+		return accountNumbers;
+	}
+
+	private static String pick(List<String> accountNumbers) {
+		return accountNumbers.get(ThreadLocalRandom.current().nextInt(accountNumbers.size()));
+	}
+
+	private void assertBalances(List<String> accountNumbers, long used) {
+		long total = accountNumbers.stream()
+				.mapToLong(accountNumber -> accountRepository.findBalanceByAccountNumber(accountNumber).get())
+				.sum();
+		assertEquals(BALANCE * accountNumbers.size() - used, total);
+	}
+
+	private Transaction use(String accountNumber) {
+		Account account = accountRepository.findByAccountNumber(accountNumber).get();
+		account.useBalance(1L);
+		return transactionRepository.save(Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(1L)
+				.balanceSnapshot(account.getBalance())
+				.transactionId(UUID.randomUUID().toString().replace("-", ""))
+				.transactedAt(LocalDateTime.now())
+				.build());
+	}
+}
@@ -0,0 +1,158 @@
+package com.example.account.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.LedgerReconciliation;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.service.HotAccountTracker;
+import com.example.account.service.LockService;
+import com.example.account.service.RedisLedgerService;
+import com.example.account.service.RedisLedgerWriter;
+import com.example.account.service.StripedAccountLockProvider;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.LockScope;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import redis.embedded.RedisServer;
+
+/**
+ * user-012: 계좌 하나에 요청이 몰릴 때 Redis 원장 vs entity 엔진 사용 처리량
+ * entity: 계좌 락 + 계좌 읽기 + useBalance + 거래 저장, 원장: Lua 스크립트 한 번 (DB 반영은 writer가 따로 한다)
+ * 끝나면 writer를 멈추고 reconcile로 스트림을 모두 반영한 뒤 Redis/DB 잔액이 같은지 본다.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RedisLedgerBenchmark {
+	private static final int REDIS_PORT = 6396;
+	private static final int THREADS = 16;
+	private static final int WARMUP = 2000;
+	private static final int OPERATIONS = 20000;
+	private static final long BALANCE = 1_000_000_000L;
+
+	private static RedisServer redisServer;
+	private static RedissonClient redissonClient;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@BeforeAll
+	static void startRedis() {
+		redisServer = new RedisServer(REDIS_PORT);
+		redisServer.start();
+		Config config = new Config();
+		config.useSingleServer().setAddress("redis://127.0.0.1:" + REDIS_PORT);
+		redissonClient = Redisson.create(config);
+	}
+
+	@AfterAll
+	static void stopRedis() {
+		redissonClient.shutdown();
+		redisServer.stop();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void hotAccountThroughput() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		LockService lockService = new LockService(new StripedAccountLockProvider(256), meterRegistry,
+				new HotAccountTracker(meterRegistry, 128, 10, 20), LockScope.SERVICE);
+		ObjectProvider<RedissonClient> redissonClientProvider = mock(ObjectProvider.class);
+		when(redissonClientProvider.getObject()).thenReturn(redissonClient);
+		RedisLedgerService redisLedgerService = new RedisLedgerService(redissonClientProvider, accountRepository,
+				accountUserRepository, transactionRepository, BalanceEngine.REDIS_LEDGER);
+		RedisLedgerWriter redisLedgerWriter = new RedisLedgerWriter(redissonClientProvider, accountRepository,
+				transactionRepository, transactionTemplate, BalanceEngine.REDIS_LEDGER, 500, 200L, 5000L);
+
+		String entityAccount = newAccount(0).getAccountNumber();
+		Benchmark.run("entity, account lock", THREADS, WARMUP, OPERATIONS, i -> {
+			lockService.Lock(entityAccount, AccountLockPolicy.DEFAULT, "useBalance");
+			try {
+				transactionTemplate.executeWithoutResult(status -> use(entityAccount));
+			} finally {
+				lockService.unLock(entityAccount, AccountLockPolicy.DEFAULT);
+			}
+		});
+
+		String ledgerAccount = newAccount(1).getAccountNumber();
+		redisLedgerWriter.start();
+		Benchmark.Result result;
+		try {
+			result = Benchmark.run("redis ledger", THREADS, WARMUP, OPERATIONS,
+					i -> redisLedgerService.useBalance(1L, ledgerAccount, 1L));
+		} finally {
+			redisLedgerWriter.stop();
+		}
+
+		LedgerReconciliation.Report report = redisLedgerWriter.reconcile();
+		assertFalse(report.isSkipped());
+		assertTrue(report.getMismatches().isEmpty());
+		assertEquals(0, result.getFailures());
+		assertEquals(BALANCE - WARMUP - OPERATIONS,
+				accountRepository.findBalanceByAccountNumber(ledgerAccount).get());
+	}
+
+	private Account newAccount(int index) {
+		return accountRepository.save(Account.builder()
+				.accountUser(accountUserRepository.findById(1L).get())
+				.accountStatus(AccountStatus.IN_USE)
+				.accountNumber(String.valueOf(8000000000L + index))
+				.balance(BALANCE)
+				.registeredAt(LocalDateTime.now())
+				.build());
+	}
+
+	private void use(String accountNumber) {
+		Account account = accountRepository.findByAccountNumber(accountNumber).get();
+		account.useBalance(1L);
+		transactionRepository.save(Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(1L)
+				.balanceSnapshot(account.getBalance())
+				.transactionId(UUID.randomUUID().toString().replace("-", ""))
+				.transactedAt(LocalDateTime.now())
+				.build());
+	}
+}
@@ -0,0 +1,122 @@
+package com.example.account.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.repository.AccountBalanceShardRepository;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.service.HotAccountTracker;
+import com.example.account.service.LockService;
+import com.example.account.service.ShardedBalanceService;
+import com.example.account.service.StripedAccountLockProvider;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.LockScope;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * user-014: 계좌 하나에 요청이 몰릴 때 샤드 수(없음, 4, 16)별 사용 처리량
+ * 없음: entity 엔진 방식 (계좌 락 + 계좌 읽기 + useBalance + 거래 저장), 샤드: ShardedBalanceService.useBalance
+ * 16 스레드가 같은 계좌에서 1원씩 쓴다. 끝나고 남은 잔액 + 성공 거래 수가 처음 잔액과 같은지 본다.
+ * 샤드가 모두 바쁘면 전체 락으로 넘어가므로 샤드 수가 스레드 수보다 적으면 실패(락 대기 초과)도 같이 본다.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ShardedBalanceBenchmark {
+	private static final int[] SHARD_COUNTS = {1, 4, 16};
+	private static final int THREADS = 16;
+	private static final int WARMUP = 1000;
+	private static final int OPERATIONS = 10000;
+	private static final long BALANCE = 1_000_000_000L;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private AccountBalanceShardRepository accountBalanceShardRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void hotAccountThroughput() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		LockService lockService = new LockService(new StripedAccountLockProvider(256), meterRegistry,
+				new HotAccountTracker(meterRegistry, 128, 10, 20), LockScope.SERVICE);
+		ShardedBalanceService shardedBalanceService = new ShardedBalanceService(accountRepository,
+				accountUserRepository, transactionRepository, accountBalanceShardRepository, lockService,
+				transactionTemplate, 10L, BalanceEngine.ENTITY);
+
+		for(int s = 0; s < SHARD_COUNTS.length; s++) {
+			int shardCount = SHARD_COUNTS[s];
+			Account account = accountRepository.save(Account.builder()
+					.accountUser(accountUserRepository.findById(1L).get())
+					.accountStatus(AccountStatus.IN_USE)
+					.accountNumber(String.valueOf(7000000000L + s))
+					.balance(BALANCE)
+					.registeredAt(LocalDateTime.now())
+					.build());
+			String accountNumber = account.getAccountNumber();
+			long transactionsBefore = transactionRepository.count();
+
+			if(shardCount <= 1) {
+				Benchmark.run("unsharded, account lock", THREADS, WARMUP, OPERATIONS, i -> {
+					lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, "useBalance");
+					try {
+						transactionTemplate.executeWithoutResult(status -> use(accountNumber));
+					} finally {
+						lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT);
+					}
+				});
+			} else {
+				shardedBalanceService.reshard(accountNumber, shardCount);
+				Benchmark.run(shardCount + " shards", THREADS, WARMUP, OPERATIONS,
+						i -> shardedBalanceService.useBalance(1L, accountNumber, 1L));
+			}
+
+			long used = transactionRepository.count() - transactionsBefore;
+			assertEquals(BALANCE - used, shardedBalanceService.getStatus(accountNumber).getTotalBalance());
+		}
+	}
+
+	private void use(String accountNumber) {
+		Account account = accountRepository.findByAccountNumber(accountNumber).get();
+		account.useBalance(1L);
+		transactionRepository.save(Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(1L)
+				.balanceSnapshot(account.getBalance())
+				.transactionId(UUID.randomUUID().toString().replace("-", ""))
+				.transactedAt(LocalDateTime.now())
+				.build());
+	}
+}
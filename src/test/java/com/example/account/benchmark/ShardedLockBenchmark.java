@@ -0,0 +1,77 @@
+package com.example.account.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.service.LockCircuitBreaker;
+import com.example.account.service.LockCircuitBreakers;
+import com.example.account.service.RedisAccountLockProvider;
+import com.example.account.service.RedisLockShards;
+import com.example.account.type.LockMode;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import redis.embedded.RedisServer;
+
+/**
+ * user-008: 샤드 수(1, 2, 4)별 Redis 락 처리량
+ * embedded-redis 4개를 띄우고 앞에서부터 샤드 수만큼 쓴다.
+ * 10000개 계좌에 고르게 32 스레드로 락을 잡고 바로 푼다 (로컬 hand-off가 거의 없어서 매번 Redis를 부른다).
+ * 같은 머신의 Redis들이라 CPU 코어 수를 넘으면 더 늘지 않는다.
+ */
+@Tag("benchmark")
+class ShardedLockBenchmark {
+	private static final int FIRST_PORT = 6392;
+	private static final int[] SHARD_COUNTS = {1, 2, 4};
+	private static final int THREADS = 32;
+	private static final int WARMUP = 5000;
+	private static final int OPERATIONS = 50000;
+	private static final int ACCOUNTS = 10000;
+	private static final AccountLockPolicy POLICY = new AccountLockPolicy(5000L, 15000L, LockMode.EXCLUSIVE);
+
+	private static final List<RedisServer> redisServers = new ArrayList<>();
+
+	@BeforeAll
+	static void startRedis() {
+		for(int i = 0; i < SHARD_COUNTS[SHARD_COUNTS.length - 1]; i++) {
+			RedisServer redisServer = new RedisServer(FIRST_PORT + i);
+			redisServer.start();
+			redisServers.add(redisServer);
+		}
+	}
+
+	@AfterAll
+	static void stopRedis() {
+		redisServers.forEach(RedisServer::stop);
+	}
+
+	@Test
+	void throughputByShardCount() throws Exception {
+		for(int shardCount : SHARD_COUNTS) {
+			List<String> addresses = new ArrayList<>();
+			for(int i = 0; i < shardCount; i++) {
+				addresses.add("redis://127.0.0.1:" + (FIRST_PORT + i));
+			}
+			RedisLockShards shards = new RedisLockShards(null, addresses, 0L);
+			//느린 호출로 열리지 않게 기준을 크게 잡는다
+			RedisAccountLockProvider provider = new RedisAccountLockProvider(shards,
+					new LockCircuitBreakers(shard -> new LockCircuitBreaker(new SimpleMeterRegistry(), shard,
+							50, 10, 50, 80, 60000L, 5000L, 5)), null);
+			try {
+				Benchmark.run(shardCount + " shards", THREADS, WARMUP, OPERATIONS, i -> {
+					String accountNumber = String.valueOf(1000000000L + ThreadLocalRandom.current().nextInt(ACCOUNTS));
+					provider.lock(accountNumber, POLICY);
+					provider.unlock(accountNumber, POLICY);
+				});
+			} finally {
+				shards.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.example.account.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * user-022: 거래 insert 한 건당 JDBC 문장 수와 처리량, 예전(allocationSize 1) vs 지금(pooled 50 + 배치)
+ * 예전 방식은 insert 마다 시퀀스를 한 번씩 부르는 것으로 흉내 낸다.
+ * 한 건씩(saveAndGetTransaction)과 50건씩(saveAll, 그룹 커밋/배치/일괄 반영) 두 가지를 잰다.
+ */
+@Slf4j
+@Tag("benchmark")
+@DataJpaTest(properties = {"spring.jpa.show-sql=false",
+		"spring.jpa.properties.hibernate.generate_statistics=true"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransactionInsertBenchmark {
+	private static final int WARMUP = 500;
+	private static final int OPERATIONS = 5000;
+	private static final int BATCH = 50;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void statementsPerInsert() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		Account account = accountRepository.save(Account.builder()
+				.accountUser(accountUserRepository.findById(1L).get())
+				.accountStatus(AccountStatus.IN_USE)
+				.accountNumber("5000000000")
+				.balance(1_000_000_000L)
+				.registeredAt(LocalDateTime.now())
+				.build());
+		SessionFactoryImplementor sessionFactory = entityManager.getEntityManagerFactory()
+				.unwrap(SessionFactoryImplementor.class);
+		String nextValSql = "select " + sessionFactory.getJdbcServices().getDialect()
+				.getSelectSequenceNextValString("transaction_seq");
+
+		run("insert 1 row, sequence call per row (before)", 1, account, transactionTemplate, nextValSql);
+		run("insert 1 row, pooled id", 1, account, transactionTemplate, null);
+		run("saveAll 50 rows, sequence call per row (before)", BATCH, account, transactionTemplate, nextValSql);
+		run("saveAll 50 rows, pooled id + jdbc batch", BATCH, account, transactionTemplate, null);
+	}
+
+	private void run(String name, int rows, Account account, TransactionTemplate transactionTemplate,
+			String nextValSql) throws Exception {
+		Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+		Benchmark.Operation operation = i -> transactionTemplate.executeWithoutResult(status -> {
+			List<Transaction> transactions = new ArrayList<>(rows);
+			for(int r = 0; r < rows; r++) {
+				if(nextValSql != null) {
+					entityManager.createNativeQuery(nextValSql).getSingleResult();
+				}
+				transactions.add(newTransaction(account));
+			}
+			transactionRepository.saveAll(transactions);
+		});
+		Benchmark.run(name + " warmup", 1, 0, WARMUP, operation);
+		statistics.clear();
+		Benchmark.Result result = Benchmark.run(name, 1, 0, OPERATIONS, operation);
+		log.info("{}: {} statements per row", name,
+				String.format("%.2f", statistics.getPrepareStatementCount() / (double) (OPERATIONS * rows)));
+		assertEquals(0, result.getFailures());
+	}
+
+	private static Transaction newTransaction(Account account) {
+		return Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(1L)
+				.balanceSnapshot(0L)
+				.transactionId(UUID.randomUUID().toString().replace("-", ""))
+				.transactedAt(LocalDateTime.now())
+				.build();
+	}
+}
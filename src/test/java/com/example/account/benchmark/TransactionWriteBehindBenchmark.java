@@ -0,0 +1,150 @@
+package com.example.account.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionOutboxRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.service.HotAccountTracker;
+import com.example.account.service.LockService;
+import com.example.account.service.StripedAccountLockProvider;
+import com.example.account.service.TransactionWriteBehind;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.LockScope;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * user-025: 거래 기록 insert vs write-behind 저널 사용 처리량/p99
+ * 16 스레드가 256개 계좌에 고르게 계좌 락 + 계좌 읽기 + useBalance + 거래 기록 한 트랜잭션을 반복한다.
+ * insert: 요청 안에서 거래 insert, write-behind: 커밋 전에 mmap 저널 + outbox 행을 쓰고 응답 (force 켜고/끄고)
+ * 끝나면 drainer를 멈추고 DB에 들어간 거래 수가 성공한 요청 수와 같은지 본다.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransactionWriteBehindBenchmark {
+	private static final int THREADS = 16;
+	private static final int WARMUP = 2000;
+	private static final int OPERATIONS = 20000;
+	private static final int ACCOUNTS = 256;
+	private static final long BALANCE = 1_000_000_000L;
+
+	@TempDir
+	Path journalDirectory;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private TransactionOutboxRepository transactionOutboxRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void insertVsWriteBehind() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		LockService lockService = new LockService(new StripedAccountLockProvider(256), meterRegistry,
+				new HotAccountTracker(meterRegistry, 128, 10, 20), LockScope.SERVICE);
+		List<String> accountNumbers = newAccounts(8400000000L, ACCOUNTS);
+
+		long transactionsBefore = transactionRepository.count();
+		Benchmark.Result result = Benchmark.run("insert", THREADS, WARMUP, OPERATIONS,
+				i -> useWithLock(lockService, transactionTemplate, pick(accountNumbers),
+						transactionRepository::save));
+		assertEquals(WARMUP + OPERATIONS - result.getFailures(), transactionRepository.count() - transactionsBefore);
+
+		for(boolean force : new boolean[] {true, false}) {
+			TransactionWriteBehind writeBehind = new TransactionWriteBehind(transactionRepository,
+					accountRepository, transactionOutboxRepository, transactionTemplate, new SimpleMeterRegistry(), true,
+					journalDirectory.resolve("force-" + force).toString(), 16 * 1024 * 1024, force, 500, 100L);
+			writeBehind.start();
+			transactionsBefore = transactionRepository.count();
+			try {
+				result = Benchmark.run("write-behind, force " + force, THREADS, WARMUP, OPERATIONS,
+						i -> useWithLock(lockService, transactionTemplate, pick(accountNumbers),
+								writeBehind::append));
+			} finally {
+				writeBehind.stop();//남은 기록을 다 넣고 멈춘다
+			}
+			assertEquals(WARMUP + OPERATIONS - result.getFailures(),
+					transactionRepository.count() - transactionsBefore);
+		}
+	}
+
+	private void useWithLock(LockService lockService, TransactionTemplate transactionTemplate,
+			String accountNumber, TransactionRecorder recorder) {
+		lockService.Lock(accountNumber, AccountLockPolicy.DEFAULT, "useBalance");
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				Account account = accountRepository.findByAccountNumber(accountNumber).get();
+				account.useBalance(1L);
+				recorder.record(Transaction.builder()
+						.transactionType(TransactionType.USE)
+						.transactionResultType(TransactionResultType.S)
+						.account(account)
+						.amount(1L)
+						.balanceSnapshot(account.getBalance())
+						.transactionId(UUID.randomUUID().toString().replace("-", ""))
+						.transactedAt(LocalDateTime.now())
+						.build());
+			});
+		} finally {
+			lockService.unLock(accountNumber, AccountLockPolicy.DEFAULT);
+		}
+	}
+
+	private List<String> newAccounts(long firstAccountNumber, int count) {
+		List<String> accountNumbers = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			accountNumbers.add(accountRepository.save(Account.builder()
+					.accountUser(accountUserRepository.findById(1L).get())
+					.accountStatus(AccountStatus.IN_USE)
+					.accountNumber(String.valueOf(firstAccountNumber + i))
+					.balance(BALANCE)
+					.registeredAt(LocalDateTime.now())
+					.build()).getAccountNumber());
+		}
+		return accountNumbers;
+	}
+
+	private static String pick(List<String> accountNumbers) {
+		return accountNumbers.get(ThreadLocalRandom.current().nextInt(accountNumbers.size()));
+	}
+
+	@FunctionalInterface
+	private interface TransactionRecorder {
+		void record(Transaction transaction);
+	}
+}
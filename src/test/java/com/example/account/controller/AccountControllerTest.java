@@ -1,5 +1,6 @@
 package com.example.account.controller;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.BDDMockito.given;
@@ -22,12 +23,14 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
-import com.example.account.domain.Account;
+import com.example.account.dto.AccountBalanceAt;
+import com.example.account.dto.AccountDetail;
 import com.example.account.dto.AccountDto;
 import com.example.account.dto.CreateAccount;
 import com.example.account.dto.DeleteAccount;
 import com.example.account.exception.AccountException;
 import com.example.account.service.AccountService;
+import com.example.account.service.BalanceHistoryService;
 import com.example.account.type.AccountStatus;
 import com.example.account.type.ErrorCode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -47,6 +50,8 @@ class AccountControllerTest {
 	//mock를 사용하고 주입을 해주었다.
 	@MockBean
 	private AccountService accountService;
+	@MockBean
+	private BalanceHistoryService balanceHistoryService;
 	@Autowired
 	private MockMvc mockMvc;
 	@Autowired
@@ -79,11 +84,32 @@ class AccountControllerTest {
 		
 	}
 	
+	@Test
+	void successGetBalanceAt() throws Exception{
+		//given
+		given(balanceHistoryService.getBalanceAt(anyString(), any()))
+				.willReturn(AccountBalanceAt.builder()
+						.accountNumber("1000000000")
+						.at(LocalDateTime.of(2024, 10, 1, 0, 0))
+						.balance(9000L)
+						.transactionId("transactionId")
+						.build());
+		
+		//when
+		//then
+		mockMvc.perform(get("/account/1000000000/balance?at=2024-10-01T00:00:00"))
+				.andDo(print())
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.accountNumber").value("1000000000"))
+				.andExpect(jsonPath("$.balance").value(9000))
+				.andExpect(jsonPath("$.transactionId").value("transactionId"));
+	}
+	
 	@Test
 	void successGetAccount() throws Exception{
 		//given
 		given(accountService.getAccount(anyLong()))
-				.willReturn(Account.builder()
+				.willReturn(AccountDetail.builder()
 						.accountNumber("3456")
 						.accountStatus(AccountStatus.IN_USE)
 						.build());
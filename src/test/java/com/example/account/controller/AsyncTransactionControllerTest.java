@@ -0,0 +1,101 @@
+package com.example.account.controller;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.example.account.config.LockExecutorConfig;
+import com.example.account.dto.TransactionDto;
+import com.example.account.dto.UseBalance;
+import com.example.account.exception.AccountException;
+import com.example.account.service.TransactionService;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@WebMvcTest(controllers = AsyncTransactionController.class,
+		properties = "account.lock.execution=async")
+@Import(LockExecutorConfig.class)
+class AsyncTransactionControllerTest {
+	@MockBean
+	private TransactionService transactionService;
+	
+	@Autowired
+	private MockMvc mockmvc;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Test
+	void successUseBalance() throws Exception{
+		//given
+		given(transactionService.useBalanceByEngineAsync(anyLong(), anyString(), anyLong()))
+			.willReturn(CompletableFuture.completedFuture(TransactionDto.builder()
+					.accountNumber("1000000000")
+					.transactedAt(LocalDateTime.now())
+					.amount(12345L)
+					.transactionId("transactionId")
+					.transactionResultType(TransactionResultType.S)
+					.build()));
+		
+		//when
+		MvcResult result = mockmvc.perform(post("/transaction/use")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(
+								new UseBalance.Request(1L,"2000000000", 3000L)
+						))
+				).andExpect(request().asyncStarted())
+				 .andReturn();
+		
+		//then
+		mockmvc.perform(asyncDispatch(result))
+				.andDo(print())
+				 .andExpect(status().isOk())
+				 .andExpect(jsonPath("$.accountNumber").value("1000000000"))
+				 .andExpect(jsonPath("$.transactionResultType").value("S"))
+				 .andExpect(jsonPath("$.transactionId").value("transactionId"))
+				 .andExpect(jsonPath("$.amount").value("12345"));
+	}
+	
+	@Test
+	void failUseBalance() throws Exception{
+		//given
+		given(transactionService.useBalanceByEngineAsync(anyLong(), anyString(), anyLong()))
+			.willReturn(CompletableFuture.failedFuture(new AccountException(ErrorCode.AMOUNT_EXCEED_BALANCE)));
+		
+		//when
+		MvcResult result = mockmvc.perform(post("/transaction/use")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(
+								new UseBalance.Request(1L,"2000000000", 3000L)
+						))
+				).andExpect(request().asyncStarted())
+				 .andReturn();
+		
+		//then
+		mockmvc.perform(asyncDispatch(result))
+				.andDo(print())
+				 .andExpect(jsonPath("$.errorCode").value("AMOUNT_EXCEED_BALANCE"));
+		verify(transactionService).saveFailedUseTransaction("2000000000", 3000L);
+	}
+
+}
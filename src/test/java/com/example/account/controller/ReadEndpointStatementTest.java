@@ -0,0 +1,199 @@
+package com.example.account.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountBalanceShard;
+import com.example.account.domain.Transaction;
+import com.example.account.repository.AccountBalanceShardRepository;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+/**
+ * 조회 endpoint 하나당 나가는 JDBC 문장 수 (컨트롤러 -> 서비스 -> 리포지토리 전체)
+ * 리포지토리 쿼리 하나만 보는 AccountRepositoryTest/TransactionRepositoryTest 와 달리
+ * 서비스에서 쿼리가 더 붙거나 응답을 만들다 지연 로딩이 터지면 여기서 걸린다.
+ * 스케줄러 스레드의 쿼리는 빼고 요청 스레드(MockMvc는 테스트 스레드)에서 나간 문장만 센다.
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:statement-budget",
+		"spring.redis.port=6390",//다른 @SpringBootTest 컨텍스트의 내장 Redis와 겹치지 않게
+		"spring.jpa.properties.hibernate.session_factory.statement_inspector="
+				+ "com.example.account.controller.ReadEndpointStatementTest$StatementRecorder"})
+@AutoConfigureMockMvc
+@Transactional
+class ReadEndpointStatementTest {
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private AccountBalanceShardRepository accountBalanceShardRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@AfterEach
+	void stopRecording() {
+		StatementRecorder.stop();
+	}
+
+	@Test
+	@DisplayName("GET /account?user_id= 는 샤드 잔액까지 한 문장")
+	void accountsByUserId() throws Exception {
+		//given
+		Account first = accountRepository.save(newAccount("3000000000"));
+		accountRepository.save(newAccount("3000000001"));
+		accountBalanceShardRepository.save(AccountBalanceShard.builder()
+				.account(first)
+				.shardIndex(0)
+				.balance(500L)
+				.build());
+		entityManager.flush();
+		entityManager.clear();
+		StatementRecorder.start();
+
+		//when
+		mockMvc.perform(get("/account?user_id=1"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].accountNumber").value("3000000000"))
+				.andExpect(jsonPath("$[0].balance").value(1000500))
+				.andExpect(jsonPath("$[1].balance").value(1000000));
+
+		//then
+		assertEquals(1, StatementRecorder.statements().size(), StatementRecorder.statements().toString());
+	}
+
+	@Test
+	@DisplayName("GET /account?user_id= 계좌가 없으면 유저 확인까지 두 문장")
+	void accountsByUserIdWithoutAccounts() throws Exception {
+		//given
+		StatementRecorder.start();
+
+		//when
+		mockMvc.perform(get("/account?user_id=2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(0));
+		List<String> found = StatementRecorder.statements();
+		StatementRecorder.start();
+		mockMvc.perform(get("/account?user_id=404"))
+				.andExpect(jsonPath("$.errorCode").value(ErrorCode.USER_NOT_FOUND.name()));
+
+		//then
+		assertEquals(2, found.size(), found.toString());
+		assertEquals(2, StatementRecorder.statements().size(), StatementRecorder.statements().toString());
+	}
+
+	@Test
+	@DisplayName("GET /account/{id} 는 유저를 읽지 않고 한 문장")
+	void accountDetail() throws Exception {
+		//given
+		Account account = accountRepository.saveAndFlush(newAccount("3000000000"));
+		entityManager.clear();
+		StatementRecorder.start();
+
+		//when
+		mockMvc.perform(get("/account/" + account.getId()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.accountNumber").value("3000000000"))
+				.andExpect(jsonPath("$.userId").value(1));
+
+		//then
+		assertEquals(1, StatementRecorder.statements().size(), StatementRecorder.statements().toString());
+	}
+
+	@Test
+	@DisplayName("GET /transaction/{transactionId} 는 계좌번호까지 한 문장")
+	void queryTransaction() throws Exception {
+		//given
+		Account account = accountRepository.save(newAccount("3000000000"));
+		transactionRepository.save(Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(100L)
+				.balanceSnapshot(999900L)
+				.transactionId("transactionId")
+				.transactedAt(LocalDateTime.now())
+				.build());
+		entityManager.flush();
+		entityManager.clear();
+		StatementRecorder.start();
+
+		//when
+		mockMvc.perform(get("/transaction/transactionId"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.accountNumber").value("3000000000"))
+				.andExpect(jsonPath("$.amount").value(100));
+
+		//then
+		assertEquals(1, StatementRecorder.statements().size(), StatementRecorder.statements().toString());
+	}
+
+	private Account newAccount(String accountNumber) {
+		return Account.builder()
+				.accountUser(accountUserRepository.findById(1L).get())
+				.accountStatus(AccountStatus.IN_USE)
+				.accountNumber(accountNumber)
+				.balance(1000000L)
+				.registeredAt(LocalDateTime.now())
+				.build();
+	}
+
+	public static class StatementRecorder implements StatementInspector {
+		private static final ThreadLocal<List<String>> statements = new ThreadLocal<>();
+
+		@Override
+		public String inspect(String sql) {
+			List<String> recording = statements.get();
+			if(recording != null) {
+				recording.add(sql);
+			}
+			return sql;
+		}
+
+		static void start() {
+			statements.set(new ArrayList<>());
+		}
+
+		static void stop() {
+			statements.remove();
+		}
+
+		static List<String> statements() {
+			return statements.get();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.example.account.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.example.account.dto.TransactionBatch;
+import com.example.account.dto.TransactionDto;
+import com.example.account.service.TransactionBatchService;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@WebMvcTest(controllers = TransactionBatchController.class,
+		properties = {"account.transaction.batch.max-items=2", "account.transaction.batch.window-items=1"})
+class TransactionBatchControllerTest {
+	@MockBean
+	private TransactionBatchService transactionBatchService;
+	
+	@Autowired
+	private MockMvc mockmvc;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Test
+	void successBatch() throws Exception{
+		//given
+		TransactionBatch.Item use = TransactionBatch.Item.builder()
+				.transactionType(TransactionType.USE)
+				.userId(1L)
+				.accountNumber("1000000000")
+				.amount(1000L).build();
+		TransactionBatch.Item cancel = TransactionBatch.Item.builder()
+				.transactionType(TransactionType.CANCEL)
+				.transactionId("transactionId")
+				.accountNumber("1000000000")
+				.amount(2000L).build();
+		doAnswer(invocation -> {
+			List<TransactionBatch.Item> window = invocation.getArgument(0);
+			int offset = invocation.getArgument(1);
+			Consumer<List<TransactionBatch.Result>> completed = invocation.getArgument(2);
+			TransactionBatch.Item item = window.get(0);
+			completed.accept(Collections.singletonList(item.getTransactionType() == TransactionType.USE
+					? TransactionBatch.Result.success(offset, TransactionDto.builder()
+							.accountNumber("1000000000")
+							.transactionType(TransactionType.USE)
+							.amount(1000L)
+							.transactionId("newTransactionId")
+							.build())
+					: TransactionBatch.Result.failure(offset, item, ErrorCode.TRANSACTION_NOT_FOUND)));
+			return null;
+		}).when(transactionBatchService).execute(anyList(), anyInt(), any());
+		
+		//when
+		MvcResult result = mockmvc.perform(post("/transaction/batch")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(Arrays.asList(use, cancel)))
+				).andExpect(request().asyncStarted())
+				 .andReturn();
+		
+		//then
+		mockmvc.perform(asyncDispatch(result))
+				.andDo(print())
+				 .andExpect(status().isOk())
+				 .andExpect(jsonPath("$[0].index").value(0))
+				 .andExpect(jsonPath("$[0].transactionResultType").value("S"))
+				 .andExpect(jsonPath("$[0].transactionId").value("newTransactionId"))
+				 .andExpect(jsonPath("$[1].index").value(1))
+				 .andExpect(jsonPath("$[1].transactionResultType").value("F"))
+				 .andExpect(jsonPath("$[1].errorCode").value("TRANSACTION_NOT_FOUND"));
+		//window-items=1, 한 항목씩 처리해서 내보낸다
+		verify(transactionBatchService).execute(anyList(), eq(0), any());
+		verify(transactionBatchService).execute(anyList(), eq(1), any());
+	}
+	
+	@Test
+	void failBatch_tooManyItems() throws Exception{
+		//given
+		TransactionBatch.Item use = TransactionBatch.Item.builder()
+				.transactionType(TransactionType.USE)
+				.userId(1L)
+				.accountNumber("1000000000")
+				.amount(1000L).build();
+		
+		//when
+		MvcResult result = mockmvc.perform(post("/transaction/batch")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(Arrays.asList(use, use, use)))
+				).andExpect(request().asyncStarted())
+				 .andReturn();
+		
+		//then
+		//max-items 까지만 처리하고 그 다음 위치에 INVALID_REQUEST
+		mockmvc.perform(asyncDispatch(result))
+				.andDo(print())
+				 .andExpect(status().isOk())
+				 .andExpect(jsonPath("$[0].index").value(2))
+				 .andExpect(jsonPath("$[0].errorCode").value("INVALID_REQUEST"));
+		verify(transactionBatchService, times(2)).execute(anyList(), anyInt(), any());
+	}
+	
+	@Test
+	void failBatch_notArray() throws Exception{
+		//given
+		//when
+		//then
+		mockmvc.perform(post("/transaction/batch")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"accountNumber\": \"1000000000\"}")
+				).andDo(print())
+				 .andExpect(jsonPath("$.errorCode").value("INVALID_REQUEST"));
+		verify(transactionBatchService, never()).execute(anyList(), anyInt(), any());
+	}
+}
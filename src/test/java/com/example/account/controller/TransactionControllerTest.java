@@ -44,7 +44,7 @@ class TransactionControllerTest {
 	@Test
 	void successUseBalance()throws Exception{
 		//given
-		given(transactionService.useBalance(anyLong(), anyString(), anyLong()))
+		given(transactionService.useBalanceByEngine(anyLong(), anyString(), anyLong()))
 			.willReturn(TransactionDto.builder()
 					.accountNumber("1000000000")
 					.transactedAt(LocalDateTime.now())
@@ -73,7 +73,7 @@ class TransactionControllerTest {
 	@Test
 	void successCancelBalance()throws Exception{
 		//given
-		given(transactionService.cancelBalance(anyString(), anyString(), anyLong()))
+		given(transactionService.cancelBalanceByEngine(anyString(), anyString(), anyLong()))
 			.willReturn(TransactionDto.builder()
 					.accountNumber("1000000000")
 					.transactedAt(LocalDateTime.now())
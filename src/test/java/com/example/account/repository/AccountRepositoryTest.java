@@ -0,0 +1,226 @@
+package com.example.account.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountBalanceShard;
+import com.example.account.dto.AccountDetail;
+import com.example.account.dto.AccountDto;
+import com.example.account.type.AccountStatus;
+
+/**
+ * 잔액 변경 flush 때 나가는 update (비용은 benchmark.AccountUpdateBenchmark)
+ * Account는 바이트코드 향상(변경 추적) + @DynamicUpdate 라서 바뀐 컬럼만 update 한다.
+ * 조회는 projection 한 문장으로 끝난다. (유저는 지연 로딩)
+ */
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.generate_statistics=true",
+		"spring.jpa.properties.hibernate.session_factory.statement_inspector="
+				+ "com.example.account.repository.AccountRepositoryTest$SqlRecorder"})
+class AccountRepositoryTest {
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private AccountBalanceShardRepository accountBalanceShardRepository;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void init() {
+		statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@Test
+	@DisplayName("잔액 사용은 바뀐 컬럼만 update")
+	void useBalanceUpdatesChangedColumnsOnly() {
+		//given
+		Account account = accountRepository.saveAndFlush(newAccount());
+		SqlRecorder.clear();
+
+		//when
+		account.useBalance(100L);
+		entityManager.flush();
+
+		//then
+		List<String> updates = SqlRecorder.updates();
+		assertEquals(1, updates.size());
+		String update = updates.get(0);
+		Set<String> columns = SqlRecorder.setColumns(update);
+		assertTrue(columns.contains("balance"), update);
+		//update_at 은 auditing이 켜져 있을 때만 (이 테스트 슬라이스에서는 꺼져 있다)
+		assertTrue(Set.of("balance", "version", "update_at").containsAll(columns), update);
+		assertFalse(update.contains("account_status"), update);
+	}
+
+	@Test
+	@DisplayName("GET /account?user_id= 는 샤드 잔액까지 한 문장")
+	void accountsByUserIdInOneStatement() {
+		//given
+		Account first = accountRepository.save(newAccount("3000000000"));
+		accountRepository.save(newAccount("3000000001"));
+		accountBalanceShardRepository.save(AccountBalanceShard.builder()
+				.account(first)
+				.shardIndex(0)
+				.balance(500L)
+				.build());
+		entityManager.flush();
+		entityManager.clear();
+		statistics.clear();
+
+		//when
+		List<AccountDto> accounts = accountRepository.findDtosByUserId(1L);
+
+		//then
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(2, accounts.size());
+		assertEquals(1000500L, accounts.get(0).getBalance());
+		assertEquals(1000000L, accounts.get(1).getBalance());
+		assertEquals(1L, accounts.get(0).getUserId());
+	}
+
+	@Test
+	@DisplayName("GET /account/{id} 는 유저를 읽지 않고 한 문장")
+	void accountDetailInOneStatement() {
+		//given
+		Account account = accountRepository.saveAndFlush(newAccount());
+		entityManager.clear();
+		statistics.clear();
+
+		//when
+		AccountDetail detail = accountRepository.findDetailById(account.getId()).get();
+
+		//then
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals("3000000000", detail.getAccountNumber());
+		assertEquals(1L, detail.getUserId());
+	}
+
+	@Test
+	@DisplayName("계좌를 읽어도 유저는 지연 로딩, 유저 id는 프록시에서 읽는다")
+	void accountUserIsLazy() {
+		//given
+		accountRepository.saveAndFlush(newAccount());
+		entityManager.clear();
+		statistics.clear();
+
+		//when
+		Account account = accountRepository.findByAccountNumber("3000000000").get();
+		Long userId = account.getAccountUser().getId();
+
+		//then
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(1L, userId);
+	}
+
+	@Test
+	@DisplayName("가장 큰 계좌번호는 저장 순서와 상관없다")
+	void maxAccountNumberIgnoresInsertOrder() {
+		//given
+		//다른 노드가 예약한 앞 블록 번호가 나중에 저장된 경우
+		accountRepository.save(newAccount("3000000100"));
+		accountRepository.save(newAccount("3000000000"));
+		entityManager.flush();
+
+		//when
+		String maxAccountNumber = accountRepository.findMaxAccountNumber().get();
+
+		//then
+		assertEquals("3000000100", maxAccountNumber);
+	}
+
+	@Test
+	@DisplayName("계좌 수 컬럼은 이미 있는 계좌 행(해지 포함)으로 채운다")
+	void backfillAccountCountFromAccounts() {
+		//given
+		//계좌 수 컬럼이 생기기 전에 만든 계좌라 account_count 가 0이다
+		accountRepository.save(newAccount("3000000000"));
+		Account unRegistered = newAccount("3000000001");
+		unRegistered.setAccountStatus(AccountStatus.UN_REGISTERED);
+		accountRepository.save(unRegistered);
+		entityManager.flush();
+
+		//when
+		new ResourceDatabasePopulator(new ClassPathResource("account-count-backfill.sql")).execute(dataSource);
+		entityManager.clear();
+
+		//then
+		assertEquals(2, accountUserRepository.findById(1L).get().getAccountCount());
+		assertEquals(0, accountUserRepository.findById(2L).get().getAccountCount());
+	}
+
+	private Account newAccount() {
+		return newAccount("3000000000");
+	}
+
+	private Account newAccount(String accountNumber) {
+		return Account.builder()
+				.accountUser(accountUserRepository.findById(1L).get())
+				.accountStatus(AccountStatus.IN_USE)
+				.accountNumber(accountNumber)
+				.balance(1000000L)
+				.registeredAt(LocalDateTime.now())
+				.build();
+	}
+
+	public static class SqlRecorder implements StatementInspector {
+		private static final List<String> statements = new CopyOnWriteArrayList<>();
+
+		@Override
+		public String inspect(String sql) {
+			statements.add(sql);
+			return sql;
+		}
+
+		static void clear() {
+			statements.clear();
+		}
+
+		//update account set balance=?, version=? where ... -> [balance, version]
+		static Set<String> setColumns(String update) {
+			String normalized = update.toLowerCase().replaceAll("\\s+", " ");
+			String assignments = normalized.substring(normalized.indexOf(" set ") + 5, normalized.indexOf(" where "));
+			return Arrays.stream(assignments.split(","))
+					.map(assignment -> assignment.substring(0, assignment.indexOf('=')).trim())
+					.collect(Collectors.toSet());
+		}
+
+		static List<String> updates() {
+			return statements.stream()
+					.filter(sql -> sql.trim().toLowerCase().startsWith("update"))
+					.collect(Collectors.toList());
+		}
+	}
+}
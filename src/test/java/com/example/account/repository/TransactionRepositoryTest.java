@@ -0,0 +1,233 @@
+package com.example.account.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountBalanceSnapshot;
+import com.example.account.domain.AccountUser;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.TransactionDto;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+/**
+ * insert 한 건당 나가는 JDBC 문장 수
+ * 예전(@GeneratedValue 기본값)은 insert 마다 시퀀스 호출이 하나씩 붙어서 200건에 200번 넘게 나갔다.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class TransactionRepositoryTest {
+	private static final int ROWS = 200;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void init() {
+		statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@Test
+	@DisplayName("거래 insert는 batch_size 씩 묶이고 시퀀스는 50건에 한 번")
+	void transactionInsertsAreBatched() {
+		//given
+		Account account = accountRepository.saveAndFlush(newAccount(accountUserRepository.findById(1L).get(), 0));
+		List<Transaction> transactions = new ArrayList<>();
+		for(int i = 0; i < ROWS; i++) {
+			transactions.add(Transaction.builder()
+					.transactionType(TransactionType.USE)
+					.transactionResultType(TransactionResultType.S)
+					.account(account)
+					.amount(100L)
+					.balanceSnapshot(10000L - i)
+					.transactionId(UUID.randomUUID().toString().replace("-", ""))
+					.transactedAt(LocalDateTime.now())
+					.build());
+		}
+		statistics.clear();
+
+		//when
+		transactionRepository.saveAll(transactions);
+		entityManager.flush();
+
+		//then
+		long statements = statistics.getPrepareStatementCount();
+		//insert 배치 4개 + 시퀀스 호출 4~5개
+		assertTrue(statements <= ROWS / 50 * 2 + 2, "statements : " + statements);
+	}
+
+	@Test
+	@DisplayName("계좌 insert도 묶인다")
+	void accountInsertsAreBatched() {
+		//given
+		AccountUser user = accountUserRepository.findById(1L).get();
+		List<Account> accounts = new ArrayList<>();
+		for(int i = 0; i < ROWS; i++) {
+			accounts.add(newAccount(user, i));
+		}
+		statistics.clear();
+
+		//when
+		accountRepository.saveAll(accounts);
+		entityManager.flush();
+
+		//then
+		long statements = statistics.getPrepareStatementCount();
+		assertTrue(statements <= ROWS / 50 * 2 + 2, "statements : " + statements);
+	}
+
+	@Test
+	@DisplayName("거래 기록은 @Immutable, 바꿔도 update 하지 않는다")
+	void transactionIsNotDirtyChecked() {
+		//given
+		Account account = accountRepository.saveAndFlush(newAccount(accountUserRepository.findById(1L).get(), 0));
+		Transaction saved = transactionRepository.saveAndFlush(Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(100L)
+				.balanceSnapshot(9900L)
+				.transactionId("transactionId")
+				.transactedAt(LocalDateTime.now())
+				.build());
+		entityManager.clear();
+		Transaction transaction = transactionRepository.findById(saved.getId()).get();
+		statistics.clear();
+
+		//when
+		transaction.setAmount(1L);
+		entityManager.flush();
+
+		//then
+		assertEquals(0, statistics.getEntityUpdateCount());
+	}
+
+	@Test
+	@DisplayName("GET /transaction/{transactionId} 는 계좌번호까지 한 문장")
+	void transactionDtoInOneStatement() {
+		//given
+		Account account = accountRepository.saveAndFlush(newAccount(accountUserRepository.findById(1L).get(), 0));
+		transactionRepository.saveAndFlush(Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(100L)
+				.balanceSnapshot(9900L)
+				.transactionId("transactionId")
+				.transactedAt(LocalDateTime.now())
+				.build());
+		entityManager.clear();
+		statistics.clear();
+
+		//when
+		TransactionDto transaction = transactionRepository.findDtoByTransactionId("transactionId").get();
+
+		//then
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals("2000000000", transaction.getAccountNumber());
+		assertEquals(9900L, transaction.getBalanceSnapshot());
+	}
+
+	@Test
+	@DisplayName("거래를 읽어도 계좌는 지연 로딩")
+	void transactionAccountIsLazy() {
+		//given
+		Account account = accountRepository.saveAndFlush(newAccount(accountUserRepository.findById(1L).get(), 0));
+		transactionRepository.saveAndFlush(Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(100L)
+				.balanceSnapshot(9900L)
+				.transactionId("transactionId")
+				.transactedAt(LocalDateTime.now())
+				.build());
+		entityManager.clear();
+		statistics.clear();
+
+		//when
+		Transaction transaction = transactionRepository.findByTransactionId("transactionId").get();
+
+		//then
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(account.getId(), transaction.getAccount().getId());
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	@DisplayName("스냅샷 뒷부분은 id가 아니라 생성 시각 구간으로 잘라서 다른 노드의 작은 id를 놓치지 않는다")
+	void tailIsCutByCreatedAt() {
+		//given
+		Account account = accountRepository.saveAndFlush(newAccount(accountUserRepository.findById(1L).get(), 0));
+		LocalDateTime cut = LocalDateTime.now();
+		//다른 노드: 앞 블록의 id를 나중에 쓴다
+		Transaction late = transactionRepository.saveAndFlush(tailTransaction(account, "late", 300L,
+				cut.plusSeconds(1)));
+		Transaction early = transactionRepository.saveAndFlush(tailTransaction(account, "early", 200L,
+				cut.minusSeconds(1)));
+		assertTrue(late.getId() < early.getId());
+
+		//when
+		TransactionRepository.TransactionTail before = transactionRepository.findTail(account,
+				AccountBalanceSnapshot.BEGINNING, cut);
+		TransactionRepository.TransactionTail after = transactionRepository.findTail(account, cut,
+				cut.plusMinutes(1));
+
+		//then
+		assertEquals(1L, before.getCount());
+		assertEquals(-200L, before.getBalanceChange());
+		assertEquals(1L, after.getCount());
+		assertEquals(-300L, after.getBalanceChange());
+	}
+
+	private Transaction tailTransaction(Account account, String transactionId, long amount,
+			LocalDateTime createdAt) {
+		return Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(amount)
+				.balanceSnapshot(10000L - amount)
+				.transactionId(transactionId)
+				.transactedAt(createdAt)
+				.createdAt(createdAt)//슬라이스 테스트에는 auditing이 없다
+				.build();
+	}
+
+	private Account newAccount(AccountUser user, int index) {
+		return Account.builder()
+				.accountUser(user)
+				.accountStatus(AccountStatus.IN_USE)
+				.accountNumber(String.valueOf(2000000000L + index))
+				.balance(10000L)
+				.registeredAt(LocalDateTime.now())
+				.build();
+	}
+}
@@ -0,0 +1,141 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.account.domain.AccountNumberSequence;
+import com.example.account.repository.AccountNumberSequenceRepository;
+import com.example.account.repository.AccountRepository;
+
+@ExtendWith(MockitoExtension.class)
+class AccountNumberAllocatorTest {
+	@Mock
+	private AccountNumberSequenceRepository accountNumberSequenceRepository;
+	
+	@Mock
+	private AccountRepository accountRepository;
+	
+	@Mock
+	private PlatformTransactionManager transactionManager;
+	
+	@Test
+	@DisplayName("첫 계좌번호는 1000000000")
+	void firstAccountNumber() {
+		//given
+		given(accountNumberSequenceRepository.findForUpdateByName(anyString()))
+				.willReturn(Optional.empty());
+		given(accountRepository.findMaxAccountNumber())
+				.willReturn(Optional.empty());
+		AccountNumberAllocator allocator = new AccountNumberAllocator(
+				accountNumberSequenceRepository, accountRepository, transactionManager, 10);
+		
+		//when
+		String accountNumber = allocator.nextAccountNumber();
+		
+		//then
+		assertEquals("1000000000", accountNumber);
+	}
+	
+	@Test
+	@DisplayName("시퀀스가 없으면 가장 큰 계좌번호 다음부터")
+	void continuesFromMaxAccountNumber() {
+		//given
+		given(accountNumberSequenceRepository.findForUpdateByName(anyString()))
+				.willReturn(Optional.empty());
+		given(accountRepository.findMaxAccountNumber())
+				.willReturn(Optional.of("1000000012"));
+		AccountNumberAllocator allocator = new AccountNumberAllocator(
+				accountNumberSequenceRepository, accountRepository, transactionManager, 10);
+		
+		//when
+		String accountNumber = allocator.nextAccountNumber();
+		
+		//then
+		assertEquals("1000000013", accountNumber);
+	}
+	
+	@Test
+	@DisplayName("블록을 다 쓸 때만 시퀀스를 잠근다")
+	void reservesOncePerBlock() {
+		//given
+		AccountNumberSequence sequence = AccountNumberSequence.builder()
+				.name(AccountNumberAllocator.SEQUENCE_NAME)
+				.nextValue(1000000100L)
+				.build();
+		given(accountNumberSequenceRepository.findForUpdateByName(anyString()))
+				.willReturn(Optional.of(sequence));
+		AccountNumberAllocator allocator = new AccountNumberAllocator(
+				accountNumberSequenceRepository, accountRepository, transactionManager, 10);
+		
+		//when
+		String last = null;
+		for(int i = 0; i < 25; i++) {
+			last = allocator.nextAccountNumber();
+		}
+		
+		//then
+		assertEquals("1000000124", last);
+		assertEquals(1000000130L, sequence.getNextValue());
+		verify(accountNumberSequenceRepository, times(3)).findForUpdateByName(anyString());
+	}
+	
+	@Test
+	@DisplayName("여러 노드, 여러 스레드가 동시에 발급해도 중복 없음")
+	void concurrentAllocationHasNoDuplicates() throws InterruptedException {
+		//given
+		//DB 시퀀스 행 락 대신 AtomicLong으로 블록 예약
+		AtomicLong nextValue = new AtomicLong(1000000000L);
+		int blockSize = 50;
+		given(accountNumberSequenceRepository.findForUpdateByName(anyString()))
+				.willAnswer(invocation -> Optional.of(AccountNumberSequence.builder()
+						.name(AccountNumberAllocator.SEQUENCE_NAME)
+						.nextValue(nextValue.getAndAdd(blockSize))
+						.build()));
+		AccountNumberAllocator[] nodes = {
+				new AccountNumberAllocator(accountNumberSequenceRepository, accountRepository, transactionManager, blockSize),
+				new AccountNumberAllocator(accountNumberSequenceRepository, accountRepository, transactionManager, blockSize)
+		};
+		int threads = 8;
+		int perThread = 5000;
+		Set<String> accountNumbers = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		
+		//when
+		for(int t = 0; t < threads; t++) {
+			AccountNumberAllocator node = nodes[t % nodes.length];
+			executor.submit(() -> {
+				start.await();
+				for(int i = 0; i < perThread; i++) {
+					accountNumbers.add(node.nextAccountNumber());
+				}
+				return null;
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+		
+		//then
+		assertEquals(threads * perThread, accountNumbers.size());
+	}
+}
@@ -3,13 +3,17 @@ package com.example.account.service;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,6 +29,8 @@ import com.example.account.domain.Account;
 import com.example.account.domain.AccountUser;
 import com.example.account.dto.AccountDto;
 import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountBalanceShardRepository;
+import com.example.account.repository.AccountBalanceSnapshotRepository;
 import com.example.account.repository.AccountRepository;
 import com.example.account.repository.AccountUserRepository;
 import com.example.account.type.AccountStatus;
@@ -39,6 +45,21 @@ class AccountServiceMockitoTest {
 	@Mock
 	private AccountUserRepository accountUserRepository;
 	
+	@Mock
+	private AccountBalanceShardRepository accountBalanceShardRepository;
+	
+	@Mock
+	private AccountBalanceSnapshotRepository accountBalanceSnapshotRepository;
+	
+	@Mock
+	private RedisLedgerService redisLedgerService;
+	
+	@Mock
+	private InMemoryLedgerEngine inMemoryLedgerEngine;
+	
+	@Mock
+	private AccountNumberAllocator accountNumberAllocator;
+	
 	@InjectMocks
 	private AccountService accountService; //accountRepository를 서비스에 넣어줌
 	
@@ -51,9 +72,10 @@ class AccountServiceMockitoTest {
 		
 		given(accountUserRepository.findById(anyLong()))
 			.willReturn(Optional.of(user));
-		given(accountRepository.findFirstByOrderByIdDesc())
-			.willReturn(Optional.of(Account.builder()
-						.accountNumber("1000000012").build()));
+		given(accountUserRepository.incrementAccountCountIfLess(anyLong(), anyInt()))
+			.willReturn(1);
+		given(accountNumberAllocator.nextAccountNumber())
+			.willReturn("1000000013");
 		given(accountRepository.save(any()))
 			.willReturn(Account.builder()
 						.accountUser(user)
@@ -68,32 +90,6 @@ class AccountServiceMockitoTest {
 		assertEquals("1000000013", captor.getValue().getAccountNumber());
 	}
 	
-	@Test
-	void createFirstAccount(){
-		//given
-		AccountUser user = AccountUser.builder()
-						.id(15L)
-						.name("pobi").build();
-		
-		given(accountUserRepository.findById(anyLong()))
-			.willReturn(Optional.of(user));
-		given(accountRepository.findFirstByOrderByIdDesc())
-			.willReturn(Optional.empty());//초기값이 없을때 테스트
-		given(accountRepository.save(any()))
-			.willReturn(Account.builder()
-						.accountUser(user)
-						.accountNumber("1000000015").build());
-		ArgumentCaptor<Account> captor = ArgumentCaptor.forClass(Account.class);
-		
-		//when
-		AccountDto accountDto = accountService.createAccount(1L, 1000L);
-		//then
-		verify(accountRepository, times(1)).save(captor.capture());
-		assertEquals(15L, accountDto.getUserId());
-		assertEquals("1000000000", captor.getValue().getAccountNumber());
-		
-	}
-	
 	@Test
 	@DisplayName("해당 유저 없음 - 계좌 생성 실패")
 	void createAccount_UserNotFound(){
@@ -119,8 +115,8 @@ class AccountServiceMockitoTest {
 		
 		given(accountUserRepository.findById(anyLong()))
 				.willReturn(Optional.of(user));
-		given(accountRepository.countByAccountUser(any()))
-				.willReturn(10);
+		given(accountUserRepository.incrementAccountCountIfLess(anyLong(), anyInt()))
+				.willReturn(0);//이미 10개
 		
 		//when
 		AccountException accountException = assertThrows(AccountException.class,
@@ -243,6 +239,62 @@ class AccountServiceMockitoTest {
 		assertEquals(ErrorCode.BALANCE_NOT_EMPTY, accountException.getErrorCode());
 	}
 	
+	@Test
+	@DisplayName("원장 잔액이 남아 있으면 해지할 수 없다.")
+	void deleteAccountFailed_ledgerBalanceNotEmpty(){
+		//given
+		AccountUser pobi = AccountUser.builder()
+				.id(12L)
+				.name("pobi").build();
+		Account account = Account.builder()
+				.accountUser(pobi)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(0L)//DB에 아직 반영되지 않음
+				.accountNumber("1000000012").build();
+		
+		given(accountUserRepository.findById(anyLong()))
+			.willReturn(Optional.of(pobi));
+		given(accountRepository.findByAccountNumber(anyString()))
+			.willReturn(Optional.of(account));
+		willThrow(new AccountException(ErrorCode.BALANCE_NOT_EMPTY))
+			.given(redisLedgerService).unregister(anyString());
+		
+		//when
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> accountService.deleteAccount(1L, "1000000012"));
+				
+		//then
+		assertEquals(ErrorCode.BALANCE_NOT_EMPTY, accountException.getErrorCode());
+		assertEquals(AccountStatus.IN_USE, account.getAccountStatus());
+	}
+	
+	@Test
+	@DisplayName("원장에 올라온 계좌는 늦게 반영되는 DB 잔액 대신 원장 잔액으로 확인한다.")
+	void deleteAccountSuccess_ledgerBalanceEmpty(){
+		//given
+		AccountUser pobi = AccountUser.builder()
+				.id(12L)
+				.name("pobi").build();
+		
+		given(accountUserRepository.findById(anyLong()))
+			.willReturn(Optional.of(pobi));
+		given(accountRepository.findByAccountNumber(anyString()))
+			.willReturn(Optional.of(Account.builder()
+						.accountUser(pobi)
+						.accountStatus(AccountStatus.IN_USE)
+						.balance(100L)//원장에서는 이미 다 썼다
+						.accountNumber("1000000012").build()));
+		given(redisLedgerService.unregister("1000000012"))
+			.willReturn(true);
+		
+		//when
+		AccountDto accountDto = accountService.deleteAccount(1L, "1000000012");
+		
+		//then
+		assertEquals("1000000012", accountDto.getAccountNumber());
+		verify(accountBalanceShardRepository, never()).sumBalanceByAccountNumber(anyString());
+	}
+	
 	@Test
 	@DisplayName("해지 계좌는 해지할 수 없다.")
 	void deleteAccountFailed_alreadyUnregistered(){
@@ -271,27 +323,22 @@ class AccountServiceMockitoTest {
 	@Test
 	void successGetAccountsByUserId(){
 		//given
-		AccountUser pobi = AccountUser.builder()
-				.id(12L)
-				.name("pobi").build();
-		List<Account> accounts = 
+		List<AccountDto> accounts = 
 				Arrays.asList(
-						Account.builder()
-							.accountUser(pobi)
+						AccountDto.builder()
+							.userId(12L)
 							.accountNumber("1111111111")
 							.balance(1000L).build(),
-						Account.builder()
-							.accountUser(pobi)
+						AccountDto.builder()
+							.userId(12L)
 							.accountNumber("2222222222")
 							.balance(2000L).build(),
-						Account.builder()
-							.accountUser(pobi)
+						AccountDto.builder()
+							.userId(12L)
 							.accountNumber("3333333333")
 							.balance(3000L).build()
 				);
-		given(accountUserRepository.findById(anyLong()))
-			.willReturn(Optional.of(pobi));
-		given(accountRepository.findByAccountUser(any()))
+		given(accountRepository.findDtosByUserId(anyLong()))
 			.willReturn(accounts);
 		
 		//when
@@ -305,13 +352,16 @@ class AccountServiceMockitoTest {
 		assertEquals(2000, accountDtos.get(1).getBalance());
 		assertEquals("3333333333", accountDtos.get(2).getAccountNumber());
 		assertEquals(3000, accountDtos.get(2).getBalance());
+		verify(accountUserRepository, never()).existsById(anyLong());//계좌가 있으면 유저 조회 안함
 	}
 	
 	@Test
 	void failedToGetAccounts(){
 		//given
-		given(accountUserRepository.findById(anyLong()))
-			.willReturn(Optional.empty());
+		given(accountRepository.findDtosByUserId(anyLong()))
+			.willReturn(Collections.emptyList());
+		given(accountUserRepository.existsById(anyLong()))
+			.willReturn(false);
 	
 		//when
 		AccountException accountException = assertThrows(AccountException.class,
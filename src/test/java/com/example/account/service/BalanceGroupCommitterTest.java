@@ -0,0 +1,157 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountUser;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.TransactionDto;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceGroupCommitterTest {
+	@Mock
+	private AccountRepository accountRepository;
+	
+	@Mock
+	private AccountUserRepository accountUserRepository;
+	
+	@Mock
+	private TransactionRepository transactionRepository;
+	
+	@Mock
+	private TransactionTemplate transactionTemplate;
+	
+	private BalanceGroupCommitter balanceGroupCommitter;
+	
+	private AccountUser user;
+	
+	private Account account;
+	
+	@BeforeEach
+	void init() {
+		balanceGroupCommitter = new BalanceGroupCommitter(accountRepository, accountUserRepository,
+				transactionRepository, transactionTemplate, new SimpleMeterRegistry(),
+				BalanceEngine.GROUP_COMMIT, 64, 5L, 100);
+		user = AccountUser.builder()
+				.id(12L)
+				.name("pobi").build();
+		account = Account.builder()
+				.id(1L)
+				.accountUser(user)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(10000L)
+				.accountNumber("1000000012").build();
+		given(transactionTemplate.execute(any()))
+			.willAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+	}
+	
+	@Test
+	@DisplayName("여러 사용 명령을 한 트랜잭션으로 커밋 - 잔액 부족 명령만 실패")
+	void commitBatch_failedCommandDoesNotAffectOthers() {
+		//given
+		given(accountRepository.findForUpdateByAccountNumberIn(anyCollection()))
+			.willReturn(Collections.singletonList(account));
+		given(accountUserRepository.findAllById(any()))
+			.willReturn(Collections.singletonList(user));
+		List<BalanceGroupCommitter.Command> batch = Arrays.asList(
+				use(7000L), use(5000L), use(3000L));
+		
+		//when
+		balanceGroupCommitter.commit(batch);
+		
+		//then
+		ArgumentCaptor<List<Transaction>> captor = ArgumentCaptor.forClass(List.class);
+		verify(transactionRepository, times(1)).saveAll(captor.capture());
+		assertEquals(2, captor.getValue().size());
+		assertEquals(0L, account.getBalance());
+		
+		TransactionDto first = batch.get(0).getResult().join();
+		assertEquals(7000L, first.getAmount());
+		assertEquals(3000L, first.getBalanceSnapshot());
+		AccountException exception = failure(batch.get(1).getResult());
+		assertEquals(ErrorCode.AMOUNT_EXCEED_BALANCE, exception.getErrorCode());
+		assertEquals(0L, batch.get(2).getResult().join().getBalanceSnapshot());
+	}
+	
+	@Test
+	@DisplayName("배치 트랜잭션 실패 - 명령을 하나씩 다시 커밋")
+	void commitBatch_retryOneByOne() {
+		//given
+		given(accountRepository.findForUpdateByAccountNumberIn(anyCollection()))
+			.willThrow(new IllegalStateException("deadlock"))
+			.willReturn(Collections.singletonList(account));
+		given(accountUserRepository.findAllById(any()))
+			.willReturn(Collections.singletonList(user));
+		List<BalanceGroupCommitter.Command> batch = Arrays.asList(
+				use(1000L), use(2000L));
+		
+		//when
+		balanceGroupCommitter.commit(batch);
+		
+		//then
+		verify(transactionTemplate, times(3)).execute(any());
+		assertEquals(9000L, batch.get(0).getResult().join().getBalanceSnapshot());
+		assertEquals(7000L, batch.get(1).getResult().join().getBalanceSnapshot());
+	}
+	
+	@Test
+	@DisplayName("없는 거래 취소 - 그 명령만 실패")
+	void commitCancel_transactionNotFound() {
+		//given
+		given(accountRepository.findForUpdateByAccountNumberIn(anyCollection()))
+			.willReturn(Collections.singletonList(account));
+		given(transactionRepository.findByTransactionIdIn(anyCollection()))
+			.willReturn(Collections.emptyList());
+		BalanceGroupCommitter.Command cancel = new BalanceGroupCommitter.Command(
+				TransactionType.CANCEL, null, "transactionId", "1000000012", 1000L);
+		
+		//when
+		balanceGroupCommitter.commit(Collections.singletonList(cancel));
+		
+		//then
+		AccountException exception = failure(cancel.getResult());
+		assertEquals(ErrorCode.TRANSACTION_NOT_FOUND, exception.getErrorCode());
+		assertEquals(10000L, account.getBalance());
+	}
+	
+	private BalanceGroupCommitter.Command use(Long amount) {
+		return new BalanceGroupCommitter.Command(TransactionType.USE, 12L, null, "1000000012", amount);
+	}
+	
+	private static AccountException failure(CompletableFuture<TransactionDto> result) {
+		assertTrue(result.isCompletedExceptionally());
+		return assertThrows(AccountException.class, () -> TransactionService.await(result));
+	}
+}
@@ -0,0 +1,169 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.AccountBalanceAt;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceHistoryServiceTest {
+	@Mock
+	private AccountRepository accountRepository;
+	
+	@Mock
+	private TransactionRepository transactionRepository;
+	
+	@Mock
+	private TransactionWriteBehind transactionWriteBehind;
+	
+	private BalanceHistoryService balanceHistoryService;
+	
+	private Account account;
+	
+	@BeforeEach
+	void init() {
+		balanceHistoryService = new BalanceHistoryService(accountRepository, transactionRepository, 100, 60,
+				BalanceEngine.ENTITY, transactionWriteBehind);
+		account = Account.builder()
+				.accountNumber("1000000000")
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(7000L)
+				.registeredAt(LocalDateTime.of(2024, 1, 1, 0, 0))
+				.build();
+	}
+	
+	@Test
+	@DisplayName("시점 이전 마지막 성공 거래의 잔액 스냅샷")
+	void balanceAtLastTransaction() {
+		//given
+		LocalDateTime at = LocalDateTime.of(2024, 10, 1, 0, 0);
+		given(accountRepository.findByAccountNumber(anyString()))
+				.willReturn(Optional.of(account));
+		given(transactionRepository.findLastSuccessAtOrBefore(any(), any(), any(), any()))
+				.willReturn(Collections.singletonList(Transaction.builder()
+						.transactionType(TransactionType.USE)
+						.transactionResultType(TransactionResultType.S)
+						.balanceSnapshot(9000L)
+						.amount(1000L)
+						.transactionId("transactionId")
+						.transactedAt(at.minusHours(1))
+						.build()));
+		
+		//when
+		AccountBalanceAt balanceAt = balanceHistoryService.getBalanceAt("1000000000", at);
+		
+		//then
+		assertEquals(9000L, balanceAt.getBalance());
+		assertEquals("transactionId", balanceAt.getTransactionId());
+	}
+	
+	@Test
+	@DisplayName("시점 이전 거래가 없으면 다음 거래 전 잔액")
+	void balanceBeforeFirstTransaction() {
+		//given
+		LocalDateTime at = LocalDateTime.of(2024, 10, 1, 0, 0);
+		given(accountRepository.findByAccountNumber(anyString()))
+				.willReturn(Optional.of(account));
+		given(transactionRepository.findLastSuccessAtOrBefore(any(), any(), any(), any()))
+				.willReturn(Collections.emptyList());
+		given(transactionRepository.findFirstSuccessAfter(any(), any(), any(), any()))
+				.willReturn(Collections.singletonList(Transaction.builder()
+						.transactionType(TransactionType.USE)
+						.transactionResultType(TransactionResultType.S)
+						.balanceSnapshot(9000L)
+						.amount(1000L)
+						.build()));
+		
+		//when
+		AccountBalanceAt balanceAt = balanceHistoryService.getBalanceAt("1000000000", at);
+		
+		//then
+		assertEquals(10000L, balanceAt.getBalance());
+		assertNull(balanceAt.getTransactionId());
+	}
+	
+	@Test
+	@DisplayName("지난 시점은 캐시에서 돌려준다")
+	void settledPointIsCached() {
+		//given
+		LocalDateTime at = LocalDateTime.of(2024, 10, 1, 0, 0);
+		given(accountRepository.findByAccountNumber(anyString()))
+				.willReturn(Optional.of(account));
+		given(transactionRepository.findLastSuccessAtOrBefore(any(), any(), any(), any()))
+				.willReturn(Collections.emptyList());
+		given(transactionRepository.findFirstSuccessAfter(any(), any(), any(), any()))
+				.willReturn(Collections.emptyList());
+		
+		//when
+		balanceHistoryService.getBalanceAt("1000000000", at);
+		AccountBalanceAt balanceAt = balanceHistoryService.getBalanceAt("1000000000", at);
+		
+		//then
+		assertEquals(7000L, balanceAt.getBalance());
+		verify(accountRepository, times(1)).findByAccountNumber(anyString());
+	}
+	
+	@Test
+	@DisplayName("거래가 나중에 DB에 들어오는 엔진이면 지난 시점도 캐시하지 않는다")
+	void writeBehindIsNotCached() {
+		//given
+		balanceHistoryService = new BalanceHistoryService(accountRepository, transactionRepository, 100, 60,
+				BalanceEngine.REDIS_LEDGER, transactionWriteBehind);
+		LocalDateTime at = LocalDateTime.of(2024, 10, 1, 0, 0);
+		given(accountRepository.findByAccountNumber(anyString()))
+				.willReturn(Optional.of(account));
+		given(transactionRepository.findLastSuccessAtOrBefore(any(), any(), any(), any()))
+				.willReturn(Collections.emptyList());
+		given(transactionRepository.findFirstSuccessAfter(any(), any(), any(), any()))
+				.willReturn(Collections.emptyList());
+		
+		//when
+		balanceHistoryService.getBalanceAt("1000000000", at);
+		balanceHistoryService.getBalanceAt("1000000000", at);
+		
+		//then
+		verify(accountRepository, times(2)).findByAccountNumber(anyString());
+	}
+	
+	@Test
+	@DisplayName("계좌가 없으면 실패")
+	void balanceAt_AccountNotFound() {
+		//given
+		given(accountRepository.findByAccountNumber(anyString()))
+				.willReturn(Optional.empty());
+		
+		//when
+		AccountException exception = assertThrows(AccountException.class,
+				() -> balanceHistoryService.getBalanceAt("1000000000", LocalDateTime.now()));
+		
+		//then
+		assertEquals(ErrorCode.ACCOUNT_NOT_FOUNT, exception.getErrorCode());
+	}
+}
@@ -0,0 +1,230 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountBalanceSnapshot;
+import com.example.account.dto.BalanceRebuild;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountBalanceSnapshotRepository;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.repository.TransactionRepository.TransactionTail;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceSnapshotServiceTest {
+	private static final LocalDateTime COVERED_UNTIL = LocalDateTime.now().minusHours(1);
+	
+	@Mock
+	private AccountRepository accountRepository;
+	
+	@Mock
+	private TransactionRepository transactionRepository;
+	
+	@Mock
+	private AccountBalanceSnapshotRepository accountBalanceSnapshotRepository;
+	
+	@Mock
+	private ShardedBalanceService shardedBalanceService;
+	
+	@Mock
+	private LockService lockService;
+	
+	@Mock
+	private TransactionWriteBehind transactionWriteBehind;
+	
+	@Mock
+	private TransactionTemplate transactionTemplate;
+	
+	private BalanceSnapshotService balanceSnapshotService;
+	
+	private Account account;
+	
+	private AccountBalanceSnapshot snapshot;
+	
+	@BeforeEach
+	void init() {
+		balanceSnapshotService = service(BalanceEngine.ENTITY);
+		account = Account.builder()
+				.id(1L)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(7000L)
+				.accountNumber("1000000012").build();
+		snapshot = AccountBalanceSnapshot.builder()
+				.accountNumber("1000000012")
+				.balance(10000L)
+				.coveredUntil(COVERED_UNTIL).build();
+		lenient().doAnswer(invocation -> {
+			invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+			return null;
+		}).when(transactionTemplate).executeWithoutResult(any());
+		lenient().doAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null))
+			.when(transactionTemplate).execute(any());
+		lenient().when(accountRepository.findAccountNumbers(any()))
+			.thenReturn(Collections.singletonList("1000000012"));
+		lenient().when(accountBalanceSnapshotRepository.findByAccountNumber("1000000012"))
+			.thenReturn(Optional.of(snapshot));
+		//스냅샷 이후 사용 2000
+		lenient().when(transactionRepository.findTail(eq(account), eq(COVERED_UNTIL), any()))
+			.thenReturn(tail(1L, -2000L));
+	}
+	
+	@Test
+	@DisplayName("검증 - 스냅샷 + 뒷부분 거래와 다른 잔액을 찾는다")
+	void verifyFindsMismatch() {
+		//given
+		given(accountRepository.findByAccountNumber("1000000012"))
+			.willReturn(Optional.of(account));
+		
+		//when
+		BalanceRebuild.Report report = balanceSnapshotService.verify();
+		
+		//then
+		assertEquals(1, report.getCheckedAccounts());
+		assertEquals(1, report.getReplayedTransactions());
+		assertEquals(1, report.getMismatchedAccounts());
+		assertEquals(8000L, report.getMismatches().get(0).getRebuiltBalance());
+		assertEquals(7000L, account.getBalance());
+	}
+	
+	@Test
+	@DisplayName("재구성 - 계좌 행을 잡고 다시 계산한 잔액으로 고친다")
+	void rebuildRepairsBalance() {
+		//given
+		given(accountRepository.findForUpdateByAccountNumberIn(Collections.singletonList("1000000012")))
+			.willReturn(Collections.singletonList(account));
+		
+		//when
+		BalanceRebuild.Report report = balanceSnapshotService.rebuild();
+		
+		//then
+		assertEquals(1, report.getRepairedAccounts());
+		assertEquals(8000L, account.getBalance());
+	}
+	
+	@Test
+	@DisplayName("스냅샷 - 이전 스냅샷에 뒷부분 거래를 더해서 새 스냅샷을 만든다")
+	void snapshotRollsForward() {
+		//given
+		given(accountRepository.findByAccountNumber("1000000012"))
+			.willReturn(Optional.of(account));
+		
+		//when
+		BalanceRebuild.Report report = balanceSnapshotService.snapshot();
+		
+		//then
+		ArgumentCaptor<AccountBalanceSnapshot> captor = ArgumentCaptor.forClass(AccountBalanceSnapshot.class);
+		verify(accountBalanceSnapshotRepository).save(captor.capture());
+		assertEquals(8000L, captor.getValue().getBalance());//Account.balance(7000)를 베끼지 않는다
+		assertTrue(captor.getValue().getCoveredUntil().isAfter(COVERED_UNTIL));
+		assertEquals(1, report.getSnapshotsTaken());
+	}
+	
+	@Test
+	@DisplayName("처음 스냅샷 - 계좌 락과 계좌 행을 잡고 지금 잔액에서 시작한다")
+	void firstSnapshotUnderLock() {
+		//given
+		given(accountBalanceSnapshotRepository.findByAccountNumber("1000000012"))
+			.willReturn(Optional.empty());
+		given(accountRepository.findForUpdateByAccountNumberIn(Collections.singletonList("1000000012")))
+			.willReturn(Collections.singletonList(account));
+		
+		//when
+		BalanceRebuild.Report report = balanceSnapshotService.snapshot();
+		
+		//then
+		ArgumentCaptor<AccountBalanceSnapshot> captor = ArgumentCaptor.forClass(AccountBalanceSnapshot.class);
+		InOrder inOrder = inOrder(lockService, accountRepository, accountBalanceSnapshotRepository);
+		inOrder.verify(lockService).Lock(eq("1000000012"), any(), any());
+		inOrder.verify(accountRepository).findForUpdateByAccountNumberIn(Collections.singletonList("1000000012"));
+		inOrder.verify(accountBalanceSnapshotRepository).save(captor.capture());
+		inOrder.verify(lockService).unLock(eq("1000000012"), any());
+		assertEquals(7000L, captor.getValue().getBalance());
+		assertEquals(1, report.getSnapshotsTaken());
+		verify(accountRepository, never()).findByAccountNumber(any());
+	}
+	
+	@Test
+	@DisplayName("DB에 잔액이 없거나 거래 행이 늦게 들어오는 엔진에서는 실행하지 않는다")
+	void unsupportedEngine() {
+		//given
+		given(transactionWriteBehind.isEnabled()).willReturn(true);
+		
+		//when
+		AccountException redisLedger = assertThrows(AccountException.class,
+				() -> service(BalanceEngine.REDIS_LEDGER).rebuild());
+		AccountException inMemory = assertThrows(AccountException.class,
+				() -> service(BalanceEngine.IN_MEMORY).snapshot());
+		AccountException writeBehind = assertThrows(AccountException.class,
+				() -> balanceSnapshotService.verify());
+		
+		//then
+		assertEquals(ErrorCode.INVALID_REQUEST, redisLedger.getErrorCode());
+		assertEquals(ErrorCode.INVALID_REQUEST, inMemory.getErrorCode());
+		assertEquals(ErrorCode.INVALID_REQUEST, writeBehind.getErrorCode());
+		verify(accountRepository, never()).findAccountNumbers(any());
+	}
+	
+	@Test
+	@DisplayName("샤드 계좌는 건너뛴다")
+	void skipShardedAccount() {
+		//given
+		given(shardedBalanceService.isSharded("1000000012")).willReturn(true);
+		
+		//when
+		BalanceRebuild.Report report = balanceSnapshotService.rebuild();
+		
+		//then
+		assertEquals(1, report.getSkippedAccounts());
+		verify(accountRepository, never()).findForUpdateByAccountNumberIn(any());
+	}
+	
+	private BalanceSnapshotService service(BalanceEngine balanceEngine) {
+		return new BalanceSnapshotService(accountRepository, transactionRepository,
+				accountBalanceSnapshotRepository, shardedBalanceService, lockService, transactionWriteBehind,
+				transactionTemplate, balanceEngine, 2, 10, 60L, 0L, 10);
+	}
+	
+	private static TransactionTail tail(Long count, Long balanceChange) {
+		return new TransactionTail() {
+			@Override
+			public Long getCount() {
+				return count;
+			}
+			
+			@Override
+			public Long getBalanceChange() {
+				return balanceChange;
+			}
+		};
+	}
+}
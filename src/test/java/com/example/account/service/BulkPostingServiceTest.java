@@ -0,0 +1,257 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountUser;
+import com.example.account.domain.BulkPostingCheckpoint;
+import com.example.account.dto.BulkPostingReport;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.BulkPostingCheckpointRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.BulkPostingStatus;
+import com.example.account.type.ErrorCode;
+
+@ExtendWith(MockitoExtension.class)
+class BulkPostingServiceTest {
+	@Mock
+	private AccountRepository accountRepository;
+	
+	@Mock
+	private TransactionRepository transactionRepository;
+	
+	@Mock
+	private BulkPostingCheckpointRepository bulkPostingCheckpointRepository;
+	
+	@Mock
+	private LockService lockService;
+	
+	@Mock
+	private TransactionTemplate transactionTemplate;
+	
+	@Mock
+	private ShardedBalanceService shardedBalanceService;
+	
+	@Mock
+	private TransactionWriteBehind transactionWriteBehind;
+	
+	@TempDir
+	Path directory;
+	
+	private BulkPostingService bulkPostingService;
+	
+	private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+	
+	private final Map<Integer, BulkPostingCheckpoint> checkpoints = new ConcurrentHashMap<>();
+	
+	@BeforeEach
+	void init() {
+		bulkPostingService = service(2);
+		AccountUser user = AccountUser.builder()
+				.id(12L)
+				.name("pobi").build();
+		for(String accountNumber : Arrays.asList("1000000012", "1000000013")) {
+			accounts.put(accountNumber, Account.builder()
+					.id(Long.valueOf(accountNumber))
+					.accountUser(user)
+					.accountStatus(AccountStatus.IN_USE)
+					.balance(10000L)
+					.accountNumber(accountNumber).build());
+		}
+		lenient().when(transactionTemplate.execute(any()))
+			.thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+		lenient().when(accountRepository.findForUpdateByAccountNumberIn(any()))
+			.thenAnswer(invocation -> invocation.<Collection<String>>getArgument(0).stream()
+					.filter(accounts::containsKey)
+					.map(accounts::get)
+					.collect(Collectors.toList()));
+		lenient().when(bulkPostingCheckpointRepository.saveAll(any()))
+			.thenAnswer(invocation -> {
+				List<BulkPostingCheckpoint> saved = invocation.getArgument(0);
+				saved.forEach(checkpoint -> checkpoints.put(checkpoint.getPartitionIndex(), checkpoint));
+				return saved;
+			});
+		lenient().when(bulkPostingCheckpointRepository.findByJobIdAndPartitionIndex(eq("job"), anyInt()))
+			.thenAnswer(invocation -> Optional.ofNullable(checkpoints.get(invocation.<Integer>getArgument(1))));
+	}
+	
+	@Test
+	@DisplayName("파일을 계좌별로 나눠 반영하고 ErrorCode별 실패 수를 센다")
+	void runBulkPosting() throws Exception {
+		//given
+		Path input = write("# 수수료",
+				"USE,1000000012,3000",
+				"USE,1000000013,1000",
+				"USE,1000000012,8000",
+				"USE,1000000099,1000",
+				"USE,1000000012",
+				"USE,1000000012,2000");
+		given(bulkPostingCheckpointRepository.findByJobIdOrderByPartitionIndex("job"))
+			.willReturn(Collections.emptyList());
+		
+		//when
+		BulkPostingReport report = bulkPostingService.run(input, "job");
+		
+		//then
+		assertEquals(BulkPostingStatus.COMPLETED, report.getStatus());
+		assertEquals(6, report.getReadRecords());
+		assertEquals(3, report.getSucceededRecords());
+		assertEquals(3, report.getFailedRecords());
+		assertEquals(1L, report.getFailures().get(ErrorCode.AMOUNT_EXCEED_BALANCE));
+		assertEquals(1L, report.getFailures().get(ErrorCode.ACCOUNT_NOT_FOUNT));
+		assertEquals(1L, report.getFailures().get(ErrorCode.INVALID_REQUEST));
+		assertEquals(5000L, accounts.get("1000000012").getBalance());
+		assertEquals(9000L, accounts.get("1000000013").getBalance());
+		verify(lockService).Lock(eq("1000000013"), any(), anyString());
+	}
+	
+	@Test
+	@DisplayName("체크포인트까지 반영된 줄은 건너뛴다")
+	void resumeFromCheckpoint() throws Exception {
+		//given
+		Path input = write("USE,1000000012,3000",
+				"USE,1000000012,2000");
+		int partition = Math.floorMod("1000000012".hashCode(), 2);
+		for(int i = 0; i < 2; i++) {
+			checkpoints.put(i, BulkPostingCheckpoint.builder()
+					.jobId("job")
+					.partitionIndex(i)
+					.partitions(2)
+					.lastLineNumber(i == partition ? 1L : 0L)
+					.build());
+		}
+		given(bulkPostingCheckpointRepository.findByJobIdOrderByPartitionIndex("job"))
+			.willReturn(Arrays.asList(checkpoints.get(0), checkpoints.get(1)));
+		
+		//when
+		BulkPostingReport report = bulkPostingService.run(input, "job");
+		
+		//then
+		assertEquals(1, report.getSkippedRecords());
+		assertEquals(1, report.getSucceededRecords());
+		assertEquals(8000L, accounts.get("1000000012").getBalance());
+		assertEquals(2L, checkpoints.get(partition).getLastLineNumber());
+		verify(bulkPostingCheckpointRepository, never()).saveAll(any());
+	}
+	
+	@Test
+	@DisplayName("이어서 할 때 이미 센 잘못된 줄은 다시 세지 않는다")
+	void invalidLinesAreCountedOnce() throws Exception {
+		//given
+		Path input = write("USE,1000000012,3000",
+				"USE,1000000012",
+				"USE,1000000012,2000");
+		for(int i = 0; i < 2; i++) {
+			checkpoints.put(i, BulkPostingCheckpoint.builder()
+					.jobId("job")
+					.partitionIndex(i)
+					.partitions(2)
+					.lastLineNumber(2L)
+					.build());
+		}
+		given(bulkPostingCheckpointRepository.findByJobIdOrderByPartitionIndex("job"))
+			.willReturn(Arrays.asList(checkpoints.get(0), checkpoints.get(1)));
+		
+		//when
+		BulkPostingReport report = bulkPostingService.run(input, "job");
+		
+		//then
+		assertEquals(2, report.getSkippedRecords());
+		assertEquals(1, report.getSucceededRecords());
+		assertEquals(0, report.getFailedRecords());
+		assertEquals(8000L, accounts.get("1000000012").getBalance());
+	}
+	
+	@Test
+	@DisplayName("한 묶음에서 잡는 계좌 락은 lock-group-size 개까지")
+	void locksAreHeldPerGroup() throws Exception {
+		//given
+		bulkPostingService = service(1);
+		Path input = write("USE,1000000012,1000",
+				"USE,1000000013,1000",
+				"USE,1000000012,1000",
+				"USE,1000000013,1000");
+		given(bulkPostingCheckpointRepository.findByJobIdOrderByPartitionIndex("job"))
+			.willReturn(Collections.emptyList());
+		AtomicInteger held = new AtomicInteger();
+		AtomicInteger maxHeld = new AtomicInteger();
+		doAnswer(invocation -> maxHeld.accumulateAndGet(held.incrementAndGet(), Math::max))
+			.when(lockService).Lock(anyString(), any(), anyString());
+		doAnswer(invocation -> held.decrementAndGet())
+			.when(lockService).unLock(anyString(), any());
+		
+		//when
+		BulkPostingReport report = bulkPostingService.run(input, "job");
+		
+		//then
+		assertEquals(4, report.getSucceededRecords());
+		assertTrue(maxHeld.get() <= 2, "held : " + maxHeld.get());//파티션 2개 x 1
+		assertEquals(0, held.get());
+	}
+	
+	@Test
+	@DisplayName("base-dir 밖의 파일은 거절한다")
+	void rejectFileOutsideBaseDir() throws Exception {
+		//given
+		write("USE,1000000012,1000");
+		
+		//when
+		AccountException traversal = assertThrows(AccountException.class,
+				() -> bulkPostingService.start("../input.csv", "job"));
+		AccountException absolute = assertThrows(AccountException.class,
+				() -> bulkPostingService.start("/etc/passwd", "job"));
+		
+		//then
+		assertEquals(ErrorCode.INVALID_REQUEST, traversal.getErrorCode());
+		assertEquals(ErrorCode.INVALID_REQUEST, absolute.getErrorCode());
+	}
+	
+	private BulkPostingService service(int lockGroupSize) {
+		return new BulkPostingService(accountRepository, transactionRepository,
+				bulkPostingCheckpointRepository, lockService, transactionTemplate, shardedBalanceService,
+				transactionWriteBehind, BalanceEngine.ENTITY, 2, 2, 100, 3, lockGroupSize, directory.toString());
+	}
+	
+	private Path write(String... lines) throws Exception {
+		Path input = directory.resolve("input.csv");
+		Files.write(input, Arrays.asList(lines), StandardCharsets.UTF_8);
+		return input;
+	}
+}
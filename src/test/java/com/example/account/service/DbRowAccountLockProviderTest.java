@@ -0,0 +1,137 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.domain.AccountUser;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.LockMode;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)//락 연결과 같은 DB를 커밋된 상태로 본다
+class DbRowAccountLockProviderTest {
+	private static final AccountLockPolicy POLICY = new AccountLockPolicy(500L, 15000L, LockMode.EXCLUSIVE);
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private AccountUserRepository accountUserRepository;
+
+	private DbRowAccountLockProvider provider;
+
+	private TransactionTemplate transactionTemplate;
+
+	@BeforeEach
+	void init() {
+		provider = new DbRowAccountLockProvider(dataSource, entityManagerFactory);
+		transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	@Test
+	@DisplayName("락 안의 서비스가 실패로 롤백돼도 그 뒤 실패 기록은 커밋된다")
+	void serviceTransactionDoesNotJoinLock() {
+		//given
+		provider.lock("1000000012", POLICY);
+		Long failedRecordId;
+		try {
+			assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+			assertThrows(AccountException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+				throw new AccountException(ErrorCode.AMOUNT_EXCEED_BALANCE);
+			}));
+
+			//when
+			failedRecordId = transactionTemplate.execute(status -> accountUserRepository.save(AccountUser.builder()
+					.name("failed").build()).getId());
+		} finally {
+			provider.unlock("1000000012", POLICY);
+		}
+
+		//then
+		assertTrue(accountUserRepository.existsById(failedRecordId));
+	}
+
+	@Test
+	@DisplayName("다른 연결이 잡고 있으면 기다리다 실패하고, 다른 스레드에서 풀면 잡을 수 있다")
+	void waitAndReleaseFromAnotherThread() {
+		//given
+		Runnable release = CompletableFuture.supplyAsync(() -> provider.lockAsync("1000000013", POLICY).join())
+				.join();
+
+		//when
+		AccountException exception = assertThrows(AccountException.class,
+				() -> provider.lock("1000000013", POLICY));
+		CompletableFuture.runAsync(release).join();
+
+		//then
+		assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, exception.getErrorCode());
+		assertDoesNotThrow(() -> provider.lock("1000000013", POLICY));
+		provider.unlock("1000000013", POLICY);
+	}
+
+	@Test
+	@DisplayName("다른 스레드의 unlock은 내 연결을 풀지 않는다")
+	void unlockReleasesOnlyOwnConnection() {
+		//given
+		provider.lock("1000000014", POLICY);
+		try {
+			//when
+			CompletableFuture.runAsync(() -> provider.unlock("1000000014", POLICY)).join();
+
+			//then
+			CompletionException exception = assertThrows(CompletionException.class,
+					() -> CompletableFuture.runAsync(() -> provider.lock("1000000014", POLICY)).join());
+			assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, ((AccountException) exception.getCause()).getErrorCode());
+		} finally {
+			provider.unlock("1000000014", POLICY);
+		}
+	}
+
+	@Test
+	@DisplayName("H2는 공유 행 락이 없어서 읽기 락도 배타적으로 잡힌다")
+	void sharedLockIsExclusiveWithoutSharedRowLock() {
+		//given
+		AccountLockPolicy shared = new AccountLockPolicy(500L, 15000L, LockMode.SHARED);
+		provider.lock("1000000015", shared);
+		try {
+			//when
+			CompletionException exception = assertThrows(CompletionException.class,
+					() -> CompletableFuture.runAsync(() -> provider.lock("1000000015", shared)).join());
+
+			//then
+			assertFalse(provider.supportsSharedLock());
+			assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, ((AccountException) exception.getCause()).getErrorCode());
+		} finally {
+			provider.unlock("1000000015", shared);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.account.dto.HotAccount;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HotAccountTrackerTest {
+	private final AtomicLong now = new AtomicLong();
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private HotAccountTracker hotAccountTracker;
+
+	@BeforeEach
+	void init() {
+		meterRegistry = new SimpleMeterRegistry();
+		//3개만 추적, 반감기 10초, 초당 1건 이상이면 핫
+		hotAccountTracker = new HotAccountTracker(meterRegistry, 3, 10L, 1.0, now::get);
+	}
+
+	@Test
+	void detectHotAccount() {
+		//given
+		//when
+		for(int i = 0; i < 100; i++) {
+			hotAccountTracker.recordRequest("1000000000");
+		}
+		hotAccountTracker.recordRequest("1000000001");
+
+		//then
+		assertTrue(hotAccountTracker.isHot("1000000000"));
+		assertFalse(hotAccountTracker.isHot("1000000001"));
+		assertFalse(hotAccountTracker.isHot("9999999999"));
+		assertEquals(1.0, meterRegistry.get("account.hot.count").gauge().value());
+	}
+
+	@Test
+	void boundedByCapacity() {
+		//given
+		for(int i = 0; i < 100; i++) {
+			hotAccountTracker.recordRequest("1000000000");
+		}
+
+		//when
+		for(int i = 1; i <= 50; i++) {
+			hotAccountTracker.recordRequest("10000000" + (10 + i));
+		}
+
+		//then
+		List<HotAccount> topAccounts = hotAccountTracker.getTopAccounts(10);
+		assertEquals(3, topAccounts.size());
+		assertEquals("1000000000", topAccounts.get(0).getAccountNumber());
+		assertEquals(3.0, meterRegistry.get("account.hot.tracked").gauge().value());
+	}
+
+	@Test
+	void boundedByCapacityAcrossStripes() {
+		//given
+		//128개 추적 = stripe 16개 x 8
+		HotAccountTracker striped = new HotAccountTracker(meterRegistry, 128, 10L, 1.0, now::get);
+		for(int i = 0; i < 100; i++) {
+			striped.recordRequest("1000000000");
+		}
+
+		//when
+		for(int i = 1; i <= 5000; i++) {
+			striped.recordRequest(String.valueOf(2000000000L + i));
+		}
+
+		//then
+		assertTrue(striped.getTopAccounts(200).size() <= 128);
+		assertEquals("1000000000", striped.getTopAccounts(1).get(0).getAccountNumber());
+		assertTrue(striped.isHot("1000000000"));
+	}
+
+	@Test
+	void decayOverTime() {
+		//given
+		for(int i = 0; i < 100; i++) {
+			hotAccountTracker.recordRequest("1000000000");
+		}
+
+		//when
+		now.addAndGet(TimeUnit.SECONDS.toNanos(100));//반감기 10번
+
+		//then
+		assertFalse(hotAccountTracker.isHot("1000000000"));
+	}
+
+	@Test
+	void keepsCountingAcrossEpochs() {
+		//given
+		for(int i = 0; i < 100; i++) {
+			hotAccountTracker.recordRequest("1000000000");
+		}
+
+		//when
+		now.addAndGet(TimeUnit.SECONDS.toNanos(325));//가중치 기준 시각(반감기 32번)을 넘긴다
+		for(int i = 0; i < 100; i++) {
+			hotAccountTracker.recordRequest("1000000000");
+		}
+
+		//then
+		assertTrue(hotAccountTracker.isHot("1000000000"));
+		assertEquals(100 * Math.log(2) / 10, hotAccountTracker.getTopAccounts(1).get(0).getRequestsPerSecond(), 0.001);
+	}
+
+	@Test
+	void lockWaitAndFailureRate() {
+		//given
+		for(int i = 0; i < 4; i++) {
+			hotAccountTracker.recordRequest("1000000000");
+			hotAccountTracker.recordLockWait("1000000000", TimeUnit.MILLISECONDS.toNanos(20));
+		}
+
+		//when
+		hotAccountTracker.recordFailure("1000000000");
+
+		//then
+		HotAccount hotAccount = hotAccountTracker.getTopAccounts(1).get(0);
+		assertEquals(20.0, hotAccount.getAvgLockWaitMillis(), 0.001);
+		assertEquals(0.25, hotAccount.getFailureRate(), 0.001);
+	}
+}
@@ -0,0 +1,194 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.example.account.aop.Idempotent;
+import com.example.account.dto.UseBalance;
+import com.example.account.exception.AccountException;
+import com.example.account.type.ErrorCode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyAspectTest {
+	@Mock
+	private IdempotencyStore idempotencyStore;
+	
+	@Mock
+	private ProceedingJoinPoint pjp;
+	
+	@Mock
+	private MethodSignature signature;
+	
+	@Mock
+	private Idempotent idempotent;
+	
+	private IdempotencyAspect idempotencyAspect;
+	
+	private final UseBalance.Request request = new UseBalance.Request(1L, "1000000000", 1000L);
+	
+	@BeforeEach
+	void init() {
+		idempotencyAspect = new IdempotencyAspect(idempotencyStore, new ObjectMapper().findAndRegisterModules());
+		MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+		httpRequest.addHeader(IdempotencyAspect.HEADER, "key");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(httpRequest));
+		given(pjp.getSignature()).willReturn(signature);
+		given(signature.getName()).willReturn("useBalance");
+	}
+	
+	@AfterEach
+	void clear() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+	
+	@Test
+	@DisplayName("완료된 키 - 본문(락, DB)을 실행하지 않고 저장된 응답")
+	void replayStoredResponse() throws Throwable {
+		//given
+		given(idempotencyStore.begin(eq("useBalance:key"), anyString()))
+			.willReturn("{\"transactionId\":\"transactionId\",\"amount\":1000}");
+		given(signature.getMethod()).willReturn(Endpoints.class.getMethod("useBalance", UseBalance.Request.class));
+		
+		//when
+		UseBalance.Response response = (UseBalance.Response) idempotencyAspect.aroundMethod(
+				pjp, idempotent, request);
+		
+		//then
+		assertEquals("transactionId", response.getTransactionId());
+		verify(pjp, never()).proceed();
+	}
+	
+	@Test
+	@DisplayName("완료된 키, 비동기 메서드 - future 타입 인자로 응답을 읽는다")
+	void replayStoredResponse_async() throws Throwable {
+		//given
+		given(idempotencyStore.begin(eq("useBalance:key"), anyString()))
+			.willReturn("{\"transactionId\":\"transactionId\",\"amount\":1000}");
+		given(signature.getMethod()).willReturn(
+				Endpoints.class.getMethod("useBalanceAsync", UseBalance.Request.class));
+		
+		//when
+		Object response = idempotencyAspect.aroundMethod(pjp, idempotent, request);
+		
+		//then
+		assertEquals("transactionId",
+				((UseBalance.Response) ((CompletableFuture<?>) response).join()).getTransactionId());
+		verify(pjp, never()).proceed();
+	}
+	
+	@Test
+	@DisplayName("처음 실행 - 응답을 저장한다")
+	void storeResponse() throws Throwable {
+		//given
+		given(idempotencyStore.begin(eq("useBalance:key"), anyString())).willReturn(null);
+		given(pjp.proceed()).willReturn(UseBalance.Response.builder()
+				.transactionId("transactionId").build());
+		
+		//when
+		idempotencyAspect.aroundMethod(pjp, idempotent, request);
+		
+		//then
+		verify(idempotencyStore).complete(eq("useBalance:key"), anyString(), anyString());
+	}
+	
+	@Test
+	@DisplayName("실행 실패 - 키를 풀어서 재시도가 다시 실행되게 한다")
+	void releaseOnFailure() throws Throwable {
+		//given
+		given(idempotencyStore.begin(eq("useBalance:key"), anyString())).willReturn(null);
+		given(pjp.proceed()).willThrow(new AccountException(ErrorCode.AMOUNT_EXCEED_BALANCE));
+		
+		//when
+		assertThrows(AccountException.class, () -> idempotencyAspect.aroundMethod(pjp, idempotent, request));
+		
+		//then
+		verify(idempotencyStore).release(eq("useBalance:key"), anyString());
+		verify(idempotencyStore, never()).complete(anyString(), anyString(), anyString());
+	}
+	
+	@Test
+	@DisplayName("결과를 모르는 실패 - 키를 풀지 않고 같은 에러로 닫는다")
+	void failOnUnknownOutcome() throws Throwable {
+		//given
+		given(idempotencyStore.begin(eq("useBalance:key"), anyString())).willReturn(null);
+		given(pjp.proceed()).willThrow(new AccountException(ErrorCode.INTERNAL_SERVER_ERROR));
+		
+		//when
+		assertThrows(AccountException.class, () -> idempotencyAspect.aroundMethod(pjp, idempotent, request));
+		
+		//then
+		verify(idempotencyStore).fail(eq("useBalance:key"), anyString(), eq(ErrorCode.INTERNAL_SERVER_ERROR));
+		verify(idempotencyStore, never()).release(anyString(), anyString());
+	}
+	
+	@Test
+	@DisplayName("비동기 실행 - future가 끝나면 응답을 저장한다")
+	void storeResponse_async() throws Throwable {
+		//given
+		given(idempotencyStore.begin(eq("useBalance:key"), anyString())).willReturn(null);
+		CompletableFuture<UseBalance.Response> result = new CompletableFuture<>();
+		given(pjp.proceed()).willReturn(result);
+		
+		//when
+		CompletableFuture<?> response = (CompletableFuture<?>) idempotencyAspect.aroundMethod(
+				pjp, idempotent, request);
+		verify(idempotencyStore, never()).complete(anyString(), anyString(), anyString());
+		result.complete(UseBalance.Response.builder().transactionId("transactionId").build());
+		
+		//then
+		response.join();
+		verify(idempotencyStore).complete(eq("useBalance:key"), anyString(), anyString());
+	}
+	
+	@Test
+	@DisplayName("비동기 실행 실패 - 검증 실패는 키를 풀고, 그 밖의 실패는 닫는다")
+	void finishOnAsyncFailure() throws Throwable {
+		//given
+		given(idempotencyStore.begin(eq("useBalance:key"), anyString())).willReturn(null);
+		given(pjp.proceed()).willReturn(
+				CompletableFuture.failedFuture(new AccountException(ErrorCode.AMOUNT_EXCEED_BALANCE)),
+				CompletableFuture.failedFuture(new IllegalStateException("lock release failed")));
+		
+		//when
+		CompletableFuture<?> rejected = (CompletableFuture<?>) idempotencyAspect.aroundMethod(
+				pjp, idempotent, request);
+		CompletableFuture<?> unknown = (CompletableFuture<?>) idempotencyAspect.aroundMethod(
+				pjp, idempotent, request);
+		
+		//then
+		CompletionException exception = assertThrows(CompletionException.class, rejected::join);
+		assertTrue(exception.getCause() instanceof AccountException);
+		assertThrows(CompletionException.class, unknown::join);
+		verify(idempotencyStore).release(eq("useBalance:key"), anyString());
+		verify(idempotencyStore).fail(eq("useBalance:key"), anyString(), eq(ErrorCode.INTERNAL_SERVER_ERROR));
+	}
+	
+	private interface Endpoints {
+		UseBalance.Response useBalance(UseBalance.Request request);
+		
+		CompletableFuture<UseBalance.Response> useBalanceAsync(UseBalance.Request request);
+	}
+}
@@ -0,0 +1,182 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.example.account.exception.AccountException;
+import com.example.account.type.ErrorCode;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyStoreTest {
+	@Mock
+	private ObjectProvider<RedissonClient> redissonClientProvider;
+	
+	@Mock
+	private RedissonClient redissonClient;
+	
+	@Mock
+	private RBucket<String> bucket;
+	
+	@Mock
+	private RScript script;
+	
+	private IdempotencyStore idempotencyStore;
+	
+	@BeforeEach
+	void init() {
+		idempotencyStore = new IdempotencyStore(redissonClientProvider, 24L, 30L, 100L, 10L);
+		given(redissonClientProvider.getObject()).willReturn(redissonClient);
+		given(redissonClient.<String>getBucket(anyString(), any(Codec.class))).willReturn(bucket);
+	}
+	
+	@Test
+	@DisplayName("처음 쓰는 키 - 처리 중 표시를 넣고 실행 권한을 얻는다")
+	void beginNewKey() throws Exception {
+		//given
+		given(bucket.trySet(eq("P|fingerprint"), anyLong(), any(TimeUnit.class))).willReturn(true);
+		
+		//when
+		String stored = idempotencyStore.begin("useBalance:key", "fingerprint");
+		
+		//then
+		assertNull(stored);
+	}
+	
+	@Test
+	@DisplayName("완료된 키 - 저장된 응답을 돌려준다")
+	void beginCompletedKey() throws Exception {
+		//given
+		given(bucket.trySet(anyString(), anyLong(), any(TimeUnit.class))).willReturn(false);
+		given(bucket.get()).willReturn("C|fingerprint|{\"transactionId\":\"a|b\"}");
+		
+		//when
+		String stored = idempotencyStore.begin("useBalance:key", "fingerprint");
+		
+		//then
+		assertEquals("{\"transactionId\":\"a|b\"}", stored);
+	}
+	
+	@Test
+	@DisplayName("처리 중인 키 - 먼저 온 요청이 끝나면 그 응답을 돌려준다")
+	void beginInFlightKey() throws Exception {
+		//given
+		given(bucket.trySet(anyString(), anyLong(), any(TimeUnit.class))).willReturn(false);
+		given(bucket.get()).willReturn("P|fingerprint", "C|fingerprint|{}");
+		
+		//when
+		String stored = idempotencyStore.begin("useBalance:key", "fingerprint");
+		
+		//then
+		assertEquals("{}", stored);
+	}
+	
+	@Test
+	@DisplayName("처리가 끝나지 않으면 기다리다가 실패")
+	void beginInFlightKey_timeout() {
+		//given
+		given(bucket.trySet(anyString(), anyLong(), any(TimeUnit.class))).willReturn(false);
+		given(bucket.get()).willReturn("P|fingerprint");
+		
+		//when
+		AccountException exception = assertThrows(AccountException.class,
+				() -> idempotencyStore.begin("useBalance:key", "fingerprint"));
+		
+		//then
+		assertEquals(ErrorCode.IDEMPOTENT_REQUEST_IN_PROGRESS, exception.getErrorCode());
+	}
+	
+	@Test
+	@DisplayName("같은 키에 다른 요청 본문")
+	void beginReusedKey() {
+		//given
+		given(bucket.trySet(anyString(), anyLong(), any(TimeUnit.class))).willReturn(false);
+		given(bucket.get()).willReturn("C|other|{}");
+		
+		//when
+		AccountException exception = assertThrows(AccountException.class,
+				() -> idempotencyStore.begin("useBalance:key", "fingerprint"));
+		
+		//then
+		assertEquals(ErrorCode.IDEMPOTENCY_KEY_REUSED, exception.getErrorCode());
+	}
+	
+	@Test
+	@DisplayName("결과를 모르는 실패로 닫힌 키 - 다시 실행하지 않고 같은 에러")
+	void beginFailedKey() {
+		//given
+		given(bucket.trySet(anyString(), anyLong(), any(TimeUnit.class))).willReturn(false);
+		given(bucket.get()).willReturn("F|fingerprint|INTERNAL_SERVER_ERROR");
+		
+		//when
+		AccountException exception = assertThrows(AccountException.class,
+				() -> idempotencyStore.begin("useBalance:key", "fingerprint"));
+		
+		//then
+		assertEquals(ErrorCode.INTERNAL_SERVER_ERROR, exception.getErrorCode());
+	}
+	
+	@Test
+	@DisplayName("실행 중인 키 - 처리 중 표시의 만료를 늘리고, 끝난 키는 건드리지 않는다")
+	void extendInFlight() throws Exception {
+		//given
+		given(bucket.trySet(eq("P|fingerprint"), anyLong(), any(TimeUnit.class))).willReturn(true);
+		given(redissonClient.getScript(any(Codec.class))).willReturn(script);
+		idempotencyStore.begin("useBalance:key", "fingerprint");
+		idempotencyStore.begin("cancelBalance:key", "fingerprint");
+		idempotencyStore.complete("cancelBalance:key", "fingerprint", "{}");
+		
+		//when
+		idempotencyStore.extendInFlight();
+		
+		//then
+		verify(script).eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.BOOLEAN),
+				eq(Collections.singletonList("ACIDEM:useBalance:key")), eq("P|fingerprint"), eq("30000"));
+		verify(script, never()).eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class),
+				eq(Collections.singletonList("ACIDEM:cancelBalance:key")), any(), any());
+	}
+	
+	@Test
+	@DisplayName("결과를 모르는 실패 - 에러 코드로 키를 닫는다")
+	void fail() {
+		//given
+		//when
+		idempotencyStore.fail("useBalance:key", "fingerprint", ErrorCode.INTERNAL_SERVER_ERROR);
+		
+		//then
+		verify(bucket).set(eq("F|fingerprint|INTERNAL_SERVER_ERROR"), anyLong(), eq(TimeUnit.MILLISECONDS));
+	}
+	
+	@Test
+	@DisplayName("실행 실패 - 처리 중 표시만 지운다")
+	void release() {
+		//given
+		//when
+		idempotencyStore.release("useBalance:key", "fingerprint");
+		
+		//then
+		verify(bucket).compareAndSet("P|fingerprint", null);
+	}
+}
@@ -0,0 +1,157 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountUser;
+import com.example.account.dto.TransactionDto;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionType;
+
+@ExtendWith(MockitoExtension.class)
+class InMemoryLedgerEngineTest {
+	@TempDir
+	Path directory;
+	
+	@Mock
+	private AccountRepository accountRepository;
+	
+	@Mock
+	private AccountUserRepository accountUserRepository;
+	
+	@Mock
+	private TransactionRepository transactionRepository;
+	
+	@Mock
+	private TransactionTemplate transactionTemplate;
+	
+	private Account account;
+	
+	@BeforeEach
+	void init() {
+		account = Account.builder()
+				.accountUser(AccountUser.builder()
+						.id(12L)
+						.name("pobi").build())
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(10000L)
+				.accountNumber("1000000012").build();
+		given(accountRepository.findByAccountNumber("1000000012"))
+			.willReturn(Optional.of(account));
+	}
+	
+	@Test
+	@DisplayName("재시작하면 스냅샷 + 저널로 잔액을 복구한다")
+	void recoverFromSnapshotAndJournal() throws Exception {
+		//given
+		InMemoryLedgerEngine engine = newEngine();
+		engine.start();
+		TransactionService.await(engine.useBalance(12L, "1000000012", 200L));
+		engine.checkpoint();
+		TransactionService.await(engine.useBalance(12L, "1000000012", 300L));
+		engine.stop();
+		
+		//when
+		InMemoryLedgerEngine recovered = newEngine();
+		recovered.start();
+		Optional<Long> balance = recovered.getBalance("1000000012");
+		recovered.stop();
+		
+		//then
+		assertEquals(9500L, balance.get());
+	}
+	
+	@Test
+	@DisplayName("스냅샷 뒤 세그먼트가 지워지고 재시작해도 새 거래가 복구된다")
+	void recoverAfterCheckpointAndRestart() throws Exception {
+		//given
+		InMemoryLedgerEngine engine = newEngine();
+		engine.start();
+		TransactionService.await(engine.useBalance(12L, "1000000012", 200L));
+		engine.checkpoint();
+		engine.stop();
+		InMemoryLedgerEngine restarted = newEngine();
+		restarted.start();
+		TransactionService.await(restarted.useBalance(12L, "1000000012", 300L));
+		restarted.stop();
+		
+		//when
+		InMemoryLedgerEngine recovered = newEngine();
+		recovered.start();
+		Optional<Long> balance = recovered.getBalance("1000000012");
+		recovered.stop();
+		
+		//then
+		assertEquals(9500L, balance.get());
+	}
+	
+	@Test
+	@DisplayName("잔액보다 큰 금액은 사용할 수 없다")
+	void useBalance_exceedBalance() throws Exception {
+		//given
+		InMemoryLedgerEngine engine = newEngine();
+		engine.start();
+		
+		//when
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> TransactionService.await(engine.useBalance(12L, "1000000012", 20000L)));
+		engine.stop();
+		
+		//then
+		assertEquals(ErrorCode.AMOUNT_EXCEED_BALANCE, accountException.getErrorCode());
+	}
+	
+	@Test
+	@DisplayName("DB에 반영되기 전 사용 거래도 취소할 수 있다")
+	void cancelBeforeProjection() throws Exception {
+		//given
+		InMemoryLedgerEngine engine = newEngine();
+		engine.start();
+		TransactionDto use = TransactionService.await(engine.useBalance(12L, "1000000012", 200L));
+		//projector가 먼저 반영했으면 DB에서 찾는다
+		lenient().when(transactionRepository.findDtoByTransactionId(anyString()))
+			.thenReturn(Optional.of(TransactionDto.builder()
+					.accountNumber(account.getAccountNumber())
+					.amount(200L)
+					.transactionId(use.getTransactionId())
+					.transactedAt(LocalDateTime.now()).build()));
+		
+		//when
+		TransactionDto cancel = TransactionService.await(
+				engine.cancelBalance(use.getTransactionId(), "1000000012", 200L));
+		engine.stop();
+		
+		//then
+		assertEquals(9800L, use.getBalanceSnapshot());
+		assertEquals(TransactionType.CANCEL, cancel.getTransactionType());
+		assertEquals(10000L, cancel.getBalanceSnapshot());
+	}
+	
+	private InMemoryLedgerEngine newEngine() {
+		return new InMemoryLedgerEngine(accountRepository, accountUserRepository, transactionRepository,
+				transactionTemplate, BalanceEngine.IN_MEMORY, directory.toString(), 2, 16, 8, 3600L);
+	}
+}
@@ -0,0 +1,60 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.account.service.LedgerJournal.Record;
+import com.example.account.service.LedgerJournal.RecordType;
+
+class LedgerJournalTest {
+	@TempDir
+	Path directory;
+
+	@Test
+	void appendAndReopen() throws Exception {
+		//given
+		List<Record> durable = new CopyOnWriteArrayList<>();
+		LedgerJournal journal = new LedgerJournal(directory, 16, durable::addAll);
+		journal.append(RecordType.USE, "1000000012", 200L, 9800L, "tx1", 1L);
+		journal.append(RecordType.USE, "1000000012", 300L, 9500L, "tx2", 2L);
+		journal.append(RecordType.CANCEL, "1000000012", 200L, 9700L, "tx3", 3L).getDurable().join();
+		journal.close();
+
+		//when
+		LedgerJournal reopened = new LedgerJournal(directory, 16, records -> { });
+		List<Record> records = reopened.readAll();
+		Record next = reopened.append(RecordType.USE, "1000000012", 100L, 9600L, "tx4", 4L).getRecord();
+		reopened.close();
+
+		//then
+		assertEquals(3, durable.size());
+		assertEquals(3, records.size());
+		assertEquals(9700L, records.get(2).getBalance());
+		assertEquals(RecordType.CANCEL, records.get(2).getType());
+		assertEquals(4L, next.getSeq());
+	}
+
+	@Test
+	void deleteSegmentsAfterRollover() throws Exception {
+		//given
+		LedgerJournal journal = new LedgerJournal(directory, 16, records -> { });
+		journal.append(RecordType.USE, "1000000012", 200L, 9800L, "tx1", 1L);
+		long closedSeq = journal.rollover();
+		journal.append(RecordType.USE, "1000000012", 300L, 9500L, "tx2", 2L).getDurable().join();
+
+		//when
+		journal.deleteSegmentsUpTo(closedSeq);
+		List<Record> records = journal.readAll();
+		journal.close();
+
+		//then
+		assertEquals(1, records.size());
+		assertEquals("tx2", records.get(0).getTransactionId());
+	}
+}
@@ -1,21 +1,45 @@
 package com.example.account.service;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import com.example.account.aop.AccountLock;
+import com.example.account.dto.AccountBalanceAt;
 import com.example.account.dto.UseBalance;
 import com.example.account.exception.AccountException;
+import com.example.account.type.BalanceEngine;
 import com.example.account.type.ErrorCode;
+import com.example.account.type.LockMode;
+import com.example.account.type.LockScope;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 
 @ExtendWith(MockitoExtension.class)
@@ -23,9 +47,18 @@ class LockAopAspectTest {
 	@Mock
 	private LockService lockService;
 	
+	@Mock
+	private HotAccountTracker hotAccountTracker;
+	
+	@Mock
+	private ShardedBalanceService shardedBalanceService;
+	
 	@Mock
 	private ProceedingJoinPoint proceedingJoinPoint;
 	
+	@Mock
+	private Signature signature;
+	
 	@InjectMocks
 	private LockAopAspect lockAopAspect;
 	
@@ -38,13 +71,15 @@ class LockAopAspectTest {
 				ArgumentCaptor.forClass(String.class);
 		UseBalance.Request request = 
 				new UseBalance.Request(123L, "1234", 1000L);
+		given(proceedingJoinPoint.getSignature()).willReturn(signature);
+		given(signature.getName()).willReturn("useBalance");
 		
 		//when
-		lockAopAspect.aroundMethod(proceedingJoinPoint, request);
+		lockAopAspect.aroundMethod(proceedingJoinPoint, accountLockOf("exclusiveMethod"), request);
 		
 		//then
-		verify(lockService, times(1)).Lock(lockArgumentCaptor.capture());
-		verify(lockService, times(1)).unLock(unlockArgumentCaptor.capture());
+		verify(lockService, times(1)).Lock(lockArgumentCaptor.capture(), any(), eq("useBalance"));
+		verify(lockService, times(1)).unLock(unlockArgumentCaptor.capture(), any());
 		assertEquals("1234", lockArgumentCaptor.getValue());
 		assertEquals("1234", unlockArgumentCaptor.getValue());
 	}
@@ -58,18 +93,129 @@ class LockAopAspectTest {
 				ArgumentCaptor.forClass(String.class);
 		UseBalance.Request request = 
 				new UseBalance.Request(123L, "54321", 1000L);
+		given(proceedingJoinPoint.getSignature()).willReturn(signature);
+		given(signature.getName()).willReturn("useBalance");
 		given(proceedingJoinPoint.proceed())
 			.willThrow(new AccountException(ErrorCode.ACCOUNT_NOT_FOUNT));
 		
 		//when
 		assertThrows(AccountException.class, ()->
-		lockAopAspect.aroundMethod(proceedingJoinPoint, request));
+		lockAopAspect.aroundMethod(proceedingJoinPoint, accountLockOf("exclusiveMethod"), request));
 		
 		//then
-		verify(lockService, times(1)).Lock(lockArgumentCaptor.capture());
-		verify(lockService, times(1)).unLock(unlockArgumentCaptor.capture());
+		verify(lockService, times(1)).Lock(lockArgumentCaptor.capture(), any(), eq("useBalance"));
+		verify(lockService, times(1)).unLock(unlockArgumentCaptor.capture(), any());
 		assertEquals("54321", lockArgumentCaptor.getValue());
 		assertEquals("54321", unlockArgumentCaptor.getValue());
 	}
+	
+	@Test
+	void noLockMode() throws Throwable{
+		//given
+		UseBalance.Request request = 
+				new UseBalance.Request(123L, "1234", 1000L);
+		
+		//when
+		lockAopAspect.aroundMethod(proceedingJoinPoint, accountLockOf("noLockMethod"), request);
+		
+		//then
+		verify(proceedingJoinPoint, times(1)).proceed();
+		verify(hotAccountTracker, times(1)).recordRequest("1234");
+		verify(lockService, never()).Lock(anyString(), any(), anyString());
+		verify(lockService, never()).unLock(anyString(), any());
+	}
+	
+	@Test
+	void asyncLockRunsBodyAfterAcquire() throws Throwable{
+		//given
+		UseBalance.Request request = 
+				new UseBalance.Request(123L, "1234", 1000L);
+		MethodSignature methodSignature = mock(MethodSignature.class);
+		CompletableFuture<Runnable> locking = new CompletableFuture<>();
+		Runnable release = mock(Runnable.class);
+		Executor executor = Runnable::run;
+		ReflectionTestUtils.setField(lockAopAspect, "accountLockExecutor", executor);
+		given(proceedingJoinPoint.getSignature()).willReturn(methodSignature);
+		given(methodSignature.getReturnType()).willReturn(CompletableFuture.class);
+		given(methodSignature.getName()).willReturn("useBalance");
+		given(lockService.lockAsync(eq("1234"), any(), eq("useBalance"))).willReturn(locking);
+		given(proceedingJoinPoint.proceed()).willReturn(CompletableFuture.completedFuture("ok"));
+		
+		//when
+		CompletableFuture<?> result = (CompletableFuture<?>) lockAopAspect.aroundMethod(
+				proceedingJoinPoint, accountLockOf("exclusiveMethod"), request);
+		boolean proceededBeforeLock = result.isDone();
+		locking.complete(release);
+		
+		//then
+		assertFalse(proceededBeforeLock);
+		assertEquals("ok", result.join());
+		verify(release, times(1)).run();
+		verify(lockService, never()).Lock(anyString(), any(), anyString());
+	}
+	
+	@Test
+	void skipLockOnConditionalUpdateEngine() throws Throwable{
+		//given
+		UseBalance.Request request = 
+				new UseBalance.Request(123L, "1234", 1000L);
+		ReflectionTestUtils.setField(lockAopAspect, "balanceEngine", BalanceEngine.CONDITIONAL_UPDATE);
+		
+		//when
+		lockAopAspect.aroundMethod(proceedingJoinPoint, accountLockOf("lockFreeEngineSafeMethod"), request);
+		
+		//then
+		verify(proceedingJoinPoint, times(1)).proceed();
+		verify(lockService, never()).Lock(anyString(), any(), anyString());
+	}
+	
+	@Test
+	void sharedLocksDoNotSerializeReads() throws Throwable{
+		//given
+		LockService realLockService = new LockService(new StripedAccountLockProvider(16),
+				new SimpleMeterRegistry(), hotAccountTracker, LockScope.CONTROLLER);
+		LockAopAspect aspect = new LockAopAspect(realLockService, hotAccountTracker, shardedBalanceService);
+		ReflectionTestUtils.setField(aspect, "balanceEngine", BalanceEngine.ENTITY);
+		ReflectionTestUtils.setField(aspect, "lockScope", LockScope.CONTROLLER);
+		AccountBalanceAt.Request request = new AccountBalanceAt.Request("1234", LocalDateTime.now());
+		CyclicBarrier bothInside = new CyclicBarrier(2);
+		given(proceedingJoinPoint.getSignature()).willReturn(signature);
+		given(signature.getName()).willReturn("getBalanceAt");
+		given(proceedingJoinPoint.proceed())
+			.willAnswer(invocation -> bothInside.await(1, TimeUnit.SECONDS));//읽기가 줄을 서면 시간 초과
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		
+		//when
+		Future<Object> first = executor.submit(() -> aspect.aroundMethod(
+				proceedingJoinPoint, accountLockOf("sharedMethod"), request));
+		Future<Object> second = executor.submit(() -> aspect.aroundMethod(
+				proceedingJoinPoint, accountLockOf("sharedMethod"), request));
+		
+		//then
+		assertDoesNotThrow(() -> first.get(5, TimeUnit.SECONDS));
+		assertDoesNotThrow(() -> second.get(5, TimeUnit.SECONDS));
+		assertTrue(realLockService.getHeldLocks().isEmpty());
+		executor.shutdown();
+	}
+	
+	@AccountLock(mode = LockMode.SHARED)
+	private void sharedMethod() {
+	}
+	
+	@AccountLock(lockFreeEngineSafe = true)
+	private void lockFreeEngineSafeMethod() {
+	}
+	
+	@AccountLock
+	private void exclusiveMethod() {
+	}
+	
+	@AccountLock(mode = LockMode.NONE)
+	private void noLockMethod() {
+	}
+	
+	private AccountLock accountLockOf(String methodName) throws NoSuchMethodException {
+		return LockAopAspectTest.class.getDeclaredMethod(methodName).getAnnotation(AccountLock.class);
+	}
 
 }
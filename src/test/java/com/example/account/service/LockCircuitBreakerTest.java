@@ -0,0 +1,89 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.account.type.CircuitBreakerState;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LockCircuitBreakerTest {
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(600);
+
+	private LockCircuitBreaker newBreaker(long openDurationMillis) {
+		return new LockCircuitBreaker(new SimpleMeterRegistry(),
+				4, 4, 50, 75, 500L, openDurationMillis, 1);
+	}
+
+	@Test
+	void openOnFailureRate() {
+		//given
+		LockCircuitBreaker breaker = newBreaker(60000L);
+
+		//when
+		breaker.onSuccess(FAST);
+		breaker.onSuccess(FAST);
+		breaker.onError(FAST);
+		breaker.onError(FAST);
+
+		//then
+		assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquirePermission());
+	}
+
+	@Test
+	void openOnSlowCallRate() {
+		//given
+		LockCircuitBreaker breaker = newBreaker(60000L);
+
+		//when
+		breaker.onSuccess(FAST);
+		breaker.onSuccess(SLOW);
+		breaker.onSuccess(SLOW);
+		breaker.onSuccess(SLOW);
+
+		//then
+		assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+	}
+
+	@Test
+	void stayClosedBelowMinimumCalls() {
+		//given
+		LockCircuitBreaker breaker = newBreaker(60000L);
+
+		//when
+		breaker.onError(FAST);
+		breaker.onError(FAST);
+		breaker.onError(FAST);
+
+		//then
+		assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+		assertTrue(breaker.tryAcquirePermission());
+	}
+
+	@Test
+	void closeAfterSuccessfulTrialCall() {
+		//given
+		LockCircuitBreaker breaker = newBreaker(0L);
+		for(int i = 0; i < 4; i++) {
+			breaker.onError(FAST);
+		}
+
+		//when
+		assertTrue(breaker.tryAcquirePermission());
+		assertFalse(breaker.tryAcquirePermission());//시험 호출은 1번만
+		breaker.onSuccess(FAST);
+
+		//then
+		assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+		assertEquals(1.0, breaker.getTransitionCount(CircuitBreakerState.OPEN));
+		assertEquals(1.0, breaker.getTransitionCount(CircuitBreakerState.HALF_OPEN));
+		assertEquals(1.0, breaker.getTransitionCount(CircuitBreakerState.CLOSED));
+	}
+}
@@ -1,61 +1,123 @@
 package com.example.account.service;
 
-import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
-
-import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.ArgumentMatchers.any;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyLong;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
 
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.dto.HeldAccountLock;
 import com.example.account.exception.AccountException;
 import com.example.account.type.ErrorCode;
+import com.example.account.type.LockScope;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(MockitoExtension.class)
 public class LockServiceTest {
 	@Mock
-	private RedissonClient redissonClient;
-	
+	private AccountLockProvider accountLockProvider;
+
 	@Mock
-	private RLock rLock;
-	
-	@InjectMocks
+	private HotAccountTracker hotAccountTracker;
+
+	private MeterRegistry meterRegistry;
+
 	private LockService lockService;
-	
+
+	@BeforeEach
+	void init() {
+		meterRegistry = new SimpleMeterRegistry();
+		lockService = new LockService(accountLockProvider, meterRegistry, hotAccountTracker, LockScope.CONTROLLER);
+	}
+
 	@Test
-	void successGetLock() throws InterruptedException{
+	void delegateLockAndUnlock() {
 		//given
-		given(redissonClient.getLock(anyString()))
-			.willReturn(rLock);
-		given(rLock.tryLock(anyLong(), anyLong(), any()))
-			.willReturn(true);
-		
 		//when
+		lockService.Lock("123", AccountLockPolicy.DEFAULT, "useBalance");
+		lockService.unLock("123", AccountLockPolicy.DEFAULT);
+
 		//then
-		assertDoesNotThrow(()-> lockService.Lock("123"));
+		verify(accountLockProvider, times(1)).lock("123", AccountLockPolicy.DEFAULT);
+		verify(accountLockProvider, times(1)).unlock("123", AccountLockPolicy.DEFAULT);
+		verify(hotAccountTracker, times(1)).recordLockWait(eq("123"), anyLong());
+		assertEquals(1L, meterRegistry.get("account.lock.wait").tag("endpoint", "useBalance")
+				.tag("outcome", "acquired").timer().count());
+		assertEquals(1L, meterRegistry.get("account.lock.hold").tag("endpoint", "useBalance")
+				.tag("scope", "controller").timer().count());
 	}
-	
+
 	@Test
-	void failGetLock() throws InterruptedException{
+	void failGetLock() {
 		//given
-		given(redissonClient.getLock(anyString()))
-			.willReturn(rLock);
-		given(rLock.tryLock(anyLong(), anyLong(), any()))
-			.willReturn(false);
-		
+		willThrow(new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK))
+			.given(accountLockProvider).lock("123", AccountLockPolicy.DEFAULT);
+
 		//when
 		AccountException exception = assertThrows(AccountException.class,
-				()-> lockService.Lock("123"));
+				()-> lockService.Lock("123", AccountLockPolicy.DEFAULT, "useBalance"));
 		//then
 		assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, exception.getErrorCode());
+		assertEquals(1.0, meterRegistry.get("account.lock.failures").tag("endpoint", "useBalance")
+				.tag("reason", "ACCOUNT_TRANSACTION_LOCK").counter().count());
+		assertTrue(lockService.getHeldLocks().isEmpty());
+		verify(hotAccountTracker, times(1)).recordFailure("123");
 	}
 
+	@Test
+	void listHeldLocks() {
+		//given
+		lockService.Lock("123", AccountLockPolicy.DEFAULT, "useBalance");
+
+		//when
+		List<HeldAccountLock> heldLocks = lockService.getHeldLocks();
+		lockService.unLock("123", AccountLockPolicy.DEFAULT);
+
+		//then
+		assertEquals(1, heldLocks.size());
+		assertEquals("123", heldLocks.get(0).getAccountNumber());
+		assertEquals("useBalance", heldLocks.get(0).getEndpoint());
+		assertEquals(Thread.currentThread().getName(), heldLocks.get(0).getHolderThread());
+		assertTrue(lockService.getHeldLocks().isEmpty());
+	}
+
+	@Test
+	void lockAsyncAndRelease() {
+		//given
+		CompletableFuture<Runnable> pending = new CompletableFuture<>();
+		Runnable release = mock(Runnable.class);
+		given(accountLockProvider.lockAsync("123", AccountLockPolicy.DEFAULT))
+			.willReturn(pending);
+
+		//when
+		CompletableFuture<Runnable> locking =
+				lockService.lockAsync("123", AccountLockPolicy.DEFAULT, "useBalance");
+		pending.complete(release);
+		int heldWhileLocked = lockService.getHeldLocks().size();
+		locking.join().run();
+
+		//then
+		verify(release, times(1)).run();
+		assertEquals(1, heldWhileLocked);
+		assertTrue(lockService.getHeldLocks().isEmpty());
+		assertEquals(1L, meterRegistry.get("account.lock.hold").tag("endpoint", "useBalance")
+				.timer().count());
+	}
 }
@@ -0,0 +1,82 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import com.example.account.domain.Account;
+import com.example.account.exception.AccountException;
+import com.example.account.type.ErrorCode;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class OptimisticRetryExecutorTest {
+	private SimpleMeterRegistry meterRegistry;
+
+	private OptimisticRetryExecutor optimisticRetryExecutor;
+
+	@BeforeEach
+	void init() {
+		meterRegistry = new SimpleMeterRegistry();
+		optimisticRetryExecutor = new OptimisticRetryExecutor(meterRegistry, 3, 1L, 2L);
+	}
+
+	@Test
+	void retryUntilSuccess() {
+		//given
+		AtomicInteger attempts = new AtomicInteger();
+
+		//when
+		String result = optimisticRetryExecutor.execute(() -> {
+			if(attempts.incrementAndGet() < 3) {
+				throw new ObjectOptimisticLockingFailureException(Account.class, 1L);
+			}
+			return "ok";
+		});
+
+		//then
+		assertEquals("ok", result);
+		assertEquals(3, attempts.get());
+		assertEquals(2.0, meterRegistry.get("account.balance.optimistic.retries").counter().count());
+	}
+
+	@Test
+	void failWhenAttemptsExhausted() {
+		//given
+		AtomicInteger attempts = new AtomicInteger();
+
+		//when
+		AccountException exception = assertThrows(AccountException.class,
+				() -> optimisticRetryExecutor.execute(() -> {
+					attempts.incrementAndGet();
+					throw new ObjectOptimisticLockingFailureException(Account.class, 1L);
+				}));
+
+		//then
+		assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, exception.getErrorCode());
+		assertEquals(3, attempts.get());
+		assertEquals(1.0, meterRegistry.get("account.balance.optimistic.exhausted").counter().count());
+	}
+
+	@Test
+	void doNotRetryBusinessError() {
+		//given
+		AtomicInteger attempts = new AtomicInteger();
+
+		//when
+		AccountException exception = assertThrows(AccountException.class,
+				() -> optimisticRetryExecutor.execute(() -> {
+					attempts.incrementAndGet();
+					throw new AccountException(ErrorCode.AMOUNT_EXCEED_BALANCE);
+				}));
+
+		//then
+		assertEquals(ErrorCode.AMOUNT_EXCEED_BALANCE, exception.getErrorCode());
+		assertEquals(1, attempts.get());
+	}
+}
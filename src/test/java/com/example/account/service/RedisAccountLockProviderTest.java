@@ -0,0 +1,399 @@
+package com.example.account.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RReadWriteLock;
+import org.redisson.api.RedissonClient;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.exception.AccountException;
+import com.example.account.type.CircuitBreakerState;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.LockMode;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+public class RedisAccountLockProviderTest {
+	private static final String FAILING_SHARD = "redis://failing:6379";
+	private static final String HEALTHY_SHARD = "redis://healthy:6379";
+
+	@Mock
+	private RedissonClient redissonClient;
+
+	@Mock
+	private RReadWriteLock readWriteLock;
+
+	@Mock
+	private RLock rLock;
+
+	@Mock
+	private RFuture<Boolean> lockFuture;
+
+	@Mock
+	private RFuture<Void> unlockFuture;
+
+	@Mock
+	private AccountLockProvider fallback;
+
+	private LockCircuitBreaker circuitBreaker;
+
+	private RedisAccountLockProvider redisAccountLockProvider;
+
+	@BeforeEach
+	void init() {
+		//에러 1번이면 열리는 브레이커
+		circuitBreaker = new LockCircuitBreaker(new SimpleMeterRegistry(),
+				10, 1, 50, 100, 60000L, 60000L, 1);
+		redisAccountLockProvider = new RedisAccountLockProvider(redissonClient, circuitBreaker, null);
+	}
+
+	@Test
+	void successGetLock() throws Exception{
+		//given
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.writeLock())
+			.willReturn(rLock);
+		given(rLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong()))
+			.willReturn(lockFuture);
+		given(lockFuture.get()).willReturn(true);
+
+		//when
+		//then
+		assertDoesNotThrow(()-> redisAccountLockProvider.lock("123", AccountLockPolicy.DEFAULT));
+	}
+
+	@Test
+	void failGetLock() throws Exception{
+		//given
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.writeLock())
+			.willReturn(rLock);
+		given(rLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong()))
+			.willReturn(lockFuture);
+		given(lockFuture.get()).willReturn(false);
+
+		//when
+		AccountException exception = assertThrows(AccountException.class,
+				()-> redisAccountLockProvider.lock("123", AccountLockPolicy.DEFAULT));
+		//then
+		assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, exception.getErrorCode());
+	}
+
+	@Test
+	void handOffRedisLockToLocalWaiter() throws Exception{
+		//given
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.writeLock())
+			.willReturn(rLock);
+		given(rLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong()))
+			.willReturn(lockFuture);
+		given(lockFuture.get()).willReturn(true);
+		given(rLock.unlockAsync(anyLong())).willReturn(unlockFuture);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		redisAccountLockProvider.lock("123", AccountLockPolicy.DEFAULT);
+		Thread waiter = new Thread(() -> {
+			try {
+				redisAccountLockProvider.lock("123", AccountLockPolicy.DEFAULT);
+				redisAccountLockProvider.unlock("123", AccountLockPolicy.DEFAULT);
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		waiter.start();
+		while(waiter.getState() != Thread.State.TIMED_WAITING) {
+			Thread.onSpinWait();
+		}
+
+		//when
+		redisAccountLockProvider.unlock("123", AccountLockPolicy.DEFAULT);
+		waiter.join();
+
+		//then
+		assertEquals(null, failure.get());
+		verify(rLock, times(1)).tryLockAsync(anyLong(), anyLong(), any(), anyLong());
+		verify(rLock, times(1)).unlockAsync(anyLong());
+	}
+
+	@Test
+	void handOffRedisLockToAsyncWaiter() throws Exception{
+		//given
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.writeLock())
+			.willReturn(rLock);
+		given(rLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong()))
+			.willReturn(lockFuture);
+		given(lockFuture.toCompletableFuture()).willReturn(CompletableFuture.completedFuture(true));
+		given(rLock.unlockAsync(anyLong())).willReturn(unlockFuture);
+
+		CompletableFuture<Runnable> first = redisAccountLockProvider.lockAsync("123", AccountLockPolicy.DEFAULT);
+		CompletableFuture<Runnable> second = redisAccountLockProvider.lockAsync("123", AccountLockPolicy.DEFAULT);
+		assertTrue(first.isDone());
+		assertFalse(second.isDone());
+
+		//when
+		first.get().run();
+
+		//then
+		second.get(1, TimeUnit.SECONDS).run();
+		verify(rLock, times(1)).tryLockAsync(anyLong(), anyLong(), any(), anyLong());
+		verify(rLock, times(1)).unlockAsync(anyLong());
+	}
+
+	@Test
+	void redisErrorUsesFallback() throws Exception{
+		//given
+		RedisAccountLockProvider provider =
+				new RedisAccountLockProvider(redissonClient, circuitBreaker, fallback);
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.writeLock())
+			.willReturn(rLock);
+		given(rLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong()))
+			.willReturn(lockFuture);
+		given(lockFuture.get()).willThrow(new ExecutionException(new RuntimeException("timeout")));
+
+		//when
+		provider.lock("123", AccountLockPolicy.DEFAULT);
+		provider.unlock("123", AccountLockPolicy.DEFAULT);
+
+		//then
+		verify(fallback, times(1)).lock("123", AccountLockPolicy.DEFAULT);
+		verify(fallback, times(1)).unlock("123", AccountLockPolicy.DEFAULT);
+		assertEquals(CircuitBreakerState.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	void openCircuitFailsFast() throws Exception{
+		//given
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.writeLock())
+			.willReturn(rLock);
+		given(rLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong()))
+			.willReturn(lockFuture);
+		given(lockFuture.get()).willThrow(new ExecutionException(new RuntimeException("timeout")));
+		assertThrows(AccountException.class, ()-> redisAccountLockProvider.lock("123", AccountLockPolicy.DEFAULT));
+
+		//when
+		AccountException exception = assertThrows(AccountException.class,
+				()-> redisAccountLockProvider.lock("123", AccountLockPolicy.DEFAULT));
+
+		//then
+		assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, exception.getErrorCode());
+		verify(rLock, times(1)).tryLockAsync(anyLong(), anyLong(), any(), anyLong());
+		assertEquals(1.0, circuitBreaker.getTransitionCount(CircuitBreakerState.OPEN));
+	}
+
+	@Test
+	void sharedLockUsesReadLock() throws Exception{
+		//given
+		AccountLockPolicy policy = new AccountLockPolicy(1000L, 15000L, LockMode.SHARED);
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.readLock())
+			.willReturn(rLock);
+		given(rLock.tryLock(anyLong(), anyLong(), any()))
+			.willReturn(true);
+
+		//when
+		redisAccountLockProvider.lock("123", policy);
+		redisAccountLockProvider.unlock("123", policy);
+
+		//then
+		verify(rLock, times(1)).tryLock(0L, 15000L, TimeUnit.MILLISECONDS);
+		verify(rLock, times(1)).unlock();
+	}
+
+	@Test
+	void contentionWaitIsNotSlowCall() throws Exception{
+		//given
+		//10ms 이상이면 느린 호출, 느린 호출 1번이면 열리는 브레이커
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		LockCircuitBreaker breaker = new LockCircuitBreaker(meterRegistry, 10, 1, 50, 100, 10L, 60000L, 1);
+		RedisAccountLockProvider provider = new RedisAccountLockProvider(redissonClient, breaker, null);
+		@SuppressWarnings("unchecked")
+		RFuture<Boolean> contended = mock(RFuture.class);
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.writeLock())
+			.willReturn(rLock);
+		given(rLock.tryLockAsync(eq(0L), anyLong(), any(), anyLong()))
+			.willReturn(contended);
+		given(contended.get()).willReturn(false);
+		given(rLock.tryLockAsync(longThat(waitMillis -> waitMillis > 0), anyLong(), any(), anyLong()))
+			.willReturn(lockFuture);
+		given(lockFuture.get()).willAnswer(invocation -> {
+			TimeUnit.MILLISECONDS.sleep(50);//다른 소유자가 풀 때까지 기다림
+			return false;
+		});
+
+		//when
+		assertThrows(AccountException.class, ()-> provider.lock("123", AccountLockPolicy.DEFAULT));
+
+		//then
+		assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+		assertEquals(1L, meterRegistry.get("account.lock.redis.acquire").tag("outcome", "success").timer().count());
+	}
+
+	@Test
+	void lockBothShardsWhileRebalancing() throws Exception{
+		//given
+		RedissonClient newShard = mock(RedissonClient.class);
+		RReadWriteLock newReadWriteLock = mock(RReadWriteLock.class);
+		RLock newLock = mock(RLock.class);
+		RedisLockShards shards = new RedisLockShards(
+				address -> address.equals("redis://new:6379") ? newShard : redissonClient,
+				Collections.singletonList("redis://old:6379"), 60000L, System::nanoTime);
+		shards.reshard(Collections.singletonList("redis://new:6379"));
+		RedisAccountLockProvider provider = new RedisAccountLockProvider(shards, circuitBreaker, null);
+		for(RedissonClient client : Arrays.asList(redissonClient, newShard)) {
+			RReadWriteLock clientReadWriteLock = client == newShard ? newReadWriteLock : readWriteLock;
+			RLock clientLock = client == newShard ? newLock : rLock;
+			given(client.getReadWriteLock(anyString())).willReturn(clientReadWriteLock);
+			given(clientReadWriteLock.writeLock()).willReturn(clientLock);
+			given(clientLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong())).willReturn(lockFuture);
+			given(clientLock.unlockAsync(anyLong())).willReturn(unlockFuture);
+		}
+		given(lockFuture.get()).willReturn(true);
+
+		//when
+		provider.lock("123", AccountLockPolicy.DEFAULT);
+		provider.unlock("123", AccountLockPolicy.DEFAULT);
+
+		//then
+		verify(newLock, times(1)).tryLockAsync(anyLong(), anyLong(), any(), anyLong());
+		verify(rLock, times(1)).tryLockAsync(anyLong(), anyLong(), any(), anyLong());
+		verify(newLock, times(1)).unlockAsync(anyLong());
+		verify(rLock, times(1)).unlockAsync(anyLong());
+	}
+
+	@Test
+	void openCircuitOnlyForFailingShard() throws Exception{
+		//given
+		RedissonClient healthyShard = mock(RedissonClient.class);
+		RReadWriteLock healthyReadWriteLock = mock(RReadWriteLock.class);
+		RLock healthyLock = mock(RLock.class);
+		@SuppressWarnings("unchecked")
+		RFuture<Boolean> healthyFuture = mock(RFuture.class);
+		RedisLockShards shards = new RedisLockShards(
+				address -> address.equals(HEALTHY_SHARD) ? healthyShard : redissonClient,
+				Arrays.asList(FAILING_SHARD, HEALTHY_SHARD), 60000L, System::nanoTime);
+		LockCircuitBreakers breakers = new LockCircuitBreakers(shard -> new LockCircuitBreaker(
+				new SimpleMeterRegistry(), shard, 10, 1, 50, 100, 60000L, 60000L, 1));
+		RedisAccountLockProvider provider = new RedisAccountLockProvider(shards, breakers, null);
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.writeLock())
+			.willReturn(rLock);
+		given(rLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong()))
+			.willReturn(lockFuture);
+		given(lockFuture.get()).willThrow(new ExecutionException(new RuntimeException("timeout")));
+		given(healthyShard.getReadWriteLock(anyString())).willReturn(healthyReadWriteLock);
+		given(healthyReadWriteLock.writeLock()).willReturn(healthyLock);
+		given(healthyLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong())).willReturn(healthyFuture);
+		given(healthyFuture.get()).willReturn(true);
+		given(healthyLock.unlockAsync(anyLong())).willReturn(unlockFuture);
+		assertThrows(AccountException.class,
+				()-> provider.lock(accountOn(shards, FAILING_SHARD), AccountLockPolicy.DEFAULT));
+
+		//when
+		String healthyAccount = accountOn(shards, HEALTHY_SHARD);
+		provider.lock(healthyAccount, AccountLockPolicy.DEFAULT);
+		provider.unlock(healthyAccount, AccountLockPolicy.DEFAULT);
+
+		//then
+		assertEquals(CircuitBreakerState.OPEN, breakers.forShard(FAILING_SHARD).getState());
+		assertEquals(CircuitBreakerState.CLOSED, breakers.forShard(HEALTHY_SHARD).getState());
+		verify(healthyLock, times(1)).tryLockAsync(anyLong(), anyLong(), any(), anyLong());
+		verify(healthyLock, times(1)).unlockAsync(anyLong());
+	}
+
+	@Test
+	void lockAsyncDoesNotBlockWhilePending() throws Exception{
+		//given
+		CompletableFuture<Boolean> pending = new CompletableFuture<>();
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.writeLock())
+			.willReturn(rLock);
+		given(rLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong()))
+			.willReturn(lockFuture);
+		given(lockFuture.toCompletableFuture()).willReturn(pending);
+		given(rLock.unlockAsync(anyLong())).willReturn(unlockFuture);
+
+		//when
+		CompletableFuture<Runnable> locking =
+				redisAccountLockProvider.lockAsync("123", AccountLockPolicy.DEFAULT);
+		boolean doneBeforeRedis = locking.isDone();
+		pending.complete(true);
+		locking.join().run();
+
+		//then
+		assertFalse(doneBeforeRedis);
+		assertTrue(locking.isDone());
+		verify(rLock, times(1)).unlockAsync(anyLong());
+	}
+
+	@Test
+	void failLockAsync() throws Exception{
+		//given
+		given(redissonClient.getReadWriteLock(anyString()))
+			.willReturn(readWriteLock);
+		given(readWriteLock.writeLock())
+			.willReturn(rLock);
+		given(rLock.tryLockAsync(anyLong(), anyLong(), any(), anyLong()))
+			.willReturn(lockFuture);
+		given(lockFuture.toCompletableFuture()).willReturn(CompletableFuture.completedFuture(false));
+
+		//when
+		CompletableFuture<Runnable> locking =
+				redisAccountLockProvider.lockAsync("123", AccountLockPolicy.DEFAULT);
+
+		//then
+		ExecutionException exception = assertThrows(ExecutionException.class, locking::get);
+		assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK,
+				((AccountException) exception.getCause()).getErrorCode());
+	}
+
+	private static String accountOn(RedisLockShards shards, String shard) {
+		for(long accountNumber = 1000000000L; ; accountNumber++) {
+			if(shards.shardOf(String.valueOf(accountNumber)).equals(shard)) {
+				return String.valueOf(accountNumber);
+			}
+		}
+	}
+}
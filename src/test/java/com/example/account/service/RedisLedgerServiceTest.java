@@ -0,0 +1,176 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountUser;
+import com.example.account.dto.TransactionDto;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionType;
+
+@ExtendWith(MockitoExtension.class)
+class RedisLedgerServiceTest {
+	@Mock
+	private ObjectProvider<RedissonClient> redissonClientProvider;
+	
+	@Mock
+	private RedissonClient redissonClient;
+	
+	@Mock
+	private RScript script;
+	
+	@Mock
+	private AccountRepository accountRepository;
+	
+	@Mock
+	private AccountUserRepository accountUserRepository;
+	
+	@Mock
+	private TransactionRepository transactionRepository;
+	
+	private RedisLedgerService redisLedgerService;
+	
+	@BeforeEach
+	void init() {
+		redisLedgerService = new RedisLedgerService(redissonClientProvider, accountRepository,
+				accountUserRepository, transactionRepository, BalanceEngine.REDIS_LEDGER);
+		given(redissonClientProvider.getObject()).willReturn(redissonClient);
+		given(redissonClient.getScript(any(Codec.class))).willReturn(script);
+	}
+	
+	@Test
+	@DisplayName("원장 잔액 사용 - 스크립트 결과 잔액을 그대로 돌려준다")
+	void successUseBalance() {
+		//given
+		given(script.eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any()))
+			.willReturn(Arrays.asList("OK", "9800"));
+		
+		//when
+		TransactionDto transactionDto = redisLedgerService.useBalance(12L, "1000000012", 200L);
+		
+		//then
+		assertEquals(9800L, transactionDto.getBalanceSnapshot());
+		assertEquals(TransactionType.USE, transactionDto.getTransactionType());
+		assertEquals(32, transactionDto.getTransactionId().length());
+		verify(accountRepository, never()).findByAccountNumber(anyString());
+	}
+	
+	@Test
+	@DisplayName("원장에 없는 계좌는 DB에서 올린 뒤 다시 실행한다")
+	void useBalance_loadOnMiss() {
+		//given
+		AccountUser user = AccountUser.builder()
+				.id(12L)
+				.name("pobi").build();
+		given(accountRepository.findByAccountNumber("1000000012"))
+			.willReturn(Optional.of(Account.builder()
+					.accountUser(user)
+					.accountStatus(AccountStatus.IN_USE)
+					.balance(10000L)
+					.accountNumber("1000000012").build()));
+		given(script.eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any()))
+			.willReturn(Arrays.asList("MISS", "0"),
+					Arrays.asList("OK", "10000"),
+					Arrays.asList("OK", "9800"));
+		
+		//when
+		TransactionDto transactionDto = redisLedgerService.useBalance(12L, "1000000012", 200L);
+		
+		//then
+		assertEquals(9800L, transactionDto.getBalanceSnapshot());
+		verify(script, times(3)).eval(any(RScript.Mode.class), anyString(),
+				any(RScript.ReturnType.class), anyList(), any());
+		verify(script).eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class),
+				eq(Arrays.asList((Object) "ACBAL:1000000012")), eq("IN_USE"), eq("12"), eq("10000"));
+	}
+	
+	@Test
+	@DisplayName("원장 잔액보다 큰 금액은 사용할 수 없다")
+	void useBalance_exceedBalance() {
+		//given
+		given(script.eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any()))
+			.willReturn(Arrays.asList("AMOUNT_EXCEED_BALANCE", "100"));
+		
+		//when
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> redisLedgerService.useBalance(12L, "1000000012", 200L));
+		
+		//then
+		assertEquals(ErrorCode.AMOUNT_EXCEED_BALANCE, accountException.getErrorCode());
+	}
+	
+	@Test
+	@DisplayName("다른 사용자 계좌면 사용자 존재 여부를 먼저 알려준다")
+	void useBalance_userNotFound() {
+		//given
+		given(script.eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any()))
+			.willReturn(Arrays.asList("USER_ACCOUNT_UN_MATCH", "100"));
+		given(accountUserRepository.existsById(12L)).willReturn(false);
+		
+		//when
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> redisLedgerService.useBalance(12L, "1000000012", 200L));
+		
+		//then
+		assertEquals(ErrorCode.USER_NOT_FOUND, accountException.getErrorCode());
+	}
+	
+	@Test
+	@DisplayName("원장에 없는 계좌는 해지 검증을 DB 잔액에 맡긴다")
+	void unregister_notLoaded() {
+		//given
+		given(script.eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList()))
+			.willReturn(Arrays.asList("MISS", "0"));
+		
+		//when
+		boolean checked = redisLedgerService.unregister("1000000012");
+		
+		//then
+		assertFalse(checked);
+	}
+	
+	@Test
+	@DisplayName("원장 잔액이 남아 있으면 해지할 수 없다")
+	void unregister_balanceNotEmpty() {
+		//given
+		given(script.eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList()))
+			.willReturn(Arrays.asList("BALANCE_NOT_EMPTY", "100"));
+		
+		//when
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> redisLedgerService.unregister("1000000012"));
+		
+		//then
+		assertEquals(ErrorCode.BALANCE_NOT_EMPTY, accountException.getErrorCode());
+	}
+}
@@ -0,0 +1,166 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+
+class RedisLockShardsTest {
+	private static final String SHARD_A = "redis://127.0.0.1:6380";
+	private static final String SHARD_B = "redis://127.0.0.1:6381";
+	private static final String SHARD_C = "redis://127.0.0.1:6382";
+
+	private final AtomicLong now = new AtomicLong();
+	private final Map<String, RedissonClient> clients = new HashMap<>();
+
+	private RedisLockShards redisLockShards;
+
+	@BeforeEach
+	void init() {
+		for(String shard : Arrays.asList(SHARD_A, SHARD_B, SHARD_C)) {
+			clients.put(shard, mock(RedissonClient.class));
+		}
+		redisLockShards = new RedisLockShards(clients::get,
+				Arrays.asList(SHARD_A, SHARD_B), 60000L, now::get);
+	}
+
+	@AfterEach
+	void shutdown() {
+		redisLockShards.shutdown();
+	}
+
+	@Test
+	void spreadAccountsOverShards() {
+		//given
+		Map<String, Integer> counts = new HashMap<>();
+
+		//when
+		for(int i = 0; i < 10000; i++) {
+			counts.merge(redisLockShards.shardOf(String.valueOf(1000000000L + i)), 1, Integer::sum);
+		}
+
+		//then
+		assertEquals(2, counts.size());
+		assertTrue(counts.get(SHARD_A) > 4000);
+		assertTrue(counts.get(SHARD_B) > 4000);
+	}
+
+	@Test
+	void addShardMovesOnlyItsShare() {
+		//given
+		Map<String, String> before = new HashMap<>();
+		for(int i = 0; i < 10000; i++) {
+			String accountNumber = String.valueOf(1000000000L + i);
+			before.put(accountNumber, redisLockShards.shardOf(accountNumber));
+		}
+
+		//when
+		redisLockShards.reshard(Arrays.asList(SHARD_A, SHARD_B, SHARD_C));
+
+		//then
+		int moved = 0;
+		for(Map.Entry<String, String> entry : before.entrySet()) {
+			String shard = redisLockShards.shardOf(entry.getKey());
+			if(!shard.equals(entry.getValue())) {
+				assertEquals(SHARD_C, shard);//새 샤드로만 옮겨간다
+				moved++;
+			}
+		}
+		assertTrue(moved > 2000 && moved < 4700);
+	}
+
+	@Test
+	void lockBothShardsWhileRebalancing() {
+		//given
+		String accountNumber = movedAccount();
+
+		//when
+		List<RedissonClient> rebalancing = redisLockShards.clientsFor(accountNumber);
+		now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+		List<RedissonClient> rebalanced = redisLockShards.clientsFor(accountNumber);
+
+		//then
+		assertEquals(Arrays.asList(clients.get(SHARD_C), clients.get(previousShardOf(accountNumber))),
+				rebalancing);
+		assertEquals(1, rebalanced.size());
+		assertEquals(clients.get(SHARD_C), rebalanced.get(0));
+		assertFalse(redisLockShards.isRebalancing());
+		assertEquals(1, redisLockShards.getGeneration());
+	}
+
+	@Test
+	void keepIntermediateRingOnConsecutiveReshard() {
+		//given
+		String accountNumber = "1000000000";
+		redisLockShards.reshard(Collections.singletonList(SHARD_C));
+		now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+		//when
+		redisLockShards.reshard(Arrays.asList(SHARD_A, SHARD_B));//첫 링으로 돌아감, C 링은 아직 grace 안
+		List<RedissonClient> rebalancing = redisLockShards.clientsFor(accountNumber);
+		now.addAndGet(TimeUnit.SECONDS.toNanos(51));
+		List<RedissonClient> rebalanced = redisLockShards.clientsFor(accountNumber);
+
+		//then
+		assertEquals(Arrays.asList(clients.get(previousShardOf(accountNumber)), clients.get(SHARD_C)), rebalancing);
+		assertEquals(Collections.singletonList(clients.get(previousShardOf(accountNumber))), rebalanced);
+		assertEquals(2, redisLockShards.getGeneration());
+	}
+
+	@Test
+	void shutDownRemovedShardAfterGrace() {
+		//given
+		String accountNumber = movedAccount();
+		redisLockShards.clientsFor(accountNumber);
+		redisLockShards.reshard(Arrays.asList(SHARD_A, SHARD_C));
+		String onB = null;
+		for(int i = 0; onB == null; i++) {
+			String candidate = String.valueOf(1000000000L + i);
+			if(previousShardOf(candidate).equals(SHARD_B)) {
+				onB = candidate;
+			}
+		}
+		redisLockShards.clientsFor(onB);
+
+		//when
+		redisLockShards.retireExpiredRings();//grace 안: 닫지 않는다
+		now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+		redisLockShards.retireExpiredRings();
+
+		//then
+		verify(clients.get(SHARD_B)).shutdown();
+		verify(clients.get(SHARD_A), never()).shutdown();
+		verify(clients.get(SHARD_C), never()).shutdown();
+		assertFalse(redisLockShards.isRebalancing());
+	}
+
+	private String previousShardOf(String accountNumber) {
+		return new RedisLockShards.HashRing(Arrays.asList(SHARD_A, SHARD_B)).shardOf(accountNumber);
+	}
+
+	//샤드 C가 추가되면 C로 옮겨가는 계좌
+	private String movedAccount() {
+		redisLockShards.reshard(Arrays.asList(SHARD_A, SHARD_B, SHARD_C));
+		for(int i = 0; ; i++) {
+			String accountNumber = String.valueOf(1000000000L + i);
+			if(redisLockShards.shardOf(accountNumber).equals(SHARD_C)) {
+				return accountNumber;
+			}
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountBalanceShard;
+import com.example.account.domain.AccountUser;
+import com.example.account.dto.TransactionDto;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountBalanceShardRepository;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionType;
+
+@ExtendWith(MockitoExtension.class)
+class ShardedBalanceServiceTest {
+	@Mock
+	private AccountRepository accountRepository;
+	
+	@Mock
+	private AccountUserRepository accountUserRepository;
+	
+	@Mock
+	private TransactionRepository transactionRepository;
+	
+	@Mock
+	private AccountBalanceShardRepository accountBalanceShardRepository;
+	
+	@Mock
+	private LockService lockService;
+	
+	@Mock
+	private TransactionTemplate transactionTemplate;
+	
+	private ShardedBalanceService shardedBalanceService;
+	
+	private Account account;
+	
+	@BeforeEach
+	void init() {
+		shardedBalanceService = new ShardedBalanceService(accountRepository, accountUserRepository,
+				transactionRepository, accountBalanceShardRepository, lockService, transactionTemplate, 10L,
+				BalanceEngine.ENTITY);
+		AccountUser user = AccountUser.builder()
+				.id(12L)
+				.name("pobi").build();
+		account = Account.builder()
+				.id(1L)
+				.accountUser(user)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(0L)
+				.accountNumber("1000000012").build();
+		lenient().when(accountUserRepository.findById(anyLong()))
+			.thenReturn(Optional.of(user));
+		lenient().when(accountRepository.findByAccountNumber("1000000012"))
+			.thenReturn(Optional.of(account));
+		lenient().when(transactionTemplate.execute(any()))
+			.thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0)
+					.doInTransaction(null));
+		lenient().when(transactionRepository.save(any()))
+			.thenAnswer(invocation -> invocation.getArgument(0));
+	}
+	
+	@Test
+	@DisplayName("잔액이 충분한 샤드 하나만 잠그고 차감한다")
+	void useBalanceFromOneShard() {
+		//given
+		given(accountBalanceShardRepository.findByAccountOrderByShardIndex(account))
+			.willReturn(shards(100L, 5000L));
+		given(accountBalanceShardRepository.useBalanceIfEnough(eq(11L), eq(1000L), any()))
+			.willReturn(1);
+		
+		//when
+		TransactionDto transactionDto = shardedBalanceService.useBalance(12L, "1000000012", 1000L);
+		
+		//then
+		assertEquals(TransactionType.USE, transactionDto.getTransactionType());
+		verify(lockService).Lock(eq("1000000012#1"), any(), any());
+		verify(lockService).unLock(eq("1000000012#1"), any());
+		verify(accountBalanceShardRepository, never()).useBalanceIfEnough(eq(10L), anyLong(), any());
+	}
+	
+	@Test
+	@DisplayName("다른 요청이 쓰고 있는 샤드는 건너뛴다")
+	void skipBusyShard() {
+		//given
+		given(accountBalanceShardRepository.findByAccountOrderByShardIndex(account))
+			.willReturn(shards(5000L, 5000L));
+		lenient().doThrow(new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK))
+			.when(lockService).Lock(eq("1000000012#0"), any(), any());
+		given(accountBalanceShardRepository.useBalanceIfEnough(eq(11L), eq(1000L), any()))
+			.willReturn(1);
+		
+		//when
+		shardedBalanceService.useBalance(12L, "1000000012", 1000L);
+		
+		//then
+		verify(accountBalanceShardRepository, never()).useBalanceIfEnough(eq(10L), anyLong(), any());
+	}
+	
+	@Test
+	@DisplayName("샤드 하나로 부족하면 모두 잠그고 합쳐서 차감한 뒤 다시 나눈다")
+	void rebalanceWhenNoShardIsEnough() {
+		//given
+		List<AccountBalanceShard> shards = shards(600L, 601L);
+		given(accountBalanceShardRepository.findByAccountOrderByShardIndex(account))
+			.willReturn(shards);
+		given(accountBalanceShardRepository.findForUpdateByAccount(account))
+			.willReturn(shards);
+		
+		//when
+		shardedBalanceService.useBalance(12L, "1000000012", 1000L);
+		
+		//then
+		assertEquals(101L, shards.get(0).getBalance());
+		assertEquals(100L, shards.get(1).getBalance());
+		verify(lockService).Lock(eq("1000000012#0"), any(), any());
+		verify(lockService).Lock(eq("1000000012#1"), any(), any());
+	}
+	
+	@Test
+	@DisplayName("샤드 합계보다 큰 금액은 사용할 수 없다")
+	void useBalance_exceedTotalBalance() {
+		//given
+		List<AccountBalanceShard> shards = shards(300L, 300L);
+		given(accountBalanceShardRepository.findByAccountOrderByShardIndex(account))
+			.willReturn(shards);
+		given(accountBalanceShardRepository.findForUpdateByAccount(account))
+			.willReturn(shards);
+		
+		//when
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> shardedBalanceService.useBalance(12L, "1000000012", 1000L));
+		
+		//then
+		assertEquals(ErrorCode.AMOUNT_EXCEED_BALANCE, accountException.getErrorCode());
+		assertEquals(300L, shards.get(0).getBalance());
+		verify(transactionRepository, never()).save(any());
+	}
+	
+	@Test
+	@DisplayName("목록을 다시 읽는 동안 다른 요청은 기다리지 않고 예전 목록을 본다")
+	void staleListWhileRefreshing() throws Exception {
+		//given
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		given(accountBalanceShardRepository.findShardedAccountNumbers())
+			.willAnswer(invocation -> {
+				loading.countDown();
+				release.await();
+				return Collections.singletonList("1000000012");
+			});
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<Boolean> refresher = executor.submit(() -> shardedBalanceService.isSharded("1000000012"));
+		loading.await();
+		
+		//when
+		boolean whileRefreshing = shardedBalanceService.isSharded("1000000012");
+		release.countDown();
+		
+		//then
+		assertFalse(whileRefreshing);
+		assertTrue(refresher.get());
+		verify(accountBalanceShardRepository, times(1)).findShardedAccountNumbers();
+		executor.shutdown();
+	}
+	
+	@Test
+	@DisplayName("샤드 계좌가 있으면 entity 엔진이 아닐 때 시작하지 않는다")
+	void start_shardedAccountWithOtherEngine() {
+		//given
+		ShardedBalanceService conditionalUpdate = new ShardedBalanceService(accountRepository,
+				accountUserRepository, transactionRepository, accountBalanceShardRepository, lockService,
+				transactionTemplate, 10L, BalanceEngine.CONDITIONAL_UPDATE);
+		given(accountBalanceShardRepository.findShardedAccountNumbers())
+			.willReturn(Collections.singletonList("1000000012"));
+		
+		//when
+		//then
+		assertThrows(IllegalStateException.class, conditionalUpdate::start);
+	}
+	
+	@Test
+	@DisplayName("entity 엔진이 아니면 샤드를 켤 수 없다")
+	void reshard_otherEngine() {
+		//given
+		ShardedBalanceService inMemory = new ShardedBalanceService(accountRepository,
+				accountUserRepository, transactionRepository, accountBalanceShardRepository, lockService,
+				transactionTemplate, 10L, BalanceEngine.IN_MEMORY);
+		
+		//when
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> inMemory.reshard("1000000012", 4));
+		
+		//then
+		assertEquals(ErrorCode.INVALID_REQUEST, accountException.getErrorCode());
+		verify(lockService, never()).Lock(any(), any(), any());
+	}
+	
+	private List<AccountBalanceShard> shards(Long first, Long second) {
+		return Arrays.asList(
+				AccountBalanceShard.builder().id(10L).account(account).shardIndex(0).balance(first).build(),
+				AccountBalanceShard.builder().id(11L).account(account).shardIndex(1).balance(second).build());
+	}
+}
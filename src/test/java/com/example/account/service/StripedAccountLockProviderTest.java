@@ -0,0 +1,87 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.account.aop.AccountLockPolicy;
+import com.example.account.exception.AccountException;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.LockMode;
+
+class StripedAccountLockProviderTest {
+	private final StripedAccountLockProvider lockProvider =
+			new StripedAccountLockProvider(16);
+	private final AccountLockPolicy policy =
+			new AccountLockPolicy(50L, 15000L, LockMode.EXCLUSIVE);
+	private final AccountLockPolicy sharedPolicy =
+			new AccountLockPolicy(50L, 15000L, LockMode.SHARED);
+
+	@Test
+	void successGetLock() {
+		//given
+		//when
+		//then
+		assertDoesNotThrow(() -> lockProvider.lock("1000000000", policy));
+		lockProvider.unlock("1000000000", policy);
+	}
+
+	@Test
+	void failGetLock_heldByOtherThread() throws Exception {
+		//given
+		lockProvider.lock("1000000000", policy);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		//when
+		Future<ErrorCode> result = executor.submit(() -> {
+			try {
+				lockProvider.lock("1000000000", policy);
+				return null;
+			} catch (AccountException e) {
+				return e.getErrorCode();
+			}
+		});
+
+		//then
+		assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, result.get());
+		lockProvider.unlock("1000000000", policy);
+		executor.shutdown();
+	}
+
+	@Test
+	void sharedLocksDoNotBlockEachOther() throws Exception {
+		//given
+		lockProvider.lock("1000000000", sharedPolicy);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		//when
+		Future<ErrorCode> shared = executor.submit(() -> {
+			try {
+				lockProvider.lock("1000000000", sharedPolicy);
+				lockProvider.unlock("1000000000", sharedPolicy);
+				return null;
+			} catch (AccountException e) {
+				return e.getErrorCode();
+			}
+		});
+		Future<ErrorCode> exclusive = executor.submit(() -> {
+			try {
+				lockProvider.lock("1000000000", policy);
+				return null;
+			} catch (AccountException e) {
+				return e.getErrorCode();
+			}
+		});
+
+		//then
+		assertEquals(null, shared.get());
+		assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, exclusive.get());
+		lockProvider.unlock("1000000000", sharedPolicy);
+		executor.shutdown();
+	}
+}
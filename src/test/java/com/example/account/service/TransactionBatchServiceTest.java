@@ -0,0 +1,213 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.validation.Validation;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.AccountUser;
+import com.example.account.domain.Transaction;
+import com.example.account.dto.TransactionBatch;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.AccountUserRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionBatchServiceTest {
+	@Mock
+	private TransactionService transactionService;
+	
+	@Mock
+	private AccountRepository accountRepository;
+	
+	@Mock
+	private AccountUserRepository accountUserRepository;
+	
+	@Mock
+	private TransactionRepository transactionRepository;
+	
+	@Mock
+	private LockService lockService;
+	
+	@Mock
+	private TransactionTemplate transactionTemplate;
+	
+	@Mock
+	private HotAccountTracker hotAccountTracker;
+	
+	@Mock
+	private TransactionWriteBehind transactionWriteBehind;
+	
+	private TransactionBatchService transactionBatchService;
+	
+	private AccountUser user;
+	
+	@BeforeEach
+	void init() {
+		transactionBatchService = new TransactionBatchService(transactionService, accountRepository,
+				accountUserRepository, transactionRepository, lockService, transactionTemplate, hotAccountTracker,
+				transactionWriteBehind, Validation.buildDefaultValidatorFactory().getValidator(), BalanceEngine.ENTITY);
+		user = AccountUser.builder()
+				.id(12L)
+				.name("pobi").build();
+		lenient().doAnswer(invocation -> {
+			invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+			return null;
+		}).when(transactionTemplate).executeWithoutResult(any());
+		lenient().when(accountUserRepository.findAllById(any()))
+			.thenReturn(Collections.singletonList(user));
+	}
+	
+	@Test
+	@DisplayName("계좌별로 락을 한 번씩 잡고 요청 순서대로 결과를 돌려준다")
+	void executeBatch_groupByAccount() {
+		//given
+		Account first = account("1000000012", 10000L);
+		Account second = account("1000000013", 10000L);
+		given(accountRepository.findForUpdateByAccountNumberIn(Collections.singletonList("1000000012")))
+			.willReturn(Collections.singletonList(first));
+		given(accountRepository.findForUpdateByAccountNumberIn(Collections.singletonList("1000000013")))
+			.willReturn(Collections.singletonList(second));
+		
+		//when
+		List<TransactionBatch.Result> results = transactionBatchService.execute(Arrays.asList(
+				use("1000000012", 7000L),
+				use("1000000013", 1000L),
+				use("1000000012", 5000L),
+				use("1000000012", 3000L)));
+		
+		//then
+		verify(lockService, times(1)).Lock(eq("1000000012"), any(), anyString());
+		verify(lockService, times(1)).Lock(eq("1000000013"), any(), anyString());
+		assertEquals(4, results.size());
+		for(int i = 0; i < results.size(); i++) {
+			assertEquals(i, results.get(i).getIndex());
+		}
+		assertEquals(TransactionResultType.S, results.get(0).getTransactionResultType());
+		assertEquals("1000000013", results.get(1).getAccountNumber());
+		assertEquals(ErrorCode.AMOUNT_EXCEED_BALANCE, results.get(2).getErrorCode());
+		assertEquals(TransactionResultType.S, results.get(3).getTransactionResultType());
+		assertEquals(0L, first.getBalance());
+		assertEquals(9000L, second.getBalance());
+		
+		ArgumentCaptor<List<Transaction>> captor = ArgumentCaptor.forClass(List.class);
+		verify(transactionRepository, times(2)).saveAll(captor.capture());
+		assertEquals(3, captor.getAllValues().get(0).size());//실패 거래 포함
+		verify(hotAccountTracker).recordFailure("1000000012");
+	}
+	
+	@Test
+	@DisplayName("잘못된 항목은 계좌를 건드리지 않고 INVALID_REQUEST")
+	void executeBatch_invalidItem() {
+		//given
+		TransactionBatch.Item item = use("1000000012", 5L);
+		
+		//when
+		List<TransactionBatch.Result> results = transactionBatchService.execute(Collections.singletonList(item));
+		
+		//then
+		assertEquals(ErrorCode.INVALID_REQUEST, results.get(0).getErrorCode());
+		verify(lockService, never()).Lock(anyString(), any(), anyString());
+	}
+	
+	@Test
+	@DisplayName("계좌 락을 못 잡으면 그 계좌 항목만 실패")
+	void executeBatch_lockFailed() {
+		//given
+		Account second = account("1000000013", 10000L);
+		doThrow(new AccountException(ErrorCode.ACCOUNT_TRANSACTION_LOCK))
+			.when(lockService).Lock(eq("1000000012"), any(), anyString());
+		given(accountRepository.findForUpdateByAccountNumberIn(Collections.singletonList("1000000013")))
+			.willReturn(Collections.singletonList(second));
+		
+		//when
+		List<TransactionBatch.Result> results = transactionBatchService.execute(Arrays.asList(
+				use("1000000012", 1000L),
+				use("1000000013", 1000L),
+				use("1000000012", 1000L)));
+		
+		//then
+		assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, results.get(0).getErrorCode());
+		assertEquals(TransactionResultType.S, results.get(1).getTransactionResultType());
+		assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, results.get(2).getErrorCode());
+		verify(lockService, never()).unLock(eq("1000000012"), any());
+		verify(accountRepository, never()).findForUpdateByAccountNumberIn(Collections.singletonList("1000000012"));
+	}
+	
+	@Test
+	@DisplayName("계좌 묶음이 끝날 때마다 요청 전체 기준 index로 결과를 넘긴다")
+	void executeBatch_completedPerGroup() {
+		//given
+		Account first = account("1000000012", 10000L);
+		Account second = account("1000000013", 10000L);
+		given(accountRepository.findForUpdateByAccountNumberIn(Collections.singletonList("1000000012")))
+			.willReturn(Collections.singletonList(first));
+		given(accountRepository.findForUpdateByAccountNumberIn(Collections.singletonList("1000000013")))
+			.willReturn(Collections.singletonList(second));
+		List<List<TransactionBatch.Result>> groups = new ArrayList<>();
+		
+		//when
+		transactionBatchService.execute(Arrays.asList(
+				use("1000000012", 1000L),
+				use("1000000013", 1000L),
+				use("1000000012", 1000L)), 10, groups::add);
+		
+		//then
+		assertEquals(2, groups.size());
+		assertEquals(Arrays.asList(10, 12), indexes(groups.get(0)));
+		assertEquals(Collections.singletonList(11), indexes(groups.get(1)));
+	}
+	
+	private Account account(String accountNumber, Long balance) {
+		return Account.builder()
+				.id(Long.valueOf(accountNumber))
+				.accountUser(user)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(balance)
+				.accountNumber(accountNumber).build();
+	}
+	
+	private static List<Integer> indexes(List<TransactionBatch.Result> results) {
+		return results.stream().map(TransactionBatch.Result::getIndex).collect(Collectors.toList());
+	}
+	
+	private static TransactionBatch.Item use(String accountNumber, Long amount) {
+		return TransactionBatch.Item.builder()
+				.transactionType(TransactionType.USE)
+				.userId(12L)
+				.accountNumber(accountNumber)
+				.amount(amount).build();
+	}
+}
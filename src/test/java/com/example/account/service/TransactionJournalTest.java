@@ -0,0 +1,104 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.service.TransactionJournal.Record;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+class TransactionJournalTest {
+	@TempDir
+	Path directory;
+
+	@Test
+	void appendAndReopen() throws Exception {
+		//given
+		TransactionJournal journal = new TransactionJournal(directory, 4096, false);
+		journal.append(transaction("tx1", 200L));
+		journal.append(transaction("tx2", 300L));
+		journal.close();
+
+		//when
+		TransactionJournal reopened = new TransactionJournal(directory, 4096, false);
+		List<Record> recovered = reopened.getRecovered();
+		Record next = reopened.append(transaction("tx3", 100L));
+		reopened.close();
+
+		//then
+		assertEquals(2, recovered.size());
+		assertEquals("tx2", recovered.get(1).getTransactionId());
+		assertEquals(300L, recovered.get(1).getAmount());
+		assertEquals("1000000012", recovered.get(1).getAccountNumber());
+		assertEquals(3L, next.getSeq());
+	}
+
+	@Test
+	void deleteAcknowledgedSegments() throws Exception {
+		//given
+		TransactionJournal journal = new TransactionJournal(directory, 128, false);
+		Record first = journal.append(transaction("tx1", 200L));
+		Record second = journal.append(transaction("tx2", 300L));
+		Record third = journal.append(transaction("tx3", 400L));
+		int segments = journal.segmentCount();
+
+		//when
+		journal.acknowledge(List.of(first, second));
+		int afterAcknowledge = journal.segmentCount();
+		journal.close();
+		List<Record> recovered = new TransactionJournal(directory, 128, false).getRecovered();
+
+		//then
+		assertEquals(3, segments);
+		assertEquals(1, afterAcknowledge);
+		assertEquals(1, recovered.size());
+		assertEquals(third.getTransactionId(), recovered.get(0).getTransactionId());
+	}
+
+	@Test
+	void stopAtCorruptRecord() throws Exception {
+		//given
+		TransactionJournal journal = new TransactionJournal(directory, 4096, false);
+		journal.append(transaction("tx1", 200L));
+		Record second = journal.append(transaction("tx2", 300L));
+		journal.close();
+		try(RandomAccessFile file = new RandomAccessFile(
+				directory.resolve(String.format("transactions-%012d.seg", second.getSegment())).toFile(), "rw")) {
+			long offset = 8 + Record.of(1L, 1L, transaction("tx1", 200L))
+					.toLine().length() + 10;
+			file.seek(offset);
+			file.write('x');//두 번째 기록 본문을 깨뜨린다
+		}
+
+		//when
+		List<Record> recovered = new TransactionJournal(directory, 4096, false).getRecovered();
+
+		//then
+		assertEquals(1, recovered.size());
+		assertEquals("tx1", recovered.get(0).getTransactionId());
+	}
+
+	private Transaction transaction(String transactionId, long amount) {
+		return Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(Account.builder()
+						.id(12L)
+						.accountNumber("1000000012")
+						.build())
+				.amount(amount)
+				.balanceSnapshot(10000L - amount)
+				.transactionId(transactionId)
+				.transactedAt(LocalDateTime.now())
+				.build();
+	}
+}
@@ -9,17 +9,28 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.aop.AccountLockPolicy;
 import com.example.account.domain.Account;
 import com.example.account.domain.AccountUser;
 import com.example.account.domain.Transaction;
@@ -30,6 +41,7 @@ import com.example.account.repository.AccountRepository;
 import com.example.account.repository.AccountUserRepository;
 import com.example.account.repository.TransactionRepository;
 import com.example.account.type.AccountStatus;
+import com.example.account.type.BalanceEngine;
 import com.example.account.type.ErrorCode;
 import com.example.account.type.TransactionResultType;
 import com.example.account.type.TransactionType;
@@ -46,6 +58,33 @@ class TransactionServiceTest {
 	@Mock
 	private AccountUserRepository accountUserRepository;
 	
+	@Mock
+	private LockService lockService;
+	
+	@Mock
+	private TransactionTemplate transactionTemplate;
+	
+	@Mock
+	private HotAccountTracker hotAccountTracker;
+	
+	@Mock
+	private OptimisticRetryExecutor optimisticRetryExecutor;
+	
+	@Mock
+	private RedisLedgerService redisLedgerService;
+	
+	@Mock
+	private InMemoryLedgerEngine inMemoryLedgerEngine;
+	
+	@Mock
+	private ShardedBalanceService shardedBalanceService;
+
+	@Mock
+	private BalanceGroupCommitter balanceGroupCommitter;
+
+	@Mock
+	private TransactionWriteBehind transactionWriteBehind;
+	
 	@InjectMocks
 	private TransactionService transactionService;
 
@@ -252,6 +291,7 @@ class TransactionServiceTest {
 		assertEquals(200L, captor.getValue().getAmount());
 		assertEquals(10000L, captor.getValue().getBalanceSnapshot());
 		assertEquals(TransactionResultType.F, captor.getValue().getTransactionResultType());
+		verify(hotAccountTracker, times(1)).recordFailure("1000000000");
 	}
 	
 	@Test
@@ -489,13 +529,14 @@ class TransactionServiceTest {
 				.amount(CANCEL_AMOUNT)
 				.balanceSnapshot(10000L)
 				.build();
-		given(transactionRepository.findByTransactionId(anyString()))
-			.willReturn(Optional.of(transaction));
+		given(transactionRepository.findDtoByTransactionId(anyString()))
+			.willReturn(Optional.of(TransactionDto.fromEntity(transaction)));
 		
 		//when
 		TransactionDto transactionDto = transactionService.queryTransaction("trxId");
 		
 		//then
+		verify(lockService, never()).Lock(anyString(), any(AccountLockPolicy.class), anyString());
 		assertEquals(TransactionType.USE,transactionDto.getTransactionType());
 		assertEquals(TransactionResultType.S,transactionDto.getTransactionResultType());
 		assertEquals(CANCEL_AMOUNT,transactionDto.getAmount());
@@ -506,7 +547,7 @@ class TransactionServiceTest {
 	@DisplayName("원 거래 없음 - 거래 조회 실패")
 	void queryTransaction_TransactionNotFound(){
 		//given
-		given(transactionRepository.findByTransactionId(anyString()))
+		given(transactionRepository.findDtoByTransactionId(anyString()))
 			.willReturn(Optional.empty());
 		
 		//when
@@ -516,5 +557,289 @@ class TransactionServiceTest {
 		//then
 		assertEquals(ErrorCode.TRANSACTION_NOT_FOUND, accountException.getErrorCode());
 	}
+	
+	@Test
+	@DisplayName("서비스 락 모드 - 커밋 구간만 락")
+	void successUseBalanceWithLock(){
+		//given
+		AccountUser user = AccountUser.builder()
+				.id(12L)
+				.name("pobi")
+				.build();
+		Account account = Account.builder()
+				.accountUser(user)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(10000L)
+				.accountNumber("1000000012")
+				.build();
+		given(accountUserRepository.findById(anyLong()))
+			.willReturn(Optional.of(user));
+		given(accountRepository.findByAccountNumber(anyString()))
+			.willReturn(Optional.of(account));
+		given(transactionTemplate.execute(any()))
+			.willAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0)
+					.doInTransaction(null));
+		given(transactionRepository.save(any()))
+			.willAnswer(invocation -> invocation.getArgument(0));
+		
+		//when
+		TransactionDto transactionDto = transactionService.useBalanceWithLock(12L, "1000000012", 200L);
+		
+		//then
+		verify(lockService, times(1)).Lock("1000000012", AccountLockPolicy.DEFAULT, "useBalance");
+		verify(lockService, times(1)).unLock("1000000012", AccountLockPolicy.DEFAULT);
+		assertEquals(9800L, transactionDto.getBalanceSnapshot());
+	}
+	
+	@Test
+	@DisplayName("서비스 락 모드 - 사전검증 실패면 락을 잡지 않음")
+	void useBalanceWithLock_ExceedAmountWithoutLock(){
+		//given
+		AccountUser user = AccountUser.builder()
+				.id(12L)
+				.name("pobi")
+				.build();
+		Account account = Account.builder()
+				.accountUser(user)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(100L)
+				.accountNumber("1000000012")
+				.build();
+		given(accountUserRepository.findById(anyLong()))
+			.willReturn(Optional.of(user));
+		given(accountRepository.findByAccountNumber(anyString()))
+			.willReturn(Optional.of(account));
+		
+		//when
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> transactionService.useBalanceWithLock(12L, "1000000012", 1000L));
+		
+		//then
+		assertEquals(ErrorCode.AMOUNT_EXCEED_BALANCE, accountException.getErrorCode());
+		verify(lockService, never()).Lock(anyString(), any(), anyString());
+	}
+
+	@Test
+	@DisplayName("조건부 UPDATE 잔액 사용 성공")
+	void successUseBalanceConditional(){
+		//given
+		AccountUser user = AccountUser.builder()
+				.id(12L)
+				.name("pobi")
+				.build();
+		Account account = Account.builder()
+				.accountUser(user)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(10000L)
+				.accountNumber("1000000012")
+				.build();
+		given(accountUserRepository.findById(anyLong()))
+			.willReturn(Optional.of(user));
+		given(accountRepository.findByAccountNumber(anyString()))
+			.willReturn(Optional.of(account));
+		given(accountRepository.useBalanceIfEnough(eq("1000000012"), eq(200L), eq(AccountStatus.IN_USE), any()))
+			.willReturn(1);
+		given(accountRepository.findBalanceByAccountNumber("1000000012"))
+			.willReturn(Optional.of(9800L));
+		given(transactionRepository.save(any()))
+			.willAnswer(invocation -> invocation.getArgument(0));
+		
+		//when
+		TransactionDto transactionDto = transactionService.useBalanceConditional(12L, "1000000012", 200L);
+		
+		//then
+		assertEquals(9800L, transactionDto.getBalanceSnapshot());
+		assertEquals(TransactionResultType.S, transactionDto.getTransactionResultType());
+		assertEquals(10000L, account.getBalance());//엔티티는 건드리지 않는다
+	}
+	
+	@Test
+	@DisplayName("조건부 UPDATE 잔액 사용 - 반영된 행이 없으면 잔액 부족")
+	void useBalanceConditional_ExceedAmount(){
+		//given
+		AccountUser user = AccountUser.builder()
+				.id(12L)
+				.name("pobi")
+				.build();
+		Account account = Account.builder()
+				.accountUser(user)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(100L)
+				.accountNumber("1000000012")
+				.build();
+		given(accountUserRepository.findById(anyLong()))
+			.willReturn(Optional.of(user));
+		given(accountRepository.findByAccountNumber(anyString()))
+			.willReturn(Optional.of(account));
+		given(accountRepository.useBalanceIfEnough(anyString(), anyLong(), any(), any()))
+			.willReturn(0);
+		
+		//when
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> transactionService.useBalanceConditional(12L, "1000000012", 1000L));
+		
+		//then
+		assertEquals(ErrorCode.AMOUNT_EXCEED_BALANCE, accountException.getErrorCode());
+		verify(transactionRepository, never()).save(any());
+	}
+	
+	@Test
+	@DisplayName("조건부 UPDATE 잔액 사용 - 반영된 행이 없고 해지된 계좌")
+	void useBalanceConditional_AlreadyUnregistered(){
+		//given
+		AccountUser user = AccountUser.builder()
+				.id(12L)
+				.name("pobi")
+				.build();
+		Account account = Account.builder()
+				.accountUser(user)
+				.accountStatus(AccountStatus.UN_REGISTERED)
+				.balance(10000L)
+				.accountNumber("1000000012")
+				.build();
+		given(accountUserRepository.findById(anyLong()))
+			.willReturn(Optional.of(user));
+		given(accountRepository.findByAccountNumber(anyString()))
+			.willReturn(Optional.of(account));
+		given(accountRepository.useBalanceIfEnough(anyString(), anyLong(), any(), any()))
+			.willReturn(0);
+		
+		//when
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> transactionService.useBalanceConditional(12L, "1000000012", 1000L));
+		
+		//then
+		assertEquals(ErrorCode.ACCOUNT_ALREADY_UNREGISTERED, accountException.getErrorCode());
+	}
+	
+	@Test
+	@DisplayName("조건부 UPDATE 잔액 사용 취소 성공")
+	void successCancelBalanceConditional(){
+		//given
+		AccountUser user = AccountUser.builder()
+				.id(12L)
+				.name("pobi")
+				.build();
+		Account account = Account.builder()
+				.id(1L)
+				.accountUser(user)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(10000L)
+				.accountNumber("1000000012")
+				.build();
+		Transaction transaction = Transaction.builder()
+				.account(account)
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.transactionId("transactionId")
+				.transactedAt(LocalDateTime.now())
+				.amount(CANCEL_AMOUNT)
+				.balanceSnapshot(9000L)
+				.build();
+		given(transactionRepository.findByTransactionId(anyString()))
+			.willReturn(Optional.of(transaction));
+		given(accountRepository.findByAccountNumber(anyString()))
+			.willReturn(Optional.of(account));
+		given(accountRepository.addBalance(eq("1000000012"), eq(CANCEL_AMOUNT), any()))
+			.willReturn(1);
+		given(accountRepository.findBalanceByAccountNumber("1000000012"))
+			.willReturn(Optional.of(10000L + CANCEL_AMOUNT));
+		given(transactionRepository.save(any()))
+			.willAnswer(invocation -> invocation.getArgument(0));
+		
+		//when
+		TransactionDto transactionDto = transactionService.cancelBalanceConditional(
+				"transactionId", "1000000012", CANCEL_AMOUNT);
+		
+		//then
+		assertEquals(10000L + CANCEL_AMOUNT, transactionDto.getBalanceSnapshot());
+		assertEquals(TransactionType.CANCEL, transactionDto.getTransactionType());
+	}
+
+	@Test
+	@DisplayName("낙관적 락 잔액 사용 - 재시도 실행기 안에서 새 트랜잭션으로 실행")
+	void successUseBalanceOptimistic(){
+		//given
+		AccountUser user = AccountUser.builder()
+				.id(12L)
+				.name("pobi")
+				.build();
+		Account account = Account.builder()
+				.accountUser(user)
+				.accountStatus(AccountStatus.IN_USE)
+				.balance(10000L)
+				.accountNumber("1000000012")
+				.build();
+		given(optimisticRetryExecutor.execute(any()))
+			.willAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+		given(transactionTemplate.execute(any()))
+			.willAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0)
+					.doInTransaction(null));
+		given(accountUserRepository.findById(anyLong()))
+			.willReturn(Optional.of(user));
+		given(accountRepository.findByAccountNumber(anyString()))
+			.willReturn(Optional.of(account));
+		given(transactionRepository.save(any()))
+			.willAnswer(invocation -> invocation.getArgument(0));
+		
+		//when
+		TransactionDto transactionDto = transactionService.useBalanceOptimistic(12L, "1000000012", 200L);
+		
+		//then
+		assertEquals(9800L, transactionDto.getBalanceSnapshot());
+		verify(lockService, never()).Lock(anyString(), any(), anyString());
+	}
+
+	@Test
+	@DisplayName("메모리 원장 엔진은 비동기 사용에서 결과를 기다리지 않고 엔진 future를 돌려준다")
+	void useBalanceByEngineAsync_inMemoryDoesNotWait() {
+		//given
+		ReflectionTestUtils.setField(transactionService, "balanceEngine", BalanceEngine.IN_MEMORY);
+		CompletableFuture<TransactionDto> durable = new CompletableFuture<>();
+		given(inMemoryLedgerEngine.useBalance(12L, "1000000012", 1000L))
+			.willReturn(durable);
+		
+		//when
+		CompletableFuture<TransactionDto> result = transactionService.useBalanceByEngineAsync(12L, "1000000012", 1000L);
+		
+		//then
+		assertFalse(result.isDone());
+		durable.complete(TransactionDto.builder().transactionId("transactionId").build());
+		assertEquals("transactionId", result.join().getTransactionId());
+	}
+	
+	@Test
+	@DisplayName("그룹 커밋 엔진 실패는 AccountException으로 끝난 future가 된다")
+	void cancelBalanceByEngineAsync_groupCommitFailure() {
+		//given
+		ReflectionTestUtils.setField(transactionService, "balanceEngine", BalanceEngine.GROUP_COMMIT);
+		given(balanceGroupCommitter.cancelBalance("transactionId", "1000000012", 1000L))
+			.willReturn(CompletableFuture.failedFuture(new CompletionException(
+					new AccountException(ErrorCode.TRANSACTION_NOT_FOUND))));
+		
+		//when
+		CompletionException exception = assertThrows(CompletionException.class,
+				() -> transactionService.cancelBalanceByEngineAsync("transactionId", "1000000012", 1000L).join());
+		
+		//then
+		assertEquals(ErrorCode.TRANSACTION_NOT_FOUND, ((AccountException) exception.getCause()).getErrorCode());
+	}
+	
+	@Test
+	@DisplayName("entity 엔진의 샤드 계좌는 샤드 서비스로 보낸다")
+	void useBalanceByEngine_shardedAccount() {
+		//given
+		given(shardedBalanceService.isSharded("1000000012"))
+			.willReturn(true);
+		given(shardedBalanceService.useBalance(12L, "1000000012", 1000L))
+			.willReturn(TransactionDto.builder().transactionId("transactionId").build());
+		
+		//when
+		TransactionDto transactionDto = transactionService.useBalanceByEngine(12L, "1000000012", 1000L);
+		
+		//then
+		assertEquals("transactionId", transactionDto.getTransactionId());
+		verify(transactionTemplate, never()).execute(any());
+	}
 
 }
@@ -0,0 +1,241 @@
+package com.example.account.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.account.domain.Account;
+import com.example.account.domain.Transaction;
+import com.example.account.exception.AccountException;
+import com.example.account.repository.AccountRepository;
+import com.example.account.repository.TransactionOutboxRepository;
+import com.example.account.repository.TransactionRepository;
+import com.example.account.type.ErrorCode;
+import com.example.account.type.TransactionResultType;
+import com.example.account.type.TransactionType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionWriteBehindTest {
+	@Mock
+	private TransactionRepository transactionRepository;
+
+	@Mock
+	private AccountRepository accountRepository;
+
+	@Mock
+	private TransactionOutboxRepository transactionOutboxRepository;
+
+	@Mock
+	private TransactionTemplate transactionTemplate;
+
+	@Captor
+	private ArgumentCaptor<List<Transaction>> saved;
+
+	@TempDir
+	Path directory;
+
+	private TransactionWriteBehind writeBehind;
+
+	private final Account account = Account.builder()
+			.id(12L)
+			.accountNumber("1000000012").build();
+
+	@BeforeEach
+	void init() {
+		lenient().when(accountRepository.getReferenceById(12L)).thenReturn(account);
+		//기본은 모두 커밋된 거래
+		lenient().when(transactionOutboxRepository.findTransactionIdsIn(anyCollection()))
+			.thenAnswer(invocation -> List.copyOf(invocation.<Collection<String>>getArgument(0)));
+	}
+
+	@AfterEach
+	void stop() throws Exception {
+		writeBehind.stop();
+	}
+
+	@Test
+	@DisplayName("DB에 들어가기 전 거래도 조회되고, 재시작하면 다시 넣는다")
+	void replayAfterRestart() throws Exception {
+		//given
+		doThrow(new QueryTimeoutException("db down"))
+			.when(transactionTemplate).executeWithoutResult(any());
+		writeBehind = newWriteBehind();
+		writeBehind.append(transaction("tx1"));
+
+		//when
+		Transaction pending = writeBehind.find("tx1").get();
+		writeBehind.stop();
+		draining();
+		writeBehind = newWriteBehind();
+		awaitDrained();
+
+		//then
+		assertEquals(9800L, pending.getBalanceSnapshot());
+		assertEquals("1000000012", pending.getAccount().getAccountNumber());
+		assertEquals(List.of("tx1"), savedTransactionIds());
+		assertTrue(writeBehind.find("tx1").isEmpty());
+	}
+
+	@Test
+	@DisplayName("이미 DB에 있는 거래는 다시 넣지 않는다")
+	void skipInsertedTransactions() throws Exception {
+		//given
+		draining();
+		given(transactionRepository.findTransactionIdsIn(anyCollection()))
+			.willReturn(Collections.singletonList("tx1"));
+		writeBehind = newWriteBehind();
+
+		//when
+		writeBehind.append(transaction("tx1"));
+		writeBehind.append(transaction("tx2"));
+		awaitDrained();
+
+		//then
+		assertEquals(List.of("tx2"), savedTransactionIds());
+	}
+
+	@Test
+	@DisplayName("롤백된 거래는 저널에서 빠지고, 커밋된 거래만 넣는다")
+	void journalOnlyCommittedTransactions() throws Exception {
+		//given
+		draining();
+		writeBehind = newWriteBehind();
+
+		//when
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			writeBehind.append(transaction("rolledBack"));
+			TransactionSynchronizationManager.getSynchronizations()
+				.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			writeBehind.append(transaction("committed"));
+			TransactionSynchronizationManager.getSynchronizations()
+				.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		awaitDrained();
+
+		//then
+		assertEquals(List.of("committed"), savedTransactionIds());
+	}
+
+	@Test
+	@DisplayName("outbox 행이 없는 기록(저널만 쓰고 커밋 전에 죽은 거래)은 재시작해도 넣지 않는다")
+	void dropUncommittedRecordsOnReplay() throws Exception {
+		//given
+		doThrow(new QueryTimeoutException("db down"))
+			.when(transactionTemplate).executeWithoutResult(any());
+		writeBehind = newWriteBehind();
+		writeBehind.append(transaction("tx1"));
+		writeBehind.stop();
+		draining();
+		given(transactionOutboxRepository.findTransactionIdsIn(anyCollection()))
+			.willReturn(Collections.emptyList());
+
+		//when
+		writeBehind = newWriteBehind();
+		awaitDrained();
+
+		//then
+		assertTrue(savedTransactionIds().isEmpty());
+		verify(transactionOutboxRepository, never()).deleteByTransactionIdIn(anyCollection());
+	}
+
+	@Test
+	@DisplayName("저널 쓰기가 실패하면 예외를 던져서 잔액 변경과 같이 롤백되게 한다")
+	void journalFailureThrowsBeforeCommit() throws Exception {
+		//given
+		writeBehind = newWriteBehind();
+
+		//when
+		//세그먼트보다 큰 기록은 쓸 수 없다
+		AccountException accountException = assertThrows(AccountException.class,
+				() -> writeBehind.append(transaction("x".repeat(5000))));
+
+		//then
+		assertEquals(ErrorCode.INTERNAL_SERVER_ERROR, accountException.getErrorCode());
+		verify(transactionOutboxRepository, never()).save(any());
+		assertEquals(0, writeBehind.pendingCount());
+	}
+
+	private TransactionWriteBehind newWriteBehind() throws Exception {
+		TransactionWriteBehind writeBehind = new TransactionWriteBehind(transactionRepository, accountRepository,
+				transactionOutboxRepository, transactionTemplate, new SimpleMeterRegistry(), true, directory.toString(), 4096, false, 100, 10);
+		writeBehind.start();
+		return writeBehind;
+	}
+
+	private void draining() {
+		doAnswer(invocation -> {
+			invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+			return null;
+		}).when(transactionTemplate).executeWithoutResult(any());
+	}
+
+	private void awaitDrained() throws InterruptedException {
+		for(int i = 0; i < 500 && writeBehind.pendingCount() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, writeBehind.pendingCount());
+	}
+
+	private List<String> savedTransactionIds() {
+		verify(transactionRepository, atLeastOnce()).saveAll(saved.capture());
+		return saved.getAllValues().stream()
+				.flatMap(List::stream)
+				.map(Transaction::getTransactionId)
+				.collect(Collectors.toList());
+	}
+
+	private Transaction transaction(String transactionId) {
+		return Transaction.builder()
+				.transactionType(TransactionType.USE)
+				.transactionResultType(TransactionResultType.S)
+				.account(account)
+				.amount(200L)
+				.balanceSnapshot(9800L)
+				.transactionId(transactionId)
+				.transactedAt(LocalDateTime.now())
+				.build();
+	}
+}